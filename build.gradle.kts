@@ -64,6 +64,18 @@ publishing {
     }
 }
 
+// Benchmarks only print timings, so they are built along with the library but never run
+sourceSets {
+    create("bench") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+
+tasks.named("build") {
+    dependsOn("benchClasses")
+}
+
 tasks.withType<JavaCompile>() {
     options.encoding = "UTF-8"
 }
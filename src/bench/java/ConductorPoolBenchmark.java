@@ -0,0 +1,161 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.exception.EtEmptyException;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares conductors with a thread for each station to conductors sharing a
+ * pool of threads, one for each core unless set with -threads. A Java ET system is run in this process
+ * with many stations in series (default 100, set with -stations), each with one
+ * attachment. A producer puts events into GRAND_CENTRAL and a single thread takes
+ * events from each attachment in turn and puts them back, so nearly all the work of
+ * moving events is done by the conductors. Each arrangement runs for a few seconds
+ * (default 2, set with -sec). The events per second making it through all stations
+ * the number of live threads, and, on Linux, the number of context switches
+ * of this process's threads are printed. Stations are removed after each run
+ * so their conductor threads are gone before the next.
+ */
+public class ConductorPoolBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 2, stations = 100, threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-stations")) stations = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-threads")) threads = Integer.parseInt(args[++i]);
+        }
+
+        try {
+            for (int run = 0; run < 2; run++) {
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(2000);
+                config.setEventSize(16);
+                config.setStationsMax(stations + 1);
+                config.setAttachmentsMax(stations + 1);
+                config.setConductorThreads(run == 0 ? 0 : threads);
+                config.setServerPort(EtConstants.serverPort + 30 + run);
+                config.setUdpPort(EtConstants.udpPort + 30 + run);
+                final SystemCreate sys = new SystemCreate("/tmp/et_pool_bench", config);
+
+                final AttachmentLocal[] atts = new AttachmentLocal[stations];
+                for (int i = 0; i < stations; i++) {
+                    StationLocal station = sys.createStation(new EtStationConfig(), "station_" + i);
+                    atts[i] = sys.attach(station.getStationId());
+                }
+                final AttachmentLocal producerAtt = sys.attach(0);
+
+                final long warmUpEnd = System.nanoTime() + 500000000L;
+                final long endTime = warmUpEnd + 1000000000L * seconds;
+                final AtomicLong arrived = new AtomicLong();
+                final int last = stations - 1;
+
+                // one thread takes events from every station in turn and puts them back
+                Thread relay = new Thread() {
+                    public void run() {
+                        try {
+                            while (System.nanoTime() < endTime) {
+                                boolean found = false;
+                                for (int i = 0; i < atts.length; i++) {
+                                    try {
+                                        EtEventImpl[] evs = sys.getEvents(atts[i], EtConstants.async, 0, 200);
+                                        if (i == last && System.nanoTime() > warmUpEnd) {
+                                            arrived.addAndGet(evs.length);
+                                        }
+                                        sys.putEvents(atts[i], evs);
+                                        found = true;
+                                    }
+                                    catch (EtEmptyException e) {}
+                                }
+                                // let conductors run if there was nothing to do
+                                if (!found) Thread.yield();
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                Thread producer = new Thread() {
+                    public void run() {
+                        try {
+                            while (System.nanoTime() < endTime) {
+                                try {
+                                    EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.timed, 100000, 100, 16);
+                                    sys.putEvents(producerAtt, evs);
+                                }
+                                catch (EtTimeoutException e) {}
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                relay.start();
+                producer.start();
+                int liveThreads = Thread.activeCount();
+                while (System.nanoTime() < warmUpEnd) {
+                    Thread.sleep(10);
+                }
+                long switches = contextSwitches();
+                relay.join();
+                producer.join();
+                switches = contextSwitches() - switches;
+
+                System.out.println(stations + " stations, " +
+                                   (run == 0 ? "thread per conductor: " : threads + " shared conductor thread(s): ") +
+                                   (arrived.get() / seconds) + " events/sec, " + liveThreads + " live threads" +
+                                   (switches < 0 ? "" : ", " + (switches / seconds) + " context switches/sec"));
+
+                // removing stations stops their conductor threads
+                sys.detach(producerAtt);
+                for (int i = 0; i < stations; i++) {
+                    sys.detach(atts[i]);
+                    sys.removeStation(atts[i].getStation().getStationId());
+                }
+                sys.shutdown();
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Adds up the context switches of all threads in this process so far.
+     * Threads which have ended are not counted.
+     * @return number of context switches, or -1 if not found (not Linux)
+     */
+    private static long contextSwitches() {
+        File[] tasks = new File("/proc/self/task").listFiles();
+        if (tasks == null) return -1;
+
+        long switches = 0;
+        for (File task : tasks) {
+            try {
+                for (String line : Files.readAllLines(new File(task, "status").toPath())) {
+                    if (line.endsWith("ctxt_switches:") || !line.contains("ctxt_switches:")) continue;
+                    switches += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                }
+            }
+            catch (Exception e) {
+                // thread ended while looking
+            }
+        }
+        return switches;
+    }
+}
@@ -0,0 +1,77 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long it takes to detach an attachment which still holds events,
+ * as happens when a client crashes. A Java ET system with many events
+ * (default 100000, set with -n) is run in this process. Repeatedly
+ * (default 2000 times, set with -r) an attachment is made to a station,
+ * gets a few events (default 10, set with -k), and is detached without
+ * putting them back. The detach latency is printed.
+ */
+public class DetachBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int numEvents = 100000, reps = 2000, held = 10;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-n")) numEvents = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-r")) reps = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-k")) held = Integer.parseInt(args[++i]);
+        }
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(16);
+            config.setServerPort(EtConstants.serverPort + 9);
+            config.setUdpPort(EtConstants.udpPort + 9);
+            SystemCreate sys = new SystemCreate("/tmp/et_detach_bench", config);
+
+            // An attachment that never reads keeps the station active
+            EtStationConfig sConfig = new EtStationConfig();
+            StationLocal station = sys.createStation(sConfig, "bench_station");
+            sys.attach(station.getStationId());
+            AttachmentLocal producerAtt = sys.attach(0);
+
+            long[] nanos = new long[reps];
+            for (int r = -reps/10; r < reps; r++) {
+                EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.sleep, 0, held, 16);
+                sys.putEvents(producerAtt, evs);
+
+                AttachmentLocal att = sys.attach(station.getStationId());
+                int got = 0;
+                while (got < held) {
+                    got += sys.getEvents(att, EtConstants.sleep, 0, held - got).length;
+                }
+
+                long t = System.nanoTime();
+                sys.detach(att);
+                t = System.nanoTime() - t;
+
+                // first tenth is warm up
+                if (r >= 0) nanos[r] = t;
+            }
+
+            Arrays.sort(nanos);
+            long total = 0;
+            for (long n : nanos) total += n;
+
+            System.out.println("Detach holding " + held + " of " + numEvents + " events: mean " +
+                               (total / reps / 1000.) + " us, median " + (nanos[reps/2] / 1000.) +
+                               " us, 99% " + (nanos[reps*99/100] / 1000.) + " us");
+            sys.shutdown();
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
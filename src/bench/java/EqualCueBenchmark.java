@@ -0,0 +1,132 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.exception.EtBusyException;
+import org.jlab.coda.et.exception.EtEmptyException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the rate at which GRAND_CENTRAL's conductor passes events to a group
+ * of parallel stations using the equal-cue algorithm, for groups of 1 to 64
+ * stations. For each group size a Java ET system is run in this process with a
+ * producer at GRAND_CENTRAL and one consumer thread taking events from every
+ * station of the group. Each group size runs for a few seconds
+ * (default 3, set with -sec). The events per second consumed and the CPU time
+ * GRAND_CENTRAL's conductor thread spent per event are printed.
+ */
+public class EqualCueBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 3;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+        }
+
+        try {
+            ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+            int run = 0;
+            for (int groupSize = 1; groupSize <= 64; groupSize *= 2, run++) {
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(2000);
+                config.setEventSize(16);
+                config.setStationsMax(70);
+                config.setAttachmentsMax(70);
+                config.setServerPort(EtConstants.serverPort + 10 + run);
+                config.setUdpPort(EtConstants.udpPort + 10 + run);
+                final SystemCreate sys = new SystemCreate("/tmp/et_equalcue_bench", config);
+
+                EtStationConfig sConfig = new EtStationConfig();
+                sConfig.setFlowMode(EtConstants.stationParallel);
+                sConfig.setSelectMode(EtConstants.stationSelectEqualCue);
+
+                final AttachmentLocal[] atts = new AttachmentLocal[groupSize];
+                StationLocal head = sys.createStation(sConfig, "equalcue_0");
+                atts[0] = sys.attach(head.getStationId());
+                for (int i = 1; i < groupSize; i++) {
+                    StationLocal station = sys.createStation(sConfig, "equalcue_" + i, 1, EtConstants.end);
+                    atts[i] = sys.attach(station.getStationId());
+                }
+                final AttachmentLocal producerAtt = sys.attach(0);
+
+                final AtomicLong consumed = new AtomicLong();
+                long conductorId = sys.getStations().get(0).getId();
+                final boolean[] producerDone = new boolean[1];
+                final long warmUpEnd = System.currentTimeMillis() + 500L;
+                final long endTime = warmUpEnd + 1000L * seconds;
+
+                Thread producer = new Thread() {
+                    public void run() {
+                        try {
+                            while (System.currentTimeMillis() < endTime) {
+                                EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.sleep, 0, 50, 16);
+                                sys.putEvents(producerAtt, evs);
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                        synchronized (producerDone) {
+                            producerDone[0] = true;
+                        }
+                    }
+                };
+
+                // keep returning events until the producer quits so it never waits forever
+                Thread consumer = new Thread() {
+                    public void run() {
+                        try {
+                            while (true) {
+                                synchronized (producerDone) {
+                                    if (producerDone[0]) break;
+                                }
+                                for (AttachmentLocal att : atts) {
+                                    try {
+                                        EtEventImpl[] evs = sys.getEvents(att, EtConstants.async, 0, 200);
+                                        consumed.addAndGet(evs.length);
+                                        sys.putEvents(att, evs);
+                                    }
+                                    catch (EtEmptyException e) {}
+                                    catch (EtBusyException e) {}
+                                }
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                producer.start();
+                consumer.start();
+
+                // measure after warming up
+                Thread.sleep(warmUpEnd - System.currentTimeMillis());
+                long events = consumed.get();
+                long conductorNanos = threadBean.getThreadCpuTime(conductorId);
+                Thread.sleep(endTime - System.currentTimeMillis());
+                events = consumed.get() - events;
+                conductorNanos = threadBean.getThreadCpuTime(conductorId) - conductorNanos;
+
+                producer.join();
+                consumer.join();
+
+                System.out.println("Equal-cue group of " + groupSize + " stations: " +
+                                   (events / seconds) + " events/sec, conductor " +
+                                   (conductorNanos / Math.max(events, 1)) + " ns/event");
+                sys.shutdown();
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
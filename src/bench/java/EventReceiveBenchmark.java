@@ -0,0 +1,151 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how fast, and at what cost in processor time, the tcp server takes
+ * events put by a remote producer over the loopback interface for events of
+ * 4 kB, 64 kB and 4 MB. A Java ET system is run in this process with one station
+ * at which a local consumer takes the events and puts them back. The remote
+ * producer gets new events from GRAND_CENTRAL 4 at a time, fills them and puts
+ * them. Each size is run with a thread serving the connection and with a
+ * selector thread serving it, for a few seconds each (default 2, set with -sec).
+ * Events are kept on the heap unless -direct is given. The megabytes per second
+ * received and the processor time the server threads took per gigabyte are printed.
+ */
+public class EventReceiveBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 2, storage = EtConstants.storageHeap;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-direct")) storage = EtConstants.storageDirect;
+        }
+
+        int[] sizes = {4096, 65536, 4194304};
+
+        try {
+            int run = 0;
+            for (final int size : sizes) {
+                for (int selectors = 0; selectors < 2; selectors++, run++) {
+                    int port = EtConstants.serverPort + 60 + run;
+                    String etName = "/tmp/et_receive_bench";
+
+                    SystemConfig config = new SystemConfig();
+                    config.setNumEvents(16);
+                    config.setEventSize(size);
+                    config.setEventStorage(storage);
+                    config.setServerSelectors(selectors);
+                    config.setServerPort(port);
+                    config.setUdpPort(EtConstants.udpPort + 60 + run);
+                    final SystemCreate sys = new SystemCreate(etName, config);
+                    StationLocal station = sys.createStation(new EtStationConfig(), "consumer");
+                    final AttachmentLocal consumerAtt = sys.attach(station.getStationId());
+
+                    EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", port);
+                    openConfig.setNetworkContactMethod(EtConstants.direct);
+                    final EtSystem etSys = new EtSystem(openConfig);
+                    etSys.open();
+                    final EtAttachment att = etSys.attach(etSys.stationNameToObject("GRAND_CENTRAL"));
+
+                    final long warmUpEnd = System.nanoTime() + 1000000000L;
+                    final long endTime = warmUpEnd + 1000000000L * seconds;
+                    final AtomicLong taken = new AtomicLong();
+
+                    Thread producer = new Thread() {
+                        public void run() {
+                            try {
+                                while (System.nanoTime() < endTime) {
+                                    try {
+                                        EtEvent[] evs = etSys.newEvents(att, Mode.TIMED, 100000, 4, size);
+                                        for (EtEvent ev : evs) {
+                                            ev.setLength(size);
+                                        }
+                                        etSys.putEvents(att, evs);
+                                    }
+                                    catch (EtTimeoutException e) {}
+                                }
+                            }
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+
+                    Thread consumer = new Thread() {
+                        public void run() {
+                            try {
+                                while (System.nanoTime() < endTime) {
+                                    try {
+                                        EtEventImpl[] evs = sys.getEvents(consumerAtt, EtConstants.timed, 100000, 4);
+                                        if (System.nanoTime() > warmUpEnd) {
+                                            taken.addAndGet(evs.length);
+                                        }
+                                        sys.putEvents(consumerAtt, evs);
+                                    }
+                                    catch (EtTimeoutException e) {}
+                                }
+                            }
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+
+                    producer.start();
+                    consumer.start();
+                    while (System.nanoTime() < warmUpEnd) {
+                        Thread.sleep(10);
+                    }
+                    long cpu = serverCpuTime();
+                    consumer.join();
+                    cpu = serverCpuTime() - cpu;
+                    producer.join();
+
+                    long bytes = taken.get() * size;
+                    System.out.println((size / 1024) + " kB events, " +
+                                       (selectors == 0 ? "thread per connection: " : "selector thread: ") +
+                                       (bytes / seconds / 1000000) + " MB/sec, " +
+                                       (bytes == 0 ? 0 : cpu * 1000 / bytes) + " server cpu ms/GB");
+
+                    etSys.detach(att);
+                    etSys.close();
+                    sys.detach(consumerAtt);
+                    sys.shutdown();
+                }
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Adds up the processor time taken so far by the threads serving connections.
+     * @return processor time in nanoseconds
+     */
+    private static long serverCpuTime() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        long time = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.getName().startsWith("clientThread") || t.getName().startsWith("connectionSel")) {
+                long cpu = bean.getThreadCpuTime(t.getId());
+                if (cpu > 0) time += cpu;
+            }
+        }
+        return time;
+    }
+}
@@ -0,0 +1,126 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how fast the tcp server sends events to a remote consumer over the
+ * loopback interface for events of 4 kB, 64 kB and 4 MB. A Java ET system is
+ * run in this process with a producer at GRAND_CENTRAL filling events and one
+ * station at which a remote consumer gets events (4 at a time, only reading
+ * them so the server puts them back itself). Each size is run with a thread
+ * serving the connection and with a selector thread serving it, for a few
+ * seconds each (default 2, set with -sec). Events are kept on the heap unless
+ * -direct is given, in which case they are kept off the heap and the server
+ * hands them to the socket without copying them. The events and megabytes per
+ * second taken by the consumer are printed.
+ */
+public class EventSendBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 2, storage = EtConstants.storageHeap;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-direct")) storage = EtConstants.storageDirect;
+        }
+
+        int[] sizes = {4096, 65536, 4194304};
+
+        try {
+            int run = 0;
+            for (final int size : sizes) {
+                for (int selectors = 0; selectors < 2; selectors++, run++) {
+                    int port = EtConstants.serverPort + 50 + run;
+                    String etName = "/tmp/et_send_bench";
+
+                    SystemConfig config = new SystemConfig();
+                    config.setNumEvents(16);
+                    config.setEventSize(size);
+                    config.setEventStorage(storage);
+                    config.setServerSelectors(selectors);
+                    config.setServerPort(port);
+                    config.setUdpPort(EtConstants.udpPort + 50 + run);
+                    final SystemCreate sys = new SystemCreate(etName, config);
+                    sys.createStation(new EtStationConfig(), "consumer");
+                    final AttachmentLocal producerAtt = sys.attach(0);
+
+                    EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", port);
+                    openConfig.setNetworkContactMethod(EtConstants.direct);
+                    final EtSystem etSys = new EtSystem(openConfig);
+                    etSys.open();
+                    final EtAttachment att = etSys.attach(etSys.stationNameToObject("consumer"));
+
+                    final long warmUpEnd = System.nanoTime() + 1000000000L;
+                    final long endTime = warmUpEnd + 1000000000L * seconds;
+                    final AtomicLong taken = new AtomicLong();
+
+                    Thread consumer = new Thread() {
+                        public void run() {
+                            try {
+                                while (System.nanoTime() < endTime) {
+                                    try {
+                                        EtEvent[] evs = etSys.getEvents(att, Mode.TIMED, Modify.NOTHING, 100000, 4);
+                                        if (System.nanoTime() > warmUpEnd) {
+                                            taken.addAndGet(evs.length);
+                                        }
+                                    }
+                                    catch (EtTimeoutException e) {}
+                                }
+                            }
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+
+                    Thread producer = new Thread() {
+                        public void run() {
+                            try {
+                                while (System.nanoTime() < endTime) {
+                                    try {
+                                        EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.timed, 100000, 4, size);
+                                        for (EtEventImpl ev : evs) {
+                                            ev.setLength(size);
+                                        }
+                                        sys.putEvents(producerAtt, evs);
+                                    }
+                                    catch (EtTimeoutException e) {}
+                                }
+                            }
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+
+                    consumer.start();
+                    producer.start();
+                    consumer.join();
+                    producer.join();
+
+                    long events = taken.get() / seconds;
+                    System.out.println((size / 1024) + " kB events, " +
+                                       (selectors == 0 ? "thread per connection: " : "selector thread: ") +
+                                       events + " events/sec, " + (events * size / 1000000) + " MB/sec");
+
+                    etSys.detach(att);
+                    etSys.close();
+                    sys.detach(producerAtt);
+                    sys.shutdown();
+                }
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares read-only consumers placed one after another in the station chain
+ * with the same consumers in a single fan-out group of parallel stations. For
+ * 1 to 8 consumers, a Java ET system is run in this process with a producer at
+ * GRAND_CENTRAL, a thread reading every event at each consumer station, and a
+ * final station at which the time each event took to get there from the producer
+ * is measured. Each arrangement runs for a few seconds (default 2, set with -sec).
+ * The events per second reaching the final station and their mean latency are printed.
+ */
+public class FanOutBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 2;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+        }
+
+        try {
+            int run = 0;
+            for (int readers = 1; readers <= 8; readers *= 2) {
+                for (int fanOut = 0; fanOut < 2; fanOut++, run++) {
+                    SystemConfig config = new SystemConfig();
+                    config.setNumEvents(1000);
+                    config.setEventSize(16);
+                    config.setServerPort(EtConstants.serverPort + 20 + run);
+                    config.setUdpPort(EtConstants.udpPort + 20 + run);
+                    final SystemCreate sys = new SystemCreate("/tmp/et_fanout_bench", config);
+
+                    EtStationConfig sConfig = new EtStationConfig();
+                    if (fanOut == 1) {
+                        sConfig.setFlowMode(EtConstants.stationParallel);
+                        sConfig.setSelectMode(EtConstants.stationSelectFanOut);
+                    }
+
+                    final AttachmentLocal[] atts = new AttachmentLocal[readers];
+                    StationLocal head = sys.createStation(sConfig, "reader_0");
+                    atts[0] = sys.attach(head.getStationId());
+                    for (int i = 1; i < readers; i++) {
+                        StationLocal station = (fanOut == 1) ?
+                                sys.createStation(sConfig, "reader_" + i, 1, EtConstants.end) :
+                                sys.createStation(sConfig, "reader_" + i);
+                        atts[i] = sys.attach(station.getStationId());
+                    }
+                    StationLocal last = sys.createStation(new EtStationConfig(), "last");
+                    final AttachmentLocal lastAtt = sys.attach(last.getStationId());
+                    final AttachmentLocal producerAtt = sys.attach(0);
+
+                    final long start = System.nanoTime();
+                    final long warmUpEnd = start + 500000000L;
+                    final long endTime = warmUpEnd + 1000000000L * seconds;
+                    final AtomicLong arrived = new AtomicLong(), latency = new AtomicLong();
+
+                    // readers look at each event's data and put it back
+                    Thread[] threads = new Thread[readers + 2];
+                    for (int i = 0; i < readers; i++) {
+                        final AttachmentLocal att = atts[i];
+                        threads[i] = new Thread() {
+                            public void run() {
+                                try {
+                                    while (System.nanoTime() < endTime) {
+                                        try {
+                                            EtEventImpl[] evs = sys.getEvents(att, EtConstants.timed, 100000, 50);
+                                            for (EtEventImpl ev : evs) {
+                                                ev.getDataBuffer().getInt(0);
+                                            }
+                                            sys.putEvents(att, evs);
+                                        }
+                                        catch (EtTimeoutException e) {}
+                                    }
+                                }
+                                catch (Exception e) {
+                                    e.printStackTrace();
+                                }
+                            }
+                        };
+                    }
+
+                    // last station measures how long events took to get there
+                    threads[readers] = new Thread() {
+                        public void run() {
+                            try {
+                                while (System.nanoTime() < endTime) {
+                                    try {
+                                        EtEventImpl[] evs = sys.getEvents(lastAtt, EtConstants.timed, 100000, 50);
+                                        long now = (System.nanoTime() - start)/1000L;
+                                        if (System.nanoTime() > warmUpEnd) {
+                                            for (EtEventImpl ev : evs) {
+                                                latency.addAndGet(now - ev.getControl()[0]);
+                                            }
+                                            arrived.addAndGet(evs.length);
+                                        }
+                                        sys.putEvents(lastAtt, evs);
+                                    }
+                                    catch (EtTimeoutException e) {}
+                                }
+                            }
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+
+                    // producer stamps each event with the time in microseconds
+                    threads[readers + 1] = new Thread() {
+                        public void run() {
+                            try {
+                                int[] control = new int[EtConstants.stationSelectInts];
+                                while (System.nanoTime() < endTime) {
+                                    EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.timed, 100000, 50, 16);
+                                    control[0] = (int) ((System.nanoTime() - start)/1000L);
+                                    for (EtEventImpl ev : evs) {
+                                        ev.setControl(control);
+                                    }
+                                    sys.putEvents(producerAtt, evs);
+                                }
+                            }
+                            catch (EtTimeoutException e) {}
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+
+                    for (Thread t : threads) t.start();
+                    for (Thread t : threads) t.join();
+
+                    long events = arrived.get();
+                    System.out.println(readers + " reader(s) " + (fanOut == 1 ? "in fan-out group: " : "in series:       ") +
+                                       (events / seconds) + " events/sec, mean latency " +
+                                       (latency.get() / Math.max(events, 1)) + " us");
+                    sys.shutdown();
+                }
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
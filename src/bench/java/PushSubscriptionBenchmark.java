@@ -0,0 +1,136 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many events a remote consumer takes, and how long after being put
+ * by the producer they reach it, when it asks for events and when the ET system
+ * pushes them. A Java ET system is run in this process with a producer at
+ * GRAND_CENTRAL stamping events of 1 kB with the time and one station at which
+ * the remote consumer, over a connection with tagged requests, gets events (up to
+ * 16 at a time, headers only) and puts them back. It first asks for events with
+ * getEvents in TIMED mode, then subscribes with a window of 16 events (default,
+ * set with -window), for a few seconds each (default 2, set with -sec). The
+ * events per second taken and their average time from put to consumer are printed.
+ */
+public class PushSubscriptionBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 2, window = 16;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-window")) window = Integer.parseInt(args[++i]);
+        }
+
+        final int size = 1024;
+
+        try {
+            for (int run = 0; run < 2; run++) {
+                boolean pushed = (run == 1);
+                int port = EtConstants.serverPort + 80 + run;
+                String etName = "/tmp/et_push_bench";
+
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(64);
+                config.setEventSize(size);
+                config.setServerPort(port);
+                config.setUdpPort(EtConstants.udpPort + 80 + run);
+                final SystemCreate sys = new SystemCreate(etName, config);
+                sys.createStation(new EtStationConfig(), "consumer");
+                final AttachmentLocal producerAtt = sys.attach(0);
+
+                EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", port);
+                openConfig.setNetworkContactMethod(EtConstants.direct);
+                openConfig.setTaggedRequests(true);
+                final EtSystem etSys = new EtSystem(openConfig);
+                etSys.open();
+                final EtAttachment att = etSys.attach(etSys.stationNameToObject("consumer"));
+                if (pushed) {
+                    etSys.subscribe(att, Modify.HEADER, window, Long.MAX_VALUE);
+                }
+
+                final long warmUpEnd = System.nanoTime() + 1000000000L;
+                final long endTime = warmUpEnd + 1000000000L * seconds;
+                final AtomicLong taken = new AtomicLong();
+                final AtomicLong latency = new AtomicLong();
+
+                Thread consumer = new Thread() {
+                    public void run() {
+                        try {
+                            while (System.nanoTime() < endTime) {
+                                try {
+                                    EtEvent[] evs = etSys.getEvents(att, Mode.TIMED, Modify.HEADER, 100000, 16);
+                                    long now = System.nanoTime();
+                                    if (now > warmUpEnd) {
+                                        taken.addAndGet(evs.length);
+                                        for (EtEvent ev : evs) {
+                                            latency.addAndGet((int) (now / 1000L) - ev.getControl()[0]);
+                                        }
+                                    }
+                                    etSys.putEvents(att, evs);
+                                }
+                                catch (EtTimeoutException e) {}
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                Thread producer = new Thread() {
+                    public void run() {
+                        try {
+                            int[] control = new int[EtConstants.stationSelectInts];
+                            while (System.nanoTime() < endTime) {
+                                try {
+                                    EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.timed, 100000, 1, size);
+                                    // time stamp in microseconds, wrapping is fine for differences
+                                    control[0] = (int) (System.nanoTime() / 1000L);
+                                    evs[0].setControl(control);
+                                    evs[0].setLength(size);
+                                    sys.putEvents(producerAtt, evs);
+                                }
+                                catch (EtTimeoutException e) {}
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                consumer.start();
+                producer.start();
+                consumer.join();
+                producer.join();
+
+                long events = taken.get();
+                System.out.println((pushed ? "pushed, window " + window + ": " : "asking with getEvents: ") +
+                                   (events / seconds) + " events/sec, " +
+                                   (events == 0 ? 0 : latency.get() / events) + " microsec from put");
+
+                if (pushed) {
+                    etSys.putEvents(att, etSys.unsubscribe(att));
+                }
+                etSys.detach(att);
+                etSys.close();
+                sys.detach(producerAtt);
+                sys.shutdown();
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,201 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the tcp server giving each connection a thread of its own to the
+ * tcp server with a few selector threads (default 2, set with -selectors) serving
+ * all connections. A Java ET system is run in this process with a producer at
+ * GRAND_CENTRAL and one station at which many remote consumers (default 1000, set
+ * with -clients) each open the system over its own connection, attach, and get
+ * and put back a few events at a time, waiting for them in timed mode. Each
+ * arrangement runs for a few seconds (default 2, set with -sec). The events per
+ * second taken by all consumers, the number of server threads, and, on Linux,
+ * the context switches of the server threads are printed.
+ */
+public class SelectorServerBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 2, clients = 1000, selectors = 2;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-clients")) clients = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-selectors")) selectors = Integer.parseInt(args[++i]);
+        }
+
+        try {
+            for (int run = 0; run < 2; run++) {
+                int port = EtConstants.serverPort + 40 + run;
+                String etName = "/tmp/et_selector_bench";
+
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(4 * clients);
+                config.setEventSize(16);
+                config.setAttachmentsMax(clients + 1);
+                config.setServerSelectors(run == 0 ? 0 : selectors);
+                config.setServerPort(port);
+                config.setUdpPort(EtConstants.udpPort + 40 + run);
+                config.setNoDelay(true);
+                // keep a thousand connections' buffers from filling the heap
+                config.setTcpSendBufSize(32768);
+                config.setTcpRecvBufSize(32768);
+                final SystemCreate sys = new SystemCreate(etName, config);
+                StationLocal station = sys.createStation(new EtStationConfig(), "consumers");
+                final AttachmentLocal producerAtt = sys.attach(0);
+
+                // every consumer has a connection of its own
+                final EtSystem[] systems = new EtSystem[clients];
+                final EtAttachment[] atts = new EtAttachment[clients];
+                for (int i = 0; i < clients; i++) {
+                    EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", port);
+                    openConfig.setNetworkContactMethod(EtConstants.direct);
+                    openConfig.setTcpSendBufSize(32768);
+                    openConfig.setTcpRecvBufSize(32768);
+                    openConfig.setNoDelay(true);
+                    systems[i] = new EtSystem(openConfig);
+                    systems[i].open();
+                    atts[i] = systems[i].attach(systems[i].stationNameToObject("consumers"));
+                }
+
+                final long warmUpEnd = System.nanoTime() + 1000000000L;
+                final long endTime = warmUpEnd + 1000000000L * seconds;
+                final AtomicLong taken = new AtomicLong();
+
+                Thread[] threads = new Thread[clients + 1];
+                for (int i = 0; i < clients; i++) {
+                    final EtSystem etSys = systems[i];
+                    final EtAttachment att = atts[i];
+                    threads[i] = new Thread() {
+                        public void run() {
+                            try {
+                                while (System.nanoTime() < endTime) {
+                                    try {
+                                        EtEvent[] evs = etSys.getEvents(att, Mode.TIMED, Modify.ANYTHING, 100000, 4);
+                                        if (System.nanoTime() > warmUpEnd) {
+                                            taken.addAndGet(evs.length);
+                                        }
+                                        etSys.putEvents(att, evs);
+                                    }
+                                    catch (EtTimeoutException e) {}
+                                }
+                            }
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+                }
+
+                threads[clients] = new Thread() {
+                    public void run() {
+                        try {
+                            while (System.nanoTime() < endTime) {
+                                try {
+                                    EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.timed, 100000, 100, 16);
+                                    sys.putEvents(producerAtt, evs);
+                                }
+                                catch (EtTimeoutException e) {}
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                for (Thread t : threads) {
+                    t.start();
+                }
+                while (System.nanoTime() < warmUpEnd) {
+                    Thread.sleep(10);
+                }
+                int serverThreads = serverThreads();
+                long switches = serverContextSwitches();
+                threads[clients].join();
+                switches = serverContextSwitches() - switches;
+                for (int i = 0; i < clients; i++) {
+                    threads[i].join();
+                }
+
+                System.out.println(clients + " clients, " +
+                                   (run == 0 ? "thread per connection: " : selectors + " selector thread(s): ") +
+                                   (taken.get() / seconds) + " events/sec, " + serverThreads + " server threads" +
+                                   (switches < 0 ? "" : ", " + (switches / seconds) + " server context switches/sec"));
+
+                for (int i = 0; i < clients; i++) {
+                    systems[i].detach(atts[i]);
+                    systems[i].close();
+                }
+                sys.detach(producerAtt);
+                sys.shutdown();
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Is this the name of a thread serving connections of the tcp server?
+     * @param name thread name
+     * @return true if the thread serves connections
+     */
+    private static boolean isServerThread(String name) {
+        return name.startsWith("clientThread") || name.startsWith("connectionSel");
+    }
+
+
+    /**
+     * Count the live threads serving connections.
+     * @return number of threads serving connections
+     */
+    private static int serverThreads() {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (isServerThread(t.getName())) count++;
+        }
+        return count;
+    }
+
+
+    /**
+     * Adds up the context switches of the threads serving connections so far.
+     * Threads which have ended are not counted.
+     * @return number of context switches, or -1 if not found (not Linux)
+     */
+    private static long serverContextSwitches() {
+        File[] tasks = new File("/proc/self/task").listFiles();
+        if (tasks == null) return -1;
+
+        long switches = 0;
+        for (File task : tasks) {
+            try {
+                // the kernel keeps only the first 15 characters of a thread's name
+                String name = new String(Files.readAllBytes(new File(task, "comm").toPath())).trim();
+                if (!isServerThread(name)) continue;
+                for (String line : Files.readAllLines(new File(task, "status").toPath())) {
+                    if (line.endsWith("ctxt_switches:") || !line.contains("ctxt_switches:")) continue;
+                    switches += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                }
+            }
+            catch (Exception e) {
+                // thread ended while looking
+            }
+        }
+        return switches;
+    }
+}
@@ -0,0 +1,71 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.util.Arrays;
+
+/**
+ * Measures how long full garbage collections take while a Java ET system holds
+ * its events' data on or off the heap. A system with many large events
+ * (default 200 events of 1 MB, set with -n and -s) is run in this process,
+ * storing their data on the heap, in direct memory or in a memory-mapped file
+ * (default heap, set with -off heap|direct|mapped). Repeatedly (default 20 times,
+ * set with -r) a full collection is forced and its duration printed. Off-heap
+ * storage needs -XX:MaxDirectMemorySize large enough for direct memory, and a heap
+ * large enough for the events if on it.
+ */
+public class StorageGcBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int numEvents = 200, eventSize = 1 << 20, reps = 20;
+        int storage = EtConstants.storageHeap;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-n")) numEvents = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-s")) eventSize = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-r")) reps = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-off")) {
+                String off = args[++i];
+                if (off.equalsIgnoreCase("direct")) storage = EtConstants.storageDirect;
+                else if (off.equalsIgnoreCase("mapped")) storage = EtConstants.storageMapped;
+            }
+        }
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(eventSize);
+            config.setEventStorage(storage);
+            config.setServerPort(EtConstants.serverPort + 90);
+            config.setUdpPort(EtConstants.udpPort + 90);
+            SystemCreate sys = new SystemCreate("/tmp/et_gc_bench", config);
+
+            long[] nanos = new long[reps];
+            for (int r = -reps/10; r < reps; r++) {
+                long t = System.nanoTime();
+                System.gc();
+                t = System.nanoTime() - t;
+
+                // first tenth is warm up
+                if (r >= 0) nanos[r] = t;
+            }
+
+            Arrays.sort(nanos);
+            long total = 0;
+            for (long n : nanos) total += n;
+
+            String where = (storage == EtConstants.storageHeap) ? "heap" :
+                           (storage == EtConstants.storageDirect) ? "direct memory" : "mapped file";
+            System.out.println("Full GC with " + numEvents + " events of " + eventSize + " bytes in " +
+                               where + ": mean " + (total / reps / 1000000.) + " ms, median " +
+                               (nanos[reps/2] / 1000000.) + " ms, max " + (nanos[reps-1] / 1000000.) + " ms");
+            sys.shutdown();
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.exception.EtWakeUpException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures how many events several producer threads sharing one connection to an
+ * ET system can put, with and without tagged requests. A Java ET system is run in
+ * this process with a station at which a local consumer takes the events and puts
+ * them back, and an empty station at which one more remote thread sleeps waiting
+ * for events which never come. The producers (default 4, set with -threads) each
+ * attach to GRAND_CENTRAL through the same EtSystem object and get new events
+ * 4 at a time, fill them with 1 kB and put them, for a few seconds (default 2,
+ * set with -sec). Without tagged requests the connection carries one request at
+ * a time, with them the producers and the sleeper are served side by side. The
+ * events per second put are printed.
+ */
+public class TaggedRequestBenchmark {
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 2, threads = 4;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+            else if (args[i].equalsIgnoreCase("-threads")) threads = Integer.parseInt(args[++i]);
+        }
+
+        final int size = 1024;
+
+        try {
+            for (int run = 0; run < 2; run++) {
+                boolean tagged = (run == 1);
+                int port = EtConstants.serverPort + 70 + run;
+                String etName = "/tmp/et_tagged_bench";
+
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(64);
+                config.setEventSize(size);
+                config.setServerPort(port);
+                config.setUdpPort(EtConstants.udpPort + 70 + run);
+                final SystemCreate sys = new SystemCreate(etName, config);
+                StationLocal station = sys.createStation(new EtStationConfig(), "consumer");
+                final AttachmentLocal consumerAtt = sys.attach(station.getStationId());
+
+                // only takes events whose first control word is 1, which no one sets
+                EtStationConfig idleConfig = new EtStationConfig();
+                idleConfig.setSelectMode(EtConstants.stationSelectMatch);
+                int[] select = new int[EtConstants.stationSelectInts];
+                java.util.Arrays.fill(select, -1);
+                select[0] = 1;
+                idleConfig.setSelect(select);
+                sys.createStation(idleConfig, "idle");
+
+                EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", port);
+                openConfig.setNetworkContactMethod(EtConstants.direct);
+                openConfig.setTaggedRequests(tagged);
+                final EtSystem etSys = new EtSystem(openConfig);
+                etSys.open();
+
+                final long warmUpEnd = System.nanoTime() + 1000000000L;
+                final long endTime = warmUpEnd + 1000000000L * seconds;
+                final AtomicLong put = new AtomicLong();
+
+                final EtStation idleStation = etSys.stationNameToObject("idle");
+                final EtAttachment idleAtt = etSys.attach(idleStation);
+                Thread sleeper = new Thread() {
+                    public void run() {
+                        try {
+                            etSys.getEvents(idleAtt, Mode.SLEEP, Modify.NOTHING, 0, 1);
+                        }
+                        catch (EtWakeUpException e) {}
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                Thread[] producers = new Thread[threads];
+                for (int i = 0; i < threads; i++) {
+                    final EtAttachment att = etSys.attach(etSys.stationNameToObject("GRAND_CENTRAL"));
+                    producers[i] = new Thread() {
+                        public void run() {
+                            try {
+                                while (System.nanoTime() < endTime) {
+                                    try {
+                                        EtEvent[] evs = etSys.newEvents(att, Mode.TIMED, 100000, 4, size);
+                                        for (EtEvent ev : evs) {
+                                            ev.setLength(size);
+                                        }
+                                        etSys.putEvents(att, evs);
+                                        if (System.nanoTime() > warmUpEnd) {
+                                            put.addAndGet(evs.length);
+                                        }
+                                    }
+                                    catch (EtTimeoutException e) {}
+                                }
+                                etSys.detach(att);
+                            }
+                            catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                        }
+                    };
+                }
+
+                Thread consumer = new Thread() {
+                    public void run() {
+                        try {
+                            while (System.nanoTime() < endTime) {
+                                try {
+                                    EtEventImpl[] evs = sys.getEvents(consumerAtt, EtConstants.timed, 100000, 16);
+                                    sys.putEvents(consumerAtt, evs);
+                                }
+                                catch (EtTimeoutException e) {}
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+
+                sleeper.start();
+                consumer.start();
+                for (Thread producer : producers) producer.start();
+                for (Thread producer : producers) producer.join();
+                consumer.join();
+
+                etSys.wakeUpAll(idleStation);
+                sleeper.join();
+
+                System.out.println(threads + " producers on one connection, " +
+                                   (tagged ? "tagged requests: " : "one request at a time: ") +
+                                   (put.get() / seconds) + " events/sec");
+
+                etSys.detach(idleAtt);
+                etSys.close();
+                sys.detach(consumerAtt);
+                sys.shutdown();
+            }
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
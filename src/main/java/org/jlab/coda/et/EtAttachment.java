@@ -45,6 +45,9 @@ public class EtAttachment {
      */
     private boolean usable;
 
+    /** Subscription to have this attachment's events pushed, null if none. */
+    private volatile EtSubscription subscription;
+
 
     /**
      * Constructor for creating an attachment to a specific ET system and station.
@@ -92,6 +95,27 @@ public class EtAttachment {
         this.usable = usable;
     }
 
+    /**
+     * Gets the subscription to have this attachment's events pushed.
+     * @return subscription, or null if events are not pushed
+     */
+    EtSubscription getSubscription() {return subscription;}
+
+    /**
+     * Sets the subscription to have this attachment's events pushed.
+     * @param subscription subscription, or null if events are no longer pushed
+     */
+    void setSubscription(EtSubscription subscription) {
+        this.subscription = subscription;
+    }
+
+    /**
+     * Tells if this attachment's events are pushed by the ET system as they arrive.
+     * @return <code>true</code> if subscribed with
+     *         {@link EtSystem#subscribe(EtAttachment, org.jlab.coda.et.enums.Modify, int, long)}
+     */
+    public boolean isSubscribed() {return subscription != null;}
+
     /**
      * Sets the EtSystemUse object for using the ET system.
      * @return the EtSystemUse object for using the ET system
@@ -0,0 +1,49 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et;
+
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.util.List;
+
+/**
+ * This interface defines a method for custom event selection in a station which
+ * judges a whole list of events in one call instead of one event per call.
+ * If the class given to {@link EtStationConfig#setSelectClass(String)} implements
+ * this interface, the station uses this method in preference to
+ * {@link EtEventSelectable#select(SystemCreate, StationLocal, EtEvent)}.
+ * For a given station, calls are never made concurrently.
+ *
+ * @author Carl Timmer
+ */
+
+public interface EtBatchSelectable extends EtEventSelectable {
+
+  /**
+   * A batch event selection method must follow this form.
+   * Event i of the list is accepted by setting bit (i % 64) of element (i / 64) of the
+   * selected array. The bits of all listed events are cleared before each call and the
+   * array may be longer than needed.
+   * It must not be kept after returning, nor may the list of events be changed.
+   *
+   * @param sys the ET system object
+   * @param st the station using a user-defined selection method
+   * @param evs events being evaluated for selection
+   * @param selected bitmap in which to set the bits of accepted events
+   */
+  public void select(SystemCreate sys, StationLocal st, List<? extends EtEvent> evs, long[] selected);
+
+}
@@ -148,6 +148,22 @@ public final class EtConstants {
      *  in an algorithm designed to keep the cues equal in value.
      *  @see EtStationConfig#setSelectMode(int)  */
     public static final int    stationSelectEqualCue  = 5;
+    /** Events are placed into the cues of a single group of parallel stations
+     *  in proportion to how fast each station's attachments have been taking
+     *  events (only in Java-based ET systems).
+     *  @see EtStationConfig#setSelectMode(int)  */
+    public static final int    stationSelectWeighted  = 6;
+    /** Events are placed into the cues of a single group of parallel stations
+     *  so that all events with the same value of a chosen control word go to the
+     *  same station (only in Java-based ET systems).
+     *  @see EtStationConfig#setSelectMode(int)
+     *  @see EtStationConfig#setPartitionWord(int)  */
+    public static final int    stationSelectPartition = 7;
+    /** Every event is placed into the input lists of all active stations of a single
+     *  group of parallel stations at once, and moves on once all have put it back
+     *  (only in Java-based ET systems). Attachments of these stations must only read events.
+     *  @see EtStationConfig#setSelectMode(int)  */
+    public static final int    stationSelectFanOut    = 8;
     /** Events owned by a crashed user process are restored to the ET system in
      *  the output list of the attachment's station.
      *  @see EtStationConfig#setRestoreMode(int)  */
@@ -217,8 +233,22 @@ public final class EtConstants {
     /** High event priority.
      *  @see EtEvent#setPriority(org.jlab.coda.et.enums.Priority)  */
     public static final int    high                = 1;
-    /** Parse event priority information. */
+    /** Bulk event priority, lower than low, known only to Java ET systems.
+     *  Seen as low by others.
+     *  @see EtEvent#setPriority(org.jlab.coda.et.enums.Priority)  */
+    public static final int    bulk                = 2;
+    /** Medium event priority, between low and high, known only to Java ET systems.
+     *  Seen as high by others.
+     *  @see EtEvent#setPriority(org.jlab.coda.et.enums.Priority)  */
+    public static final int    medium              = 5;
+    /** Urgent event priority, higher than high, known only to Java ET systems.
+     *  Seen as high by others.
+     *  @see EtEvent#setPriority(org.jlab.coda.et.enums.Priority)  */
+    public static final int    urgent              = 7;
+    /** Parse event priority information (high or low). */
     public static final int    priorityMask        = 0x1;
+    /** Parse event priority information including the levels known only to Java ET systems. */
+    public static final int    priorityLevelMask   = 0xf;
     /** Event has been obtained with getEvents, not newEvents. */
     public static final int    eventUsed           = 0;
     /** Event has been obtained with newEvents, not getEvents. */
@@ -243,6 +273,24 @@ public final class EtConstants {
     /** Parse event waiting information. */
     public static final int    waitMask            = 0x3;
 
+    /** Attachment of a Java ET system parks its thread while waiting for events. */
+    public static final int    waitBlock           = 0;
+    /** Attachment of a Java ET system busy-spins while waiting for events. */
+    public static final int    waitSpin            = 1;
+    /** Attachment of a Java ET system spins, then yields while waiting for events. */
+    public static final int    waitSpinYield       = 2;
+    /** Attachment of a Java ET system spins, then parks its thread while waiting for events. */
+    public static final int    waitSpinPark        = 3;
+    /** Default number of times an attachment spins before yielding or parking. */
+    public static final int    defaultSpinTries    = 10000;
+
+    /** Java ET system keeps each event's data in its own byte array on the heap. */
+    public static final int    storageHeap         = 0;
+    /** Java ET system keeps event data in off-heap, direct memory. */
+    public static final int    storageDirect       = 1;
+    /** Java ET system keeps event data in a memory-mapped file. */
+    public static final int    storageMapped       = 2;
+
     //public static final int    openNoWait          = 0;
     //public static final int    openWait            = 1;
 
@@ -485,4 +533,21 @@ public final class EtConstants {
     public static final int    netSysData       = 170;
     public static final int    netSysHist       = 171;
     public static final int    netSysGrps       = 172;
+    /** Get data only Java ET systems have, if the server reports {@link #featureJavaData}. */
+    public static final int    netSysJavaData   = 173;
+    /** Have the events of an attachment pushed over a connection with tagged requests
+     *  ({@link #featureTagged}) as they arrive, within a window of events in flight. */
+    public static final int    netEvsSubscribe  = 174;
+    /** Stop pushing the events of an attachment, see {@link #netEvsSubscribe}. */
+    public static final int    netEvsUnsubscribe = 175;
+
+    /** Bit set in the last word of a server's reply to a connection if the
+     *  server understands {@link #netSysJavaData}. C servers always send 0. */
+    public static final int    featureJavaData  = 0x1;
+
+    /** Bit a client sets in the long it sends when connecting to ask that each request
+     *  and reply be preceded by a tag and a length, and which the server sets in the
+     *  last word of its reply if it agrees. Several tagged requests may be outstanding
+     *  on one connection and their replies come back in any order. */
+    public static final int    featureTagged    = 0x2;
 }
@@ -211,6 +211,18 @@ public class EtContainer {
      */
     public EtEventImpl[] getHoldEvents() {return holdEvents;}
 
+    /**
+     * Get the offset into the array of the first event to put or dump.
+     * @return offset into the array of the first event to put or dump.
+     */
+    public int getOffset() {return offset;}
+
+    /**
+     * Get the number of events to put or dump.
+     * @return number of events to put or dump.
+     */
+    public int getLength() {return length;}
+
     /**
      * Get variable keeping track of whether we're setup to do a
      * newEvents(), getEvents(), putEvents(), or dumpEvents().
@@ -766,12 +778,38 @@ public class EtContainer {
      */
     public void putEvents(AttachmentLocal att)
                     throws EtException {
+        putEvents(att, 0, eventCount);
+    }
+
+
+    /**
+     * This method is for expert use only!
+     * Set this container up for putting (used) events back into an ET system.
+     * Will access local Java-based ET systems running in the same JVM.
+     *
+     * @param att     local attachment object
+     * @param offset  offset into array
+     * @param length  number of array elements to put
+     *
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     */
+    public void putEvents(AttachmentLocal att, int offset, int length)
+                    throws EtException {
 
         if (att == null) {
             throw new EtException("Invalid attachment");
         }
 
+        if (offset < 0 || length < 0 ||
+            offset + length > (holdEvents == null ? 0 : holdEvents.length)) {
+            throw new EtException("Bad offset or length argument(s)");
+        }
+
         this.attLocal = att;
+        this.offset = offset;
+        this.length = length;
 
         // We're setup to call the local local putEvents() method
         method = PUT_LOCAL;
@@ -837,12 +875,38 @@ public class EtContainer {
      */
     public void dumpEvents(AttachmentLocal att)
                     throws EtException {
+        dumpEvents(att, 0, eventCount);
+    }
+
+
+    /**
+     * This method is for expert use only!
+     * Set this container up for dumping events back into an ET system.
+     * Will access local Java-based ET systems running in the same JVM.
+     *
+     * @param att     local attachment object
+     * @param offset  offset into array
+     * @param length  number of array elements to dump
+     *
+     * @throws EtException
+     *     if invalid arg(s);
+     *     if events are not owned by this attachment;
+     */
+    public void dumpEvents(AttachmentLocal att, int offset, int length)
+                    throws EtException {
 
         if (att == null) {
             throw new EtException("Invalid attachment");
         }
 
+        if (offset < 0 || length < 0 ||
+            offset + length > (holdEvents == null ? 0 : holdEvents.length)) {
+            throw new EtException("Bad offset or length argument(s)");
+        }
+
         this.attLocal = att;
+        this.offset = offset;
+        this.length = length;
 
         // We're setup to call the local dumpEvents() method
         method = DUMP_LOCAL;
@@ -896,9 +960,8 @@ public class EtContainer {
     public void holdLocalEvents(List<EtEventImpl> list) {
         eventCount = list.size();
 
-        // I know, terribly inefficient, but caused by SystemCreate's lack of
-        // offset and length args when putting and dumping events.
-        if (holdEvents == null || holdEvents.length != eventCount) {
+        // only grow the array since puts and dumps use an offset and length
+        if (holdEvents == null || holdEvents.length < eventCount) {
             holdEvents = new EtEventImpl[eventCount];
         }
 
@@ -921,6 +984,38 @@ public class EtContainer {
     }
 
 
+    /**
+     * This method is <b>NOT</b> for general use! Experts only!
+     * Get the array in which
+     * {@link org.jlab.coda.et.system.SystemCreate#newEvents(EtContainer)} and
+     * {@link org.jlab.coda.et.system.SystemCreate#getEvents(EtContainer)}
+     * place events, making sure it can hold at least the given number of them.
+     * The array is only replaced when it is too small, so repeatedly using the
+     * same container generates no garbage. Follow with a call to
+     * {@link #setLocalEventCount(int)}.
+     *
+     * @param count number of events the array must be able to hold.
+     * @return array in which to place events.
+     */
+    public EtEventImpl[] getLocalEventStorage(int count) {
+        if (holdEvents == null || holdEvents.length < count) {
+            holdEvents = new EtEventImpl[count];
+        }
+        return holdEvents;
+    }
+
+
+    /**
+     * This method is <b>NOT</b> for general use! Experts only!
+     * Set the number of valid events placed into the array obtained from
+     * {@link #getLocalEventStorage(int)}.
+     * @param count number of valid events.
+     */
+    public void setLocalEventCount(int count) {
+        eventCount = count;
+    }
+
+
     /**
      * Get an array containing events resulting from a call to
      * {@link #newEvents(EtAttachment, Mode, int, int, int, int)} or
@@ -63,9 +63,9 @@ public interface EtEvent {
     int getGroup();
 
     /**
-     * Gets the event's priority, either high {@link Priority#HIGH} or low {@link Priority#LOW}.
-     * Low priority is normal while high priority events get placed at the front of stations'
-     * input and output event lists.
+     * Gets the event's priority. Low priority, {@link Priority#LOW}, is normal while events
+     * of higher priority get placed ahead of those of lower priority in stations'
+     * input and output event lists. C ET systems know only high and low priorities.
      * 
      * @return event's priority.
      */
@@ -128,8 +128,11 @@ public interface EtEvent {
      * Gets the data array which is backing the event's data buffer if there is one.
      * Any changes to the array will be reflected in the buffer.
      * If there is no backing data array, as is the case when a user connects
-     * to a local, C-based ET system (memory mapped buffer) then an exception
-     * is thrown.
+     * to a local, C-based ET system (memory mapped buffer) or uses a local,
+     * Java-based ET system keeping its events off the heap, then an exception
+     * is thrown. Code which must work in all cases can instead use
+     * {@link #getDataBuffer()}, or copy the data with {@link #copyDataTo(byte[], int, int)}
+     * and {@link #copyDataFrom(byte[], int, int)}.
      *
      * @return data array which is backing the event's data buffer
      * @throws UnsupportedOperationException if there is no backing array
@@ -142,6 +145,33 @@ public interface EtEvent {
      */
     ByteBuffer getDataBuffer();
 
+    /**
+     * Copies the start of the event's data into an array whether or not the data
+     * buffer has a backing array. The buffer's position and limit are not changed.
+     *
+     * @param dest   array to copy into
+     * @param offset index into dest at which to start copying
+     * @param length number of bytes to copy
+     * @throws IndexOutOfBoundsException if the copy goes beyond either buffer or array
+     */
+    default void copyDataTo(byte[] dest, int offset, int length) {
+        getDataBuffer().get(0, dest, offset, length);
+    }
+
+    /**
+     * Copies an array into the start of the event's data whether or not the data
+     * buffer has a backing array. The buffer's position and limit are not changed,
+     * nor is the event's length.
+     *
+     * @param src    array to copy from
+     * @param offset index into src at which to start copying
+     * @param length number of bytes to copy
+     * @throws IndexOutOfBoundsException if the copy goes beyond either buffer or array
+     */
+    default void copyDataFrom(byte[] src, int offset, int length) {
+        getDataBuffer().put(0, src, offset, length);
+    }
+
     /**
      * Gets the attachment id of the attachment which owns or got the event.
      * If it's owned by the system its value is {@link EtConstants#system}.
@@ -179,9 +209,9 @@ public interface EtEvent {
 
 
     /**
-     * Sets the event's priority, either high {@link Priority#HIGH} or low {@link Priority#LOW}.
-     * Low priority is normal while high priority events get placed at the front of stations'
-     * input and output event lists.
+     * Sets the event's priority. Low priority, {@link Priority#LOW}, is normal while events
+     * of higher priority get placed ahead of those of lower priority in stations'
+     * input and output event lists. C ET systems know only high and low priorities.
      *
      * @param pri event priority
      */
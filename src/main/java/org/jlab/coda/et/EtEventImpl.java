@@ -17,6 +17,7 @@ package org.jlab.coda.et;
 import java.lang.*;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import org.jlab.coda.et.exception.*;
 import org.jlab.coda.et.enums.Age;
@@ -36,6 +37,10 @@ public class EtEventImpl implements EtEvent {
     private static final int   numSelectInts = EtConstants.stationSelectInts;
     private static final int[] controlInitValues = new int[numSelectInts];
 
+    /** Used to change {@link #readers} atomically. */
+    private static final AtomicIntegerFieldUpdater<EtEventImpl> readersUpdater =
+            AtomicIntegerFieldUpdater.newUpdater(EtEventImpl.class, "readers");
+
     /** Unique id number (place of event in C-based ET system). */
     private int id;
 
@@ -52,7 +57,7 @@ public class EtEventImpl implements EtEvent {
      *  If not, group = 1. Used so some producers don't hog events from others. */
     private int group;
 
-    /** Event priority which is either {@link Priority#HIGH} or {@link Priority#LOW}. */
+    /** Event priority, {@link Priority#LOW} being normal. */
     private Priority priority;
 
     /**
@@ -129,6 +134,14 @@ public class EtEventImpl implements EtEvent {
      */
     private boolean isTemp;
 
+    /**
+     * Number of stations of a fan-out group which were given this event at once
+     * and have not yet put it back. Zero if the event is not shared.
+     * Only used inside Java-based ET systems.
+     * @see EtConstants#stationSelectFanOut
+     */
+    private volatile int readers;
+
 
     
     /**
@@ -148,6 +161,23 @@ public class EtEventImpl implements EtEvent {
         init();
     }
 
+    /**
+     * Creates an event object by a Java-based ET system whose event data is kept
+     * off the heap. The given buffer has no backing array so {@link #getData()}
+     * cannot be used. Event objects are only created once in the ET
+     * system process - when the ET system is started up.
+     *
+     * @param buffer buffer holding the event's data, all of which is available to the event
+     */
+    public EtEventImpl(ByteBuffer buffer) {
+        memSize    = buffer.capacity();
+        sizeLimit  = memSize;
+        isJava     = true;
+        control    = new int[numSelectInts];
+        dataBuffer = buffer;
+        init();
+    }
+
     /**
      * Creates an event object for ET system users when connecting to ET systems
      * over the network. Called by
@@ -339,7 +369,14 @@ public class EtEventImpl implements EtEvent {
         this.byteOrder  = ev.byteOrder;
 
         this.control    = ev.control.clone();
-        this.data       = ev.data.clone();
+        if (ev.data != null) {
+            this.data = ev.data.clone();
+        }
+        else {
+            // off-heap data is copied onto the heap
+            this.data = new byte[ev.dataBuffer.capacity()];
+            ev.copyDataTo(data, 0, data.length);
+        }
 
         this.dataBuffer = ByteBuffer.wrap(data);
         this.dataBuffer.limit(ev.dataBuffer.limit());
@@ -461,6 +498,26 @@ public class EtEventImpl implements EtEvent {
         return dataBuffer;
     }
 
+    /** {@inheritDoc} */
+    public void copyDataTo(byte[] dest, int offset, int length) {
+        if (dataBuffer.hasArray()) {
+            System.arraycopy(dataBuffer.array(), dataBuffer.arrayOffset(), dest, offset, length);
+        }
+        else {
+            dataBuffer.get(0, dest, offset, length);
+        }
+    }
+
+    /** {@inheritDoc} */
+    public void copyDataFrom(byte[] src, int offset, int length) {
+        if (dataBuffer.hasArray()) {
+            System.arraycopy(src, offset, dataBuffer.array(), dataBuffer.arrayOffset(), length);
+        }
+        else {
+            dataBuffer.put(0, src, offset, length);
+        }
+    }
+
     /** {@inheritDoc} */
     public boolean isTemp() {
         return isTemp;
@@ -515,6 +572,40 @@ public class EtEventImpl implements EtEvent {
         this.owner = owner;
     }
 
+    /**
+     * Gets the number of stations of a fan-out group which share this event
+     * and have not yet put it back. Only used inside Java-based ET systems.
+     * @return number of stations still reading this event, 0 if not shared
+     */
+    public int getReaders() {
+        return readers;
+    }
+
+    /**
+     * Sets the number of stations of a fan-out group this event is given to at once.
+     * Only used inside Java-based ET systems.
+     * @param readers number of stations sharing this event
+     */
+    public void setReaders(int readers) {
+        this.readers = readers;
+    }
+
+    /**
+     * Record that one station sharing this event has put it back.
+     * Only used inside Java-based ET systems.
+     * @return <code>true</code> if it was the last station sharing the event,
+     *         or if the event is not shared
+     */
+    public boolean releaseReader() {
+        while (true) {
+            int current = readers;
+            if (current < 1) return true;
+            if (readersUpdater.compareAndSet(this, current, current - 1)) {
+                return current == 1;
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -645,8 +736,9 @@ public class EtEventImpl implements EtEvent {
     }
 
     /**
-     * Sets the event's data without copying. The length and memSize members of
-     * the event are automatically set to the data array's length.
+     * Sets the event's data without copying. The length, memSize, and size limit
+     * of the event are automatically set to the data array's length and the data
+     * buffer now wraps the array.
      * Used only by local Java ET system in newEvents to increase data array size.
      *
      * @param data data array
@@ -655,9 +747,27 @@ public class EtEventImpl implements EtEvent {
         // In C-based ET systems, user cannot increase data size beyond
         // what was initially allocated, but this is only used by local Java ET system.
         if (data == null) return;
-        this.data = data;
-        length    = data.length;
-        memSize   = data.length;
+        this.data  = data;
+        dataBuffer = ByteBuffer.wrap(data);
+        length     = data.length;
+        memSize    = data.length;
+        sizeLimit  = data.length;
+    }
+
+    /**
+     * Sets the event's data buffer, which need not be backed by an array, without
+     * copying. The memSize and size limit of the event are set to the buffer's
+     * capacity. Used only by local Java ET system to lend events larger buffers
+     * and to take them back.
+     *
+     * @param buffer event's data buffer
+     */
+    public void replaceDataBuffer(ByteBuffer buffer) {
+        if (buffer == null) return;
+        data       = buffer.hasArray() ? buffer.array() : null;
+        dataBuffer = buffer;
+        memSize    = buffer.capacity();
+        sizeLimit  = memSize;
     }
 
     /**
@@ -89,6 +89,15 @@ public class EtStationConfig implements Serializable {
      * is part of a single group of parallel stations, a value of
      * {@link EtConstants#stationSelectEqualCue} distributes events among the
      * parallel stations using an algorithm to keep the cues equal to eachother.
+     * In Java-based ET systems, a value of {@link EtConstants#stationSelectWeighted}
+     * distributes events among the parallel stations in proportion to the measured
+     * rate at which each station's attachments take events, and a value of
+     * {@link EtConstants#stationSelectPartition} sends all events with the same
+     * value of the control word chosen by {@link #setPartitionWord(int)} to the
+     * same parallel station. Also in Java-based ET systems, a value of
+     * {@link EtConstants#stationSelectFanOut} gives every event to all of the
+     * parallel stations at once, without copying, for reading only. The event moves on
+     * once the last of them puts it back.
      */
     private int selectMode;
 
@@ -162,6 +171,22 @@ public class EtStationConfig implements Serializable {
     }
 
 
+    /**
+     * Determine if a select mode distributes events among a single group
+     * of parallel stations (round robin, equal-cue, weighted, partitioned, or fan-out).
+     *
+     * @param selectMode select mode
+     * @return true if select mode distributes events among parallel stations, else false.
+     */
+    public static boolean isDistributing(int selectMode) {
+        return ((selectMode == EtConstants.stationSelectRRobin)   ||
+                (selectMode == EtConstants.stationSelectEqualCue) ||
+                (selectMode == EtConstants.stationSelectWeighted) ||
+                (selectMode == EtConstants.stationSelectPartition) ||
+                (selectMode == EtConstants.stationSelectFanOut));
+    }
+
+
     /**
      * Checks to see if station configurations are compatible when adding
      * a parallel station to an existing group of parallel stations.
@@ -178,29 +203,30 @@ public class EtStationConfig implements Serializable {
             return false;
         }
 
-        // if group is roundrobin or equal-cue, then config must be same
-        if (((group.selectMode  == EtConstants.stationSelectRRobin) &&
-             (config.selectMode != EtConstants.stationSelectRRobin)) ||
-            ((group.selectMode  == EtConstants.stationSelectEqualCue) &&
-             (config.selectMode != EtConstants.stationSelectEqualCue))) {
+        // if group is roundrobin, equal-cue, weighted, partitioned, or fan-out, then config must be same
+        if (isDistributing(group.selectMode) &&
+            (config.selectMode != group.selectMode)) {
             return false;
         }
 
-        // If group is roundrobin or equal-cue, then config's blocking & prescale must be same.
+        // If group is roundrobin, equal-cue, weighted, partitioned, or fan-out, then config's blocking & prescale must be same.
         // BlockMode is forced to be blocking and prescale is forced to be 1
         // in the method EtSystem.configCheck.
-        if (((group.selectMode == EtConstants.stationSelectRRobin) ||
-             (group.selectMode == EtConstants.stationSelectEqualCue)) &&
+        if (isDistributing(group.selectMode) &&
             ((group.blockMode  != config.blockMode) ||
              (group.prescale   != config.prescale))) {
             return false;
         }
 
-        // if group is NOT roundrobin or equal-cue, then config's cannot be either
-        if (((group.selectMode  != EtConstants.stationSelectRRobin) &&
-             (group.selectMode  != EtConstants.stationSelectEqualCue)) &&
-            ((config.selectMode == EtConstants.stationSelectRRobin) ||
-             (config.selectMode == EtConstants.stationSelectEqualCue))) {
+        // if group is partitioned, then config must partition on the same control word
+        if ((group.selectMode == EtConstants.stationSelectPartition) &&
+            (group.getPartitionWord() != config.getPartitionWord())) {
+            return false;
+        }
+
+        // if group is NOT roundrobin, equal-cue, weighted, partitioned, or fan-out, then config's cannot be either
+        if (!isDistributing(group.selectMode) &&
+            isDistributing(config.selectMode)) {
             return false;
         }
 
@@ -243,6 +269,11 @@ public class EtStationConfig implements Serializable {
      * @return copy of select integer array */
     public int[] getSelect() {return select.clone();}
 
+    /** Gets the index of the control word used to partition events among parallel stations
+     *  with {@link EtConstants#stationSelectPartition}. It's kept in the first select word.
+     * @return index of control word used to partition events */
+    public int getPartitionWord() {return (select[0] < 0) ? 0 : select[0];}
+
     /** Gets the user-defined select function name.
      * @return selection function name */
     public String getSelectFunction() {return selectFunction;}
@@ -353,7 +384,10 @@ public class EtStationConfig implements Serializable {
             (mode != EtConstants.stationSelectMatch) &&
             (mode != EtConstants.stationSelectUser) &&
             (mode != EtConstants.stationSelectRRobin) &&
-            (mode != EtConstants.stationSelectEqualCue)) {
+            (mode != EtConstants.stationSelectEqualCue) &&
+            (mode != EtConstants.stationSelectWeighted) &&
+            (mode != EtConstants.stationSelectPartition) &&
+            (mode != EtConstants.stationSelectFanOut)) {
             throw new EtException("bad select mode value");
         }
         selectMode = mode;
@@ -372,6 +406,22 @@ public class EtStationConfig implements Serializable {
         select = (int[]) sel.clone();
     }
 
+    /**
+     * Sets the index of the control word whose value decides which parallel station
+     * an event goes to when the select mode is {@link EtConstants#stationSelectPartition}.
+     * Since select words are not otherwise used in this mode, it's stored in the first
+     * select word so it is passed along wherever the select words go. The default is 0.
+     *
+     * @param index index of control word used to partition events
+     * @throws EtException if index is not between 0 and {@link EtConstants#stationSelectInts} - 1
+     */
+    public void setPartitionWord(int index) throws EtException {
+        if (index < 0 || index >= EtConstants.stationSelectInts) {
+            throw new EtException("bad partition word index");
+        }
+        select[0] = index;
+    }
+
     /**
      * Sets the station's user-defined select function.
      *
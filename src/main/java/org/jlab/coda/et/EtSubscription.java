@@ -0,0 +1,49 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et;
+
+import java.util.ArrayDeque;
+
+import org.jlab.coda.et.enums.Modify;
+
+/**
+ * This class holds what a user's ET system object knows about an attachment
+ * whose events the server pushes as they arrive: the tag preceding each push,
+ * and the events pushed but not yet gotten.
+ *
+ * @author Carl Timmer
+ */
+class EtSubscription {
+
+    /** Tag preceding each push of events. */
+    final int tag;
+
+    /** How the user may modify pushed events. */
+    final Modify modify;
+
+    /** Events pushed but not yet gotten, in the order they came. */
+    final ArrayDeque<EtEventImpl> events = new ArrayDeque<EtEventImpl>();
+
+
+    /**
+     * Constructor.
+     * @param tag    tag preceding each push of events
+     * @param modify how the user may modify pushed events
+     */
+    EtSubscription(int tag, Modify modify) {
+        this.tag    = tag;
+        this.modify = modify;
+    }
+}
@@ -53,7 +53,7 @@ public class EtSystem {
     /**
      * Flag telling whether the real ET system is currently opened or not.
      */
-    private boolean open;
+    private volatile boolean open;
 
     /**
      * Debug level.
@@ -82,6 +82,18 @@ public class EtSystem {
      */
     private DataOutputStream out;
 
+    /**
+     * If the server agreed to tagged requests, the streams which keep the requests
+     * and replies of different threads apart, else null.
+     */
+    private EtTaggedStreams tagged;
+
+    /**
+     * Milliseconds a read of the socket waits before letting a thread waiting
+     * for pushed events see whether its time is up.
+     */
+    private static final int pushPollMillis = 20;
+
 
     /**
      * Construct a new EtSystem object.
@@ -192,6 +204,7 @@ public class EtSystem {
             } else {
                 out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream(), sock.getSendBufferSize()));
             }
+            tagStreams();
 
             open = true;
         } else {
@@ -206,20 +219,22 @@ public class EtSystem {
 
     /**
      * Get the data input stream to talk to ET system server.
+     * If requests are tagged, each thread has its own.
      *
      * @return data input stream to talk to ET system server
      */
     public DataInputStream getInputStream() {
-        return in;
+        return (tagged == null) ? in : tagged.in();
     }
 
     /**
      * Get the data output stream to receive from the ET system server.
+     * If requests are tagged, each thread has its own.
      *
      * @return data output stream to receive from the ET system server
      */
     public DataOutputStream getOutputStream() {
-        return out;
+        return (tagged == null) ? out : tagged.out();
     }
 
     /**
@@ -326,15 +341,46 @@ public class EtSystem {
         } else {
             out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream(), sock.getSendBufferSize()));
         }
+        tagStreams();
 
         open = true;
     }
 
 
+    /**
+     * If the server agreed to tagged requests, talk to it through streams
+     * which tag each thread's requests and sort out its replies.
+     * Each thread then gets its own streams with {@link #getInputStream()}
+     * and {@link #getOutputStream()}.
+     */
+    private void tagStreams() {
+        if (sys.isTagged()) {
+            tagged = new EtTaggedStreams(in, out);
+        }
+        else {
+            tagged = null;
+        }
+    }
+
+
+    /**
+     * Get the object to synchronize on while sending an event transfer request and
+     * reading its reply. If requests are tagged, each thread has its own and
+     * several transfers may be under way at once, else it is this object.
+     *
+     * @return object to synchronize on during an event transfer
+     */
+    private Object transferLock() {
+        return (tagged == null) ? this : tagged.threadLock();
+    }
+
+
     /**
      * Close the ET system.
      */
     synchronized public void close() {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             return;
@@ -375,6 +421,8 @@ public class EtSystem {
      * @throws EtClosedException if the ET system is closed
      */
     synchronized public void kill() throws IOException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("ET system is closed");
@@ -418,6 +466,9 @@ public class EtSystem {
      * otherwise  <code>false</code>
      */
     synchronized public boolean alive() {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
+
         if (!open) {
             return false;
         }
@@ -463,6 +514,8 @@ public class EtSystem {
      */
     synchronized public void wakeUpAttachment(EtAttachment att)
             throws IOException, EtException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
         }
@@ -501,6 +554,8 @@ public class EtSystem {
      */
     synchronized public void wakeUpAll(EtStation station)
             throws IOException, EtException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
         }
@@ -540,15 +595,14 @@ public class EtSystem {
             throw new EtException("station config needs a select class name");
         }
 
-        // Must be parallel, block, not prescale, and not restore to input list if rrobin or equal cue
-        if (((config.getSelectMode() == EtConstants.stationSelectRRobin) ||
-                (config.getSelectMode() == EtConstants.stationSelectEqualCue)) &&
+        // Must be parallel, block, not prescale, and not restore to input list if rrobin, equal cue, weighted, partition, or fan-out
+        if (EtStationConfig.isDistributing(config.getSelectMode()) &&
                 ((config.getFlowMode() == EtConstants.stationSerial) ||
                         (config.getBlockMode() == EtConstants.stationNonBlocking) ||
                         (config.getRestoreMode() == EtConstants.stationRestoreIn) ||
                         (config.getPrescale() != 1))) {
 
-            throw new EtException("if flowMode = rrobin/equalcue, station must be parallel, blocking, prescale=1, & not restoreIn");
+            throw new EtException("if flowMode = rrobin/equalcue/weighted/partition/fanout, station must be parallel, blocking, prescale=1, & not restoreIn");
         }
 
         // If redistributing restored events, must be a parallel station
@@ -657,6 +711,8 @@ public class EtSystem {
                                                 int position, int parallelPosition)
             throws IOException, EtDeadException, EtClosedException, EtException,
             EtExistsException, EtTooManyException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -818,6 +874,8 @@ public class EtSystem {
      */
     synchronized public void removeStation(EtStation station)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -891,6 +949,8 @@ public class EtSystem {
     synchronized public void setStationPosition(EtStation station, int position,
                                                 int parallelPosition)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -965,6 +1025,8 @@ public class EtSystem {
      */
     synchronized public int getStationPosition(EtStation station)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -1018,6 +1080,8 @@ public class EtSystem {
      */
     synchronized public int getStationParallelPosition(EtStation station)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -1078,6 +1142,8 @@ public class EtSystem {
     synchronized public EtAttachment attach(EtStation station)
             throws IOException, EtDeadException, EtClosedException,
                    EtException, EtTooManyException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -1166,6 +1232,8 @@ public class EtSystem {
      */
     synchronized public void detach(EtAttachment att)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -1186,6 +1254,12 @@ public class EtSystem {
             return;
         }
 
+        // Stop events being pushed. The ET system takes back
+        // any pushed events when detaching.
+        if (att.isSubscribed()) {
+            unsubscribe(att);
+        }
+
         out.writeInt(EtConstants.netStatDet);
         out.writeInt(att.getId());
         out.flush();
@@ -1232,6 +1306,8 @@ public class EtSystem {
      */
     synchronized public boolean stationAttached(EtStation station, EtAttachment att)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -1286,6 +1362,8 @@ public class EtSystem {
      */
     synchronized public boolean stationExists(String name)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -1336,6 +1414,8 @@ public class EtSystem {
      */
     synchronized public EtStation stationNameToObject(String name)
             throws IOException, EtDeadException, EtClosedException, EtException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -1533,6 +1613,8 @@ public class EtSystem {
                                int microSec, int count, int size)
             throws EtException, EtDeadException, EtClosedException, EtEmptyException,
             EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (mode == null) {
             throw new EtException("Invalid mode");
@@ -1615,12 +1697,13 @@ public class EtSystem {
         while (true) {
 
             // Allow other synchronized methods to be called here
-            if (wait) {
+            // (no need if requests are tagged, they do not hold this object)
+            if (wait && tagged == null) {
                 try {Thread.sleep(10);}
                 catch (InterruptedException e) { }
             }
 
-            synchronized (this) {
+            synchronized (transferLock()) {
                 if (!open) {
                     throw new EtClosedException("Not connected to ET system");
                 }
@@ -1755,6 +1838,8 @@ public class EtSystem {
     public void newEventsNoGroup(EtContainer container)
             throws EtException, EtDeadException, EtClosedException, EtEmptyException,
             EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (container == null || container.method != EtContainer.MethodType.NEW) {
             throw new EtException("arg null or not setup for newEvents");
@@ -1826,7 +1911,7 @@ public class EtSystem {
 
             while (true) {
 
-                synchronized (this) {
+                synchronized (transferLock()) {
                     out.write(buffer, 0, 32);
                     out.flush();
 
@@ -2013,6 +2098,8 @@ public class EtSystem {
                                             int microSec, int count, int size, int group)
             throws EtException, EtDeadException, EtClosedException, EtEmptyException,
                    EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (mode == null) {
             throw new EtException("Invalid mode");
@@ -2099,12 +2186,13 @@ public class EtSystem {
         while (true) {
 
             // Allow other synchronized methods to be called here
-            if (wait) {
+            // (no need if requests are tagged, they do not hold this object)
+            if (wait && tagged == null) {
                 try {Thread.sleep(10);}
                 catch (InterruptedException e) { }
             }
 
-            synchronized (this) {
+            synchronized (transferLock()) {
                 if (!open) {
                     throw new EtClosedException("Not connected to ET system");
                 }
@@ -2239,6 +2327,8 @@ public class EtSystem {
     public void newEvents(EtContainer container)
             throws EtException, EtDeadException, EtClosedException, EtEmptyException,
                    EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (container == null || container.method != EtContainer.MethodType.NEW) {
             throw new EtException("arg null or not setup for newEvents");
@@ -2312,7 +2402,7 @@ public class EtSystem {
 
             while (true) {
                 
-                synchronized (this) {
+                synchronized (transferLock()) {
                     out.write(buffer, 0, 36);
                     out.flush();
 
@@ -2497,6 +2587,8 @@ public class EtSystem {
     public EtEvent[] getEvents(EtAttachment att, Mode mode, Modify modify, int microSec, int count)
             throws EtException, EtDeadException, EtClosedException, EtEmptyException,
                    EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (att == null|| !att.isUsable() || att.getSys() != this) {
             throw new EtException("Invalid attachment");
@@ -2543,6 +2635,12 @@ public class EtSystem {
             return getEventsJNI(att.getId(), mode.getValue(), sec, nsec, count);
         }
 
+        // Are the attachment's events pushed to us as they arrive?
+        EtSubscription subscription = att.getSubscription();
+        if (subscription != null) {
+            return getPushedEvents(att, subscription, mode, microSec, count);
+        }
+
         // When using the network, do NOT use SLEEP mode because that
         // may block all usage of this API's synchronized methods.
         // Use repeated calls in TIMED mode. In between those calls,
@@ -2583,13 +2681,14 @@ public class EtSystem {
         while (true) {
 
             // Allow other synchronized methods to be called here
-            if (wait) {
+            // (no need if requests are tagged, they do not hold this object)
+            if (wait && tagged == null) {
                 try {Thread.sleep(10);}
                 catch (InterruptedException e) { }
             }
 
             // Write over the network
-            synchronized (this) {
+            synchronized (transferLock()) {
                 if (!open) {
                     throw new EtClosedException("Not connected to ET system");
                 }
@@ -2646,61 +2745,303 @@ public class EtSystem {
                 // skip reading total size (long)
                 in.skipBytes(8);
 
-                final int selectInts   = EtConstants.stationSelectInts;
-                final int dataShift    = EtConstants.dataShift;
-                final int dataMask     = EtConstants.dataMask;
-                final int priorityMask = EtConstants.priorityMask;
+                evs = readEvents(in, err, att, modify);
+            }
 
-                int numEvents = err;
-                evs = new EtEventImpl[numEvents];
-                int byteChunk = 4*(9+ EtConstants.stationSelectInts);
-                buffer = new byte[byteChunk];
-                int index;
+            break;
+        }
 
-                long  length, memSize;
-                int   priAndStat;
+        return evs;
+    }
 
-                for (int j=0; j < numEvents; j++) {
-                    in.readFully(buffer, 0, byteChunk);
 
-                    length  = EtUtils.bytesToLong(buffer, 0);
-                    memSize = EtUtils.bytesToLong(buffer, 8);
+    /**
+     * Have the ET system push an attachment's events to this object as they arrive
+     * at its station, instead of waiting to be asked for them. Pushed events are then
+     * gotten with {@link #getEvents(EtAttachment, Mode, Modify, int, int)} as usual
+     * (its modify argument is ignored), without a round trip to the ET system for
+     * each call, and are given back with {@link #putEvents(EtAttachment, EtEvent[])}
+     * or {@link #dumpEvents(EtAttachment, EtEvent[])}, which makes room for more.
+     * The window of events pushed but not yet given back is limited to maxEvents
+     * events, and no more are pushed while maxBytes bytes or more of data are in it.
+     * Since pushed events must be given back, they may not be gotten with
+     * {@link Modify#NOTHING}; use {@link Modify#HEADER} if only reading them.<p>
+     *
+     * Only possible over a connection with tagged requests
+     * ({@link EtSystemOpenConfig#setTaggedRequests(boolean)}) to a Java ET system
+     * serving each connection with a thread of its own.
+     *
+     * @param att       attachment object
+     * @param modify    whether events' data {@link Modify#ANYTHING}, or only their
+     *                  headers {@link Modify#HEADER}, may be modified
+     * @param maxEvents most events pushed but not yet given back
+     * @param maxBytes  no more events are pushed while this many bytes or more
+     *                  of data are pushed but not yet given back
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if arguments have bad values;
+     *     if the attachment's station is GRAND_CENTRAL;
+     *     if the attachment object is invalid or already subscribed;
+     *     if the connection or ET system does not push events
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public void subscribe(EtAttachment att, Modify modify, int maxEvents, long maxBytes)
+            throws IOException, EtException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
-                    // Note that the server will not send events too big for us,
-                    // we'll get an error above.
+        if (!open) {
+            throw new EtClosedException("Not connected to ET system");
+        }
 
-                    // if C ET system we are connected to is 64 bits ...
-                    if (!isJava && sys.isBit64()) {
-                        // if event size > ~1G, only allocate enough to hold data
-                        if (memSize > Integer.MAX_VALUE/2) {
-                            memSize = length;
-                        }
-                    }
-                    evs[j] = new EtEventImpl((int)memSize, (int)memSize, isJava, false);
-                    evs[j].setLength((int)length);
-                    evs[j].getDataBuffer().limit((int)length);
-                    priAndStat = EtUtils.bytesToInt(buffer, 16);
-                    evs[j].setPriority(Priority.getPriority(priAndStat & priorityMask));
-                    evs[j].setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
-                    evs[j].setId(EtUtils.bytesToInt(buffer, 20));
-                    // skip unused int here
-                    evs[j].setRawByteOrder(EtUtils.bytesToInt(buffer, 28));
-                    index = 32;   // skip unused int
-                    int[] control = new int[selectInts];
-                    for (int i=0; i < selectInts; i++) {
-                        control[i] = EtUtils.bytesToInt(buffer, index+=4);
+        if (att == null || !att.isUsable() || att.getSys() != this) {
+            throw new EtException("Invalid attachment");
+        }
+
+        if (att.getStation().getId() == 0) {
+            throw new EtException("may not get events from GRAND_CENTRAL");
+        }
+
+        if (modify == null || modify == Modify.NOTHING) {
+            throw new EtException("pushed events must be modifiable so they are given back");
+        }
+
+        if (maxEvents < 1 || maxBytes < 1) {
+            throw new EtException("bad maxEvents or maxBytes argument");
+        }
+
+        if (tagged == null) {
+            throw new EtException("connection without tagged requests, events cannot be pushed");
+        }
+
+        if (att.isSubscribed()) {
+            throw new EtException("attachment already subscribed");
+        }
+
+        // Let threads waiting for pushed events stop at their deadlines
+        // instead of blocking on the socket until something comes.
+        if (sock.getSoTimeout() == 0) {
+            sock.setSoTimeout(pushPollMillis);
+        }
+        // Events are given back while pushes keep coming, so don't let
+        // the puts wait for acknowledgements either.
+        sock.setTcpNoDelay(true);
+
+        int tag = tagged.openStream();
+        int err;
+
+        synchronized (transferLock()) {
+            out.writeInt(EtConstants.netEvsSubscribe);
+            out.writeInt(att.getId());
+            out.writeInt(modify.getValue());
+            out.writeInt(maxEvents);
+            out.writeLong(maxBytes);
+            out.writeInt(tag);
+            out.flush();
+            err = in.readInt();
+        }
+
+        if (err != EtConstants.ok) {
+            tagged.closeStream(tag);
+            throw new EtException("ET system does not push events of attachment " + att.getId());
+        }
+
+        att.setSubscription(new EtSubscription(tag, modify));
+    }
+
+
+    /**
+     * Stop the ET system from pushing an attachment's events to this object.
+     * Events pushed but not yet gotten are returned and must be given back as usual.
+     * No other thread may be getting the attachment's events while this is called.
+     *
+     * @param att attachment object
+     * @return events pushed but not yet gotten
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if the attachment object is invalid or not subscribed
+     * @throws EtClosedException
+     *     if the ET system is closed
+     */
+    public EtEvent[] unsubscribe(EtAttachment att)
+            throws IOException, EtException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
+
+        if (!open) {
+            throw new EtClosedException("Not connected to ET system");
+        }
+
+        if (att == null || att.getSys() != this) {
+            throw new EtException("Invalid attachment");
+        }
+
+        EtSubscription subscription = att.getSubscription();
+        if (subscription == null) {
+            throw new EtException("attachment not subscribed");
+        }
+
+        int err;
+        synchronized (transferLock()) {
+            out.writeInt(EtConstants.netEvsUnsubscribe);
+            out.writeInt(att.getId());
+            out.flush();
+            err = in.readInt();
+        }
+        att.setSubscription(null);
+
+        // Everything pushed came ahead of the reply and has been read by now
+        ArrayList<EtEventImpl> evs = new ArrayList<EtEventImpl>(subscription.events);
+        for (byte[] push : tagged.closeStream(subscription.tag)) {
+            DataInputStream pushIn = new DataInputStream(new ByteArrayInputStream(push));
+            int numEvents = pushIn.readInt();
+            if (numEvents > 0) {
+                pushIn.skipBytes(8);
+                Collections.addAll(evs, readEvents(pushIn, numEvents, att, subscription.modify));
+            }
+        }
+
+        if (err != EtConstants.ok) {
+            throw new EtException("ET system was not pushing events of attachment " + att.getId());
+        }
+
+        return evs.toArray(new EtEvent[evs.size()]);
+    }
+
+
+    /**
+     * Get events pushed by the ET system for an attachment,
+     * waiting for them in the given mode if none are here yet.
+     *
+     * @param att          attachment object
+     * @param subscription attachment's subscription
+     * @param mode         how to wait if no events are here yet
+     * @param microSec     the number of microseconds to wait if a timed wait is specified
+     * @param count        the most events desired
+     * @return events pushed
+     *
+     * @throws IOException
+     *     if problems with network communications
+     * @throws EtException
+     *     if the ET system stopped pushing events because of an error
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and no events are here
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup
+     */
+    private EtEvent[] getPushedEvents(EtAttachment att, EtSubscription subscription,
+                                      Mode mode, int microSec, int count)
+            throws IOException, EtException, EtEmptyException,
+                   EtTimeoutException, EtWakeUpException {
+
+        boolean timed = (mode != Mode.SLEEP);
+        long deadline = System.nanoTime() + ((mode == Mode.TIMED) ? 1000L * microSec : 0L);
+
+        synchronized (subscription) {
+            while (subscription.events.isEmpty()) {
+                byte[] push = tagged.readStream(subscription.tag, timed, deadline);
+                if (push == null) {
+                    if (mode == Mode.ASYNC) {
+                        throw new EtEmptyException("no events pushed");
                     }
-                    evs[j].setControl(control);
-                    evs[j].setModify(modify);
-                    evs[j].setOwner(att.getId());
+                    throw new EtTimeoutException("no events within timeout");
+                }
 
-                    in.readFully(evs[j].getData(), 0, (int)length);
+                DataInputStream pushIn = new DataInputStream(new ByteArrayInputStream(push));
+                int numEvents = pushIn.readInt();
+                if (numEvents == EtConstants.errorWakeUp) {
+                    throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+                }
+                else if (numEvents < 0) {
+                    throw new EtException("ET system stopped pushing events of attachment " + att.getId());
                 }
+
+                // skip reading total size (long)
+                pushIn.skipBytes(8);
+                Collections.addAll(subscription.events,
+                                   readEvents(pushIn, numEvents, att, subscription.modify));
             }
 
-            break;
+            EtEvent[] evs = new EtEvent[Math.min(count, subscription.events.size())];
+            for (int i=0; i < evs.length; i++) {
+                evs[i] = subscription.events.poll();
+            }
+            return evs;
         }
+    }
+
+
+    /**
+     * Read the events sent by the server in reply to {@link EtConstants#netEvsGet},
+     * or pushed by it, following their number and total size.
+     *
+     * @param in        stream to read from
+     * @param numEvents number of events
+     * @param att       attachment getting the events
+     * @param modify    how the events may be modified
+     * @return events read
+     * @throws IOException if reading fails
+     * @throws EtException if an event's header has bad values
+     */
+    private EtEventImpl[] readEvents(DataInputStream in, int numEvents, EtAttachment att, Modify modify)
+            throws IOException, EtException {
+
+        final int selectInts   = EtConstants.stationSelectInts;
+        final int dataShift    = EtConstants.dataShift;
+        final int dataMask     = EtConstants.dataMask;
+        final int priorityMask = EtConstants.priorityLevelMask;
+
+        EtEventImpl[] evs = new EtEventImpl[numEvents];
+        int byteChunk = 4*(9+ EtConstants.stationSelectInts);
+        byte[] buffer = new byte[byteChunk];
+        int index;
+
+        long  length, memSize;
+        int   priAndStat;
+
+        for (int j=0; j < numEvents; j++) {
+            in.readFully(buffer, 0, byteChunk);
+
+            length  = EtUtils.bytesToLong(buffer, 0);
+            memSize = EtUtils.bytesToLong(buffer, 8);
+
+            // Note that the server will not send events too big for us,
+            // it sends an error instead.
+
+            // if C ET system we are connected to is 64 bits ...
+            if (!isJava && sys.isBit64()) {
+                // if event size > ~1G, only allocate enough to hold data
+                if (memSize > Integer.MAX_VALUE/2) {
+                    memSize = length;
+                }
+            }
+            evs[j] = new EtEventImpl((int)memSize, (int)memSize, isJava, false);
+            evs[j].setLength((int)length);
+            evs[j].getDataBuffer().limit((int)length);
+            priAndStat = EtUtils.bytesToInt(buffer, 16);
+            evs[j].setPriority(Priority.getPriority(priAndStat & priorityMask));
+            evs[j].setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
+            evs[j].setId(EtUtils.bytesToInt(buffer, 20));
+            // skip unused int here
+            evs[j].setRawByteOrder(EtUtils.bytesToInt(buffer, 28));
+            index = 32;   // skip unused int
+            int[] control = new int[selectInts];
+            for (int i=0; i < selectInts; i++) {
+                control[i] = EtUtils.bytesToInt(buffer, index+=4);
+            }
+            evs[j].setControl(control);
+            evs[j].setModify(modify);
+            evs[j].setOwner(att.getId());
 
+            in.readFully(evs[j].getData(), 0, (int)length);
+        }
         return evs;
     }
 
@@ -2739,6 +3080,8 @@ public class EtSystem {
     public void getEvents(EtContainer container)
             throws EtException, EtDeadException, EtClosedException, EtEmptyException,
             EtBusyException, EtTimeoutException, EtWakeUpException, IOException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
 
         if (container == null || container.method != EtContainer.MethodType.GET) {
@@ -2751,6 +3094,10 @@ public class EtSystem {
         int microSec = container.microSec;
         int count = container.count;
 
+        if (att.isSubscribed()) {
+            throw new EtException("get pushed events with getEvents(EtAttachment, Mode, Modify, int, int)");
+        }
+
         if (count == 0) {
             container.eventCount = 0;
             return;
@@ -2814,12 +3161,13 @@ public class EtSystem {
             while (true) {
 
                 // Allow other synchronized methods to be called here
-                if (wait) {
+                // (no need if requests are tagged, they do not hold this object)
+                if (wait && tagged == null) {
                     try {Thread.sleep(10);}
                     catch (InterruptedException e) { }
                 }
 
-                synchronized (this) {
+                synchronized (transferLock()) {
                     // Write over the network
                     out.write(buffer, 0, 28);
                     out.flush();
@@ -2867,7 +3215,7 @@ public class EtSystem {
                     final int selectInts = EtConstants.stationSelectInts;
                     final int dataShift = EtConstants.dataShift;
                     final int dataMask = EtConstants.dataMask;
-                    final int priorityMask = EtConstants.priorityMask;
+                    final int priorityMask = EtConstants.priorityLevelMask;
 
                     numEvents = err;
                     evs = container.realEvents;
@@ -3042,8 +3390,10 @@ public class EtSystem {
      * @throws EtClosedException
      *     if the ET system is closed
      */
-    synchronized public void putEvents(EtAttachment att, EtEvent[] evs, int offset, int length)
+    public void putEvents(EtAttachment att, EtEvent[] evs, int offset, int length)
             throws IOException, EtException, EtDeadException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -3087,7 +3437,9 @@ public class EtSystem {
 
         // Did we get things locally through JNI?
         if (sys.usingJniLibrary()) {
-            putEventsJNI(att.getId(), evs, offset, length);
+            synchronized (this) {
+                putEventsJNI(att.getId(), evs, offset, length);
+            }
             return;
         }
 
@@ -3100,51 +3452,54 @@ public class EtSystem {
         int[] control;
         byte[] header = new byte[headerSize];
 
-        out.writeInt(EtConstants.netEvsPut);
-        out.writeInt(att.getId());
-        out.writeInt(numEvents);
-        out.writeLong((long)bytes);
+        // Synchronize communication with ET system
+        synchronized (transferLock()) {
+            out.writeInt(EtConstants.netEvsPut);
+            out.writeInt(att.getId());
+            out.writeInt(numEvents);
+            out.writeLong((long)bytes);
 
-        for (int i=offset; i < offset+length; i++) {
-            // send only if modifying an event (data or header) ...
-            if (evs[i].getModify() != Modify.NOTHING) {
-                EtUtils.intToBytes(evs[i].getId(), ByteOrder.BIG_ENDIAN, header, 0);
-                // skip 1 int here
-                EtUtils.longToBytes((long) evs[i].getLength(), ByteOrder.BIG_ENDIAN, header, 8);
-                EtUtils.intToBytes(evs[i].getPriority().getValue() | evs[i].getDataStatus().getValue() << dataShift,
-                                   ByteOrder.BIG_ENDIAN, header, 16);
-                EtUtils.intToBytes(evs[i].getRawByteOrder(), ByteOrder.BIG_ENDIAN, header, 20);
-                indx = 28;  // skip 1 int here
-                control = evs[i].getControlNoCopy();
-                for (int j=0; j < selectInts; j++,indx+=4) {
-                    EtUtils.intToBytes(control[j], ByteOrder.BIG_ENDIAN, header, indx);
-                }
-                // Much Faster to put header data into byte array and write
-                // it out once instead of writing each int and long.
-                out.write(header);
+            for (int i=offset; i < offset+length; i++) {
+                // send only if modifying an event (data or header) ...
+                if (evs[i].getModify() != Modify.NOTHING) {
+                    EtUtils.intToBytes(evs[i].getId(), ByteOrder.BIG_ENDIAN, header, 0);
+                    // skip 1 int here
+                    EtUtils.longToBytes((long) evs[i].getLength(), ByteOrder.BIG_ENDIAN, header, 8);
+                    EtUtils.intToBytes(evs[i].getPriority().getValue() | evs[i].getDataStatus().getValue() << dataShift,
+                                       ByteOrder.BIG_ENDIAN, header, 16);
+                    EtUtils.intToBytes(evs[i].getRawByteOrder(), ByteOrder.BIG_ENDIAN, header, 20);
+                    indx = 28;  // skip 1 int here
+                    control = evs[i].getControlNoCopy();
+                    for (int j=0; j < selectInts; j++,indx+=4) {
+                        EtUtils.intToBytes(control[j], ByteOrder.BIG_ENDIAN, header, indx);
+                    }
+                    // Much Faster to put header data into byte array and write
+                    // it out once instead of writing each int and long.
+                    out.write(header);
 
-                // send data only if modifying whole event
-                if (evs[i].getModify() == Modify.ANYTHING) {
-                    ByteBuffer buf = evs[i].getDataBuffer();
-                    if (buf == null) throw new EtException("null data buffer");
-                    if (!buf.hasArray()) {
+                    // send data only if modifying whole event
+                    if (evs[i].getModify() == Modify.ANYTHING) {
+                        ByteBuffer buf = evs[i].getDataBuffer();
+                        if (buf == null) throw new EtException("null data buffer");
+                        if (!buf.hasArray()) {
 //System.out.println("Memory mapped buffer does NOT have a backing array !!!");
-                        for (int j=0; j<evs[i].getLength(); j++) {
-                            out.write(buf.get(j));
+                            for (int j=0; j<evs[i].getLength(); j++) {
+                                out.write(buf.get(j));
+                            }
+                        }
+                        else {
+                            out.write(buf.array(), 0, evs[i].getLength());
                         }
-                    }
-                    else {
-                        out.write(buf.array(), 0, evs[i].getLength());
                     }
                 }
             }
-        }
 
-        out.flush();
+            out.flush();
 
-        // err should always be = Constants.ok
-        // skip reading error
-        in.readInt();
+            // err should always be = Constants.ok
+            // skip reading error
+            in.readInt();
+        }
     }
 
 
@@ -3169,6 +3524,8 @@ public class EtSystem {
      */
     public void putEvents(EtContainer container)
             throws IOException, EtException, EtDeadException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (container == null || container.method != EtContainer.MethodType.PUT) {
             throw new EtException("arg null or not setup for putEvents");
@@ -3229,7 +3586,7 @@ public class EtSystem {
         byte[] header = container.byteArray;
 
         // Synchronize communication with ET system
-        synchronized (this) {
+        synchronized (transferLock()) {
             out.writeInt(EtConstants.netEvsPut);
             out.writeInt(att.getId());
             out.writeInt(numEvents);
@@ -3394,8 +3751,10 @@ public class EtSystem {
      * @throws EtClosedException
      *     if the ET system is closed
      */
-    synchronized public void dumpEvents(EtAttachment att, EtEvent[] evs, int offset, int length)
+    public void dumpEvents(EtAttachment att, EtEvent[] evs, int offset, int length)
             throws IOException, EtException, EtDeadException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -3425,7 +3784,9 @@ public class EtSystem {
 
         // Did we get things locally through JNI?
         if (sys.usingJniLibrary()) {
-            dumpEventsJNI(att.getId(), evs, offset, length);
+            synchronized (this) {
+                dumpEventsJNI(att.getId(), evs, offset, length);
+            }
             return;
         }
 
@@ -3434,21 +3795,24 @@ public class EtSystem {
             return;
         }
 
-        out.writeInt(EtConstants.netEvsDump);
-        out.writeInt(att.getId());
-        out.writeInt(numEvents);
+        // Synchronize communication with ET system
+        synchronized (transferLock()) {
+            out.writeInt(EtConstants.netEvsDump);
+            out.writeInt(att.getId());
+            out.writeInt(numEvents);
 
-        for (int i=offset; i<offset+length; i++) {
-            // send only if modifying an event (data or header) ...
-            if (evs[i].getModify() != Modify.NOTHING) {
-                out.writeInt(evs[i].getId());
+            for (int i=offset; i<offset+length; i++) {
+                // send only if modifying an event (data or header) ...
+                if (evs[i].getModify() != Modify.NOTHING) {
+                    out.writeInt(evs[i].getId());
+                }
             }
-        }
-        out.flush();
+            out.flush();
 
-        // err should always be = Constants.ok
-        // skip reading error
-        in.skipBytes(4);
+            // err should always be = Constants.ok
+            // skip reading error
+            in.skipBytes(4);
+        }
     }
 
 
@@ -3472,6 +3836,8 @@ public class EtSystem {
      */
     public void dumpEvents(EtContainer container)
             throws IOException, EtException, EtDeadException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (container == null || container.method != EtContainer.MethodType.DUMP) {
             throw new EtException("arg null or not setup for dumpEvents");
@@ -3513,7 +3879,7 @@ public class EtSystem {
             return;
         }
 
-        synchronized (this) {
+        synchronized (transferLock()) {
             out.writeInt(EtConstants.netEvsDump);
             out.writeInt(att.getId());
             out.writeInt(numEvents);
@@ -3550,6 +3916,9 @@ public class EtSystem {
      *     if the ET system is closed
      */
     synchronized private int getIntValue(int cmd) throws IOException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
+
         if (!open) {
             throw new EtClosedException ("Not connected to ET system");
         }
@@ -3748,6 +4117,9 @@ public class EtSystem {
      *     if the ET system is closed
      */
     public int[] getGroups() throws IOException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
+
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
         }
@@ -3827,6 +4199,8 @@ public class EtSystem {
      *     if the ET system is closed
      */
     synchronized public AllData getData() throws EtException, IOException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
 
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
@@ -3889,10 +4263,99 @@ public class EtSystem {
         }
 //System.out.println("getData:  read in process data");
 
+        // data only newer Java ET systems have
+        if ((sys.getServerFeatures() & EtConstants.featureJavaData) != 0) {
+            getJavaData(data);
+        }
+
         return data;
     }
 
 
+    /**
+     * Gets the information which only Java ET systems have and adds it
+     * to the information already obtained about the ET system.
+     *
+     * @param data object containing ET system information
+     *
+     * @throws IOException
+     *     if there are problems with network communication
+     * @throws EtException
+     *     if error in data format/protocol
+     */
+    private void getJavaData(AllData data) throws EtException, IOException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
+
+        out.writeInt(EtConstants.netSysJavaData);
+        out.flush();
+
+        // receive error
+        int error = in.readInt();
+        if (error != EtConstants.ok) {
+            throw new EtException("error getting Java ET system data");
+        }
+
+        // Read everything at once. Any data following the
+        // sections understood here is from a newer ET and is ignored.
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(bytes));
+
+        // attachment data
+        int count = dis.readInt();
+        for (int i=0; i < count; i++) {
+            int id = dis.readInt();
+            int strategy = dis.readInt();
+            int spinTries = dis.readInt();
+            for (AttachmentData att : data.attData) {
+                if (att.getId() == id) {
+                    att.setWaitStrategy(strategy, spinTries);
+                    break;
+                }
+            }
+        }
+
+        // buffer pool counters
+        if (dis.available() >= 32) {
+            data.sysData.setBufferPoolData(dis.readLong(), dis.readLong(),
+                                           dis.readLong(), dis.readLong());
+        }
+
+        // estimated station drain rates
+        if (dis.available() >= 4) {
+            count = dis.readInt();
+            for (int i=0; i < count; i++) {
+                int id = dis.readInt();
+                double rate = dis.readDouble();
+                for (StationData stat : data.statData) {
+                    if (stat.getId() == id) {
+                        stat.setDrainRate(rate);
+                        break;
+                    }
+                }
+            }
+        }
+
+        // batches passed on by station conductors
+        if (dis.available() >= 4) {
+            count = dis.readInt();
+            for (int i=0; i < count; i++) {
+                int id = dis.readInt();
+                double batchSize = dis.readDouble();
+                double handOffLatency = dis.readDouble();
+                int batchLimit = dis.readInt();
+                for (StationData stat : data.statData) {
+                    if (stat.getId() == id) {
+                        stat.setConductorData(batchSize, handOffLatency, batchLimit);
+                        break;
+                    }
+                }
+            }
+        }
+    }
+
+
     /**
      * Gets histogram containing data showing how many events in GRAND_CENTRAL's
      * input list when new events are requested by users. This feature is not
@@ -3908,6 +4371,9 @@ public class EtSystem {
      *     if the ET system is closed
      */
     synchronized public int[] getHistogram() throws IOException, EtException, EtClosedException {
+        DataOutputStream out = getOutputStream();
+        DataInputStream in = getInputStream();
+
         if (!open) {
             throw new EtClosedException("Not connected to ET system");
         }
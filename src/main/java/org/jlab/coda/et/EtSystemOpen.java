@@ -98,6 +98,10 @@ public class EtSystemOpen {
      *  and {@link EtConstants#langC} for C. */
     private int language;
 
+    /** Bits telling which features beyond those of C servers the opened ET system's
+     *  server understands, such as {@link EtConstants#featureJavaData}. */
+    private int serverFeatures;
+
     /** Is the ET system we're opening written in java? */
     private boolean isJavaEtSystem;
 
@@ -203,6 +207,15 @@ public class EtSystemOpen {
      *  @return language */
     public int getLanguage() {return language;}
 
+    /** Gets the bits telling which features beyond those of C servers
+     *  the opened ET system's server understands.
+     *  @return feature bits, such as {@link EtConstants#featureJavaData} */
+    public int getServerFeatures() {return serverFeatures;}
+
+    /** Gets whether the server agreed to tagged requests on this connection.
+     *  @return <code>true</code> if requests and replies are tagged */
+    public boolean isTagged() {return (serverFeatures & EtConstants.featureTagged) != 0;}
+
     /** Gets the number of station select integers of the opened ET system.
      *  @return number of select integers */
     public int getSelectInts() {return stationSelectInts;}
@@ -1128,7 +1141,9 @@ public class EtSystemOpen {
         dos.writeInt(EtConstants.endianBig);
         dos.writeInt(config.getEtName().length() + 1);
         dos.writeInt(0);    // 1 means 64 bit, 0 means 32 bit (all java is 32 bit)
-        dos.writeLong(0L);	// write one 64 bit long instead of 2, 32 bit ints since = 0 anyway
+        // write one 64 bit long instead of 2, 32 bit ints, which are 0 except for
+        // features asked of Java servers (C servers ignore them)
+        dos.writeLong(config.isTaggedRequests() ? EtConstants.featureTagged : 0L);
         try {
             dos.write(config.getEtName().getBytes("ASCII"));
             dos.writeByte(0);
@@ -1148,7 +1163,7 @@ public class EtSystemOpen {
         stationSelectInts = dis.readInt();
         language          = dis.readInt();
         bit64             = dis.readInt() > 0;
-        dis.skipBytes(4);
+        serverFeatures    = dis.readInt();
 
         // check to see if connecting to same version ET software
         if (version != EtConstants.version) {
@@ -97,6 +97,13 @@ public class EtSystemOpenConfig {
      */
     private boolean noDelay;
 
+    /**
+     * Ask the ET system's server to let requests be tagged so that several may be
+     * outstanding on the connection at once, from different threads.
+     * <code>True</code> if asking, else <code>false</code>.
+     */
+    private boolean taggedRequests;
+
 
     /**
      * No arg constructor. Will broadcast to local subnet addresses,
@@ -410,6 +417,7 @@ public class EtSystemOpenConfig {
         tcpRecvBufSize       = config.tcpRecvBufSize;
         tcpSendBufSize       = config.tcpSendBufSize;
         noDelay              = config.noDelay;
+        taggedRequests       = config.taggedRequests;
     }
 
 
@@ -425,6 +433,7 @@ public class EtSystemOpenConfig {
         builder.append("\n  tcp port = ");  builder.append(tcpPort);
         builder.append("\n  udp port = ");  builder.append(udpPort);
         builder.append("\ntcp  nodelay = ");  builder.append(noDelay);
+        builder.append("\ntagged requests = ");  builder.append(taggedRequests);
         builder.append("\ntcp recv buf = ");  builder.append(tcpRecvBufSize);
         builder.append("\ntcp send buf = ");  builder.append(tcpSendBufSize);
         builder.append("\nwait time (ms) = ");  builder.append(waitTime);
@@ -601,6 +610,12 @@ public class EtSystemOpenConfig {
         return noDelay;
     }
 
+    /** Get whether the ET system's server is asked to let requests be tagged.
+     *  @return <code>true</code> if asking for tagged requests */
+    public boolean isTaggedRequests() {
+        return taggedRequests;
+    }
+
 
     // Setters
 
@@ -894,5 +909,19 @@ public class EtSystemOpenConfig {
         this.noDelay = noDelay;
     }
 
+    /**
+     * Set whether the ET system's server is asked to let each request carry a tag
+     * so that several requests, from different threads, may be outstanding on the
+     * connection at once and be answered in any order. Getting, putting, making and
+     * dumping events then no longer wait for each other's replies. Servers which
+     * don't understand tagged requests (C servers, older Java servers, and Java
+     * servers using selector threads) are talked to as usual. It is off by default.
+     *
+     * @param taggedRequests <code>true</code> to ask for tagged requests
+     */
+    public void setTaggedRequests(boolean taggedRequests) {
+        this.taggedRequests = taggedRequests;
+    }
+
 
 }
@@ -0,0 +1,478 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et;
+
+import java.io.*;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class keeps apart the requests and replies of different threads sharing
+ * one connection to an ET system's server which agreed to tagged requests
+ * ({@link EtConstants#featureTagged}). Each thread has a tag and streams of its
+ * own. What a thread writes to its {@link #out()} stream is sent, preceded by its
+ * tag and length, when flushed. Replies come back, in any order, preceded by the tag
+ * of the thread they are for and their length, and what a thread reads from its
+ * {@link #in()} stream is only its own reply. A thread waiting for its reply reads
+ * the next tag if no one else is and, if that reply is for another thread, leaves
+ * the connection to that thread until the reply has been read. Events the server
+ * pushes for a subscription come preceded by the subscription's tag and are read
+ * by whichever thread comes across them and kept until asked for.
+ *
+ * @author Carl Timmer
+ */
+class EtTaggedStreams {
+
+    /** Largest buffer of a request kept by a thread after the request is sent. */
+    private static final int requestSizeMax = 1 << 20;
+
+    /** Buffered stream from the server. */
+    private final DataInputStream sockIn;
+
+    /** Buffered stream to the server. */
+    private final DataOutputStream sockOut;
+
+    /** Used to give each thread its own tag. */
+    private final AtomicInteger tags = new AtomicInteger();
+
+    /** Each thread's request not yet sent, and its streams. */
+    private final ThreadLocal<Request> requests = new ThreadLocal<Request>() {
+        protected Request initialValue() {
+            return new Request(tags.incrementAndGet());
+        }
+    };
+
+    /** Tag of the thread whose reply is being read, 0 if none,
+     *  or -1 while the next reply's tag is being read. */
+    private int owner;
+
+    /** Number of bytes of the reply being read which are left.
+     *  Only used by the thread whose reply it is. */
+    private int remaining;
+
+    /** Error which broke the connection, null if none. */
+    private IOException error;
+
+    /** Holds the tag and length of a reply while reading them. */
+    private final byte[] header = new byte[8];
+
+    /** Pushes read but not yet asked for, by subscription tag. */
+    private final HashMap<Integer, ArrayDeque<byte[]>> streams =
+            new HashMap<Integer, ArrayDeque<byte[]>>();
+
+
+    /**
+     * This class is a thread's request being written, its tag, and its streams.
+     * Data streams keep state of their own while reading or writing numbers,
+     * so no two threads may share one.
+     */
+    private final class Request extends ByteArrayOutputStream {
+        /** Tag of the thread. */
+        final int tag;
+        /** Is the thread reading its reply? */
+        boolean reading;
+        /** Stream from which the thread reads its replies. */
+        final DataInputStream in;
+        /** Stream to which the thread writes its requests. */
+        final DataOutputStream out;
+
+        Request(int tag) {
+            super(256);
+            this.tag = tag;
+            in  = new DataInputStream(new ReplyInput(this));
+            out = new DataOutputStream(new RequestOutput(this));
+        }
+
+        /** @return array holding the request */
+        byte[] array() {
+            return buf;
+        }
+
+        /** Start the next request, letting go of a large array. */
+        void sent() {
+            if (buf.length > requestSizeMax) {
+                buf = new byte[256];
+            }
+            reset();
+        }
+    }
+
+
+    /** This class is the stream from which a thread reads its replies. */
+    private final class ReplyInput extends InputStream {
+        private final Request request;
+        private final byte[] one = new byte[1];
+
+        ReplyInput(Request request) {
+            this.request = request;
+        }
+
+        public int read() throws IOException {
+            return (read(one, 0, 1) < 0) ? -1 : (one[0] & 0xff);
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            return readReply(request, b, off, len);
+        }
+
+        public void close() throws IOException {
+            sockIn.close();
+        }
+    }
+
+
+    /** This class is the stream to which a thread writes its requests. */
+    private final class RequestOutput extends OutputStream {
+        private final Request request;
+
+        RequestOutput(Request request) {
+            this.request = request;
+        }
+
+        public void write(int b) {
+            request.write(b);
+        }
+
+        public void write(byte[] b, int off, int len) {
+            request.write(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            sendRequest(request);
+        }
+
+        public void close() throws IOException {
+            sockOut.close();
+        }
+    }
+
+
+    /**
+     * Constructor.
+     * @param sockIn  buffered stream from the server
+     * @param sockOut buffered stream to the server
+     */
+    EtTaggedStreams(DataInputStream sockIn, DataOutputStream sockOut) {
+        this.sockIn  = sockIn;
+        this.sockOut = sockOut;
+    }
+
+
+    /**
+     * Get the stream from which the calling thread reads its replies.
+     * @return the calling thread's stream of replies
+     */
+    DataInputStream in() {
+        return requests.get().in;
+    }
+
+
+    /**
+     * Get the stream to which the calling thread writes its requests.
+     * @return the calling thread's stream of requests
+     */
+    DataOutputStream out() {
+        return requests.get().out;
+    }
+
+
+    /**
+     * Get an object of the calling thread's own. Synchronizing on it keeps
+     * no other thread waiting.
+     * @return object of the calling thread's own
+     */
+    Object threadLock() {
+        return requests.get();
+    }
+
+
+    /**
+     * Send what a thread has written, preceded by its tag and length.
+     * @param request the thread's request
+     * @throws IOException if writing to the server fails
+     */
+    private void sendRequest(Request request) throws IOException {
+        int size = request.size();
+        if (size == 0) return;
+
+        synchronized (sockOut) {
+            sockOut.writeInt(request.tag);
+            sockOut.writeInt(size);
+            sockOut.write(request.array(), 0, size);
+            sockOut.flush();
+        }
+        request.sent();
+    }
+
+
+    /**
+     * Read part of a thread's reply, waiting for it if need be.
+     *
+     * @param request the thread's request
+     * @param b       array to read into
+     * @param off     index into array at which to place the first byte
+     * @param len     maximum number of bytes to read
+     * @return number of bytes read
+     * @throws IOException if reading from the server fails
+     */
+    private int readReply(Request request, byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+
+        if (!request.reading) {
+            awaitReply(request.tag);
+            request.reading = true;
+        }
+
+        int n;
+        try {
+            while (true) {
+                try {
+                    n = sockIn.read(b, off, Math.min(len, remaining));
+                    break;
+                }
+                // If there's an interrupted ex, socket is OK, try again.
+                catch (InterruptedIOException ex) {
+                }
+            }
+            if (n < 0) {
+                throw new EOFException("connection to ET system closed");
+            }
+        }
+        catch (IOException ex) {
+            broken(ex);
+            throw ex;
+        }
+
+        remaining -= n;
+        if (remaining == 0) {
+            // this reply is done, let the next one be read
+            request.reading = false;
+            synchronized (this) {
+                owner = 0;
+                notifyAll();
+            }
+        }
+        return n;
+    }
+
+
+    /**
+     * Wait until the reply with the given tag is the next to be read from
+     * the server, reading the tags of replies when no one else is.
+     *
+     * @param tag tag of the reply
+     * @throws IOException if reading from the server fails
+     */
+    private void awaitReply(int tag) throws IOException {
+        while (true) {
+            synchronized (this) {
+                while (true) {
+                    if (error != null) {
+                        throw new IOException("connection to ET system broken", error);
+                    }
+                    if (owner == tag) {
+                        return;
+                    }
+                    if (owner == 0) {
+                        owner = -1;
+                        break;
+                    }
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException ex) {
+                        throw new InterruptedIOException("interrupted while waiting for reply");
+                    }
+                }
+            }
+
+            readNext(false, 0L);
+        }
+    }
+
+
+    /**
+     * Start keeping the pushes of a new subscription.
+     * @return tag preceding the subscription's pushes
+     */
+    synchronized int openStream() {
+        int tag = tags.incrementAndGet();
+        streams.put(tag, new ArrayDeque<byte[]>());
+        return tag;
+    }
+
+
+    /**
+     * Stop keeping the pushes of a subscription, once the server has said
+     * it pushes no more.
+     * @param tag tag preceding the subscription's pushes
+     * @return pushes read but not asked for
+     */
+    synchronized ArrayList<byte[]> closeStream(int tag) {
+        ArrayDeque<byte[]> pushes = streams.remove(tag);
+        return (pushes == null) ? new ArrayList<byte[]>() : new ArrayList<byte[]>(pushes);
+    }
+
+
+    /**
+     * Get the next push of a subscription, waiting for it if need be.
+     *
+     * @param tag      tag preceding the subscription's pushes
+     * @param timed    if false, wait for as long as it takes
+     * @param deadline if timed, time, as given by {@link System#nanoTime()},
+     *                 to stop waiting (now or in the past to not wait at all)
+     * @return push, or null if none came in time
+     * @throws IOException if reading from the server fails
+     */
+    byte[] readStream(int tag, boolean timed, long deadline) throws IOException {
+        while (true) {
+            synchronized (this) {
+                while (true) {
+                    if (error != null) {
+                        throw new IOException("connection to ET system broken", error);
+                    }
+                    ArrayDeque<byte[]> pushes = streams.get(tag);
+                    if (pushes == null) {
+                        throw new IOException("not subscribed");
+                    }
+                    if (!pushes.isEmpty()) {
+                        return pushes.poll();
+                    }
+                    if (owner == 0) {
+                        owner = -1;
+                        break;
+                    }
+                    long wait = timed ? (deadline - System.nanoTime()) / 1000000L : 0L;
+                    if (timed && wait <= 0L) {
+                        return null;
+                    }
+                    try {
+                        wait(wait);
+                    }
+                    catch (InterruptedException ex) {
+                        throw new InterruptedIOException("interrupted while waiting for events");
+                    }
+                }
+            }
+
+            if (!readNext(timed, deadline)) {
+                // nothing came in time
+                synchronized (this) {
+                    owner = 0;
+                    notifyAll();
+                    return streams.get(tag).poll();
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Read the tag and length of the next reply or push, which only the thread
+     * which set {@link #owner} to -1 may do. A push is read whole and kept.
+     *
+     * @param timed    if false, wait for as long as it takes
+     * @param deadline if timed, time, as given by {@link System#nanoTime()}, to stop waiting
+     * @return false if timed and nothing came in time, leaving owner as it is
+     * @throws IOException if reading from the server fails
+     */
+    private boolean readNext(boolean timed, long deadline) throws IOException {
+        int tag, length;
+        ArrayDeque<byte[]> pushes;
+        byte[] push = null;
+
+        try {
+            if (!readFully(header, header.length, timed, deadline)) {
+                return false;
+            }
+            tag    = EtUtils.bytesToInt(header, 0);
+            length = EtUtils.bytesToInt(header, 4);
+
+            synchronized (this) {
+                pushes = streams.get(tag);
+            }
+            if (pushes != null) {
+                push = new byte[length];
+                readFully(push, length, false, 0L);
+            }
+        }
+        catch (IOException ex) {
+            broken(ex);
+            throw ex;
+        }
+
+        synchronized (this) {
+            if (push != null) {
+                pushes.add(push);
+                owner = 0;
+            }
+            else {
+                remaining = length;
+                owner = (length > 0) ? tag : 0;
+            }
+            notifyAll();
+        }
+        return true;
+    }
+
+
+    /**
+     * Read bytes from the server, retrying on socket timeouts without losing any.
+     *
+     * @param b        array to read into
+     * @param length   number of bytes to read
+     * @param timed    if false, wait for as long as it takes
+     * @param deadline if timed, time, as given by {@link System#nanoTime()}, to stop
+     *                 waiting if nothing has been read by then
+     * @return false if timed and nothing came in time
+     * @throws IOException if reading from the server fails
+     */
+    private boolean readFully(byte[] b, int length, boolean timed, long deadline) throws IOException {
+        int n;
+        for (int off = 0; off < length; off += n) {
+            if (timed && off == 0 && sockIn.available() < 1 &&
+                deadline - System.nanoTime() <= 0L) {
+                return false;
+            }
+            try {
+                n = sockIn.read(b, off, length - off);
+            }
+            // If there's an interrupted ex, socket is OK, try again.
+            catch (InterruptedIOException ex) {
+                n = 0;
+                continue;
+            }
+            if (n < 0) {
+                throw new EOFException("connection to ET system closed");
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * Record that the connection is broken and tell all waiting threads.
+     * @param ex error which broke the connection
+     */
+    private synchronized void broken(IOException ex) {
+        if (error == null) {
+            error = ex;
+        }
+        owner = 0;
+        notifyAll();
+    }
+}
@@ -354,6 +354,17 @@ public class EtMonitor {
     str.append("), hearbeat(");
     str.append(data.sysData.getHeartbeat());
     str.append(")\n");
+    if (data.sysData.isBufferPoolKnown()) {
+      str.append("    big event buffers: hits(");
+      str.append(data.sysData.getBufferPoolHits());
+      str.append("), misses(");
+      str.append(data.sysData.getBufferPoolMisses());
+      str.append("), bytes lent(");
+      str.append(data.sysData.getBufferPoolBytesOutstanding());
+      str.append("), bytes idle(");
+      str.append(data.sysData.getBufferPoolBytesIdle());
+      str.append(")\n");
+    }
     System.out.println(str.toString());
     str.delete(0, end);
 
@@ -404,6 +415,12 @@ public class EtMonitor {
         str.append("select(USER)\n");
       else if (data.statData[i].getSelectMode() == EtConstants.stationSelectRRobin)
         str.append("select(RROBIN)\n");
+      else if (data.statData[i].getSelectMode() == EtConstants.stationSelectWeighted)
+        str.append("select(WEIGHTED)\n");
+      else if (data.statData[i].getSelectMode() == EtConstants.stationSelectPartition)
+        str.append("select(PARTITION)\n");
+      else if (data.statData[i].getSelectMode() == EtConstants.stationSelectFanOut)
+        str.append("select(FANOUT)\n");
       else
         str.append("select(EQUALCUE)\n");
 
@@ -470,12 +487,28 @@ public class EtMonitor {
         str.append(", events try = ");
         str.append(data.statData[i].getInListTry());
       }
+      // estimated rate events are taken (Java ET weighted stations)
+      if (data.statData[i].getDrainRate() >= 0.) {
+        str.append(", drain rate = ");
+        str.append((long) data.statData[i].getDrainRate());
+        str.append(" Hz");
+      }
       str.append("\n");
 
       str.append("        output list: cnt = ");
       str.append(data.statData[i].getOutListCount());
       str.append(", events out = ");
       str.append(data.statData[i].getOutListOut());
+      // batches passed on by conductor (Java ET)
+      if (data.statData[i].getBatchSize() >= 0.) {
+        str.append(", batch = ");
+        str.append((long) data.statData[i].getBatchSize());
+        str.append(" (max ");
+        str.append(data.statData[i].getBatchLimit());
+        str.append("), hand-off = ");
+        str.append((long) data.statData[i].getHandOffLatency());
+        str.append(" us");
+      }
       str.append("\n");
 
       System.out.println(str.toString());
@@ -549,6 +582,13 @@ public class EtMonitor {
         if (data.attData[i].quitting()) {
           str.append(", told to quit");
         }
+        if (data.attData[i].getWaitStrategy() != null) {
+          str.append(", wait(");
+          str.append(data.attData[i].getWaitStrategy());
+          str.append(", spins = ");
+          str.append(data.attData[i].getSpinTries());
+          str.append(")");
+        }
         str.append("\n      events:  make(");
         str.append(data.attData[i].getEventsMake());
         str.append("), get(");
@@ -37,7 +37,8 @@ public class StartEt {
         System.out.println("\nUsage: java StartEt [-h] [-v] [-d] [-f <file>] [-n <events>] [-s <eventSize>]\n" +
                              "                    [-g <groups>] [-a <multicast address>]\n" +
                              "                    [-p <TCP server port>] [-u <UDP port>]\n" +
-                             "                    [-rb <buf size>] [-sb <buf size>] [-nd]\n\n" +
+                             "                    [-rb <buf size>] [-sb <buf size>] [-nd]\n" +
+                             "                    [-off <direct | mapped>]\n\n" +
 
         "          -h   help\n" +
         "          -v   verbose output\n" +
@@ -46,7 +47,9 @@ public class StartEt {
 
         "          -n   number of events\n" +
         "          -s   event size in bytes\n" +
-        "          -g   number of groups to divide events into\n\n" +
+        "          -g   number of groups to divide events into\n" +
+        "          -off keep event data off the heap in direct memory\n" +
+        "               or in a memory-mapped file (<file>_data)\n\n" +
 
         "          -p   TCP server port #\n" +
         "          -u   UDP broadcast port #\n" +
@@ -70,6 +73,7 @@ public class StartEt {
         int udpPort = EtConstants.udpPort;
         int recvBufSize = 0, sendBufSize = 0;
         int numGroups = 1;
+        int storage = EtConstants.storageHeap;
         boolean debug = false;
         boolean noDelay = false;
         boolean deleteFile = false;
@@ -123,6 +127,19 @@ public class StartEt {
             else if (args[i].equalsIgnoreCase("-d")) {
                 deleteFile = true;
             }
+            else if (args[i].equalsIgnoreCase("-off")) {
+                String where = args[++i];
+                if (where.equalsIgnoreCase("direct")) {
+                    storage = EtConstants.storageDirect;
+                }
+                else if (where.equalsIgnoreCase("mapped")) {
+                    storage = EtConstants.storageMapped;
+                }
+                else {
+                    usage();
+                    System.exit(-1);
+                }
+            }
             else if (args[i].equalsIgnoreCase("-a")) {
                 try {
                     String addr = args[++i];
@@ -189,6 +206,8 @@ public class StartEt {
             config.setNumEvents(numEvents);
             // set size of events in bytes
             config.setEventSize(size);
+            // set where event data is kept
+            config.setEventStorage(storage);
             // set tcp receive buffer size in bytes
             if (recvBufSize > 0) {
                 config.setTcpRecvBufSize(recvBufSize);
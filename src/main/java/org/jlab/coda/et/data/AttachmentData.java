@@ -16,6 +16,7 @@ package org.jlab.coda.et.data;
 
 import org.jlab.coda.et.EtConstants;
 import org.jlab.coda.et.EtUtils;
+import org.jlab.coda.et.enums.WaitStrategy;
 
 import java.io.*;
 
@@ -93,6 +94,16 @@ public class AttachmentData {
     /** IP address of the network interface the attachment is sending data through. */
     private String ipAddress;
 
+    /** Value of how this attachment waits for events, -1 if unknown
+     *  (only relevant in Java-based ET systems).
+     *  @see org.jlab.coda.et.system.AttachmentLocal#waitStrategy */
+    private int waitStrategy = -1;
+
+    /** Number of times this attachment spins while waiting for events before
+     *  yielding or parking (only relevant in Java-based ET systems).
+     *  @see org.jlab.coda.et.system.AttachmentLocal#spinTries */
+    private int spinTries;
+
 
     // getters
 
@@ -174,6 +185,28 @@ public class AttachmentData {
      *  @return IP address of the network interface the attachment is sending data through. */
     public String getIpAddress() {return ipAddress;}
 
+    /** Get how this attachment waits for events (only relevant in Java-based ET systems).
+     *  @return how this attachment waits for events, or null if unknown
+     *  @see org.jlab.coda.et.system.AttachmentLocal#waitStrategy */
+    public WaitStrategy getWaitStrategy() {return WaitStrategy.getWaitStrategy(waitStrategy);}
+
+    /** Get the number of times this attachment spins while waiting for events before
+     *  yielding or parking (only relevant in Java-based ET systems).
+     *  @return number of times this attachment spins before yielding or parking
+     *  @see org.jlab.coda.et.system.AttachmentLocal#spinTries */
+    public int getSpinTries() {return spinTries;}
+
+    /**
+     *  Sets how this attachment waits for events. Used when reading the
+     *  information only Java-based ET systems send.
+     *  @param waitStrategy value of how this attachment waits for events
+     *  @param spinTries    number of times this attachment spins before yielding or parking
+     */
+    public void setWaitStrategy(int waitStrategy, int spinTries) {
+        this.waitStrategy = waitStrategy;
+        this.spinTries = spinTries;
+    }
+
     /**
      *  Reads the attachment information from an ET system over the network.
      *  @param dis data input stream
@@ -41,7 +41,7 @@ public class StationData {
      *  locked and {@link org.jlab.coda.et.EtConstants#mutexUnlocked} otherwise. This is only
      *  relevant in C-based ET systems, since in Java, mutexes cannot be tested without
      *  possibility of blocking. This is not boolean for C-based ET system compatibility.
-     *  @see org.jlab.coda.et.system.StationLocal#stopTransferLock */
+     *  Java-based ET systems no longer stop event transfer and always report it unlocked. */
     private int mutex;
 
     /** Number of attachments to this station.
@@ -61,7 +61,7 @@ public class StationData {
     private int  inListMutex;
 
     /** Number of events in the input list.
-     *  @see org.jlab.coda.et.system.EventList#events */
+     *  @see org.jlab.coda.et.system.EventList#getCount() */
     private int  inListCount;
 
     /** Number of events that were attempted to be put into the input list. This is
@@ -81,7 +81,7 @@ public class StationData {
     private int  outListMutex;
 
     /** Number of events in the output list.
-     *  @see org.jlab.coda.et.system.EventList#events */
+     *  @see org.jlab.coda.et.system.EventList#getCount() */
     private int  outListCount;
 
     /** Number of events that were taken out of the output list.
@@ -141,6 +141,27 @@ public class StationData {
      *  @see org.jlab.coda.et.system.StationLocal#name */
     private String name;
 
+    /** Estimated rate, in events/sec, at which attachments take events from the
+     *  station's input list, -1 if unknown (only relevant in Java-based ET systems
+     *  for parallel stations using {@link org.jlab.coda.et.EtConstants#stationSelectWeighted}).
+     *  @see org.jlab.coda.et.system.StationLocal#drainRate */
+    private double drainRate = -1.;
+
+    /** Average number of events in each batch the station's conductor passes on,
+     *  -1 if unknown (only in Java-based ET systems).
+     *  @see org.jlab.coda.et.system.StationLocal#batchSize */
+    private double batchSize = -1.;
+
+    /** Average time, in microseconds, from an event being put into the station's output
+     *  list until the conductor passes it on, -1 if unknown (only in Java-based ET systems).
+     *  @see org.jlab.coda.et.system.StationLocal#handOffLatency */
+    private double handOffLatency = -1.;
+
+    /** Largest number of events the station's conductor currently passes on at once,
+     *  -1 if unknown (only in Java-based ET systems).
+     *  @see org.jlab.coda.et.system.StationLocal#batchLimit */
+    private int batchLimit = -1;
+
 
     // get methods
 
@@ -182,7 +203,7 @@ public class StationData {
 
     /** Get the number of events in the input list.
      *  @return number of events in the input list
-     *  @see org.jlab.coda.et.system.EventList#events */
+     *  @see org.jlab.coda.et.system.EventList#getCount() */
     public int  getInListCount() {return inListCount;}
 
     /** Get the number of events that were attempted to be put into the input list.
@@ -205,7 +226,7 @@ public class StationData {
 
     /** Get the number of events in the output list.
      *  @return number of events in the output list
-     *  @see org.jlab.coda.et.system.EventList#events */
+     *  @see org.jlab.coda.et.system.EventList#getCount() */
     public int  getOutListCount() {return outListCount;}
 
     /** Get the number of events that were taken out of the output list.
@@ -280,6 +301,52 @@ public class StationData {
      *  @see org.jlab.coda.et.system.StationLocal#name */
     public String getName() {return name;}
 
+    /** Get the estimated rate at which attachments take events from the station's input list
+     *  (only relevant in Java-based ET systems).
+     *  @return estimated rate in events/sec, or -1 if unknown
+     *  @see org.jlab.coda.et.system.StationLocal#drainRate */
+    public double getDrainRate() {return drainRate;}
+
+    /**
+     *  Sets the estimated rate at which attachments take events from the station's
+     *  input list. Used when reading the information only Java-based ET systems send.
+     *  @param drainRate estimated rate in events/sec
+     */
+    public void setDrainRate(double drainRate) {
+        this.drainRate = drainRate;
+    }
+
+    /** Get the average number of events in each batch the station's conductor passes on
+     *  (only relevant in Java-based ET systems).
+     *  @return average number of events in each batch, or -1 if unknown
+     *  @see org.jlab.coda.et.system.StationLocal#batchSize */
+    public double getBatchSize() {return batchSize;}
+
+    /** Get the average time from an event being put into the station's output list
+     *  until its conductor passes it on (only relevant in Java-based ET systems).
+     *  @return average hand-off latency in microseconds, or -1 if unknown
+     *  @see org.jlab.coda.et.system.StationLocal#handOffLatency */
+    public double getHandOffLatency() {return handOffLatency;}
+
+    /** Get the largest number of events the station's conductor currently passes on at once
+     *  (only relevant in Java-based ET systems).
+     *  @return largest number of events passed on at once, or -1 if unknown
+     *  @see org.jlab.coda.et.system.StationLocal#batchLimit */
+    public int getBatchLimit() {return batchLimit;}
+
+    /**
+     *  Sets the statistics of the batches of events the station's conductor passes on.
+     *  Used when reading the information only Java-based ET systems send.
+     *  @param batchSize      average number of events in each batch
+     *  @param handOffLatency average hand-off latency in microseconds
+     *  @param batchLimit     largest number of events currently passed on at once
+     */
+    public void setConductorData(double batchSize, double handOffLatency, int batchLimit) {
+        this.batchSize      = batchSize;
+        this.handOffLatency = handOffLatency;
+        this.batchLimit     = batchLimit;
+    }
+
 
     /**
      *  Reads the station information from an ET system over the network.
@@ -163,6 +163,21 @@ public class SystemData {
      *  @see org.jlab.coda.et.system.SystemCreate#name */
     private String etName;
 
+    /** Are the buffer pool counters known? Only Java-based ET systems send them. */
+    private boolean bufferPoolKnown;
+
+    /** Number of requests for larger than normal events filled with an idle pooled buffer. */
+    private long bufferPoolHits;
+
+    /** Number of requests for larger than normal events needing a newly allocated buffer. */
+    private long bufferPoolMisses;
+
+    /** Number of bytes in buffers lent to events larger than normal. */
+    private long bufferPoolBytesOutstanding;
+
+    /** Number of bytes in idle pooled buffers. */
+    private long bufferPoolBytesIdle;
+
 
     // Getters
 
@@ -316,6 +331,42 @@ public class SystemData {
      *  @see org.jlab.coda.et.system.SystemCreate#name */
     public String getEtName() {return etName;}
 
+    /** Are the buffer pool counters known? Only Java-based ET systems send them.
+     *  @return true if the buffer pool counters are known */
+    public boolean isBufferPoolKnown() {return bufferPoolKnown;}
+
+    /** Get the number of requests for larger than normal events filled with an idle pooled buffer.
+     *  @return number of requests filled with an idle pooled buffer */
+    public long getBufferPoolHits() {return bufferPoolHits;}
+
+    /** Get the number of requests for larger than normal events needing a newly allocated buffer.
+     *  @return number of requests needing a newly allocated buffer */
+    public long getBufferPoolMisses() {return bufferPoolMisses;}
+
+    /** Get the number of bytes in buffers lent to events larger than normal.
+     *  @return number of bytes in buffers lent to events larger than normal */
+    public long getBufferPoolBytesOutstanding() {return bufferPoolBytesOutstanding;}
+
+    /** Get the number of bytes in idle pooled buffers.
+     *  @return number of bytes in idle pooled buffers */
+    public long getBufferPoolBytesIdle() {return bufferPoolBytesIdle;}
+
+    /**
+     *  Sets the counters of the pool of buffers lent to events larger than normal.
+     *  Used when reading the information only Java-based ET systems send.
+     *  @param hits             number of requests filled with an idle pooled buffer
+     *  @param misses           number of requests needing a newly allocated buffer
+     *  @param bytesOutstanding number of bytes in buffers lent to events
+     *  @param bytesIdle        number of bytes in idle pooled buffers
+     */
+    public void setBufferPoolData(long hits, long misses, long bytesOutstanding, long bytesIdle) {
+        bufferPoolKnown            = true;
+        bufferPoolHits             = hits;
+        bufferPoolMisses           = misses;
+        bufferPoolBytesOutstanding = bytesOutstanding;
+        bufferPoolBytesIdle        = bytesIdle;
+    }
+
 
     /**
      *  Reads the system level information from an ET system over the network.
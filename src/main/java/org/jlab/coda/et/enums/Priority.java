@@ -17,15 +17,32 @@ package org.jlab.coda.et.enums;
 import org.jlab.coda.et.EtConstants;
 
 /**
- * This enum represents the 2 possible priorities an event can have.
- * Low is normal, but high puts events to the front of station input/output lists.
+ * This enum represents the possible priorities an event can have, listed from
+ * least to most urgent. Low is normal. Events of higher priority are put ahead of
+ * all events of lower priority in station input/output lists and events of lower
+ * priority fall in behind.<p>
+ *
+ * Only {@link #LOW} and {@link #HIGH} are understood by C ET systems and older Java
+ * ones. Over the network, the lowest bit of an event's priority value says whether
+ * it's high or low, so those systems see {@link #BULK} as low and {@link #MEDIUM} and
+ * {@link #URGENT} as high. The next 3 bits, which they ignore, tell the levels apart.
+ *
  * @author timmer
  */
 public enum Priority {
+    /** Bulk priority, events fall in behind low priority events
+     *  (such as calibration data). Seen as low by C ET systems. */
+    BULK     (EtConstants.bulk),
     /** Low or normal priority, events take their proper turn. */
     LOW      (EtConstants.low),
+    /** Medium priority, events move ahead of low priority events
+     *  (such as trigger data). Seen as high by C ET systems. */
+    MEDIUM   (EtConstants.medium),
     /** High priority, events cut in and move to the front of the list. */
-    HIGH     (EtConstants.high);
+    HIGH     (EtConstants.high),
+    /** Urgent priority, events move ahead even of high priority events
+     *  (such as control events). Seen as high by C ET systems. */
+    URGENT   (EtConstants.urgent);
 
     private int value;
 
@@ -34,7 +51,12 @@ public enum Priority {
 
     // Fill array after all enum objects created
     static {
-        intToType = new Priority[2];
+        // Values from systems knowing only high & low, or from a newer one
+        // knowing levels we don't, are taken as high or low.
+        intToType = new Priority[EtConstants.priorityLevelMask + 1];
+        for (int i=0; i < intToType.length; i++) {
+            intToType[i] = ((i & EtConstants.priorityMask) == EtConstants.high) ? HIGH : LOW;
+        }
         for (Priority type : values()) {
             intToType[type.value] = type;
         }
@@ -47,7 +69,7 @@ public enum Priority {
 	 * @return the matching enum, or <code>null</code>.
 	 */
     public static Priority getPriority(int val) {
-        if (val > 1 || val < 0) return null;
+        if (val > EtConstants.priorityLevelMask || val < 0) return null;
         return intToType[val];
     }
 
@@ -76,4 +98,12 @@ public enum Priority {
         return value;
     }
 
+    /**
+     * Get the rank of this priority, 0 being the least urgent.
+     * @return the rank, from 0 to one less than the number of priorities
+     */
+    public int getRank() {
+        return ordinal();
+    }
+
 }
@@ -0,0 +1,88 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2010        Jefferson Science Associates,                   *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.enums;
+
+import org.jlab.coda.et.EtConstants;
+
+/**
+ * This enum represents 4 possible ways in which an attachment of a Java ET system
+ * waits for events when none are currently available (in the sleep and timed
+ * modes of calls newEvents() or getEvents()).
+ * BLOCK indicates that the waiting thread is parked until events arrive.
+ * SPIN means the thread busy-spins, using a whole core, until events arrive.
+ * SPIN_YIELD means the thread spins a given number of times and then repeatedly
+ * yields the processor, and SPIN_PARK means it spins a given number of times
+ * and then parks.
+ *
+ * @author timmer
+ */
+public enum WaitStrategy {
+    /** Park the waiting thread until events arrive. */
+    BLOCK       (EtConstants.waitBlock),
+    /** Busy-spin until events arrive. */
+    SPIN        (EtConstants.waitSpin),
+    /** Spin a given number of times, then yield until events arrive. */
+    SPIN_YIELD  (EtConstants.waitSpinYield),
+    /** Spin a given number of times, then park until events arrive. */
+    SPIN_PARK   (EtConstants.waitSpinPark);
+
+    private int value;
+
+    /** Fast way to convert integer values into WaitStrategy objects. */
+    private static WaitStrategy[] intToType;
+
+    // Fill array after all enum objects created
+    static {
+        intToType = new WaitStrategy[4];
+        for (WaitStrategy type : values()) {
+            intToType[type.value] = type;
+        }
+    }
+
+	/**
+	 * Obtain the enum from the value.
+	 *
+	 * @param val the value to match.
+	 * @return the matching enum, or <code>null</code>.
+	 */
+    public static WaitStrategy getWaitStrategy(int val) {
+        if (val > 3 || val < 0) return null;
+        return intToType[val];
+    }
+
+    /**
+     * Obtain the name from the value.
+     *
+     * @param val the value to match.
+     * @return the name, or <code>null</code>.
+     */
+    public static String getName(int val) {
+        WaitStrategy s = getWaitStrategy(val);
+        if (s == null) return null;
+        return s.name();
+    }
+
+    WaitStrategy(int value) {
+        this.value = value;
+    }
+
+    /**
+     * Get the enum's value.
+     * @return the value
+     */
+    public int getValue() {
+        return value;
+    }
+}
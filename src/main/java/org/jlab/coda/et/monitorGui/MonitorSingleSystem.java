@@ -658,6 +658,12 @@ public class MonitorSingleSystem {
                     str.append("select = user");
                 else if (data.statData[i].getSelectMode() == EtConstants.stationSelectRRobin)
                     str.append("select = rrobin");
+                else if (data.statData[i].getSelectMode() == EtConstants.stationSelectWeighted)
+                    str.append("select = weighted");
+                else if (data.statData[i].getSelectMode() == EtConstants.stationSelectPartition)
+                    str.append("select = partition");
+                else if (data.statData[i].getSelectMode() == EtConstants.stationSelectFanOut)
+                    str.append("select = fanout");
                 else
                     str.append("select = equalcue");
 
@@ -765,6 +771,10 @@ public class MonitorSingleSystem {
                 str.append(", try = ");
                 str.append(data.statData[i].getInListTry());
             }
+            if (data.statData[i].getDrainRate() >= 0.) {
+                str.append(", drain rate = ");
+                str.append((long) data.statData[i].getDrainRate());
+            }
             // helps reduce widget flashing
             str.append("            ");
 
@@ -783,6 +793,13 @@ public class MonitorSingleSystem {
             str.append(data.statData[i].getOutListCount());
             str.append(", total = ");
             str.append(data.statData[i].getOutListOut());
+            if (data.statData[i].getBatchSize() >= 0.) {
+                str.append(", batch = ");
+                str.append((long) data.statData[i].getBatchSize());
+                str.append(", hand-off = ");
+                str.append((long) data.statData[i].getHandOffLatency());
+                str.append(" us");
+            }
             str.append("            ");
 
             if (isNewNode) {
@@ -960,6 +977,10 @@ public class MonitorSingleSystem {
                 if (data.attData[i].quitting() == true) {
                     str.append(", quitting");
                 }
+                if (data.attData[i].getWaitStrategy() != null) {
+                    str.append(", wait = ");
+                    str.append(data.attData[i].getWaitStrategy());
+                }
 
                 if (!isJava) {
                     str.append(", pid = ");
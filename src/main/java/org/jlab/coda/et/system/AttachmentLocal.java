@@ -14,6 +14,8 @@
 
 package org.jlab.coda.et.system;
 
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.enums.WaitStrategy;
 
 /**
  * This class defines an attachment to a station of an ET system for use by the
@@ -27,8 +29,6 @@ package org.jlab.coda.et.system;
 
 public class AttachmentLocal {
 
-    // TODO: keep a list or set of events we currently have out?
-
     /** Unique id number. */
     private int id;
 
@@ -74,14 +74,36 @@ public class AttachmentLocal {
     /** Flag telling the attachment blocked on a read to wake up or return. */
     private volatile boolean wakeUp;
 
+    /** Object used to park the thread of this attachment while it waits for events. */
+    private volatile EventWaiter waiter = new EventWaiter();
+
+    /** How this attachment waits for events. */
+    private volatile WaitStrategy waitStrategy = WaitStrategy.BLOCK;
+
+    /** Number of times this attachment spins while waiting for events before
+     *  yielding or parking (used by {@link WaitStrategy#SPIN_YIELD} and
+     *  {@link WaitStrategy#SPIN_PARK}). */
+    private volatile int spinTries = EtConstants.defaultSpinTries;
+
+    /** Does this attachment take events from sibling parallel stations when
+     *  its own station's input list is empty? */
+    private volatile boolean stealing;
+
+    /** Events this attachment currently has out (got or made, but not yet put or dumped). */
+    private final OwnedEvents ownedEvents;
+
 
     /**
      * Constructor. Attachments are only created by an ET system's
      * {@link SystemCreate#attach(int)} method.
+     *
+     * @param eventSlots array, indexed by event id, shared by the owned-event
+     *                   sets of all of the ET system's attachments
      */
-    AttachmentLocal() {
-        id         = -1;
-        pid        = -1;
+    AttachmentLocal(int[] eventSlots) {
+        id          = -1;
+        pid         = -1;
+        ownedEvents = new OwnedEvents(eventSlots);
     }
 
 
@@ -165,6 +187,90 @@ public class AttachmentLocal {
         this.waiting = waiting;
     }
 
+    /**
+     * Gets the set of events this attachment currently has out.
+     * @return set of events this attachment currently has out
+     */
+    OwnedEvents getOwnedEvents() {
+        return ownedEvents;
+    }
+
+    /**
+     * Get the object used to park the thread of this attachment while it waits for events.
+     * @return object used to park the thread of this attachment while it waits for events
+     */
+    EventWaiter getWaiter() {
+        return waiter;
+    }
+
+    /**
+     * Set the object used to wait for events. An attachment served by a thread
+     * which cannot block uses a waiter that tells that thread events have arrived
+     * instead of unparking a thread. Only set before the attachment ever waits.
+     * @param waiter object used to wait for events
+     */
+    void setWaiter(EventWaiter waiter) {
+        this.waiter = waiter;
+    }
+
+    /**
+     * Get how this attachment waits for events.
+     * @return how this attachment waits for events
+     */
+    public WaitStrategy getWaitStrategy() {
+        return waitStrategy;
+    }
+
+    /**
+     * Set how this attachment waits for events.
+     * Takes effect the next time it waits.
+     * @param waitStrategy how this attachment waits for events (null means {@link WaitStrategy#BLOCK})
+     */
+    public void setWaitStrategy(WaitStrategy waitStrategy) {
+        this.waitStrategy = waitStrategy == null ? WaitStrategy.BLOCK : waitStrategy;
+    }
+
+    /**
+     * Get the number of times this attachment spins while waiting for events before
+     * yielding or parking.
+     * @return number of times this attachment spins before yielding or parking
+     */
+    public int getSpinTries() {
+        return spinTries;
+    }
+
+    /**
+     * Set the number of times this attachment spins while waiting for events before
+     * yielding or parking. Takes effect the next time it waits.
+     * @param spinTries number of times to spin before yielding or parking (&lt; 0 means 0)
+     */
+    public void setSpinTries(int spinTries) {
+        this.spinTries = spinTries < 0 ? 0 : spinTries;
+    }
+
+    /**
+     * Does this attachment take events from the input lists of sibling parallel
+     * stations when its own station's input list is empty?
+     * @return <code>true</code> if this attachment takes events from sibling stations
+     */
+    public boolean isStealing() {
+        return stealing;
+    }
+
+    /**
+     * Set whether this attachment, if its station is one of a group of parallel
+     * stations, takes events from the input list of the sibling holding the most
+     * events when its own station's input list is empty. This keeps events from
+     * sitting in the input list of a station whose consumers have stalled while
+     * its siblings are idle. Groups using {@link EtConstants#stationSelectPartition}
+     * are never stolen from since that would break the order of each key's events.
+     * Takes effect the next time it gets events.
+     * @param stealing <code>true</code> if this attachment takes events from sibling stations
+     */
+    public void setStealing(boolean stealing) {
+        this.stealing = stealing;
+    }
+
     /**
      * Is this attachment to wake up or return during blocking read?
      * @return <code>true</code> if this attachment is to wake up or return during blocking read
@@ -0,0 +1,1818 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12H        *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-5800             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.lang.*;
+import java.util.*;
+import java.util.Map.*;
+import java.io.*;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jlab.coda.et.exception.*;
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.enums.Priority;
+import org.jlab.coda.et.enums.DataStatus;
+
+/**
+ * This class handles all communication between an ET system and a user who has
+ * opened that ET system. It carries out commands read from the user and writes
+ * the replies. Getting those commands is left to the subclass: {@link ClientThread}
+ * gives each user a thread of its own (and more to carry out tagged requests) while
+ * {@link SelectorConnection} shares a selector thread with other users and waits
+ * for events without blocking it.
+ *
+ * @author Carl Timmer
+ */
+
+abstract class ClientConnection {
+
+    /** Returned by {@link #processCommand(int)} when the command is done. */
+    static final int commandDone = 0;
+
+    /** Returned by {@link #processCommand(int)} when the command must be
+     *  carried out again once events arrive. */
+    static final int commandWaiting = 1;
+
+    /** Returned by {@link #processCommand(int)} when the user closes the connection. */
+    static final int commandClose = 2;
+
+    /** ET system object. */
+    SystemCreate sys;
+
+    /** ET system configuration object. */
+    SystemConfig config;
+
+    /** Data input stream from which commands are read. */
+    DataInputStream  in;
+
+    /** Data output stream to which replies are written. */
+    DataOutputStream out;
+
+    /** Client is 64 bits? */
+    boolean bit64;
+
+    /** Buffer for sending events to users. */
+    byte[] buffer;
+
+    /** Buffer for reading command parameters. */
+    byte[] params;
+
+    /** Headers of events sent to the user, allocated when first needed. */
+    private ByteBuffer headers;
+
+    /** Views of each event's part of headers, the first one with the
+     *  number of events and total size in front. */
+    private ByteBuffer[] headerViews;
+
+    /** Headers and data of events handed to a gathering write. */
+    private ByteBuffer[] gather;
+
+    /** Bytes of the header of each event put by the user. */
+    static final int putHeaderSize = 28 + 4 * EtConstants.stationSelectInts;
+
+    /** View of params for reading headers of events put by the user. */
+    private ByteBuffer paramsBuffer;
+
+    /** Most bytes of data on the heap to hand to one gathering write,
+     *  as each heap buffer is copied into a temporary direct buffer which
+     *  the JVM keeps for the thread. */
+    static final int gatherHeapBytesMax = 262144;
+
+    /** Largest buffer of replies kept after all its replies are sent. */
+    static final int replySizeMax = 1 << 20;
+
+    /** Are the user's requests and replies tagged ({@link EtConstants#featureTagged})? */
+    boolean tagged;
+
+    /** Keep track of all the attachments this client makes
+     *  as they may need to be detached if the client dies
+     *  without cleanly disconnecting itself. Detaching
+     *  takes care of all events that were sent to clients
+     *  as events to be modified, but were never put back.
+     *  Shared by all connections carrying out the client's
+     *  tagged requests. */
+    final Map<Integer, AttachmentLocal> attachments;
+
+
+    /**
+     * This class is a stream reading one command held in an array.
+     * It's reused for every command so reading allocates nothing.
+     */
+    static final class CommandInput extends InputStream {
+
+        /** Array holding the command. */
+        private byte[] array;
+
+        /** Index of next byte to read. */
+        private int position;
+
+        /** Index just past the command's last byte. */
+        private int limit;
+
+        /**
+         * Set the command to read.
+         * @param array    array holding the command
+         * @param position index of the command's first byte
+         * @param limit    index just past the command's last byte
+         */
+        void set(byte[] array, int position, int limit) {
+            this.array    = array;
+            this.position = position;
+            this.limit    = limit;
+        }
+
+        public int read() {
+            if (position >= limit) return -1;
+            return array[position++] & 0xff;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) return 0;
+            if (position >= limit) return -1;
+            len = Math.min(len, limit - position);
+            System.arraycopy(array, position, b, off, len);
+            position += len;
+            return len;
+        }
+
+        public int available() {
+            return limit - position;
+        }
+    }
+
+
+    /** This class is a stream of replies with access to the bytes written so far. */
+    static final class ReplyOutput extends ByteArrayOutputStream {
+
+        /** Constructor. */
+        ReplyOutput() {
+            super(256);
+        }
+
+        /**
+         * Get the array holding the replies.
+         * @return array holding the replies
+         */
+        byte[] array() {
+            return buf;
+        }
+    }
+
+
+    /**
+     *  Create a new ClientConnection object.
+     *  @param sys ET system object.
+     */
+    ClientConnection(SystemCreate sys) {
+        this.sys = sys;
+        config = sys.getConfig();
+        attachments = new ConcurrentHashMap<Integer, AttachmentLocal>(config.getAttachmentsMax() + 1);
+    }
+
+
+    /**
+     *  Create a new ClientConnection object which carries out some of the
+     *  tagged requests read by another and shares its attachments.
+     *  @param parent connection reading the user's requests
+     */
+    ClientConnection(ClientConnection parent) {
+        sys         = parent.sys;
+        config      = parent.config;
+        bit64       = parent.bit64;
+        tagged      = parent.tagged;
+        attachments = parent.attachments;
+    }
+
+
+    /**
+     * Does this connection carry out tagged requests, several at once,
+     * if the user asks it to? Connections that don't are talked to as usual.
+     * @return true if tagged requests are accepted
+     */
+    boolean acceptsTagged() {
+        return false;
+    }
+
+
+    /**
+     * Read the user's request to open the ET system and reply with this
+     * ET system's information.
+     *
+     * @return true if the user is trying to open this ET system, else false
+     * @throws IOException if communication with the user fails
+     */
+    boolean openSystem() throws IOException {
+        int endian = in.readInt();
+        int length = in.readInt();
+        int b64    = in.readInt();
+        bit64      = b64 == 1;
+        // features the user asks for (C users send 0)
+        long features = in.readLong();
+        tagged = (features & EtConstants.featureTagged) != 0 && acceptsTagged();
+
+        byte[] buf = new byte[length];
+        in.readFully(buf, 0, length);
+        String etName = new String(buf, 0, length - 1, "ASCII");
+
+        // see if the ET system that the client is
+        // trying to connect to is this one.
+        if (!etName.equals(sys.getName())) {
+            if (config.getDebug() >= EtConstants.debugError) {
+                System.out.println("Tcp Server: client trying to connect to " + etName);
+            }
+            // send error to client
+            out.writeInt(EtConstants.error);
+            out.flush();
+            return false;
+        }
+
+        // send ET system info back to client
+        out.writeInt(EtConstants.ok);
+        out.writeInt(EtConstants.endianBig);
+        out.writeInt(config.getNumEvents());
+        out.writeLong(config.getEventSize());
+        out.writeInt(EtConstants.version);
+        out.writeInt(EtConstants.stationSelectInts);
+        out.writeInt(EtConstants.langJava);
+        out.writeInt(EtConstants.bit64);
+        // tell client what this server understands beyond the C servers
+        out.writeInt(EtConstants.featureJavaData | (tagged ? EtConstants.featureTagged : 0));
+        out.flush();
+        return true;
+    }
+
+
+    /**
+     * Write an event's data to the user. Data with no backing array,
+     * as when the ET system keeps it off the heap, is copied through a buffer.
+     *
+     * @param ev     event whose data is written
+     * @param length number of bytes to write
+     * @param buffer array to copy data through
+     * @throws IOException if writing to the socket fails
+     */
+    void writeData(EtEventImpl ev, int length, byte[] buffer) throws IOException {
+        ByteBuffer data = ev.getDataBuffer();
+        if (data.hasArray()) {
+            out.write(data.array(), data.arrayOffset(), length);
+            return;
+        }
+
+        int bytes;
+        for (int offset = 0; offset < length; offset += bytes) {
+            bytes = Math.min(buffer.length, length - offset);
+            data.get(offset, buffer, 0, bytes);
+            out.write(buffer, 0, bytes);
+        }
+    }
+
+
+    /**
+     * Read an event's data from the user. Data with no backing array,
+     * as when the ET system keeps it off the heap, is copied through a buffer.
+     *
+     * @param ev     event whose data is read
+     * @param length number of bytes to read
+     * @param buffer array to copy data through
+     * @throws IOException if reading from the socket fails
+     */
+    void readData(EtEventImpl ev, int length, byte[] buffer) throws IOException {
+        ByteBuffer data = ev.getDataBuffer();
+        if (data.hasArray()) {
+            in.readFully(data.array(), data.arrayOffset(), length);
+            return;
+        }
+
+        int bytes;
+        for (int offset = 0; offset < length; offset += bytes) {
+            bytes = Math.min(buffer.length, length - offset);
+            in.readFully(buffer, 0, bytes);
+            data.put(offset, buffer, 0, bytes);
+        }
+    }
+
+
+    /**
+     * Write bytes to the user with a gathering write, after any replies already
+     * written to the output stream. The buffers must not be used once this returns.
+     *
+     * @param buffers buffers whose remaining bytes are written, in order
+     * @param length  number of buffers to write
+     * @throws IOException if writing to the socket fails
+     */
+    abstract void write(ByteBuffer[] buffers, int length) throws IOException;
+
+
+    /**
+     * Send events to the user: the number of events and their total size, then
+     * each event's header followed by its data. Data is handed to gathering writes
+     * straight from the events' own buffers instead of being copied into a buffer.
+     *
+     * @param evs    events to send
+     * @param modify how the user may modify the events
+     * @throws IOException if writing to the socket fails
+     */
+    void writeEvents(EtEventImpl[] evs, Modify modify) throws IOException {
+        final int selectInts = EtConstants.stationSelectInts;
+        final int headerSize = 36 + 4 * selectInts;
+
+        if (headers == null || headerViews.length < evs.length) {
+            int count = Math.max(evs.length, 16);
+            headers = ByteBuffer.allocateDirect(12 + count * headerSize);
+            headerViews = new ByteBuffer[count];
+            for (int i=0; i < count; i++) {
+                headers.limit(12 + (i + 1) * headerSize).position(i == 0 ? 0 : 12 + i * headerSize);
+                headerViews[i] = headers.slice();
+            }
+            headers.clear();
+            gather = new ByteBuffer[2 * count];
+        }
+
+        // the size the user expects is a little short of what's sent
+        long size = evs.length * 4L * (6 + selectInts);
+        for (EtEventImpl ev : evs) {
+            size += ev.getLength();
+        }
+        headers.putInt(0, evs.length);
+        headers.putLong(4, size);
+
+        int length, index, count = 0, heapBytes = 0;
+        for (int j=0; j < evs.length; j++) {
+            EtEventImpl ev = evs[j];
+            ev.setModify(modify);
+            length = ev.getLength();
+
+            index = 12 + j * headerSize;
+            headers.putLong(index, length);
+            headers.putLong(index + 8, ev.getMemSize());
+            headers.putInt(index + 16, ev.getPriority().getValue() |
+                                       ev.getDataStatus().getValue() << EtConstants.dataShift);
+            headers.putInt(index + 20, ev.getId());
+            headers.putInt(index + 24, 0);
+            headers.putInt(index + 28, ev.getRawByteOrder());
+            headers.putInt(index + 32, 0);
+            int[] control = ev.getControl();
+            for (int i=0; i < selectInts; i++) {
+                headers.putInt(index + 36 + 4*i, control[i]);
+            }
+
+            headerViews[j].clear();
+            gather[count++] = headerViews[j];
+            if (length > 0) {
+                // the event may be sent to other users at the same time, so use a view
+                ByteBuffer data = ev.getDataBuffer().duplicate();
+                data.limit(length).position(0);
+                gather[count++] = data;
+                if (!data.isDirect()) heapBytes += length;
+            }
+
+            if (heapBytes >= gatherHeapBytesMax) {
+                write(gather, count);
+                Arrays.fill(gather, 0, count, null);
+                count = heapBytes = 0;
+            }
+        }
+
+        if (count > 0) {
+            write(gather, count);
+            Arrays.fill(gather, 0, count, null);
+        }
+    }
+
+
+    /**
+     * Set an event from the header sent by the user when putting it. If the user
+     * made the event longer than its memory, more memory is borrowed for it.
+     *
+     * @param header buffer holding the header from index 0 on
+     * @return event the header belongs to
+     * @throws EtException if the event is too long for a java ET system
+     */
+    EtEventImpl readHeader(ByteBuffer header) throws EtException {
+        final int selectInts = EtConstants.stationSelectInts;
+
+        EtEventImpl ev = sys.getEvents()[header.getInt(0)];
+        // skip 4 bytes here
+
+        long len = header.getLong(8);
+        if (len > Integer.MAX_VALUE) {
+            throw new EtException("Event is too long for this (java) ET system");
+        }
+        ev.setLengthFromServer((int) len);
+
+        int priAndStat = header.getInt(16);
+        ev.setPriority(Priority.getPriority(priAndStat & EtConstants.priorityLevelMask));
+        ev.setDataStatus(DataStatus.getStatus((priAndStat & EtConstants.dataMask) >> EtConstants.dataShift));
+        ev.setRawByteOrder(header.getInt(20));
+        // last parameter is ignored
+
+        int[] control = new int[selectInts];
+        for (int i = 0; i < selectInts; i++) {
+            control[i] = header.getInt(28 + 4*i);
+        }
+        ev.setControl(control);
+
+        // If user increased data length beyond memSize, borrow more memory.
+        if (ev.getModify() == Modify.ANYTHING && ev.getLength() > ev.getMemSize()) {
+            sys.getBufferPool().lend(ev, ev.getLength());
+        }
+        return ev;
+    }
+
+
+    /**
+     * Read the header of each event put by the user followed by its data,
+     * which is only sent if the user may modify everything.
+     *
+     * @param evs array filled with the events put
+     * @throws EtException if an event is too long for a java ET system
+     * @throws IOException if reading from the socket fails
+     */
+    void readEvents(EtEventImpl[] evs) throws EtException, IOException {
+        if (paramsBuffer == null) {
+            paramsBuffer = ByteBuffer.wrap(params);
+        }
+
+        for (int j = 0; j < evs.length; j++) {
+            in.readFully(params, 0, putHeaderSize);
+            evs[j] = readHeader(paramsBuffer);
+            if (evs[j].getModify() == Modify.ANYTHING) {
+                readData(evs[j], evs[j].getLength(), buffer);
+            }
+        }
+    }
+
+
+    /**
+     * Get or make events for one of the commands which do so, in the given mode.
+     *
+     * @param command  netEvGet, netEvsGet, netEvNew, netEvsNew, or netEvsNewGrp
+     * @param att      attachment object
+     * @param mode     wait mode
+     * @param microSec time in microseconds to wait if timed wait mode
+     * @param count    number of events desired
+     * @param size     size of new events in bytes
+     * @param group    group number of new events for netEvsNewGrp
+     * @return array of events
+     *
+     * @throws EtException
+     *     if the group number is not meaningful
+     * @throws EtBusyException
+     *     if the mode is asynchronous and the list is being used
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and there are no events
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup
+     */
+    EtEventImpl[] callSystem(int command, AttachmentLocal att, int mode, int microSec,
+                             int count, int size, int group)
+            throws EtException, EtBusyException, EtEmptyException,
+                   EtTimeoutException, EtWakeUpException {
+
+        switch (command) {
+            case EtConstants.netEvGet:
+            case EtConstants.netEvsGet:
+                return sys.getEvents(att, mode, microSec, count);
+
+            case EtConstants.netEvNew:
+            case EtConstants.netEvsNew:
+                return sys.newEvents(att, mode, microSec, count, size);
+
+            default:
+                List<EtEventImpl> evList = sys.newEvents(att, mode, microSec, count, size, group);
+                return evList.toArray(new EtEventImpl[evList.size()]);
+        }
+    }
+
+
+    /**
+     * Get or make events for one of the commands which do so, waiting for them
+     * in the way the user asked, but checking now and then that the user is still there.
+     *
+     * @param command  netEvGet, netEvsGet, netEvNew, netEvsNew, or netEvsNewGrp
+     * @param att      attachment object
+     * @param mode     wait mode
+     * @param sec      seconds to wait if timed wait mode
+     * @param nsec     additional nanoseconds to wait if timed wait mode
+     * @param count    number of events desired
+     * @param size     size of new events in bytes
+     * @param group    group number of new events for netEvsNewGrp
+     * @return array of events, or null if there are none yet and the command is to
+     *         be carried out again when there are (never null for async mode)
+     *
+     * @throws EtException
+     *     if the group number is not meaningful, or the user broke protocol
+     * @throws EtBusyException
+     *     if the mode is asynchronous and the list is being used
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and there are no events
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup
+     * @throws IOException
+     *     if communication with the user fails
+     */
+    EtEventImpl[] waitForEvents(int command, AttachmentLocal att, int mode,
+                                int sec, int nsec, int count, int size, int group)
+            throws EtException, EtBusyException, EtEmptyException,
+                   EtTimeoutException, EtWakeUpException, IOException {
+
+        if (mode == EtConstants.timed) {
+            // If we've been told to wake up, do so.
+            if (att.isWakeUp()) {
+                att.setWakeUp(false);
+                throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+            }
+            int uSec = sec * 1000000 + nsec / 1000;
+            return callSystem(command, att, mode, uSec, count, size, group);
+        }
+        else if (mode == EtConstants.sleep) {
+            // NOTE: currently the sleep mode on the client side is implemented
+            // with timed waits because otherwise the client sleeps inside
+            // of synchronized code, blocking all other API calls that talk
+            // over the network. Thus the following comment and accompanying
+            // code are irrelevant.
+
+            // There's a problem if we have a remote client that is waiting
+            // for another event by sleeping and the events stop flowing. In
+            // that case, the client can be killed and the ET system does NOT
+            // know about it. Since this thread will be stuck in "getEvents",
+            // it will not immediately detect the break in the socket - at least
+            // not until events start flowing again. To circumvent this, implement
+            // "sleep" by repeats of "timed" every few seconds to allow
+            // detection of broken socket between calls to "getEvents".
+
+            // Store the fact we're trying to sleep - necessary when
+            // told to wake up.
+            att.setSleepMode(true);
+
+            while (true) {
+                // try a 4 second wait for events
+                try {
+                    if (att.isWakeUp()) {
+                        att.setWakeUp(false);
+                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+                    }
+                    EtEventImpl[] evs = callSystem(command, att, EtConstants.timed, 4000000,
+                                                   count, size, group);
+                    // no longer in sleep mode
+                    att.setSleepMode(false);
+                    // may have been told to wake up between last 2 statements.
+                    att.setWakeUp(false);
+                    return evs;
+                }
+                // if timeout, check socket to see if still open
+                catch (EtTimeoutException tx) {
+                    try {
+                        checkConnection();
+                    }
+                    catch (EtException ex) {
+                        att.setSleepMode(false);
+                        throw ex;
+                    }
+                }
+            }
+        }
+
+        return callSystem(command, att, mode, 0, count, size, group);
+    }
+
+
+    /**
+     * Check, while waiting a long time for events, that the user is still there.
+     * Waits up to the socket's read timeout for the user to send something.
+     *
+     * @throws EtException if the user sent something, breaking protocol
+     * @throws IOException if the connection to the user is broken
+     */
+    void checkConnection() throws EtException, IOException {
+        try {
+            // 1/2 second max delay on read
+            in.readInt();
+            // should never be able to get here
+            throw new EtException("communication protocol error");
+        }
+        // if there's an interrupted ex, socket is OK
+        catch (InterruptedIOException ex) { }
+    }
+
+
+    /**
+     * Called after the user makes a new attachment,
+     * before it is ever used to get events.
+     * @param att new attachment
+     */
+    void attached(AttachmentLocal att) {
+    }
+
+
+    /**
+     * Detach all the attachments this client made. Used when the client
+     * closes the connection, or has crashed and will not be asking for or
+     * processing any more events.
+     */
+    void detachAll() {
+        for (Entry<Integer, AttachmentLocal> entry : attachments.entrySet()) {
+            //System.out.println("Detaching from attachment key = " + entry.getKey());
+            sys.detach(entry.getValue());
+        }
+        attachments.clear();
+    }
+
+
+    /**
+     * Push events to the user as they arrive at the attachment's station, for
+     * {@link EtConstants#netEvsSubscribe}, and reply whether that was done.
+     * Only connections carrying out tagged requests can push events, so this
+     * replies with an error.
+     *
+     * @param att       attachment whose events are pushed, null if unknown
+     * @param tag       tag preceding each push of events
+     * @param modify    how the user may modify the events, null if not valid
+     * @param maxEvents most events pushed but not yet put back
+     * @param maxBytes  no more events are pushed while this many bytes or more
+     *                  are pushed but not yet put back
+     * @throws IOException if communication with the user fails
+     */
+    void subscribe(AttachmentLocal att, int tag, Modify modify, int maxEvents, long maxBytes)
+            throws IOException {
+        out.writeInt(EtConstants.error);
+        out.flush();
+    }
+
+
+    /**
+     * Stop pushing the attachment's events, for {@link EtConstants#netEvsUnsubscribe},
+     * and reply once no more will be pushed. This replies with an error as events
+     * are never pushed over this connection.
+     *
+     * @param att attachment whose events are pushed, null if unknown
+     * @throws IOException if communication with the user fails
+     */
+    void unsubscribe(AttachmentLocal att) throws IOException {
+        out.writeInt(EtConstants.error);
+        out.flush();
+    }
+
+
+    /**
+     * Called when the user puts or dumps events, just before they leave the attachment.
+     * @param att attachment the events belong to, null if unknown
+     * @param evs events put or dumped
+     */
+    void returned(AttachmentLocal att, EtEventImpl[] evs) {
+    }
+
+
+    /**
+     * Carry out one command from the user. The command's parameters are read from
+     * {@link #in} and the reply is written to {@link #out}.
+     *
+     * @param command command from the user
+     * @return {@link #commandDone}, {@link #commandWaiting} if events for the command
+     *         have not yet arrived and nothing has been read or written that can't be
+     *         read or written again, or {@link #commandClose} if the user closed the connection
+     *
+     * @throws EtReadException if the command is bad
+     * @throws EtException     if the command's parameters are bad
+     * @throws IOException     if communication with the user fails
+     */
+    int processCommand(int command) throws EtReadException, EtException, IOException {
+
+        // for efficiency, keep local copy of constants
+        final int selectInts   = EtConstants.stationSelectInts;
+        final int dataShift    = EtConstants.dataShift;
+        final int priorityMask = EtConstants.priorityLevelMask;
+        final int dataMask     = EtConstants.dataMask;
+        final int modify       = EtConstants.modify;
+        final int ok           = EtConstants.ok;
+
+        EtEventImpl[] evs = null;
+
+        // Since there are so many commands, break up things up a bit,
+        // start off with commands for local clients for use in Linux
+        // or other non-mutex sharing operating systems.
+
+        if (command < EtConstants.netEvGet) {
+            // No local Linux stuff in Java implementation
+            if (config.getDebug() >= EtConstants.debugError) {
+                System.out.println("No Java support for local Linux");
+            }
+            throw new EtReadException("No Java support for local Linux");
+        }
+
+        else if (command < EtConstants.netAlive) {
+
+            switch (command) {
+
+                case EtConstants.netEvGet: {
+                    in.readFully(params, 0, 20);
+                    int err = ok;
+                    int attId = EtUtils.bytesToInt(params, 0);
+                    int mode  = EtUtils.bytesToInt(params, 4);
+                    int mod   = EtUtils.bytesToInt(params, 8);
+                    int sec   = EtUtils.bytesToInt(params, 12);
+                    int nsec  = EtUtils.bytesToInt(params, 16);
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    try {
+                        evs = waitForEvents(command, att, mode, sec, nsec, 1, 0, 0);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+                    catch (EtBusyException ex) {
+                        err = EtConstants.errorBusy;
+                    }
+                    catch (EtEmptyException ex) {
+                        err = EtConstants.errorEmpty;
+                    }
+                    catch (EtWakeUpException ex) {
+                        err = EtConstants.errorWakeUp;
+                        att.setSleepMode(false);
+                    }
+                    catch (EtTimeoutException ex) {
+                        err = EtConstants.errorTimeout;
+                    }
+
+                    // events have not arrived yet, so try again later
+                    if (err == ok && evs == null) {
+                        return commandWaiting;
+                    }
+
+                    if (err != ok) {
+                        out.writeInt(err);
+                        out.flush();
+                        break;
+                    }
+
+                    EtEventImpl ev = evs[0];
+
+                    // handle buffering by hand
+                    byte[] buf = new byte[4 * (10 + selectInts) + ev.getLength()];
+
+                    // first send error
+                    EtUtils.intToBytes(err, buf, 0);
+                    EtUtils.longToBytes((long)ev.getLength(),  buf,  4);
+                    EtUtils.longToBytes((long)ev.getMemSize(), buf, 12);
+                    EtUtils.intToBytes(ev.getPriority().getValue() |
+                                       ev.getDataStatus().getValue() << dataShift, buf, 20);
+                    EtUtils.intToBytes(ev.getId(), buf, 24);  // skip 4 bytes here
+                    EtUtils.intToBytes(ev.getRawByteOrder(), buf, 32);
+                    // arrays are initialized to zero so skip 0 values elements
+                    int index = 36;
+                    int[] control = ev.getControl();
+                    for (int i = 0; i < selectInts; i++) {
+                        EtUtils.intToBytes(control[i], buf, index += 4);
+                    }
+                    ev.copyDataTo(buf, index += 4, ev.getLength());
+
+                    out.write(buf);
+                    out.flush();
+
+                    ev.setModify(Modify.getModify(mod));
+                    if (mod == 0) {
+                        sys.putEvents(att, evs);
+                    }
+                    evs = null;
+                }
+                break;
+
+
+                case EtConstants.netEvsGet: {
+                    in.readFully(params, 0, 24);
+                    int err = ok;
+                    int attId = EtUtils.bytesToInt(params,  0);
+                    int mode  = EtUtils.bytesToInt(params,  4);
+                    int mod   = EtUtils.bytesToInt(params,  8);
+                    int count = EtUtils.bytesToInt(params, 12);
+                    int sec   = EtUtils.bytesToInt(params, 16);
+                    int nsec  = EtUtils.bytesToInt(params, 20);
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    try {
+                        evs = waitForEvents(command, att, mode, sec, nsec, count, 0, 0);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+                    catch (EtBusyException ex) {
+                        err = EtConstants.errorBusy;
+                    }
+                    catch (EtEmptyException ex) {
+                        err = EtConstants.errorEmpty;
+                    }
+                    catch (EtWakeUpException ex) {
+                        err = EtConstants.errorWakeUp;
+                        att.setSleepMode(false);
+                    }
+                    catch (EtTimeoutException ex) {
+                        err = EtConstants.errorTimeout;
+                    }
+
+                    // events have not arrived yet, so try again later
+                    if (err == ok && evs == null) {
+                        return commandWaiting;
+                    }
+
+                    if (err != ok) {
+                        out.writeInt(err);
+                        out.flush();
+                        break;
+                    }
+/*
+                  // use buffered output
+                  // first send number of events
+                  out.writeInt(evs.length);
+                  int size = evs.length * 4 * (6 + selectInts);
+                  for (int j = 0; j < evs.length; j++) {
+                      size += evs[j].length;
+                  }
+                  out.writeInt(size);
+                  for (int j = 0; j < evs.length; j++) {
+                      evs[j].modify = mod;
+                      out.writeInt(evs[j].length);
+                      out.writeInt(evs[j].memSize);
+                      out.writeInt(evs[j].priority | evs[j].dataStatus << dataShift);
+                      out.writeInt(evs[j].id);
+                      out.writeInt(evs[j].byteOrder);
+                      out.writeInt(0);
+                      for (int i = 0; i < selectInts; i++) {
+                          out.writeInt(evs[j].control[i]);
+                      }
+                      out.write(evs[j].data, 0, evs[j].length);
+                  }
+                  out.flush();
+*/
+                    // headers, and data straight from the events, in gathering writes
+                    writeEvents(evs, Modify.getModify(mod));
+
+                    if (mod == 0) {
+                        sys.putEvents(att, evs);
+                    }
+                    evs = null;
+                }
+                break;
+
+
+                case EtConstants.netEvPut: {
+                    in.readFully(params, 0, 4);
+                    int attId = EtUtils.bytesToInt(params, 0);
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    EtEventImpl[] evArray = new EtEventImpl[1];
+                    readEvents(evArray);
+
+                    returned(att, evArray);
+                    sys.putEvents(att, evArray);
+
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netEvsPut: {
+                    in.readFully(params, 0, 16);
+                    int attId           = EtUtils.bytesToInt(params, 0);
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+                    int numEvents       = EtUtils.bytesToInt(params,  4);
+                    long size           = EtUtils.bytesToLong(params, 8);
+
+                    evs = new EtEventImpl[numEvents];
+                    readEvents(evs);
+                    returned(att, evs);
+                    sys.putEvents(att, evs);
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netEvNew: {
+                    in.readFully(params, 0, 24);
+                    int  err = ok;
+                    int  attId = EtUtils.bytesToInt(params,  0);
+                    int  mode  = EtUtils.bytesToInt(params,  4);
+                    long size  = EtUtils.bytesToLong(params, 8);
+                    int  sec   = EtUtils.bytesToInt(params, 16);
+                    int  nsec  = EtUtils.bytesToInt(params, 20);
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    if (bit64 && size > Integer.MAX_VALUE/5) {
+                        out.writeInt(EtConstants.errorTooBig);
+                        out.writeLong(0L);
+                        break;
+                    }
+
+                    try {
+                        evs = waitForEvents(command, att, mode, sec, nsec, 1, (int)size, 0);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+                    catch (EtBusyException ex) {
+                        err = EtConstants.errorBusy;
+                    }
+                    catch (EtEmptyException ex) {
+                        err = EtConstants.errorEmpty;
+                    }
+                    catch (EtWakeUpException ex) {
+                        err = EtConstants.errorWakeUp;
+                        att.setSleepMode(false);
+                    }
+                    catch (EtTimeoutException ex) {
+                        err = EtConstants.errorTimeout;
+                    }
+
+                    // events have not arrived yet, so try again later
+                    if (err == ok && evs == null) {
+                        return commandWaiting;
+                    }
+
+                    if (err != ok) {
+                        out.writeInt(err);
+                        out.writeLong(0);
+                        out.flush();
+                        break;
+                    }
+
+                    evs[0].setModify(Modify.ANYTHING);
+
+                    out.writeInt(err);
+                    out.writeInt(evs[0].getId());
+                    out.writeInt(0); // unused
+                    out.flush();
+                    evs = null;
+                }
+                break;
+
+
+                case EtConstants.netEvsNew: {
+                    in.readFully(params, 0, 28);
+                    int err = ok;
+                    int  attId = EtUtils.bytesToInt(params,  0);
+                    int  mode  = EtUtils.bytesToInt(params,  4);
+                    long size  = EtUtils.bytesToLong(params, 8);
+                    int  count = EtUtils.bytesToInt(params, 16);
+                    int  sec   = EtUtils.bytesToInt(params, 20);
+                    int  nsec  = EtUtils.bytesToInt(params, 24);
+
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    if (bit64 && count*size > Integer.MAX_VALUE/5) {
+                        out.writeInt(EtConstants.errorTooBig);
+                        break;
+                    }
+
+                    try {
+                        evs = waitForEvents(command, att, mode, sec, nsec, count, (int)size, 0);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+                    catch (EtBusyException ex) {
+                        err = EtConstants.errorBusy;
+                    }
+                    catch (EtEmptyException ex) {
+                        err = EtConstants.errorEmpty;
+                    }
+                    catch (EtWakeUpException ex) {
+                        err = EtConstants.errorWakeUp;
+                        att.setSleepMode(false);
+                    }
+                    catch (EtTimeoutException ex) {
+                        err = EtConstants.errorTimeout;
+                    }
+
+                    // events have not arrived yet, so try again later
+                    if (err == ok && evs == null) {
+                        return commandWaiting;
+                    }
+
+                    if (err != ok) {
+                        out.writeInt(err);
+                        out.flush();
+                        break;
+                    }
+
+                    // handle buffering by hand
+                    int index = 0;
+                    byte[] buf = new byte[4 + 4 * evs.length];
+
+                    // first send number of events
+                    EtUtils.intToBytes(evs.length, buf, 0);
+                    for (EtEventImpl ev : evs) {
+                        ev.setModify(Modify.ANYTHING);
+                        EtUtils.intToBytes(ev.getId(), buf, index += 4);
+                    }
+                    out.write(buf);
+                    out.flush();
+
+                    evs = null;
+                }
+                break;
+
+
+                case EtConstants.netEvDump: {
+                    int  attId = in.readInt();
+                    int  id    = in.readInt();
+
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+                    EtEventImpl ev = sys.getEvents()[id];
+                    EtEventImpl[] evArray = new EtEventImpl[1];
+                    evArray[0] = ev;
+                    returned(att, evArray);
+                    sys.dumpEvents(att, evArray);
+
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netEvsDump: {
+                    int attId     = in.readInt();
+                    int numEvents = in.readInt();
+                    evs = new EtEventImpl[numEvents];
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    int id;
+                    byte[] buf = new byte[4 * numEvents];
+                    in.readFully(buf, 0, 4 * numEvents);
+                    int index = -4;
+
+                    for (int j = 0; j < numEvents; j++) {
+                        id = EtUtils.bytesToInt(buf, index += 4);
+                        evs[j] = sys.getEvents()[id];
+                    }
+
+                    returned(att, evs);
+                    sys.dumpEvents(att, evs);
+
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netEvsNewGrp: {
+                    in.readFully(params, 0, 32);
+                    int err = ok;
+                    int  attId = EtUtils.bytesToInt(params,  0);
+                    int  mode  = EtUtils.bytesToInt(params,  4);
+                    long size  = EtUtils.bytesToLong(params, 8);
+                    int  count = EtUtils.bytesToInt(params, 16);
+                    int  group = EtUtils.bytesToInt(params, 20);
+                    int  sec   = EtUtils.bytesToInt(params, 24);
+                    int  nsec  = EtUtils.bytesToInt(params, 28);
+
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    if (bit64 && count*size > Integer.MAX_VALUE/5) {
+                        out.writeInt(EtConstants.errorTooBig);
+                        break;
+                    }
+
+                    try {
+                        evs = waitForEvents(command, att, mode, sec, nsec, count, (int)size, group);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+                    catch (EtBusyException ex) {
+                        err = EtConstants.errorBusy;
+                    }
+                    catch (EtEmptyException ex) {
+                        err = EtConstants.errorEmpty;
+                    }
+                    catch (EtWakeUpException ex) {
+                        err = EtConstants.errorWakeUp;
+                        att.setSleepMode(false);
+                    }
+                    catch (EtTimeoutException ex) {
+                        err = EtConstants.errorTimeout;
+                    }
+
+                    // events have not arrived yet, so try again later
+                    if (err == ok && evs == null) {
+                        return commandWaiting;
+                    }
+
+                    if (err != ok) {
+                        out.writeInt(err);
+                        out.flush();
+                        break;
+                    }
+
+                    // handle buffering by hand
+                    int index = 0;
+                    byte[] buf = new byte[4 + 4 * evs.length];
+
+                    // first send number of events
+                    EtUtils.intToBytes(evs.length, buf, 0);
+                    for (EtEventImpl ev : evs) {
+                        ev.setModify(Modify.ANYTHING);
+                        EtUtils.intToBytes(ev.getId(), buf, index += 4);
+                    }
+                    out.write(buf);
+                    out.flush();
+                }
+                break;
+
+
+                default:
+                    break;
+            } // switch(command)
+        }   // if (command < Constants.netAlive)
+
+
+        else if (command < EtConstants.netStatGAtts) {
+            switch (command) {
+                case EtConstants.netAlive: {
+                    // we must be alive by definition as this is in the ET process
+                    out.writeInt(1);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netWait: {
+                    // We are alive by definition and in Java there is no
+                    // routine comparable to et_wait_for_alive(). This is
+                    // to talk to "C" ET systems.
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netClose:
+                case EtConstants.netFClose: {
+                    // Client does not listen for a response
+                    //out.writeInt(ok);
+
+                    // detach all attachments
+                    detachAll();
+                    if (config.getDebug() >= EtConstants.debugInfo) {
+                        java.lang.System.out.println("commandLoop: remote client closing");
+                    }
+                    return commandClose;
+                }
+                // break;
+
+
+                case EtConstants.netKill: {
+                    if (config.getDebug() >= EtConstants.debugInfo) {
+                        System.out.println("commandLoop: got command to kill this ET");
+                    }
+                    System.exit(-1);
+                }
+
+
+                case EtConstants.netWakeAtt: {
+                    int attId = in.readInt();
+                    // look locally for attachments
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+                    if (att != null) {
+                        att.getStation().getInputList().wakeUp(att);
+                        // UPDATE: the client side, when talking over sockets, also
+                        // implements SLEEP mode as a series of TIMED mode calls.
+                        // Thus the wake up must be set for them as well.
+                        //if (att.isSleepMode()) {
+                        att.setWakeUp(true);
+                        //}
+                    }
+                }
+                break;
+
+
+                case EtConstants.netWakeAll: {
+                    int statId = in.readInt();
+                    // Stations are stored in a linked list. Find one w/ this id.
+                    synchronized (sys.getStationLock()) {
+                        for (StationLocal stat : sys.getStations()) {
+                            if (stat.getStationId() == statId) {
+                                // Since attachments which sleep when getting events don't
+                                // really sleep (here on server side) but do a timed wait,
+                                // they occasionally are
+                                // not in a get method but are checking the status of the
+                                // tcp connection. This means they don't know to wake up.
+                                // Solve this problem by setting all the station's
+                                // attachment's wake up flags, so that the next call to
+                                // getEvents will make them all wake up.
+
+                                // UPDATE: the client side, when talking over sockets, also
+                                // implements SLEEP mode as a series of TIMED mode calls.
+                                // Thus the wake up must be set for them as well.
+                                for (AttachmentLocal att : stat.getAttachments()) {
+                                //    if (att.isSleepMode()) {
+                                    att.setWakeUp(true);
+                                //    }
+                                }
+
+                                stat.getInputList().wakeUpAll();
+                                break;
+                            }
+                        }
+                    }
+                }
+                break;
+
+
+                case EtConstants.netStatAtt: {
+                    int err = ok;
+                    int statId   = in.readInt();
+                    int pid      = in.readInt();
+                    int length   = in.readInt();
+                    int ipLength = in.readInt();
+                    String host = null, ipAddr = null;
+                    AttachmentLocal att = null;
+
+                    if (length > 0) {
+                        byte buf[] = new byte[length];
+                        in.readFully(buf, 0, length);
+                        host = new String(buf, 0, length - 1, "ASCII");
+                    }
+
+                    if (ipLength > 0) {
+                        byte buf[] = new byte[ipLength];
+                        in.readFully(buf, 0, ipLength);
+                        ipAddr = new String(buf, 0, ipLength - 1, "ASCII");
+                    }
+
+                    try {
+                        att = sys.attach(statId);
+                        att.setPid(pid);
+                        if (length > 0) {
+                            att.setHost(host);
+                        }
+                        if (ipLength > 0) {
+                            att.setIpAddress(ipAddr);
+                        }
+                        // keep track of all attachments locally
+                        attachments.put(att.getId(), att);
+                        attached(att);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+                    catch (EtTooManyException ex) {
+                        err = EtConstants.errorTooMany;
+                    }
+
+                    out.writeInt(err);
+                    if (err == ok) {
+                        out.writeInt(att.getId());
+                    }
+                    else {
+                        out.writeInt(0);
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatDet: {
+                    int attId = in.readInt();
+                    AttachmentLocal att = attachments.get(new Integer(attId));
+
+                    sys.detach(att);
+
+                    // keep track of all detachments locally
+                    attachments.remove(att.getId());
+                    out.writeInt(ok);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatCrAt: {
+                    int err = ok;
+                    StationLocal stat = null;
+                    EtStationConfig statConfig = new EtStationConfig();
+
+                    // read in station config info
+                    int init = in.readInt(); // not used in Java
+                    statConfig.setFlowMode(in.readInt());
+                    statConfig.setUserMode(in.readInt());
+                    statConfig.setRestoreMode(in.readInt());
+                    statConfig.setBlockMode(in.readInt());
+                    statConfig.setPrescale(in.readInt());
+                    statConfig.setCue(in.readInt());
+                    statConfig.setSelectMode(in.readInt());
+                    int[] select = new int[EtConstants.stationSelectInts];
+                    for (int i = 0; i < EtConstants.stationSelectInts; i++) {
+                        select[i] = in.readInt();
+                    }
+                    statConfig.setSelect(select);
+
+                    // If both a function name and library name are sent,
+                    // the user thinks he's talking to a C system when
+                    // it's really a Java java.lang.System. If only a single name
+                    // (class) is supplied, the user knows what he's doing.
+                    int lengthFunc       = in.readInt();
+                    int lengthLib        = in.readInt();
+                    int lengthClass      = in.readInt();
+                    int lengthName       = in.readInt();
+                    int position         = in.readInt();
+                    int parallelPosition = in.readInt();
+
+                    int length = (lengthClass > lengthLib) ? lengthClass : lengthLib;
+                    length = (length > lengthFunc) ? length : lengthFunc;
+                    length = (length > lengthName) ? length : lengthName;
+                    byte[] buf = new byte[length];
+
+                    if (lengthFunc > 0) {
+                        in.readFully(buf, 0, lengthFunc);
+                        statConfig.setSelectFunction(new String(buf, 0, lengthFunc - 1, "ASCII"));
+                    }
+                    if (lengthLib > 0) {
+                        in.readFully(buf, 0, lengthLib);
+                        statConfig.setSelectLibrary(new String(buf, 0, lengthLib - 1, "ASCII"));
+                    }
+                    if (lengthClass > 0) {
+                        in.readFully(buf, 0, lengthClass);
+                        statConfig.setSelectClass(new String(buf, 0, lengthClass - 1, "ASCII"));
+                    }
+
+                    in.readFully(buf, 0, lengthName);
+                    String name = new String(buf, 0, lengthName - 1, "ASCII");
+
+                    try {
+                        stat = sys.createStation(statConfig, name, position, parallelPosition);
+                    }
+                    catch (EtTooManyException ex) {
+                        err = EtConstants.errorTooMany;
+                    }
+                    catch (EtExistsException ex) {
+                        err = EtConstants.errorExists;
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    if (err != ok) {
+                        out.writeInt(0);
+                    }
+                    else {
+                        out.writeInt(stat.getStationId());
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatRm: {
+                    int err = ok;
+                    int statId = in.readInt();
+
+                    try {
+                        sys.removeStation(statId);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    out.flush();
+                }
+                break;
+
+                case EtConstants.netStatSPos: {
+                    int err = ok;
+                    int statId = in.readInt();
+                    int position = in.readInt();
+                    int pposition = in.readInt();
+
+                    try {
+                        sys.setStationPosition(statId, position, pposition);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatGPos: {
+                    int position = -1, pPosition = 0;
+                    int err = ok;
+                    int statId = in.readInt();
+
+                    try {
+                        position  = sys.getStationPosition(statId);
+                        pPosition = sys.getStationParallelPosition(statId);
+                    }
+                    catch (EtException ex) {
+                        err = EtConstants.error;
+                    }
+
+                    out.writeInt(err);
+                    out.writeInt(position);
+                    out.writeInt(pPosition);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatIsAt: {
+                    int attached; // not attached by default
+                    int statId = in.readInt();
+                    int attId = in.readInt();
+
+                    try {
+                        attached = sys.stationAttached(statId, attId) ? 1 : 0;
+                    }
+                    catch (EtException ex) {
+                        attached = EtConstants.error;
+                    }
+
+                    out.writeInt(attached);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatEx: {
+                    boolean exists = true;
+                    int statId = 0;
+                    int length = in.readInt();
+                    byte[] buf = new byte[length];
+                    in.readFully(buf, 0, length);
+                    String name = new String(buf, 0, length - 1, "ASCII");
+
+                    // in equivalent "C" function, station id is also returned
+                    try {
+                        statId = sys.stationNameToObject(name).getStationId();
+                    }
+                    catch (EtException ex) {
+                        exists = false;
+                    }
+
+                    out.writeInt(exists ? 1 : 0);
+                    out.writeInt(statId);
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatSSw: {
+                    StationLocal stat = null;
+                    int[] select = new int[selectInts];
+                    int statId = in.readInt();
+
+                    for (int i = 0; i < selectInts; i++) {
+                        select[i] = in.readInt();
+                    }
+
+                    try {
+                        stat = sys.stationIdToObject(statId);
+                    }
+                    catch (EtException ex) {
+                    }
+
+                    if (stat != null) {
+                        stat.setSelectWords(select);
+                        out.writeInt(ok);
+                    }
+                    else {
+                        out.writeInt(EtConstants.error);
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatGSw: {
+                    int statId = in.readInt();
+                    StationLocal stat = null;
+
+                    try {
+                        stat = sys.stationIdToObject(statId);
+                    }
+                    catch (EtException ex) {
+                    }
+
+                    if (stat != null) {
+                        out.writeInt(ok);
+                        int[] select = stat.getConfig().getSelect();
+                        for (int i = 0; i < selectInts; i++) {
+                            out.writeInt(select[i]);
+                        }
+                    }
+                    else {
+                        out.writeInt(EtConstants.error);
+                    }
+                    out.flush();
+                }
+                break;
+
+
+                case EtConstants.netStatFunc:
+                case EtConstants.netStatLib:
+                case EtConstants.netStatClass: {
+                    int statId = in.readInt();
+                    StationLocal stat;
+
+                    try {
+                        stat = sys.stationIdToObject(statId);
+                        String returnString;
+                        if (command == EtConstants.netStatFunc) {
+                            returnString = stat.getConfig().getSelectFunction();
+                        }
+                        else if (command == EtConstants.netStatLib) {
+                            returnString = stat.getConfig().getSelectLibrary();
+                        }
+                        else {
+                            returnString = stat.getConfig().getSelectClass();
+                        }
+
+                        if (returnString == null) {
+                            out.writeInt(EtConstants.error);
+                            out.writeInt(0);
+                        }
+                        else {
+                            out.writeInt(ok);
+                            out.writeInt(returnString.length() + 1);
+                            try {
+                                out.write(returnString.getBytes("ASCII"));
+                            }
+                            catch (UnsupportedEncodingException ex) {
+                            }
+                            out.writeByte(0); // C null terminator
+                        }
+                    }
+                    catch (EtException ex) {
+                        out.writeInt(EtConstants.error);
+                        out.writeInt(-1);
+                    }
+
+                    out.flush();
+
+                }
+                break;
+
+
+                default :
+                    ;
+            } // switch(command)
+        }   // if (command < Constants.netStatGAtts)
+
+        // the following commands get values associated with stations
+        else if (command < EtConstants.netStatSBlock) {
+            int val = 0;
+            int statId = in.readInt();
+
+            StationLocal stat = null;
+            try {
+                stat = sys.stationIdToObject(statId);
+            }
+            catch (EtException ex) {
+            }
+
+            if (stat == null) {
+                out.writeInt(EtConstants.error);
+            }
+            else {
+                if (command == EtConstants.netStatGAtts) {
+                    synchronized (sys.getStationLock()) {
+                        val = stat.getAttachments().size();
+                    }
+                }
+                else if (command == EtConstants.netStatStatus)
+                    val = stat.getStatus();
+                else if (command == EtConstants.netStatInCnt) {
+                    synchronized (stat.getInputList()) {
+                        val = stat.getInputList().getCount();
+                    }
+                }
+                else if (command == EtConstants.netStatOutCnt) {
+                    synchronized (stat.getOutputList()) {
+                        val = stat.getOutputList().getCount();
+                    }
+                }
+                else if (command == EtConstants.netStatGBlock)
+                    val = stat.getConfig().getBlockMode();
+                else if (command == EtConstants.netStatGUser)
+                    val = stat.getConfig().getUserMode();
+                else if (command == EtConstants.netStatGRestore)
+                    val = stat.getConfig().getRestoreMode();
+                else if (command == EtConstants.netStatGPre)
+                    val = stat.getConfig().getPrescale();
+                else if (command == EtConstants.netStatGCue)
+                    val = stat.getConfig().getCue();
+                else if (command == EtConstants.netStatGSelect)
+                    val = stat.getConfig().getSelectMode();
+                else {
+                    if (config.getDebug() >= EtConstants.debugError) {
+                        java.lang.System.out.println("commandLoop: bad command value");
+                    }
+                    throw new EtReadException("bad command value");
+                }
+                out.writeInt(ok);
+            }
+            out.writeInt(val);
+            out.flush();
+        }
+
+        // the following commands set values associated with stations
+        else if (command < EtConstants.netAttPut) {
+            int statId = in.readInt();
+            int val = in.readInt();
+
+            StationLocal stat = null;
+            try {
+                stat = sys.stationIdToObject(statId);
+            }
+            catch (EtException ex) {
+            }
+
+            if (stat == null) {
+                out.writeInt(EtConstants.error);
+            }
+            else {
+                if (command == EtConstants.netStatSBlock)
+                    stat.setBlockMode(val);
+                else if (command == EtConstants.netStatSUser)
+                    stat.setUserMode(val);
+                else if (command == EtConstants.netStatSRestore)
+                    stat.setRestoreMode(val);
+                else if (command == EtConstants.netStatSPre)
+                    stat.setPrescale(val);
+                else if (command == EtConstants.netStatSCue)
+                    stat.setCue(val);
+                else {
+                    if (config.getDebug() >= EtConstants.debugError) {
+                        java.lang.System.out.println("commandLoop: bad command value");
+                    }
+                    throw new EtReadException("bad command value");
+                }
+                out.writeInt(ok);
+            }
+            out.flush();
+        }
+
+        // the following commands get values associated with attachments
+        else if (command < EtConstants.netSysTmp) {
+            int attId = in.readInt();
+            // look locally for attachments
+            AttachmentLocal att = attachments.get(new Integer(attId));
+            if (att == null) {
+                out.writeInt(EtConstants.error);
+                out.writeLong(0);
+            }
+            else {
+                out.writeInt(ok);
+                if (command == EtConstants.netAttPut)
+                    out.writeLong(att.getEventsPut());
+                else if (command == EtConstants.netAttGet)
+                    out.writeLong(att.getEventsGet());
+                else if (command == EtConstants.netAttDump)
+                    out.writeLong(att.getEventsDump());
+                else if (command == EtConstants.netAttMake)
+                    out.writeLong(att.getEventsMake());
+            }
+            out.flush();
+        }
+
+        // the following commands get values associated with the system
+        else if (command <= EtConstants.netSysGrp) {
+            int val;
+
+            if (command == EtConstants.netSysTmp)
+                val = 0; // no temps (or all temps) by definition
+            else if (command == EtConstants.netSysTmpMax)
+                val = 0; // no max # of temps
+            else if (command == EtConstants.netSysStat) {
+                synchronized (sys.getStationLock()) {
+                    val = sys.getStations().size(); // # stations active or idle
+                }
+            }
+            else if (command == EtConstants.netSysStatMax)
+                val = sys.getConfig().getStationsMax(); // max # stations allowed
+            else if (command == EtConstants.netSysProc)
+                val = 0; // no processes since no shared memory
+            else if (command == EtConstants.netSysProcMax)
+                val = 0; // no max # of processes since no shared memory
+            else if (command == EtConstants.netSysAtt) {
+                synchronized (sys.getSystemLock()) {
+                    val = sys.getAttachments().size(); // # attachments
+                }
+            }
+            else if (command == EtConstants.netSysAttMax)
+                val = sys.getConfig().getAttachmentsMax(); // max # attachments allowed
+            else if (command == EtConstants.netSysHBeat)
+                val = 0; // no heartbeat since no shared mem
+            else if (command == EtConstants.netSysPid) {
+                val = -1; // no pids in Java
+            }
+            else if (command == EtConstants.netSysGrp) {
+                val = sys.getConfig().getGroups().length; // number of groups
+            }
+            else {
+                if (config.getDebug() >= EtConstants.debugError) {
+                    java.lang.System.out.println("commandLoop: bad command value");
+                }
+                throw new EtReadException("bad command value");
+            }
+
+            out.writeInt(ok);
+            out.writeInt(val);
+            out.flush();
+        }
+
+
+        else if (command <= EtConstants.netSysJavaData) {
+            // command to distribute data about this ET system over the network
+            if (command == EtConstants.netSysData) {
+                // allow only 1 thread at a time a crack at updating information
+                synchronized (sys.getInfoArray()) {
+                    int err = sys.gatherSystemData();
+                    out.writeInt(err);
+                    if (err == ok) {
+                        // Send data + int holding data size
+                        out.write(sys.getInfoArray(), 0, sys.getDataLength() + 4);
+                    }
+                }
+                out.flush();
+            }
+
+            // send histogram data
+            else if (command == EtConstants.netSysHist) {
+                // not supported under Java (yet)
+                out.writeInt(EtConstants.error);
+                out.flush();
+            }
+
+            // send group data
+            else if (command == EtConstants.netSysGrps) {
+                // send number of groups to follow
+                int[] groups = sys.getConfig().getGroups();
+                out.writeInt(groups.length);
+
+                // send number in each group
+                for (int j : groups) {
+                    out.writeInt(j);
+                }
+                out.flush();
+            }
+
+            // send data only Java ET systems have
+            else if (command == EtConstants.netSysJavaData) {
+                sys.writeJavaData(out);
+            }
+        }
+
+
+        else if (command <= EtConstants.netEvsUnsubscribe) {
+            // push events as they arrive, only over connections with tagged requests
+            if (command == EtConstants.netEvsSubscribe) {
+                in.readFully(params, 0, 24);
+                int  attId     = EtUtils.bytesToInt(params,   0);
+                int  mod       = EtUtils.bytesToInt(params,   4);
+                int  maxEvents = EtUtils.bytesToInt(params,   8);
+                long maxBytes  = EtUtils.bytesToLong(params, 12);
+                int  tag       = EtUtils.bytesToInt(params,  20);
+                AttachmentLocal att = attachments.get(attId);
+                subscribe(att, tag, Modify.getModify(mod), maxEvents, maxBytes);
+            }
+            else {
+                int attId = in.readInt();
+                AttachmentLocal att = attachments.get(attId);
+                unsubscribe(att);
+            }
+        }
+
+        else {
+            if (config.getDebug() >= EtConstants.debugError) {
+                java.lang.System.out.println("commandLoop: bad command value");
+            }
+            throw new EtReadException("bad command value");
+        }
+
+        return commandDone;
+    }
+}
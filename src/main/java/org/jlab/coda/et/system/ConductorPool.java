@@ -0,0 +1,191 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12H        *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-5800             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jlab.coda.et.EtEventImpl;
+
+/**
+ * This class is a fixed number of threads shared by the conductors of all stations
+ * of an ET system, used instead of a thread for each station when
+ * {@link SystemConfig#setConductorThreads(int)} is set. A station is put in line
+ * for a thread when events are put into its empty output list, and a thread
+ * passes on one batch of its events at a time. So with many stations, only as many
+ * conductors run at once as there are threads, and stations without events cost
+ * no thread at all. A station waiting for a fuller batch is set aside instead of
+ * keeping its thread, and one thread at a time, when it has nothing else to do,
+ * looks after those stations and puts them back in line when their waits are over.
+ *
+ * @author Carl Timmer
+ */
+
+class ConductorPool implements Runnable {
+
+    /** Stations with events in their output lists waiting for a thread, in order. */
+    private final ArrayDeque<StationLocal> ready;
+
+    /** Stations waiting for fuller batches before being put back in line, in no order. */
+    private final ArrayList<StationLocal> delayed;
+
+    /** Is a thread looking after the {@link #delayed} stations? */
+    private boolean watching;
+
+    /** Longest time, in nanoseconds, the thread looking after the delayed stations
+     *  sleeps before looking again or taking a station in line. */
+    private static final long watchSlice = 50000L;
+
+    /** Threads running conductors. */
+    private final Thread[] threads;
+
+    /** Size of the lists each thread uses to pass on a batch of events. */
+    private final int numEvents;
+
+    /** Flag telling the threads to quit. */
+    private volatile boolean killThreads;
+
+
+    /**
+     * Constructor.
+     *
+     * @param threadCount number of threads
+     * @param stationsMax most stations there can be
+     * @param numEvents   number of events in the ET system
+     */
+    ConductorPool(int threadCount, int stationsMax, int numEvents) {
+        this.numEvents = numEvents;
+        ready   = new ArrayDeque<StationLocal>(stationsMax);
+        delayed = new ArrayList<StationLocal>(stationsMax);
+        threads = new Thread[threadCount];
+        for (int i=0; i < threadCount; i++) {
+            threads[i] = new Thread(this, "conductor" + i);
+            threads[i].setDaemon(true);
+        }
+    }
+
+
+    /** Starts all threads. */
+    void start() {
+        for (Thread t : threads) {
+            t.start();
+        }
+    }
+
+
+    /** Tells all threads to quit once no stations are waiting for them. */
+    void kill() {
+        killThreads = true;
+        synchronized (this) {
+            notifyAll();
+        }
+    }
+
+
+    /**
+     * Puts a station in line for a thread to conduct its events.
+     * @param station station whose output list has events
+     */
+    synchronized void schedule(StationLocal station) {
+        ready.addLast(station);
+        notify();
+    }
+
+
+    /**
+     * Sets a station aside until its wait for a fuller batch is over.
+     * @param station station whose conductor is waiting
+     */
+    synchronized void delay(StationLocal station) {
+        delayed.add(station);
+        if (!watching) {
+            notify();
+        }
+    }
+
+
+    /**
+     * Puts back in line the delayed stations whose waits are over.
+     * Called while holding this object's lock.
+     * @return time in nanoseconds to sleep before looking again
+     */
+    private long releaseDelayed() {
+        long sleep = watchSlice;
+        for (int i = delayed.size() - 1; i >= 0; i--) {
+            StationLocal station = delayed.get(i);
+            if (station.isDelayOver()) {
+                delayed.set(i, delayed.get(delayed.size() - 1));
+                delayed.remove(delayed.size() - 1);
+                ready.addLast(station);
+                notify();
+            }
+            else {
+                sleep = Math.min(sleep, station.getDelayLeft());
+            }
+        }
+        return Math.max(sleep, 1L);
+    }
+
+
+    /** Method run by each thread to conduct events for stations in line. */
+    public void run() {
+        StationLocal station;
+        long sleep = 0L;
+        // events read from a station's outputList
+        ArrayList<EtEventImpl> getList = new ArrayList<EtEventImpl>(numEvents);
+        // events to be put into the next station's inputList
+        ArrayList<EtEventImpl> putList = new ArrayList<EtEventImpl>(numEvents);
+
+        while (true) {
+            synchronized (this) {
+                station = null;
+                while (true) {
+                    if (!delayed.isEmpty()) {
+                        sleep = releaseDelayed();
+                    }
+                    if (!ready.isEmpty()) {
+                        station = ready.pollFirst();
+                        break;
+                    }
+                    if (killThreads) {
+                        return;
+                    }
+                    // with nothing in line, look after the delayed stations
+                    if (!delayed.isEmpty() && !watching) {
+                        watching = true;
+                        break;
+                    }
+                    try {
+                        wait();
+                    }
+                    catch (InterruptedException ex) {
+                    }
+                }
+            }
+
+            if (station == null) {
+                // sleep no longer than a slice so new stations in line wait little
+                LockSupport.parkNanos(this, sleep);
+                synchronized (this) {
+                    watching = false;
+                }
+                continue;
+            }
+
+            station.conduct(getList, putList);
+        }
+    }
+}
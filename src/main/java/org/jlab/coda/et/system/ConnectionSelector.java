@@ -0,0 +1,1019 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12H        *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-5800             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.jlab.coda.et.exception.*;
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Modify;
+
+/**
+ * This class implements a thread which serves many users' connections to the
+ * ET system at once, used instead of a thread for each connection when
+ * {@link SystemConfig#setServerSelectors(int)} is set. Commands are read without
+ * blocking and carried out once all of each has arrived. A command waiting for events
+ * gives up the thread until events arrive, it times out, or it's woken up. Detaching,
+ * removing a station, and closing, which wait for conductor threads to finish their
+ * batches, are each carried out in a thread of their own so other connections go on.
+ * Other commands on stations hold the station lock only briefly.
+ *
+ * @author Carl Timmer
+ */
+
+class ConnectionSelector extends Thread {
+
+    /** Longest time, in milliseconds, to select before seeing if it's time to quit. */
+    private static final long selectTimeout = 500L;
+
+    /** ET system object. */
+    private final SystemCreate sys;
+
+    /** Selector of all connections served by this thread. */
+    private final Selector selector;
+
+    /** Channels of new connections not yet registered with the selector. */
+    private final ConcurrentLinkedQueue<SocketChannel> newChannels;
+
+    /** Connections whose waiting commands have been told to try again. */
+    private final ConcurrentLinkedQueue<SelectorConnection> resumed;
+
+    /** Connections waiting for events which must try again at a given time. */
+    private final ArrayList<SelectorConnection> sleepers;
+
+    /** Earliest time, as given by {@link System#nanoTime()}, a sleeper may need to try
+     *  again. It may be too early since sleepers which have left are not accounted for. */
+    private long nextWakeTime;
+
+    /** Buffer for sending events to users, shared by all connections of this thread. */
+    final byte[] buffer;
+
+    /** Buffer for reading command parameters, shared by all connections of this thread. */
+    final byte[] params;
+
+
+    /**
+     * Constructor.
+     *
+     * @param sys    ET system object
+     * @param tGroup thread group of all ET system threads
+     * @param index  number used to name this thread
+     * @throws IOException if a selector cannot be opened
+     */
+    ConnectionSelector(SystemCreate sys, ThreadGroup tGroup, int index) throws IOException {
+        super(tGroup, "connectionSelector" + index);
+        this.sys    = sys;
+        selector    = Selector.open();
+        newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+        resumed     = new ConcurrentLinkedQueue<SelectorConnection>();
+        sleepers    = new ArrayList<SelectorConnection>();
+        buffer      = new byte[65535];
+        params      = new byte[32 + 4 * EtConstants.stationSelectInts];
+    }
+
+
+    /**
+     * Hand a new connection to this thread to serve.
+     * @param channel non-blocking channel of the new connection
+     */
+    void register(SocketChannel channel) {
+        newChannels.add(channel);
+        selector.wakeup();
+    }
+
+
+    /**
+     * Tell this thread a connection's waiting command is to try again.
+     * Called by any thread, such as a conductor putting events into a list.
+     * @param connection connection whose command is to try again
+     */
+    void resume(SelectorConnection connection) {
+        resumed.add(connection);
+        selector.wakeup();
+    }
+
+
+    /**
+     * Have a connection waiting for events try again at the time it's given.
+     * Only called by this thread.
+     * @param connection connection waiting for events
+     */
+    void addSleeper(SelectorConnection connection) {
+        if (sleepers.isEmpty() || connection.getWakeTime() - nextWakeTime < 0L) {
+            nextWakeTime = connection.getWakeTime();
+        }
+        connection.setSleeperIndex(sleepers.size());
+        sleepers.add(connection);
+    }
+
+
+    /**
+     * Forget a connection's time to try again. Only called by this thread.
+     * @param connection connection no longer waiting
+     */
+    void removeSleeper(SelectorConnection connection) {
+        int index = connection.getSleeperIndex();
+        if (index < 0) return;
+        connection.setSleeperIndex(-1);
+
+        // fill the hole with the last sleeper
+        SelectorConnection last = sleepers.remove(sleepers.size() - 1);
+        if (last != connection) {
+            sleepers.set(index, last);
+            last.setSleeperIndex(index);
+        }
+    }
+
+
+    /** Serve connections until the ET system is killed. */
+    public void run() {
+        SocketChannel channel;
+        SelectorConnection connection;
+
+        try {
+            while (!sys.killAllThreads()) {
+                // don't sleep past the time a connection must try again
+                long timeout = selectTimeout;
+                if (!sleepers.isEmpty()) {
+                    long left = nextWakeTime - System.nanoTime();
+                    timeout = Math.min(timeout, Math.max(0L, (left + 999999L) / 1000000L));
+                }
+                if (timeout > 0L) {
+                    selector.select(timeout);
+                }
+                else {
+                    selector.selectNow();
+                }
+
+                while ((channel = newChannels.poll()) != null) {
+                    connection = new SelectorConnection(sys, this, channel);
+                    try {
+                        connection.setKey(channel.register(selector, SelectionKey.OP_READ, connection));
+                    }
+                    catch (IOException ex) {
+                        connection.close();
+                    }
+                }
+
+                Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                while (it.hasNext()) {
+                    SelectionKey key = it.next();
+                    it.remove();
+                    ((SelectorConnection) key.attachment()).handle(key);
+                }
+
+                while ((connection = resumed.poll()) != null) {
+                    connection.resume();
+                }
+
+                if (!sleepers.isEmpty() && System.nanoTime() - nextWakeTime >= 0L) {
+                    wakeSleepers();
+                }
+            }
+        }
+        catch (IOException ex) {
+        }
+        finally {
+            // like client threads, quit without detaching anything
+            for (SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                }
+                catch (IOException ex) {
+                }
+            }
+            try {
+                selector.close();
+            }
+            catch (IOException ex) {
+            }
+        }
+    }
+
+
+    /** Have all sleepers whose time has come try again and find the next time one must. */
+    private void wakeSleepers() {
+        long now = System.nanoTime();
+        boolean found = false;
+
+        for (int i = sleepers.size() - 1; i >= 0; i--) {
+            SelectorConnection connection = sleepers.get(i);
+            if (now - connection.getWakeTime() >= 0L) {
+                removeSleeper(connection);
+                connection.resume();
+            }
+        }
+
+        for (SelectorConnection connection : sleepers) {
+            if (!found || connection.getWakeTime() - nextWakeTime < 0L) {
+                nextWakeTime = connection.getWakeTime();
+                found = true;
+            }
+        }
+    }
+}
+
+
+/**
+ * This class handles all communication between an ET system and a user who has
+ * opened that ET system, served by a {@link ConnectionSelector} thread along with
+ * many other users. Bytes are read as they arrive and a command is carried out once
+ * all of it has arrived. If it must wait for events, its attachment's waiter is queued
+ * in the input list, the command is kept, and the thread moves on. When the waiter is
+ * unparked, the command is carried out again. A command which may wait for conductor
+ * threads is handed to a thread of its own, and the connection's later commands are
+ * carried out once it's done.
+ *
+ * @author Carl Timmer
+ */
+
+class SelectorConnection extends ClientConnection {
+
+    /** Number of bytes in the magic numbers every user sends first. */
+    private static final int magicBytes = 12;
+
+    /** Size in bytes of the buffer holding commands not yet carried out. */
+    private static final int inputSize = 4096;
+
+    /** Number of times in a row the input buffer may be far larger than
+     *  needed before it shrinks. */
+    private static final int smallCommandsMax = 64;
+
+    /** Thread serving this connection. */
+    private final ConnectionSelector selector;
+
+    /** Channel to the user. */
+    private final SocketChannel channel;
+
+    /** Key of the channel's registration with the selector. */
+    private SelectionKey key;
+
+    /** Has the user sent the right magic numbers? */
+    private boolean magicChecked;
+
+    /** Has the user opened the ET system? */
+    private boolean opened;
+
+    /** Has this connection been closed? */
+    private boolean closed;
+
+    /** Bytes read from the user, but not yet carried out, from 0 to its position. */
+    private ByteBuffer input;
+
+    /** Number of times in a row the input buffer was far larger than needed. */
+    private int smallCommands;
+
+    /** Stream from which the command being carried out is read. */
+    private final CommandInput commandInput;
+
+    /** Replies not yet sent to the user. */
+    private ReplyOutput replies;
+
+    /** Number of bytes of replies already sent. */
+    private int replySent;
+
+    /** Input list in which the waiting command's attachment waits, null if none waits. */
+    private EventList waitList;
+
+    /** Attachment of the waiting command. */
+    private AttachmentLocal waitAtt;
+
+    /** Group of events the waiting command wants, 0 for any. */
+    private int waitGroup;
+
+    /** Time, as given by {@link System#nanoTime()}, a timed wait ends. */
+    private long deadline;
+
+    /** Time, as given by {@link System#nanoTime()}, to try the waiting command again. */
+    private long wakeTime;
+
+    /** Index into the selector thread's list of sleepers, -1 if not in it. */
+    private int sleeperIndex = -1;
+
+    /** Command carried out in a thread of its own, null if none is. */
+    private HandedOff handedOff;
+
+
+    /**
+     * This class carries out, in a thread of its own, one command of a connection
+     * which may wait for conductor threads, or detaches all of its attachments once
+     * it's closed. The command is copied and its reply gathered in an array of its
+     * own, then the connection's selector thread is told it's done.
+     */
+    private static final class HandedOff extends ClientConnection implements Runnable {
+
+        /** Connection whose command this is. */
+        private final SelectorConnection parent;
+
+        /** Reply to the command. */
+        private final ReplyOutput reply = new ReplyOutput();
+
+        /** What carrying out the command returned. */
+        private int result = commandDone;
+
+        /** Did carrying out the command fail? */
+        private boolean failed;
+
+        /** Is the command done? */
+        private volatile boolean done;
+
+
+        /**
+         * Constructor for detaching all of a closed connection's attachments.
+         * @param parent connection which is closed
+         */
+        HandedOff(SelectorConnection parent) {
+            super(parent);
+            this.parent = parent;
+        }
+
+
+        /**
+         * Constructor for carrying out a command.
+         *
+         * @param parent connection whose command this is
+         * @param array  array holding the command
+         * @param start  index of the command's first byte
+         * @param length number of bytes in the command
+         */
+        HandedOff(SelectorConnection parent, byte[] array, int start, int length) {
+            super(parent);
+            this.parent = parent;
+            params = new byte[32 + 4 * EtConstants.stationSelectInts];
+            buffer = new byte[1024];
+            CommandInput command = new CommandInput();
+            command.set(Arrays.copyOfRange(array, start, start + length), 0, length);
+            in  = new DataInputStream(command);
+            out = new DataOutputStream(reply);
+        }
+
+
+        /**
+         * Add the bytes to the reply, which the selector thread sends.
+         * {@inheritDoc}
+         */
+        void write(ByteBuffer[] buffers, int length) throws IOException {
+            int bytes;
+            for (int i=0; i < length; i++) {
+                ByteBuffer buf = buffers[i];
+                while (buf.hasRemaining()) {
+                    bytes = Math.min(buf.remaining(), buffer.length);
+                    buf.get(buffer, 0, bytes);
+                    out.write(buffer, 0, bytes);
+                }
+            }
+        }
+
+
+        /** Carry out the command, then have the selector thread go on with the connection. */
+        public void run() {
+            try {
+                if (in == null) {
+                    detachAll();
+                }
+                else {
+                    result = processCommand(in.readInt());
+                }
+            }
+            catch (Exception ex) {
+                failed = true;
+            }
+            done = true;
+            parent.selector.resume(parent);
+        }
+    }
+
+
+    /**
+     * Constructor.
+     *
+     * @param sys      ET system object
+     * @param selector thread serving this connection
+     * @param channel  non-blocking channel to the user
+     */
+    SelectorConnection(SystemCreate sys, ConnectionSelector selector, SocketChannel channel) {
+        super(sys);
+        this.selector = selector;
+        this.channel  = channel;
+        buffer        = selector.buffer;
+        params        = selector.params;
+        input         = ByteBuffer.allocate(inputSize);
+        commandInput  = new CommandInput();
+        replies       = new ReplyOutput();
+        in            = new DataInputStream(commandInput);
+        out           = new DataOutputStream(replies);
+    }
+
+
+    /**
+     * Set the key of the channel's registration with the selector.
+     * @param key key of the channel's registration with the selector
+     */
+    void setKey(SelectionKey key) {
+        this.key = key;
+    }
+
+    /**
+     * Get the time to try the waiting command again.
+     * @return time, as given by {@link System#nanoTime()}, to try the waiting command again
+     */
+    long getWakeTime() {
+        return wakeTime;
+    }
+
+    /**
+     * Get the index into the selector thread's list of sleepers.
+     * @return index into the selector thread's list of sleepers, -1 if not in it
+     */
+    int getSleeperIndex() {
+        return sleeperIndex;
+    }
+
+    /**
+     * Set the index into the selector thread's list of sleepers.
+     * @param index index into the selector thread's list of sleepers, -1 if not in it
+     */
+    void setSleeperIndex(int index) {
+        sleeperIndex = index;
+    }
+
+
+    /**
+     * Attachments made over this connection are told events have arrived by
+     * having this connection's waiting command try again.
+     * @param att new attachment
+     */
+    void attached(AttachmentLocal att) {
+        att.setWaiter(new EventWaiter() {
+            void unpark() {
+                selector.resume(SelectorConnection.this);
+            }
+        });
+    }
+
+
+    /**
+     * Read and write whatever the channel is ready for. Called by the selector thread.
+     * @param key selected key of this connection's channel
+     */
+    void handle(SelectionKey key) {
+        if (closed) return;
+        try {
+            if (key.isWritable() && writeReplies() && !busy()) {
+                processCommands();
+            }
+            if (!closed && key.isReadable()) {
+                if (channel.read(input) < 0) {
+                    // user has gone away
+                    close();
+                    return;
+                }
+                // wait until earlier replies are taken before carrying out more commands
+                if (!busy() && replySent == replies.size()) {
+                    processCommands();
+                }
+            }
+            if (!closed) {
+                updateInterest();
+            }
+        }
+        catch (Exception ex) {
+            // IO error, protocol error, or a bad value from the user
+            close();
+        }
+    }
+
+
+    /**
+     * Is a command waiting for events or being carried out in a thread of its own?
+     * @return true if the connection's later commands must wait
+     */
+    private boolean busy() {
+        return waitList != null || handedOff != null;
+    }
+
+
+    /**
+     * Carry out a command, or detach all attachments, in a thread of its own.
+     * @param command command to carry out
+     */
+    private void handOff(HandedOff command) {
+        handedOff = command;
+        Thread thread = new Thread(selector.getThreadGroup(), command, selector.getName() + "-command");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Try the waiting command again, or take the reply of one carried out in a
+     * thread of its own and go on with later commands. Called by the selector thread.
+     */
+    void resume() {
+        if (handedOff != null) {
+            if (!handedOff.done) return;
+            HandedOff finished = handedOff;
+            handedOff = null;
+
+            if (closed) {
+                // the user went away while the command was carried out
+                if (!attachments.isEmpty()) {
+                    handOff(new HandedOff(this));
+                }
+                return;
+            }
+            if (finished.failed || finished.result == commandClose) {
+                close();
+                return;
+            }
+            replies.write(finished.reply.array(), 0, finished.reply.size());
+        }
+        else if (closed || waitList == null) {
+            return;
+        }
+
+        try {
+            processCommands();
+            if (!closed) {
+                updateInterest();
+            }
+        }
+        catch (Exception ex) {
+            close();
+        }
+    }
+
+
+    /**
+     * Carry out, in order, each command which has completely arrived
+     * until one has to wait for events, then send the replies.
+     *
+     * @throws EtReadException if a command is bad
+     * @throws EtException     if a command's parameters are bad
+     * @throws IOException     if communication with the user fails
+     */
+    private void processCommands() throws EtReadException, EtException, IOException {
+        byte[] array = input.array();
+        int start = 0, end = input.position();
+        int length;
+
+        while (true) {
+            length = frameLength(start, end - start);
+            if (length < 0 || length > end - start) {
+                break;
+            }
+            commandInput.set(array, start, start + length);
+
+            if (!magicChecked) {
+                if (input.getInt(start)     != EtConstants.magicNumbers[0] ||
+                    input.getInt(start + 4) != EtConstants.magicNumbers[1] ||
+                    input.getInt(start + 8) != EtConstants.magicNumbers[2]) {
+                    close();
+                    return;
+                }
+                magicChecked = true;
+            }
+            else if (!opened) {
+                opened = openSystem();
+                if (!opened) {
+                    writeReplies();
+                    close();
+                    return;
+                }
+            }
+            else {
+                int command = in.readInt();
+                if (waitsForConductors(command)) {
+                    // let other connections go on while it's carried out
+                    handOff(new HandedOff(this, array, start, length));
+                    start += length;
+                    break;
+                }
+                int result = processCommand(command);
+                if (result == commandWaiting) {
+                    // keep the command to carry out again
+                    break;
+                }
+                else if (result == commandClose) {
+                    close();
+                    return;
+                }
+            }
+            start += length;
+        }
+
+        // keep the bytes not yet carried out
+        if (start > 0) {
+            System.arraycopy(array, start, array, 0, end - start);
+            input.position(end - start);
+        }
+
+        // Make sure the next command fits, growing by at least double so a long
+        // command isn't copied over and over as its events arrive. Don't hang on
+        // to a huge buffer once long commands stop coming.
+        int needed = Math.max(inputSize, (length < 0) ? -length : length);
+        int capacity = 0;
+        if (needed > input.capacity()) {
+            capacity = Math.max(needed, 2 * input.capacity());
+            smallCommands = 0;
+        }
+        else if (input.capacity() > inputSize && needed < input.capacity() / 4) {
+            if (++smallCommands > smallCommandsMax) {
+                capacity = Math.max(needed, input.position());
+                smallCommands = 0;
+            }
+        }
+        else {
+            smallCommands = 0;
+        }
+
+        if (capacity > 0) {
+            ByteBuffer newInput = ByteBuffer.allocate(capacity);
+            input.flip();
+            newInput.put(input);
+            input = newInput;
+        }
+
+        writeReplies();
+    }
+
+
+    /**
+     * Send as many replies as the channel takes without blocking.
+     * @return true if all replies have been sent
+     * @throws IOException if writing to the channel fails
+     */
+    private boolean writeReplies() throws IOException {
+        int size = replies.size();
+        if (replySent < size) {
+            replySent += channel.write(ByteBuffer.wrap(replies.array(), replySent, size - replySent));
+            if (replySent < size) {
+                return false;
+            }
+        }
+
+        replySent = 0;
+        if (replies.array().length > replySizeMax) {
+            replies = new ReplyOutput();
+            out = new DataOutputStream(replies);
+        }
+        else {
+            replies.reset();
+        }
+        return true;
+    }
+
+
+    /**
+     * Write as many bytes as the channel takes without blocking once earlier
+     * replies are sent, and keep the rest to send with the replies.
+     * {@inheritDoc}
+     */
+    void write(ByteBuffer[] buffers, int length) throws IOException {
+        if (writeReplies()) {
+            channel.write(buffers, 0, length);
+        }
+
+        int bytes;
+        for (int i=0; i < length; i++) {
+            ByteBuffer buf = buffers[i];
+            if (buf.hasArray()) {
+                replies.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                continue;
+            }
+            while (buf.hasRemaining()) {
+                bytes = Math.min(buffer.length, buf.remaining());
+                buf.get(buffer, 0, bytes);
+                replies.write(buffer, 0, bytes);
+            }
+        }
+    }
+
+
+    /**
+     * Select reading if there's room for more bytes from the user
+     * and writing if there are replies not yet sent.
+     */
+    private void updateInterest() {
+        int ops = 0;
+        if (input.hasRemaining()) ops |= SelectionKey.OP_READ;
+        if (replySent < replies.size()) ops |= SelectionKey.OP_WRITE;
+        if (key.interestOps() != ops) {
+            key.interestOps(ops);
+        }
+    }
+
+
+    /**
+     * Close this connection. If the user didn't close it cleanly,
+     * all its attachments are detached.
+     */
+    void close() {
+        if (closed) return;
+        closed = true;
+
+        if (waitList != null) {
+            waitList.cancelContinuation(waitAtt, waitGroup);
+            waitList = null;
+            selector.removeSleeper(this);
+        }
+
+        if (!attachments.isEmpty()) {
+            // detach in a thread of its own, after any command being carried out there
+            if (handedOff == null) {
+                handOff(new HandedOff(this));
+            }
+            if (config.getDebug() >= EtConstants.debugError) {
+                System.out.println("commandLoop: remote client connection broken");
+            }
+        }
+
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        }
+        catch (IOException ex) {
+        }
+    }
+
+
+    /**
+     * Does a command detach, remove a station, or close the connection, so that
+     * it may wait for conductor threads to finish their batches?
+     * @param command command from the user
+     * @return true if the command may wait for conductor threads
+     */
+    private static boolean waitsForConductors(int command) {
+        return command == EtConstants.netStatDet || command == EtConstants.netStatRm ||
+               command == EtConstants.netClose   || command == EtConstants.netFClose;
+    }
+
+
+    /**
+     * Get the length in bytes of the command starting at a given place in the input
+     * buffer including any event data, or as much of it as can be known.
+     *
+     * @param start     index into the input buffer at which the command starts
+     * @param available number of bytes of input from start on
+     * @return length of the command, or minus the number of bytes needed
+     *         to know more if not all can be known yet
+     * @throws EtReadException if the command carries a bad length or event id
+     */
+    private int frameLength(int start, int available) throws EtReadException {
+        if (!magicChecked) {
+            return magicBytes;
+        }
+        else if (!opened) {
+            // endian, length of name, 64 bit, long, name
+            if (available < 8) return -8;
+            return 20 + size(start + 4);
+        }
+
+        if (available < 4) return -4;
+
+        final int selectInts = EtConstants.stationSelectInts;
+        int command = input.getInt(start);
+        int length;
+
+        switch (command) {
+            case EtConstants.netEvGet:
+                return 24;
+            case EtConstants.netEvsGet:
+            case EtConstants.netEvNew:
+                return 28;
+            case EtConstants.netEvsNew:
+                return 32;
+            case EtConstants.netEvsNewGrp:
+                return 36;
+            case EtConstants.netEvDump:
+                return 12;
+
+            case EtConstants.netEvsDump:
+                if (available < 12) return -12;
+                return 12 + 4 * size(start + 8);
+
+            case EtConstants.netEvPut:
+                // data follows only if modifying everything
+                length = 36 + 4 * selectInts;
+                if (available < length) return -length;
+                return length + dataLength(input.getInt(start + 8), input.getLong(start + 16));
+
+            case EtConstants.netEvsPut:
+                length = 20;
+                if (available < length) return -length;
+                int numEvents = size(start + 8);
+                int chunk = 28 + 4 * selectInts;
+                for (int j = 0; j < numEvents; j++) {
+                    if (available < length + chunk) return -(length + chunk);
+                    length += chunk + dataLength(input.getInt(start + length),
+                                                 input.getLong(start + length + 8));
+                }
+                return length;
+
+            case EtConstants.netWakeAtt:
+            case EtConstants.netWakeAll:
+            case EtConstants.netStatDet:
+            case EtConstants.netStatRm:
+            case EtConstants.netStatGPos:
+            case EtConstants.netStatGSw:
+            case EtConstants.netStatFunc:
+            case EtConstants.netStatLib:
+            case EtConstants.netStatClass:
+                return 8;
+            case EtConstants.netStatIsAt:
+                return 12;
+            case EtConstants.netStatSPos:
+                return 16;
+            case EtConstants.netStatSSw:
+                return 8 + 4 * selectInts;
+
+            case EtConstants.netStatAtt:
+                // station, pid, host length, ip length, host, ip
+                if (available < 20) return -20;
+                return 20 + size(start + 12) + size(start + 16);
+
+            case EtConstants.netStatCrAt:
+                // config ints, select ints, 4 name lengths, 2 positions, names
+                length = 60 + 4 * selectInts;
+                if (available < length) return -length;
+                int lengths = length - 24;
+                return length + size(start + lengths)     + size(start + lengths + 4) +
+                                size(start + lengths + 8) + size(start + lengths + 12);
+
+            case EtConstants.netStatEx:
+                if (available < 8) return -8;
+                return 8 + size(start + 4);
+
+            case EtConstants.netEvsSubscribe:
+                // attachment id, modify, window of events, threshold of bytes, tag
+                return 28;
+            case EtConstants.netEvsUnsubscribe:
+                // attachment id
+                return 8;
+
+            default:
+        }
+
+        if (command < EtConstants.netStatGAtts) {
+            // no parameters, or a command which is turned away
+            return 4;
+        }
+        else if (command < EtConstants.netStatSBlock) {
+            // station id
+            return 8;
+        }
+        else if (command < EtConstants.netAttPut) {
+            // station id, value
+            return 12;
+        }
+        else if (command < EtConstants.netSysTmp) {
+            // attachment id
+            return 8;
+        }
+        return 4;
+    }
+
+
+    /**
+     * Read a size from the input buffer.
+     * @param index index into the input buffer
+     * @return size
+     * @throws EtReadException if the size is negative
+     */
+    private int size(int index) throws EtReadException {
+        int size = input.getInt(index);
+        if (size < 0) {
+            throw new EtReadException("bad command value");
+        }
+        return size;
+    }
+
+
+    /**
+     * Get the number of data bytes following an event put by the user,
+     * which are only sent if the user may modify everything.
+     *
+     * @param id     id of event
+     * @param length length of the event's data
+     * @return number of bytes of data following the event
+     * @throws EtReadException if the event id or length is bad
+     */
+    private int dataLength(int id, long length) throws EtReadException {
+        EtEventImpl[] events = sys.getEvents();
+        if (id < 0 || id >= events.length) {
+            throw new EtReadException("bad event id");
+        }
+        if (events[id].getModify() != Modify.ANYTHING) {
+            return 0;
+        }
+        if (length < 0L || length > Integer.MAX_VALUE) {
+            throw new EtReadException("bad event length");
+        }
+        return (int) length;
+    }
+
+
+    /**
+     * Get or make events without blocking. If there are none and the user is
+     * willing to wait, the attachment's waiter is queued in its input list and
+     * null returned so the command is carried out again when the waiter is unparked.
+     * Attachments which steal are also unparked when a sibling station gets events,
+     * and timed waits try again at their deadline.
+     * {@inheritDoc}
+     */
+    EtEventImpl[] waitForEvents(int command, AttachmentLocal att, int mode,
+                                int sec, int nsec, int count, int size, int group)
+            throws EtException, EtBusyException, EtEmptyException,
+                   EtTimeoutException, EtWakeUpException, IOException {
+
+        boolean newEvents = command != EtConstants.netEvGet &&
+                            command != EtConstants.netEvsGet;
+
+        if (waitList != null) {
+            // trying again after waiting
+            EventList list = waitList;
+            waitList = null;
+            selector.removeSleeper(this);
+            list.unqueueContinuation(att, waitGroup);
+        }
+        else if (mode != EtConstants.async) {
+            // If we've been told to wake up, do so.
+            if (att.isWakeUp()) {
+                att.setWakeUp(false);
+                throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+            }
+            if (mode == EtConstants.timed) {
+                deadline = System.nanoTime() + 1000000000L * sec + nsec;
+            }
+            else {
+                // Store the fact we're trying to sleep - necessary when
+                // told to wake up.
+                att.setSleepMode(true);
+            }
+        }
+
+        while (true) {
+            try {
+                EtEventImpl[] evs = callSystem(command, att, EtConstants.async, 0, count, size, group);
+                if (mode == EtConstants.sleep) {
+                    // no longer in sleep mode
+                    att.setSleepMode(false);
+                    att.setWakeUp(false);
+                }
+                return evs;
+            }
+            catch (EtEmptyException ex) {
+                if (mode == EtConstants.async) {
+                    throw ex;
+                }
+                else if (mode == EtConstants.timed && deadline - System.nanoTime() <= 0L) {
+                    throw new EtTimeoutException("timed out");
+                }
+            }
+
+            // wait in the list, unless events arrived in the meantime
+            int waitFor = (command == EtConstants.netEvsNewGrp) ? group : 0;
+            EventList list = sys.getWaitList(att, newEvents);
+            if (list.queueContinuation(att, waitFor)) {
+                // events put into a sibling from now on signal a stealing attachment,
+                // so look once more at the siblings before waiting
+                if (!newEvents && att.isStealing() && sys.getFullestSibling(att.getStation()) != null) {
+                    list.cancelContinuation(att, waitFor);
+                    continue;
+                }
+
+                waitList  = list;
+                waitAtt   = att;
+                waitGroup = waitFor;
+
+                if (mode == EtConstants.timed) {
+                    wakeTime = deadline;
+                    selector.addSleeper(this);
+                }
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,249 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.EtEventImpl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * This class is a pool of data buffers lent to events asked for with a size larger
+ * than the normal event size. Buffers come in size classes, each a power of 2
+ * larger than the last, so a buffer can be reused for any request up to its size.
+ * When an event with a borrowed buffer returns to GRAND_CENTRAL, the buffer goes
+ * back into the pool and the event gets its normal buffer back. Idle buffers
+ * are kept only up to the size of the ET system's normal event memory (or
+ * {@link #idleBytesMin} if larger), beyond which they are left for the garbage collector.
+ *
+ * @author Carl Timmer
+ */
+
+class EventBufferPool {
+
+    /** Largest buffer kept in the pool in bytes by default. */
+    static final int classSizeMax = 1 << 30;
+
+    /** Number of bytes in idle buffers the pool may always keep by default. */
+    static final long idleBytesMin = 64L << 20;
+
+    /** Size of the smallest class of buffers in bytes, the first power of 2 above the event size. */
+    private final int classSizeMin;
+
+    /** Size of the largest class of buffers in bytes. */
+    private final int classSizeLimit;
+
+    /** Idle buffers of each size class. */
+    private final ArrayList<ArrayList<ByteBuffer>> idle;
+
+    /** Normal buffer of each event (by id) which has borrowed a buffer. */
+    private final ByteBuffer[] normalBuffers;
+
+    /** Buffer borrowed by each event (by id), null if none. */
+    private final ByteBuffer[] borrowed;
+
+    /** Are buffers allocated in direct memory? */
+    private final boolean direct;
+
+    /** Maximum number of bytes in idle buffers. */
+    private final long idleBytesMax;
+
+    /** Number of bytes in idle buffers. */
+    private long idleBytes;
+
+    /** Number of bytes in buffers lent to events. */
+    private long bytesOutstanding;
+
+    /** Number of requests filled with an idle buffer. */
+    private long hits;
+
+    /** Number of requests needing a new buffer. */
+    private long misses;
+
+
+    /**
+     * Constructor.
+     *
+     * @param numEvents number of events in the ET system
+     * @param eventSize normal size of events in bytes
+     * @param direct    if true, allocate buffers in direct memory, else on the heap
+     */
+    EventBufferPool(int numEvents, int eventSize, boolean direct) {
+        this(numEvents, eventSize, direct, classSizeMax, idleBytesMin);
+    }
+
+
+    /**
+     * Constructor with limits other than the defaults.
+     *
+     * @param numEvents    number of events in the ET system
+     * @param eventSize    normal size of events in bytes
+     * @param direct       if true, allocate buffers in direct memory, else on the heap
+     * @param sizeLimit    largest buffer kept in the pool in bytes, a power of 2
+     * @param idleMin      number of bytes in idle buffers the pool may always keep
+     */
+    EventBufferPool(int numEvents, int eventSize, boolean direct, int sizeLimit, long idleMin) {
+        this.direct    = direct;
+        classSizeMin   = Integer.highestOneBit(eventSize) << 1;
+        classSizeLimit = sizeLimit;
+        idleBytesMax   = Math.max((long)numEvents * eventSize, idleMin);
+        normalBuffers  = new ByteBuffer[numEvents];
+        borrowed       = new ByteBuffer[numEvents];
+
+        idle = new ArrayList<ArrayList<ByteBuffer>>();
+        for (long size = classSizeMin; size > 0 && size <= classSizeLimit; size <<= 1) {
+            idle.add(new ArrayList<ByteBuffer>());
+        }
+    }
+
+
+    /**
+     * Get the index of the smallest size class holding buffers of at least the given size.
+     * @param size size in bytes
+     * @return index of the size class, or -1 if no class is that large
+     */
+    private int getSizeClass(int size) {
+        if (size > classSizeLimit) return -1;
+        int index = Integer.numberOfTrailingZeros(classSizeMin);
+        int bits  = 32 - Integer.numberOfLeadingZeros(size - 1);
+        return bits > index ? bits - index : 0;
+    }
+
+
+    /**
+     * Take a buffer of at least the given size out of the pool, or allocate one.
+     * @param size minimum size of buffer in bytes
+     * @return buffer
+     */
+    synchronized private ByteBuffer take(int size) {
+        ByteBuffer buf = null;
+        int sizeClass = getSizeClass(size);
+        if (sizeClass >= idle.size()) sizeClass = -1;
+
+        if (sizeClass >= 0) {
+            ArrayList<ByteBuffer> list = idle.get(sizeClass);
+            if (list.size() > 0) {
+                buf = list.remove(list.size() - 1);
+                idleBytes -= buf.capacity();
+                hits++;
+            }
+        }
+
+        if (buf == null) {
+            misses++;
+            // a request too large for any class gets a buffer of its own
+            int capacity = (sizeClass < 0) ? size : classSizeMin << sizeClass;
+            buf = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.wrap(new byte[capacity]);
+        }
+
+        bytesOutstanding += buf.capacity();
+        buf.clear();
+        return buf;
+    }
+
+
+    /**
+     * Give a buffer back to the pool. It is dropped if it is not the size
+     * of a class or if the pool already holds enough idle buffers.
+     * @param buf buffer
+     */
+    synchronized private void give(ByteBuffer buf) {
+        int capacity = buf.capacity();
+        bytesOutstanding -= capacity;
+
+        if (Integer.bitCount(capacity) != 1 || idleBytes + capacity > idleBytesMax) {
+            return;
+        }
+        int sizeClass = getSizeClass(capacity);
+        if (sizeClass < 0 || sizeClass >= idle.size()) {
+            return;
+        }
+        idle.get(sizeClass).add(buf);
+        idleBytes += capacity;
+    }
+
+
+    /**
+     * Lend an event a buffer of at least the given size. Any buffer it has already
+     * borrowed is returned to the pool. Called only by the event's owner.
+     *
+     * @param ev   event
+     * @param size minimum size of the buffer in bytes
+     */
+    void lend(EtEventImpl ev, int size) {
+        int id = ev.getId();
+        ByteBuffer buf = take(size);
+
+        if (borrowed[id] == null) {
+            normalBuffers[id] = ev.getDataBuffer();
+        }
+        else {
+            give(borrowed[id]);
+        }
+        borrowed[id] = buf;
+        ev.replaceDataBuffer(buf);
+    }
+
+
+    /**
+     * Take back any buffer an event borrowed and give the event its normal buffer again.
+     * Called as the event is returned to GRAND_CENTRAL.
+     *
+     * @param ev event
+     */
+    void reclaim(EtEventImpl ev) {
+        int id = ev.getId();
+        ByteBuffer buf = borrowed[id];
+        if (buf == null) return;
+
+        ev.replaceDataBuffer(normalBuffers[id]);
+        borrowed[id] = null;
+        normalBuffers[id] = null;
+        give(buf);
+    }
+
+
+    /**
+     * Get the number of requests filled with an idle buffer.
+     * @return number of requests filled with an idle buffer
+     */
+    synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * Get the number of requests needing a newly allocated buffer.
+     * @return number of requests needing a newly allocated buffer
+     */
+    synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Get the number of bytes in buffers currently lent to events.
+     * @return number of bytes in buffers currently lent to events
+     */
+    synchronized long getBytesOutstanding() {
+        return bytesOutstanding;
+    }
+
+    /**
+     * Get the number of bytes in idle buffers held by the pool.
+     * @return number of bytes in idle buffers held by the pool
+     */
+    synchronized long getIdleBytes() {
+        return idleBytes;
+    }
+}
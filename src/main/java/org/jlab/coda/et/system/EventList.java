@@ -16,23 +16,46 @@ package org.jlab.coda.et.system;
 
 import java.lang.*;
 import java.util.*;
+import java.util.concurrent.locks.LockSupport;
 import org.jlab.coda.et.exception.*;
 import org.jlab.coda.et.EtEvent;
 import org.jlab.coda.et.EtConstants;
 import org.jlab.coda.et.EtEventImpl;
 import org.jlab.coda.et.enums.Priority;
+import org.jlab.coda.et.enums.WaitStrategy;
 
 /**
  * This class defines a list of events for use as either a station's
- * input or output list in a station.
+ * input or output list in a station.<p>
+ *
+ * Attachments waiting for events do not wait on the list itself. Each one parks
+ * (or spins, depending on its {@link WaitStrategy}) in a queue of waiters with a
+ * deadline taken from {@link System#nanoTime()}, so timeouts are accurate to microseconds. When events are put into the list only
+ * the first waiter is unparked. If it leaves events behind, it unparks the next.
+ * Conductor threads waiting for events in output lists still use wait/notify,
+ * or, if conductors share a {@link ConductorPool}, the station is put in line for one.
  *
  * @author Carl Timmer
  */
 
 class EventList {
 
-    /** List of events. */
-    private ArrayList<EtEventImpl> events;
+    /** Initial size of each lane other than the low priority one. They grow as
+     *  needed, up to the total number of events, since those priorities are uncommon. */
+    private static final int initialLaneCapacity = 64;
+
+    /** Index of the lane of low (normal) priority events. */
+    private static final int lowLane = Priority.LOW.getRank();
+
+    /** Events of each priority, in order, indexed by {@link Priority#getRank()}.
+     *  Events of a lane always come out before those of lower lanes. */
+    private final EventRing[] lanes;
+
+    /** Low priority events, in order. Same as lanes[lowLane]. */
+    private final EventRing low;
+
+    /** Maximum number of events this list will ever hold. */
+    private final int maxCount;
 
     /** Number of events put into this list. */
     private long eventsIn;
@@ -45,33 +68,85 @@ class EventList {
     /** Number of events tried to put into this list when used with prescaling. */
     private long eventsTry;
 
-    /** Flag telling the list to wake up the user waiting to read events. */
-    private  boolean wakeAll;
+    /** Attachments waiting to read events, in order of arrival. */
+    private final WaiterQueue waiters = new WaiterQueue();
 
-    /** Count of the number of users sleeping on reading events. Last one to wake
-     *  up needs to reset wakeAll. */
-    private int waitingCount;
+    /** Incremented each time all waiting attachments are told to wake up.
+     *  Waiters compare it to the value seen when they started waiting. */
+    private volatile int wakeAllCount;
 
     // output list members only
 
-    /** Position of the last high priority event in the linked list. */
-    private int lastHigh;
+    /** Time, as given by {@link System#nanoTime()}, each event (indexed by id) was put
+     *  into this list, or null if not kept. Shared by all output lists of an ET system
+     *  since an event is in only one list at a time. */
+    private long[] arrivalTimes;
 
+    /** Station whose conductor is woken when events are put into this list,
+     *  or null if the conductor has its own thread waiting on the list. */
+    private StationLocal conductor;
 
 
-    /** Construct a new EventList object. */
+
+    /**
+     * Construct a new EventList object.
+     * @param listSize maximum number of events the list will ever hold
+     *                 (total number of events in the ET system)
+     */
     EventList(int listSize) {
-        events = new ArrayList<EtEventImpl>(listSize);
+        this(listSize, listSize);
+    }
+
+
+    /**
+     * Construct a new EventList object whose lanes start out small.
+     * @param listSize        maximum number of events the list will ever hold
+     *                        (total number of events in the ET system)
+     * @param initialCapacity number of events the low priority lane can
+     *                        initially hold without growing
+     */
+    EventList(int listSize, int initialCapacity) {
+        maxCount = listSize;
+        lanes = new EventRing[Priority.values().length];
+        for (int i=0; i < lanes.length; i++) {
+            lanes[i] = new EventRing(i == lowLane ? initialCapacity :
+                                     Math.min(initialLaneCapacity, initialCapacity), listSize);
+        }
+        low = lanes[lowLane];
     }
 
 
 
     /**
-     * Get the linked list of events.
-     * @return linked list of events
+     * Keep track of when each event is put into this list so the time it waits
+     * to be taken by a conductor can be measured. Used for output lists.
+     * @param arrivalTimes array, indexed by event id, shared by all output lists
      */
-    ArrayList<EtEventImpl> getEvents() {
-        return events;
+    void keepArrivalTimes(long[] arrivalTimes) {
+        this.arrivalTimes = arrivalTimes;
+    }
+
+
+    /**
+     * Wake the given station's conductor whenever events are put into this list.
+     * Used for output lists when conductors share a pool of threads.
+     * @param station station owning this output list
+     */
+    synchronized void setConductor(StationLocal station) {
+        conductor = station;
+    }
+
+
+    /**
+     * Get the number of events in this list.
+     * @return number of events in this list
+     */
+    int getCount() {
+        int count = 0;
+        for (EventRing lane : lanes) {
+            count += lane.size();
+        }
+        return count;
     }
 
     /**
@@ -135,17 +210,271 @@ class EventList {
             return;
         }
         att.setWakeUp(true);
-        notifyAll();
+        att.getWaiter().unpark();
     }
 
 
     /** Wake up all attachments waiting to read events from this list. */
     synchronized void wakeUpAll() {
-        if (waitingCount < 1) {
-            return;
+        wakeAllCount++;
+        waiters.unparkAll();
+    }
+
+
+    /**
+     * Tell attachments waiting to read events from this list that events have
+     * arrived. Only the first waiter is unparked. Used by conductor threads after
+     * putting events into an input list. Only called while synchronized on this list.
+     */
+    void signalWaiters() {
+        if (!waiters.isEmpty()) {
+            waiters.signalFirst();
+        }
+    }
+
+
+    /**
+     * Are any attachments which steal from sibling parallel stations waiting to read
+     * events from this list? Looked at by conductor threads without locking.
+     * @return true if a stealing attachment is waiting in this list
+     */
+    boolean hasStealers() {
+        return waiters.hasStealing();
+    }
+
+
+    /**
+     * Tell attachments which steal from sibling parallel stations, and are waiting
+     * to read events from this list, that events have arrived in a sibling's input
+     * list. Used by conductor threads after putting events into a sibling.
+     */
+    synchronized void signalStealers() {
+        waiters.signalStealing();
+    }
+
+
+    // methods used by attachments to wait for events
+
+
+    /**
+     * Get the time at which a wait for events ends.
+     * @param mode wait mode
+     * @param microSec time in microseconds to wait if timed wait mode
+     * @return time, as given by {@link System#nanoTime()}, at which a
+     *         timed wait ends; 0 for other modes
+     */
+    static long getDeadline(int mode, int microSec) {
+        if (mode != EtConstants.timed) return 0L;
+        return System.nanoTime() + 1000L*microSec;
+    }
+
+
+    /**
+     * Place an attachment into a queue of waiters since there are no events for it.
+     * Only called while synchronized on this list.
+     *
+     * @param att      attachment
+     * @param mode     wait mode
+     * @param deadline time at which a timed wait ends
+     * @param waiter   waiter already used by this call, or null the first time through
+     * @param queue    queue to wait in
+     * @param grouped  is the attachment waiting for events of a particular group?
+     * @return waiter placed into the queue
+     *
+     * @throws EtEmptyException
+     *     if the mode is asynchronous
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     */
+    EventWaiter queueWaiter(AttachmentLocal att, int mode, long deadline,
+                            EventWaiter waiter, WaiterQueue queue, boolean grouped)
+            throws EtEmptyException, EtTimeoutException {
+
+        if (mode == EtConstants.async) {
+            throw new EtEmptyException("no events in list");
+        }
+        else if (mode == EtConstants.timed && deadline - System.nanoTime() <= 0L) {
+            throw new EtTimeoutException("timed out");
+        }
+
+        if (waiter == null) {
+            // Normally the attachment's own waiter is used. Only if another thread
+            // is waiting on the same attachment do we need a new one.
+            waiter = att.getWaiter();
+            if (!waiter.claim()) {
+                waiter = new EventWaiter();
+                waiter.claim();
+            }
+        }
+
+        waiter.grouped = grouped;
+        waiter.stealing = att.isStealing();
+        waiter.reset(wakeAllCount);
+        queue.add(waiter);
+        att.setWaiting(true);
+//System.out.println("  get" + att.getId() + ": wait");
+        return waiter;
+    }
+
+
+    /**
+     * Remove a waiter from its queue after being unparked and see if the
+     * attachment has been told to wake up.
+     * Only called while synchronized on this list.
+     *
+     * @param att    attachment
+     * @param waiter waiter that was parked
+     * @param queue  queue the waiter was placed in
+     *
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     */
+    void unqueueWaiter(AttachmentLocal att, EventWaiter waiter, WaiterQueue queue)
+            throws EtWakeUpException {
+
+        queue.remove(waiter);
+        att.setWaiting(false);
+
+        // if we've been told to wakeup & exit ...
+        if (att.isWakeUp() || waiter.getWakeAllSeen() != wakeAllCount) {
+            att.setWakeUp(false);
+            // pass on the signal if events are waiting for someone else
+            if (waiter.isSignaled()) {
+                queue.signalFirst();
+            }
+            throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+        }
+    }
+
+
+    /**
+     * Wait, in the way the attachment has chosen, until the waiter is signaled,
+     * the attachment is told to wake up, or the deadline passes.
+     * Must NOT be called while synchronized on this list.
+     *
+     * @param att      attachment
+     * @param waiter   waiter placed into a queue
+     * @param mode     wait mode
+     * @param deadline time at which a timed wait ends
+     */
+    void parkWaiter(AttachmentLocal att, EventWaiter waiter, int mode, long deadline) {
+        WaitStrategy strategy = att.getWaitStrategy();
+        int spinTries = strategy == WaitStrategy.BLOCK ? 0 : att.getSpinTries();
+        int tries = 0;
+
+        while (!waiter.isSignaled() && !att.isWakeUp() &&
+                waiter.getWakeAllSeen() == wakeAllCount) {
+
+            if (mode == EtConstants.timed && deadline - System.nanoTime() <= 0L) {
+                return;
+            }
+
+            if (strategy == WaitStrategy.SPIN || tries < spinTries) {
+                tries++;
+                Thread.onSpinWait();
+            }
+            else if (strategy == WaitStrategy.SPIN_YIELD) {
+                Thread.yield();
+            }
+            else {
+                if (mode == EtConstants.timed) {
+                    LockSupport.parkNanos(this, deadline - System.nanoTime());
+                }
+                else {
+                    LockSupport.park(this);
+                }
+                // waits were never interruptible, so ignore any interrupt
+                Thread.interrupted();
+                return;
+            }
+        }
+    }
+
+
+    // methods used by attachments served by threads which must not block
+
+
+    /**
+     * Get the queue in which attachments wait for events of a given group.
+     * Only called while synchronized on this list.
+     * @param group group number of events, 0 for any group
+     * @return queue in which attachments wait for events of the group
+     */
+    WaiterQueue getWaiterQueue(int group) {
+        return waiters;
+    }
+
+
+    /**
+     * Are there any events of a given group in this list?
+     * Only called while synchronized on this list.
+     * @param group group number of events, 0 for any group
+     * @return true if there are events of the group in this list
+     */
+    boolean hasEvents(int group) {
+        return getCount() > 0;
+    }
+
+
+    /**
+     * Place an attachment's waiter into the queue of waiters, if there are no events
+     * for it, without parking any thread. This is for attachments served by a thread
+     * which cannot block, such as a selector thread of the tcp server. When events
+     * arrive, or the attachment is woken up, the waiter's {@link EventWaiter#unpark()}
+     * method is called and the attachment tries again after calling
+     * {@link #unqueueContinuation(AttachmentLocal, int)}.
+     *
+     * @param att   attachment whose own waiter is queued
+     * @param group group number of events wanted, 0 for any group
+     * @return true if queued, false if there are events to get after all
+     */
+    synchronized boolean queueContinuation(AttachmentLocal att, int group) {
+        if (hasEvents(group)) {
+            return false;
+        }
+        EventWaiter waiter = att.getWaiter();
+        waiter.grouped = false;
+        waiter.stealing = att.isStealing();
+        waiter.reset(wakeAllCount);
+        getWaiterQueue(group).add(waiter);
+        att.setWaiting(true);
+        return true;
+    }
+
+
+    /**
+     * Remove an attachment's waiter placed into the queue of waiters by
+     * {@link #queueContinuation(AttachmentLocal, int)} and see if the attachment
+     * has been told to wake up.
+     *
+     * @param att   attachment whose own waiter was queued
+     * @param group group number of events wanted, 0 for any group
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     */
+    synchronized void unqueueContinuation(AttachmentLocal att, int group)
+            throws EtWakeUpException {
+        unqueueWaiter(att, att.getWaiter(), getWaiterQueue(group));
+    }
+
+
+    /**
+     * Remove an attachment's waiter placed into the queue of waiters by
+     * {@link #queueContinuation(AttachmentLocal, int)} when it is no longer
+     * going to try again, as when its client has gone away. Any events it was
+     * told about are passed on to the next waiter.
+     *
+     * @param att   attachment whose own waiter was queued
+     * @param group group number of events wanted, 0 for any group
+     */
+    synchronized void cancelContinuation(AttachmentLocal att, int group) {
+        EventWaiter waiter = att.getWaiter();
+        WaiterQueue queue = getWaiterQueue(group);
+        queue.remove(waiter);
+        att.setWaiting(false);
+        if (waiter.isSignaled() && hasEvents(group)) {
+            queue.signalFirst();
         }
-        wakeAll = true;
-        notifyAll();
     }
 
 
@@ -157,7 +486,7 @@ class EventList {
      */
     void putInLow(List<EtEventImpl> newEvents) {
         // add all events to list's end
-        events.addAll(newEvents);
+        low.addAll(newEvents);
         // keep stats
         eventsIn += newEvents.size();
     }
@@ -169,8 +498,23 @@ class EventList {
      * @param newEvents array of events to put
      */
     synchronized void putInGC(EtEventImpl[] newEvents) {
-        // convert array to list and put as low priority events
-        putInLow(Arrays.asList(newEvents));
+        putInGC(newEvents, 0, newEvents.length);
+    }
+
+
+    /**
+     * Synchronized version of putInLow for user to dump part of an array
+     * of events into GRAND_CENTRAL station.
+     * @param newEvents array of events to put
+     * @param offset    index into array of the first event to put
+     * @param length    number of events to put
+     */
+    synchronized void putInGC(EtEventImpl[] newEvents, int offset, int length) {
+        // add all events to list's end
+        low.addAll(newEvents, offset, length);
+        // keep stats
+        eventsIn += length;
+        signalWaiters();
     }
 
 
@@ -181,65 +525,34 @@ class EventList {
      */
     synchronized void putInGC(List<EtEventImpl> newEvents) {
         putInLow(newEvents);
+        signalWaiters();
     }
 
 
     /**
      * Put all events into the list regardless of how many are already in it.
      * Synchronized and used only in conductor threads to put events into a
-     * station's input list. All high priority events are listed first in
-     * newEvents.
+     * station's input list. Events of higher priority are usually listed first
+     * in newEvents as that's how they come out of an output list.
      * @param newEvents list of events to put
      */
     void putAll(List<EtEventImpl> newEvents) {
         // number of incoming events
         int num = newEvents.size();
 
-        // all incoming events' priorities are low or no events in this EventList
-        if ((events.size() == 0) || ((newEvents.get(0)).getPriority() == Priority.LOW))  {
-            // adds new events to the end
-            events.addAll(newEvents);
-            /*
-            if ((newEvents.get(0)).priority == Constants.low) {
-              System.out.println("  putAll in as is as incoming are all low pri, " + newEvents.size());
+        // add each run of events with the same priority after those already in its lane
+        Priority pri;
+        for (int start = 0, end; start < num; start = end) {
+            pri = newEvents.get(start).getPriority();
+            end = start + 1;
+            while (end < num && newEvents.get(end).getPriority() == pri) {
+                end++;
             }
-            if (events.size() == 0) {
-              System.out.println("  putAll in as is as list EventList empty, " + newEvents.size());
-            }
-            */
+            lanes[pri.getRank()].addAll(newEvents, start, end - start);
         }
 
-        // if any high pri events (count != 0) ...
-        else {
-            // find last high priority event already in list
-            int highCount = 0;
-            for (EtEvent ev : events) {
-                if (ev.getPriority() != Priority.HIGH) {
-                    break;
-                }
-                highCount++;
-            }
-//System.out.println("  putAll last high of input list = " + highCount);
-
-            // add new high pri items
-            int newHighCount = 0;
-            for (EtEventImpl ev : newEvents) {
-                if (ev.getPriority() != Priority.HIGH) {
-                    break;
-                }
-//System.out.println("  putAll add high " + ev.id + " at " + (highCount + newHighCount));
-                events.add(highCount + newHighCount++, ev);
-            }
-
-            // rest are low pri, add to end
-            if (newHighCount < num) {
-//System.out.println("  putAll add " + (num - newHighCount) + " lows at end");
-                events.addAll(newEvents.subList(newHighCount, num));
-            }
-        }
         // keep stats
         eventsIn += num;
-        return;
     }
 
     /**
@@ -249,26 +562,29 @@ class EventList {
      * @param newEvents array of events to put
      */
     synchronized void put(EtEventImpl[] newEvents) {
-        // if no events in list, initialize lastHigh
-        if (events.size() == 0) {
-            lastHigh = 0;
-        }
+        put(newEvents, 0, newEvents.length);
+    }
 
+    /**
+     * For user to put part of an array of events into station's output list.
+     * High &amp; low priorities may be mixed up in the newEvents array.
+     * @param newEvents array of events to put
+     * @param offset    index into array of the first event to put
+     * @param length    number of events to put
+     */
+    synchronized void put(EtEventImpl[] newEvents, int offset, int length) {
+        EtEventImpl ev;
+        long now = (arrivalTimes == null) ? 0L : System.nanoTime();
         // put events in one-by-one - with place depending on priority
-        for (EtEventImpl ev : newEvents) {
-            // if low priority event, add to the list end
-            if (ev.getPriority() == Priority.LOW) {
-//System.out.println(" put in low - " + ev.id);
-                events.add(ev);
-            }
-            // else if high pri event, add after other high priority events
-            else {
-//System.out.println(" put in high - " + ev.id);
-                events.add(lastHigh++, ev);
-            }
+        for (int i = offset; i < offset + length; i++) {
+            ev = newEvents[i];
+            if (arrivalTimes != null) arrivalTimes[ev.getId()] = now;
+            // add after other events of the same priority
+            lanes[ev.getPriority().getRank()].addLast(ev);
         }
         notify();
-        return;
+        if (conductor != null) conductor.wake();
+        signalWaiters();
     }
 
     /**
@@ -278,26 +594,16 @@ class EventList {
      * @param newEvents list of events to put
      */
     synchronized void put(List<EtEventImpl> newEvents) {
-        // if no events in list, initialize lastHigh
-        if (events.size() == 0) {
-            lastHigh = 0;
-        }
-
+        long now = (arrivalTimes == null) ? 0L : System.nanoTime();
         // put events in one-by-one - with place depending on priority
         for (EtEventImpl ev : newEvents) {
-            // if low priority event, add to the list end
-            if (ev.getPriority() == Priority.LOW) {
-//System.out.println(" put in low - " + ev.id);
-                events.add(ev);
-            }
-            // else if high pri event, add after other high priority events
-            else {
-//System.out.println(" put in high - " + ev.id);
-                events.add(lastHigh++, ev);
-            }
+            if (arrivalTimes != null) arrivalTimes[ev.getId()] = now;
+            // add after other events of the same priority
+            lanes[ev.getPriority().getRank()].addLast(ev);
         }
         notify();
-        return;
+        if (conductor != null) conductor.wake();
+        signalWaiters();
     }
 
 
@@ -309,39 +615,16 @@ class EventList {
      * @param newEvents list of events to put
      */
     synchronized void putReverse(List<EtEventImpl> newEvents) {
-        // if no events in list, initialize lastHigh
-        if (events.size() == 0) {
-            lastHigh = 0;
-        }
-        else {
-            // The lastHigh is NOT tracked for input lists, so let's do
-            // it here since this method can be used for input lists.
-            int highCount = 0;
-            for (EtEvent ev : events) {
-                if (ev.getPriority() != Priority.HIGH) {
-                    break;
-                }
-                highCount++;
-            }
-            lastHigh = highCount;
-        }
-
+        long now = (arrivalTimes == null) ? 0L : System.nanoTime();
         // put events in one-by-one - with place depending on priority
         for (EtEventImpl ev : newEvents) {
-            // if low priority event, add below last high priority but above low priority events
-            if (ev.getPriority() == Priority.LOW) {
-//System.out.println(" put in low - " + ev.id);
-                events.add(lastHigh, ev);
-            }
-            // else if high pri event, add to the top
-            else {
-//System.out.println(" put in high - " + ev.id);
-                events.add(0, ev);
-                lastHigh++;
-            }
+            if (arrivalTimes != null) arrivalTimes[ev.getId()] = now;
+            // add ahead of other events of the same priority
+            lanes[ev.getPriority().getRank()].addFirst(ev);
         }
         notify();
-        return;
+        if (conductor != null) conductor.wake();
+        signalWaiters();
     }
 
 
@@ -350,10 +633,36 @@ class EventList {
      * @param eventsToGo list of event to get
      */
     synchronized void get(List<EtEventImpl> eventsToGo) {
-        eventsToGo.addAll(events);
-        eventsOut += events.size();
-        events.clear();
-        return;
+        int num = 0;
+        for (int i = lanes.length - 1; i >= 0; i--) {
+            num += lanes[i].drainTo(eventsToGo);
+        }
+        eventsOut += num;
+    }
+
+
+    /**
+     * Used only by conductor to get events from a station's output list,
+     * highest priority first, up to a limit.
+     * @param eventsToGo list of event to get
+     * @param quantity   maximum number of events to get
+     * @return time, as given by {@link System#nanoTime()}, the longest waiting of the
+     *         events gotten was put into this list, or 0 if not known
+     */
+    synchronized long get(List<EtEventImpl> eventsToGo, int quantity) {
+        // the oldest event is at the front of one of the lanes taken from
+        long oldest = 0L;
+        EtEventImpl first;
+        int num = 0;
+        for (int i = lanes.length - 1; i >= 0 && num < quantity; i--) {
+            if (arrivalTimes != null && (first = lanes[i].peekFirst()) != null &&
+                ((oldest == 0L) || (arrivalTimes[first.getId()] - oldest < 0L))) {
+                oldest = arrivalTimes[first.getId()];
+            }
+            num += lanes[i].drainTo(eventsToGo, quantity - num);
+        }
+        eventsOut += num;
+        return oldest;
     }
 
 
@@ -372,102 +681,159 @@ class EventList {
      * @throws EtWakeUpException
      *     if the attachment has been commanded to wakeup,
      */
-    synchronized EtEventImpl[] get(AttachmentLocal att, int mode, int microSec, int quantity)
+    EtEventImpl[] get(AttachmentLocal att, int mode, int microSec, int quantity)
             throws EtEmptyException, EtWakeUpException, EtTimeoutException {
 
-        int  nanos, count = events.size();
-        long begin, microDelay, milliSec, elapsedTime = 0;
-
-        // Sleep mode is never used since it is implemented in the TcpServer
-        // thread by repeated calls in timed mode.
-        if (count == 0) {
-            if (mode == EtConstants.sleep) {
-                while (count < 1) {
-                    waitingCount++;
-                    att.setWaiting(true);
-//System.out.println("  get" + att.id + ": sleep");
-                    try {
-                        wait();
-                    }
-                    catch (InterruptedException ex) {
+        EventWaiter waiter = null;
+        long deadline = getDeadline(mode, microSec);
+
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (waiter != null) {
+                        unqueueWaiter(att, waiter, waiters);
                     }
 
-                    // if we've been told to wakeup & exit ...
-                    if (att.isWakeUp() || wakeAll) {
-                        att.setWakeUp(false);
-                        att.setWaiting(false);
-                        // last man to wake resets variable
-                        if (--waitingCount < 1) {
-                            wakeAll = false;
+                    int count = getCount();
+                    if (count > 0) {
+                        if (quantity > count) {
+                            quantity = count;
                         }
-                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+//System.out.println("  get"+ att.id + ": quantity = " + quantity);
+                        EtEventImpl[] eventsToGo = new EtEventImpl[quantity];
+                        drainTo(eventsToGo, 0, quantity);
+                        eventsOut += quantity;
+
+                        // let the next waiter have what's left
+                        if (getCount() > 0) signalWaiters();
+                        return eventsToGo;
                     }
 
-                    att.setWaiting(false);
-                    waitingCount--;
-                    count = events.size();
+                    waiter = queueWaiter(att, mode, deadline, waiter, waiters, false);
                 }
+                parkWaiter(att, waiter, mode, deadline);
             }
-            else if (mode == EtConstants.timed) {
-                while (count < 1) {
-                    microDelay = microSec - 1000*elapsedTime;
-                    if (microDelay <= 0) {
-                        throw new EtTimeoutException("timed out");
-                    }
-                    milliSec = microDelay/1000L;
-                    nanos = 1000 * (int)(microDelay - 1000*milliSec);
-
-                    waitingCount++;
-                    att.setWaiting(true);
-//System.out.println("  get" + att.getId() + ": wait " + milliSec + " ms and " +
-//                   nanos + " nsec, elapsed time = " + elapsedTime);
-                    begin = System.currentTimeMillis();
-                    try {
-                        wait(milliSec, nanos);
-                    }
-                    catch (InterruptedException ex) {
+        }
+        finally {
+            if (waiter != null) waiter.release();
+        }
+    }
+
+
+    /**
+     * Method for an attachment to get events placed into an array it supplies.
+     * Nothing is allocated, so an attachment reusing the same array creates no garbage.
+     *
+     * @param att attachment
+     * @param mode wait mode
+     * @param microSec time in microseconds to wait if timed wait mode
+     * @param eventsToGo array in which to place events
+     * @param offset index into array at which to place the first event
+     * @param quantity maximum number of events desired
+     * @return number of events placed into the array
+     *
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and the station's input list is empty
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     */
+    int get(AttachmentLocal att, int mode, int microSec,
+            EtEventImpl[] eventsToGo, int offset, int quantity)
+            throws EtEmptyException, EtWakeUpException, EtTimeoutException {
+
+        if (quantity > eventsToGo.length - offset) {
+            quantity = eventsToGo.length - offset;
+        }
+
+        EventWaiter waiter = null;
+        long deadline = getDeadline(mode, microSec);
+
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (waiter != null) {
+                        unqueueWaiter(att, waiter, waiters);
                     }
-                    elapsedTime += System.currentTimeMillis() - begin;
-
-                    // if we've been told to wakeup & exit ...
-                    if (att.isWakeUp() || wakeAll) {
-                        att.setWakeUp(false);
-                        att.setWaiting(false);
-                        // last man to wake resets variable
-                        if (--waitingCount < 1) {
-                            wakeAll = false;
-                        }
-                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+
+                    if (getCount() > 0) {
+                        return take(eventsToGo, offset, quantity);
                     }
 
-                    att.setWaiting(false);
-                    waitingCount--;
-                    count = events.size();
-//System.out.println("  get" + att.id + ": woke up and counts = " + count);
+                    waiter = queueWaiter(att, mode, deadline, waiter, waiters, false);
                 }
+                parkWaiter(att, waiter, mode, deadline);
             }
-            else if (mode == EtConstants.async) {
-                throw new EtEmptyException("no events in list");
-            }
         }
+        finally {
+            if (waiter != null) waiter.release();
+        }
+    }
+
 
+    /**
+     * Remove events from the front of this list, highest priority first, and place
+     * them in order into an array. If any are left, the next waiter is told.
+     * Only called while synchronized on this list.
+     * @param eventsToGo array to place events into
+     * @param offset     index into array at which to place the first event
+     * @param quantity   maximum number of events to remove
+     * @return number of events removed
+     */
+    int take(EtEventImpl[] eventsToGo, int offset, int quantity) {
+        int count = getCount();
         if (quantity > count) {
             quantity = count;
         }
-//System.out.println("  get"+ att.id + ": quantity = " + quantity);
+        drainTo(eventsToGo, offset, quantity);
+        eventsOut += quantity;
 
-        List<EtEventImpl> deleteList = events.subList(0, quantity);
-        EtEventImpl[] eventsToGo = new EtEventImpl[quantity];
-        deleteList.toArray(eventsToGo);
-        deleteList.clear();
+        // let the next waiter have what's left
+        if (getCount() > 0) signalWaiters();
+        return quantity;
+    }
 
-        eventsOut += quantity;
-        return eventsToGo;
+
+    /**
+     * Remove events from the front of this list, highest priority first, and place
+     * them in order into an array. Only called while synchronized on this list.
+     * @param eventsToGo array to place events into
+     * @param offset     index into array at which to place the first event
+     * @param quantity   number of events to remove (no more than are in the list)
+     */
+    void drainTo(EtEventImpl[] eventsToGo, int offset, int quantity) {
+        int num = 0;
+        for (int i = lanes.length - 1; i >= 0 && num < quantity; i--) {
+            num += lanes[i].drainTo(eventsToGo, offset + num, quantity - num);
+        }
+    }
+
+
+    /**
+     * Method for an attachment of a sibling parallel station, whose own input list
+     * is empty, to take events from the front of this list. No more than half of
+     * the events (rounded up) are taken so this station's own attachments
+     * keep some. Never waits.
+     *
+     * @param eventsToGo array in which to place events
+     * @param offset index into array at which to place the first event
+     * @param quantity maximum number of events desired
+     * @return number of events placed into the array (0 if this list is empty)
+     */
+    synchronized int steal(EtEventImpl[] eventsToGo, int offset, int quantity) {
+        int num = Math.min(quantity, (getCount() + 1)/2);
+        if (num > 0) {
+            drainTo(eventsToGo, offset, num);
+            eventsOut += num;
+        }
+        return num;
     }
 
 
     /**
      * Method for an attachment (in TcpServer thread) to get a list of events.
+     * Not synchronized itself since subclasses may wait on other objects.
      *
      * @param att attachment
      * @param mode wait mode
@@ -482,115 +848,79 @@ class EventList {
      * @throws EtWakeUpException
      *     if the attachment has been commanded to wakeup,
      */
-    synchronized List<EtEventImpl> get(AttachmentLocal att, int mode, int microSec, int quantity, int group)
+    List<EtEventImpl> get(AttachmentLocal att, int mode, int microSec, int quantity, int group)
             throws EtEmptyException, EtWakeUpException, EtTimeoutException {
 
-        int nanos, count = events.size(), groupCount = 0;
-        EtEventImpl ev;
-        boolean scanList = true;
-        long begin, microDelay, milliSec, elapsedTime = 0;
-        LinkedList<EtEventImpl> groupList = new LinkedList<EtEventImpl>();
-
-        // Sleep mode is never used since it is implemented in the TcpServer
-        // thread by repeated calls in timed mode.
-        do {
-            if (mode == EtConstants.sleep) {
-                while (count < 1 || !scanList) {
-                    waitingCount++;
-                    att.setWaiting(true);
-//System.out.println("  get" + att.id + ": sleep");
-                    try {
-                        wait();
-                    }
-                    catch (InterruptedException ex) {
-                    }
+        EtEventImpl[] evs = new EtEventImpl[Math.min(quantity, maxCount)];
+        int num = get(att, mode, microSec, evs, 0, evs.length, group);
 
-                    // if we've been told to wakeup & exit ...
-                    if (att.isWakeUp() || wakeAll) {
-                        att.setWakeUp(false);
-                        att.setWaiting(false);
-                        // last man to wake resets variable
-                        if (--waitingCount < 1) {
-                            wakeAll = false;
-                        }
-                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                    }
+        ArrayList<EtEventImpl> groupList = new ArrayList<EtEventImpl>(num);
+        for (int i=0; i < num; i++) {
+            groupList.add(evs[i]);
+        }
+        return groupList;
+    }
 
-                    att.setWaiting(false);
-                    waitingCount--;
-                    count = events.size();
-                    scanList = true;
-                }
-            }
-            else if (mode == EtConstants.timed) {
-                while (count < 1 || !scanList) {
-                    microDelay = microSec - 1000*elapsedTime;
-                    if (microDelay <= 0) {
-                        throw new EtTimeoutException("timed out");
-                    }
-                    milliSec = microDelay/1000L;
-                    nanos = 1000 * (int)(microDelay - 1000*milliSec);
-
-//                    if (nanos > 999999) {
-//                        System.out.println("nanos = " + nanos + ", millisec = " +
-//                           milliSec + ", elapsed = " + elapsedTime + ", microSec = " + microSec + ", scanList = " + scanList);
-//                  }
-
-                    waitingCount++;
-                    att.setWaiting(true);
-//System.out.println("  get" + att.id + ": wait " + milliSec + " ms and " +
-//                   nanos + " nsec, elapsed time = " + elapsedTime);
-                    begin = System.currentTimeMillis();
-                    try {
-                        wait(milliSec, nanos);
-                    }
-                    catch (InterruptedException ex) {
-                    }
-                    elapsedTime += System.currentTimeMillis() - begin;
-
-                    // if we've been told to wakeup & exit ...
-                    if (att.isWakeUp() || wakeAll) {
-                        att.setWakeUp(false);
-                        att.setWaiting(false);
-                        // last man to wake resets variable
-                        if (--waitingCount < 1) {
-                            wakeAll = false;
-                        }
-                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                    }
 
-                    att.setWaiting(false);
-                    waitingCount--;
-                    count = events.size();
-//System.out.println("  get" + att.id + ": woke up and counts = " + count);
-                    scanList = true;
-                }
-            }
-            else if (mode == EtConstants.async) {
-                throw new EtEmptyException("no events in list");
-            }
+    /**
+     * Method for an attachment to get events of a given group placed into
+     * an array it supplies.
+     *
+     * @param att attachment
+     * @param mode wait mode
+     * @param microSec time in microseconds to wait if timed wait mode
+     * @param eventsToGo array in which to place events
+     * @param offset index into array at which to place the first event
+     * @param quantity maximum number of events desired
+     * @param group group number of events desired
+     * @return number of events placed into the array
+     *
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and the station's input list is empty
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     */
+    int get(AttachmentLocal att, int mode, int microSec,
+            EtEventImpl[] eventsToGo, int offset, int quantity, int group)
+            throws EtEmptyException, EtWakeUpException, EtTimeoutException {
 
-            if (quantity > count) {
-                quantity = count;
-            }
-//System.out.println("  get"+ att.id + ": quantity = " + quantity);
+        if (quantity > eventsToGo.length - offset) {
+            quantity = eventsToGo.length - offset;
+        }
 
-            for (ListIterator liter = events.listIterator(); liter.hasNext(); ) {
-                ev = (EtEventImpl)liter.next();
-                if (ev.getGroup() == group) {
-                    groupList.add(ev);
-                    if (++groupCount >= quantity)  break;
-                }
-            }
+        int groupCount;
+        EventWaiter waiter = null;
+        long deadline = getDeadline(mode, microSec);
 
-            scanList = false;
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (waiter != null) {
+                        unqueueWaiter(att, waiter, waiters);
+                    }
 
-            // If we got nothing and we're Constants.sleep or Constants.timed, then try again
-        } while (groupCount == 0 && mode != EtConstants.async);
+                    // remove matching events from this list in a single pass, highest priority first
+                    groupCount = 0;
+                    for (int i = lanes.length - 1; i >= 0 && groupCount < quantity; i--) {
+                        groupCount += lanes[i].drainGroupTo(group, eventsToGo, offset + groupCount,
+                                                            quantity - groupCount);
+                    }
 
-        // remove from this list
-        events.removeAll(groupList);
-        eventsOut += groupList.size();
-        return groupList;
+                    if (groupCount > 0) {
+                        eventsOut += groupCount;
+                        return groupCount;
+                    }
+
+                    // Waiters for a group are unparked whenever events arrive
+                    waiter = queueWaiter(att, mode, deadline, waiter, waiters, true);
+                }
+                parkWaiter(att, waiter, mode, deadline);
+            }
+        }
+        finally {
+            if (waiter != null) waiter.release();
+        }
     }
 }
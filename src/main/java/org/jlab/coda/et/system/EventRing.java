@@ -0,0 +1,315 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.*;
+import org.jlab.coda.et.EtEventImpl;
+
+/**
+ * This class is a circular buffer of events used as a single lane (one priority)
+ * of an {@link EventList}. Adding or removing at either end takes constant time
+ * and nothing is ever shifted. It is not synchronized; the owning EventList
+ * takes care of that.
+ *
+ * @author Carl Timmer
+ */
+
+class EventRing {
+
+    /** Circular array of events. */
+    private EtEventImpl[] ring;
+
+    /** Index of the first event in the ring. */
+    private int head;
+
+    /** Number of events in the ring. */
+    private int count;
+
+    /** The ring never needs to grow beyond this number of events. */
+    private final int maxCapacity;
+
+
+    /**
+     * Construct a new EventRing object.
+     * @param capacity    initial number of events the ring can hold
+     * @param maxCapacity maximum number of events the ring will ever need to hold
+     *                    (normally the total number of events in the ET system)
+     */
+    EventRing(int capacity, int maxCapacity) {
+        if (capacity < 1) capacity = 1;
+        if (maxCapacity < capacity) maxCapacity = capacity;
+        this.maxCapacity = maxCapacity;
+        ring = new EtEventImpl[capacity];
+    }
+
+
+    /**
+     * Get the number of events in the ring.
+     * @return number of events in the ring
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Is the ring empty?
+     * @return <code>true</code> if the ring is empty
+     */
+    boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * Get the number of events the ring can hold before it has to grow.
+     * @return number of events the ring can hold now
+     */
+    int capacity() {
+        return ring.length;
+    }
+
+    /**
+     * Make sure there is room for the given number of events. Since the total number
+     * of events in an ET system is fixed, this only allocates while a lazily sized
+     * ring is warming up.
+     * @param needed number of events the ring must be able to hold
+     */
+    private void ensureCapacity(int needed) {
+        if (needed <= ring.length) return;
+
+        int newSize = ring.length;
+        while (newSize < needed) {
+            newSize = (newSize > maxCapacity/2) ? Math.max(maxCapacity, needed) : 2*newSize;
+        }
+
+        EtEventImpl[] newRing = new EtEventImpl[newSize];
+        copyTo(newRing, 0, count);
+        ring = newRing;
+        head = 0;
+    }
+
+    /**
+     * Copy the first events of the ring, in order, into an array.
+     * @param array destination array
+     * @param off   offset into destination array
+     * @param num   number of events to copy
+     */
+    private void copyTo(EtEventImpl[] array, int off, int num) {
+        int firstPart = Math.min(num, ring.length - head);
+        System.arraycopy(ring, head, array, off, firstPart);
+        if (firstPart < num) {
+            System.arraycopy(ring, 0, array, off + firstPart, num - firstPart);
+        }
+    }
+
+    /**
+     * Null out ring slots so they no longer reference events.
+     * @param from first slot (ring index)
+     * @param num  number of slots
+     */
+    private void clearSlots(int from, int num) {
+        int firstPart = Math.min(num, ring.length - from);
+        Arrays.fill(ring, from, from + firstPart, null);
+        if (firstPart < num) {
+            Arrays.fill(ring, 0, num - firstPart, null);
+        }
+    }
+
+    /**
+     * Add an event to the end of the ring.
+     * @param ev event to add
+     */
+    void addLast(EtEventImpl ev) {
+        ensureCapacity(count + 1);
+        int tail = head + count;
+        if (tail >= ring.length) tail -= ring.length;
+        ring[tail] = ev;
+        count++;
+    }
+
+    /**
+     * Add an event to the front of the ring.
+     * @param ev event to add
+     */
+    void addFirst(EtEventImpl ev) {
+        ensureCapacity(count + 1);
+        if (--head < 0) head += ring.length;
+        ring[head] = ev;
+        count++;
+    }
+
+    /**
+     * Add a list of events, in order, to the end of the ring.
+     * @param evs list of events to add
+     */
+    void addAll(List<EtEventImpl> evs) {
+        addAll(evs, 0, evs.size());
+    }
+
+    /**
+     * Add part of a list of events, in order, to the end of the ring.
+     * @param evs list of events to add
+     * @param off index into list of the first event to add
+     * @param num number of events to add
+     */
+    void addAll(List<EtEventImpl> evs, int off, int num) {
+        ensureCapacity(count + num);
+        int tail = head + count;
+        if (tail >= ring.length) tail -= ring.length;
+        for (int i=off; i < off + num; i++) {
+            ring[tail] = evs.get(i);
+            if (++tail == ring.length) tail = 0;
+        }
+        count += num;
+    }
+
+    /**
+     * Add part of an array of events, in order, to the end of the ring.
+     * @param evs array of events to add
+     * @param off offset into array
+     * @param num number of events to add
+     */
+    void addAll(EtEventImpl[] evs, int off, int num) {
+        ensureCapacity(count + num);
+        int tail = head + count;
+        if (tail >= ring.length) tail -= ring.length;
+        int firstPart = Math.min(num, ring.length - tail);
+        System.arraycopy(evs, off, ring, tail, firstPart);
+        if (firstPart < num) {
+            System.arraycopy(evs, off + firstPart, ring, 0, num - firstPart);
+        }
+        count += num;
+    }
+
+    /**
+     * Remove the first event from the ring.
+     * @return first event or null if the ring is empty
+     */
+    EtEventImpl pollFirst() {
+        if (count == 0) return null;
+        EtEventImpl ev = ring[head];
+        ring[head] = null;
+        if (++head == ring.length) head = 0;
+        count--;
+        return ev;
+    }
+
+    /**
+     * Get the first event without removing it.
+     * @return first event or null if the ring is empty
+     */
+    EtEventImpl peekFirst() {
+        return (count == 0) ? null : ring[head];
+    }
+
+    /**
+     * Remove up to num events from the front of the ring and place them, in order, into an array.
+     * @param array destination array
+     * @param off   offset into destination array
+     * @param num   maximum number of events to remove
+     * @return number of events removed
+     */
+    int drainTo(EtEventImpl[] array, int off, int num) {
+        if (num > count) num = count;
+        if (num < 1) return 0;
+        copyTo(array, off, num);
+        clearSlots(head, num);
+        head += num;
+        if (head >= ring.length) head -= ring.length;
+        count -= num;
+        if (count == 0) head = 0;
+        return num;
+    }
+
+    /**
+     * Remove all events from the ring and add them, in order, to a list.
+     * @param list list to add events to
+     * @return number of events removed
+     */
+    int drainTo(List<EtEventImpl> list) {
+        int num = count;
+        for (int i=0, j=head; i < num; i++) {
+            list.add(ring[j]);
+            ring[j] = null;
+            if (++j == ring.length) j = 0;
+        }
+        head  = 0;
+        count = 0;
+        return num;
+    }
+
+    /**
+     * Remove up to num events from the front of the ring and add them, in order, to a list.
+     * @param list list to add events to
+     * @param num  maximum number of events to remove
+     * @return number of events removed
+     */
+    int drainTo(List<EtEventImpl> list, int num) {
+        if (num >= count) return drainTo(list);
+        if (num < 1) return 0;
+        int j = head;
+        for (int i=0; i < num; i++) {
+            list.add(ring[j]);
+            ring[j] = null;
+            if (++j == ring.length) j = 0;
+        }
+        head   = j;
+        count -= num;
+        return num;
+    }
+
+    /**
+     * Remove up to num events belonging to the given group from the ring and place them,
+     * in order, into an array. The remaining events keep their order. This takes a single
+     * pass over the ring.
+     *
+     * @param group group number of events to remove
+     * @param arr   array to place events into
+     * @param off   offset into array
+     * @param num   maximum number of events to remove
+     * @return number of events removed
+     */
+    int drainGroupTo(int group, EtEventImpl[] arr, int off, int num) {
+        if (num < 1 || count == 0) return 0;
+
+        int found = 0, kept = 0;
+        int src = head, dst = head;
+        EtEventImpl ev;
+
+        for (int i=0; i < count; i++) {
+            ev = ring[src];
+            if (found < num && ev.getGroup() == group) {
+                arr[off + found++] = ev;
+            }
+            else {
+                ring[dst] = ev;
+                if (++dst == ring.length) dst = 0;
+                kept++;
+            }
+            if (++src == ring.length) src = 0;
+        }
+
+        // null out the now unused slots at the end
+        clearSlots(dst, count - kept);
+        count = kept;
+        return found;
+    }
+
+    /** Remove all events from the ring. */
+    void clear() {
+        clearSlots(head, count);
+        head  = 0;
+        count = 0;
+    }
+}
@@ -0,0 +1,173 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.exception.EtException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class holds the data of all of an ET system's events outside of the Java heap.
+ * The memory is allocated as a few large regions, either direct memory or a
+ * memory-mapped file, and each event's data buffer is a fixed-size slice of one region.
+ * Since the garbage collector neither scans nor moves this memory, GC pauses do not
+ * grow with the number or size of events.
+ *
+ * @author Carl Timmer
+ */
+
+class EventSlab {
+
+    /** Largest region of memory allocated or mapped at once in bytes. */
+    static final int regionSizeMax = 1 << 30;
+
+    /** Regions of memory holding the event data. */
+    private final ByteBuffer[] regions;
+
+    /** Size of each event's slice in bytes. */
+    private final int eventSize;
+
+    /** Number of events in each region. */
+    private final int eventsPerRegion;
+
+    /** File backing the regions if memory-mapped, else null. */
+    private File file;
+
+
+    /**
+     * Constructor which allocates or maps all the memory needed for the events.
+     *
+     * @param numEvents number of events
+     * @param eventSize size of each event in bytes
+     * @param storage   {@link EtConstants#storageDirect} or {@link EtConstants#storageMapped}
+     * @param fileName  name of the file to map if storage is {@link EtConstants#storageMapped}
+     * @throws EtException if the memory cannot be allocated or the file cannot be mapped
+     */
+    EventSlab(int numEvents, int eventSize, int storage, String fileName) throws EtException {
+        this.eventSize  = eventSize;
+        eventsPerRegion = regionSizeMax / eventSize;
+        if (eventsPerRegion < 1) {
+            throw new EtException("events too large for off-heap storage (> " + regionSizeMax + " bytes)");
+        }
+
+        int regionCount = (numEvents + eventsPerRegion - 1) / eventsPerRegion;
+        regions = new ByteBuffer[regionCount];
+
+        if (storage == EtConstants.storageMapped) {
+            mapRegions(numEvents, fileName);
+            return;
+        }
+
+        try {
+            for (int i=0; i < regionCount; i++) {
+                regions[i] = ByteBuffer.allocateDirect(regionBytes(i, numEvents));
+            }
+        }
+        catch (OutOfMemoryError e) {
+            throw new EtException("cannot allocate " + ((long)numEvents*eventSize) +
+                                  " bytes of direct memory, increase -XX:MaxDirectMemorySize");
+        }
+    }
+
+
+    /**
+     * Map each region to its own part of a newly created file.
+     *
+     * @param numEvents number of events
+     * @param fileName  name of the file to map
+     * @throws EtException if the file exists already or cannot be mapped
+     */
+    private void mapRegions(int numEvents, String fileName) throws EtException {
+        file = new File(fileName);
+        try {
+            if (!file.createNewFile()) {
+                throw new EtException("event data file " + fileName + " already exists");
+            }
+            file.deleteOnExit();
+
+            // the mappings stay valid after the file is closed
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            try {
+                FileChannel channel = raf.getChannel();
+                long position = 0L;
+                for (int i=0; i < regions.length; i++) {
+                    int bytes = regionBytes(i, numEvents);
+                    regions[i] = channel.map(FileChannel.MapMode.READ_WRITE, position, bytes);
+                    position += bytes;
+                }
+            }
+            finally {
+                raf.close();
+            }
+        }
+        catch (IOException e) {
+            file.delete();
+            throw new EtException("cannot map event data file " + fileName + ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Get the number of bytes in the given region.
+     *
+     * @param region    index of region
+     * @param numEvents total number of events
+     * @return number of bytes in the given region
+     */
+    private int regionBytes(int region, int numEvents) {
+        int events = Math.min(eventsPerRegion, numEvents - region*eventsPerRegion);
+        return events * eventSize;
+    }
+
+
+    /**
+     * Get the data buffer of an event. It is a slice of one region,
+     * independent of all other events' buffers.
+     *
+     * @param index index of the event
+     * @return data buffer of the event
+     */
+    ByteBuffer getEventBuffer(int index) {
+        ByteBuffer region = regions[index / eventsPerRegion].duplicate();
+        int start = (index % eventsPerRegion) * eventSize;
+        region.limit(start + eventSize).position(start);
+        return region.slice();
+    }
+
+
+    /**
+     * Get the number of regions of memory.
+     * @return number of regions of memory
+     */
+    int getRegionCount() {
+        return regions.length;
+    }
+
+
+    /**
+     * Delete any file backing the memory. The memory itself is released
+     * once the events are no longer referenced.
+     */
+    void free() {
+        if (file != null) {
+            file.delete();
+        }
+    }
+}
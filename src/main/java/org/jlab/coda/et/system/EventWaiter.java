@@ -0,0 +1,114 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * This class represents a single thread waiting for events in an {@link EventList}.
+ * Waiters are placed in a {@link WaiterQueue} and parked. Putting events into the
+ * list unparks only as many waiters as needed instead of waking every thread
+ * waiting on the list. Each attachment keeps one of these so that waiting
+ * creates no garbage.
+ *
+ * @author Carl Timmer
+ */
+
+class EventWaiter {
+
+    /** Thread parked while waiting, null if this waiter is not in use. */
+    private volatile Thread thread;
+
+    /** Has this waiter been told events have arrived since it was queued? */
+    private volatile boolean signaled;
+
+    /** Value of the list's wake-all count when this waiter was queued. */
+    private int wakeAllSeen;
+
+    /** Is this waiter only interested in events of a particular group? */
+    boolean grouped;
+
+    /** Does this waiter's attachment also take events from sibling parallel stations? */
+    boolean stealing;
+
+    /** Is this waiter in a queue? Protected by the lock of the queue's list. */
+    boolean queued;
+
+    /** Neighbors in the queue. Protected by the lock of the queue's list. */
+    EventWaiter prev, next;
+
+
+    /**
+     * Claim this waiter for use by the calling thread.
+     * @return true if claimed, false if another thread is already using it
+     */
+    synchronized boolean claim() {
+        if (thread != null) return false;
+        thread = Thread.currentThread();
+        return true;
+    }
+
+    /** Give up use of this waiter. */
+    synchronized void release() {
+        thread = null;
+    }
+
+    /**
+     * Get the thread using this waiter.
+     * @return thread using this waiter, or null if not in use
+     */
+    Thread getThread() {
+        return thread;
+    }
+
+    /**
+     * Has this waiter been told events have arrived?
+     * @return true if this waiter has been told events have arrived
+     */
+    boolean isSignaled() {
+        return signaled;
+    }
+
+    /**
+     * Get the value of the list's wake-all count when this waiter was queued.
+     * @return value of the list's wake-all count when this waiter was queued
+     */
+    int getWakeAllSeen() {
+        return wakeAllSeen;
+    }
+
+    /**
+     * Reset this waiter before it is queued.
+     * @param wakeAllCount current value of the list's wake-all count
+     */
+    void reset(int wakeAllCount) {
+        signaled = false;
+        wakeAllSeen = wakeAllCount;
+    }
+
+    /** Tell the waiting thread events have arrived and unpark it. */
+    void signal() {
+        signaled = true;
+        unpark();
+    }
+
+    /** Unpark the waiting thread, if any, without telling it events have arrived. */
+    void unpark() {
+        Thread t = thread;
+        if (t != null) {
+            LockSupport.unpark(t);
+        }
+    }
+}
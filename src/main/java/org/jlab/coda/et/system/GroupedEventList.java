@@ -0,0 +1,342 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.*;
+import org.jlab.coda.et.exception.*;
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.EtEventImpl;
+
+/**
+ * This class defines the input list of GRAND_CENTRAL station which holds all
+ * free events. Free events are kept in a separate lane for each group so that
+ * asking for events of a particular group never looks at events of another group.
+ * Priority is meaningless for free events and is ignored.<p>
+ *
+ * Attachments waiting for events of a given group wait in a queue belonging to that
+ * group and are only woken when events of that group are put into the list.
+ * Attachments waiting for events of any group wait in the list's own queue as usual.
+ *
+ * @author Carl Timmer
+ */
+
+class GroupedEventList extends EventList {
+
+    /** Free events of each group, in order. Lane index is group number - 1. */
+    private final EventRing[] lanes;
+
+    /** Attachments waiting for events of each group. Index is group number - 1. */
+    private final WaiterQueue[] groupWaiters;
+
+    /** Lanes which had events added during the current put. */
+    private final boolean[] touched;
+
+    /** Total number of events in all lanes. */
+    private int count;
+
+    /** Lane to start from when getting events regardless of group. */
+    private int nextLane;
+
+    /** Pool taking back buffers that free events borrowed, null if none. */
+    private final EventBufferPool bufferPool;
+
+
+
+    /**
+     * Construct a new GroupedEventList object.
+     * @param listSize   maximum number of events the list will ever hold
+     *                   (total number of events in the ET system)
+     * @param groupSizes number of events in each group
+     * @param bufferPool pool taking back buffers borrowed by events as they are freed,
+     *                   may be null
+     */
+    GroupedEventList(int listSize, int[] groupSizes, EventBufferPool bufferPool) {
+        // the inherited priority lanes are not used
+        super(listSize, 1);
+        this.bufferPool = bufferPool;
+        int groupCount = groupSizes.length;
+        lanes        = new EventRing[groupCount];
+        groupWaiters = new WaiterQueue[groupCount];
+        touched      = new boolean[groupCount];
+
+        for (int i=0; i < groupCount; i++) {
+            // no group ever holds more than its own events
+            lanes[i] = new EventRing(groupSizes[i], listSize);
+            groupWaiters[i] = new WaiterQueue();
+        }
+    }
+
+
+    /**
+     * Get the number of events in this list.
+     * @return number of events in this list
+     */
+    int getCount() {
+        return count;
+    }
+
+
+    /**
+     * Put an event at the end of its group's lane and remember the lane was touched.
+     * Any larger buffer the event borrowed goes back to the pool.
+     * @param ev event to put
+     */
+    private void addLast(EtEventImpl ev) {
+        if (bufferPool != null) bufferPool.reclaim(ev);
+        int lane = ev.getGroup() - 1;
+        lanes[lane].addLast(ev);
+        touched[lane] = true;
+        count++;
+    }
+
+
+    /**
+     * Tell attachments waiting on touched lanes that events of their group are here,
+     * as well as the first attachment waiting for events of any group.
+     * Only called while synchronized on this list.
+     */
+    void signalWaiters() {
+        for (int i=0; i < lanes.length; i++) {
+            if (!touched[i]) continue;
+            touched[i] = false;
+            if (!groupWaiters[i].isEmpty()) {
+                groupWaiters[i].signalFirst();
+            }
+        }
+        super.signalWaiters();
+    }
+
+
+    /**
+     * Get the queue in which attachments wait for events of a given group.
+     * Only called while synchronized on this list.
+     * @param group group number of events, 0 for any group
+     * @return queue in which attachments wait for events of the group
+     */
+    WaiterQueue getWaiterQueue(int group) {
+        if (group < 1) return super.getWaiterQueue(group);
+        return groupWaiters[group - 1];
+    }
+
+
+    /**
+     * Are there any events of a given group in this list?
+     * Only called while synchronized on this list.
+     * @param group group number of events, 0 for any group
+     * @return true if there are events of the group in this list
+     */
+    boolean hasEvents(int group) {
+        if (group < 1) return count > 0;
+        return lanes[group - 1].size() > 0;
+    }
+
+
+    /** Wake up all attachments waiting to read events from this list. */
+    synchronized void wakeUpAll() {
+        super.wakeUpAll();
+        for (WaiterQueue queue : groupWaiters) {
+            queue.unparkAll();
+        }
+    }
+
+
+    /**
+     * Put all events into their group's lane. This is used inside synchronized blocks
+     * in conductor threads and in the initial filling of GRAND_CENTRAL station.
+     * @param newEvents list of events to put
+     */
+    void putInLow(List<EtEventImpl> newEvents) {
+        for (EtEventImpl ev : newEvents) {
+            addLast(ev);
+        }
+        setEventsIn(getEventsIn() + newEvents.size());
+        signalWaiters();
+    }
+
+
+    /**
+     * Synchronized version of putInLow for user to dump part of an array
+     * of events into GRAND_CENTRAL station.
+     * @param newEvents array of events to put
+     * @param offset    index into array of the first event to put
+     * @param length    number of events to put
+     */
+    synchronized void putInGC(EtEventImpl[] newEvents, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            addLast(newEvents[i]);
+        }
+        setEventsIn(getEventsIn() + length);
+        signalWaiters();
+    }
+
+
+    /**
+     * Synchronized version of putInLow for user to dump events into
+     * GRAND_CENTRAL station.
+     * @param newEvents list of events to put
+     */
+    synchronized void putInGC(List<EtEventImpl> newEvents) {
+        putInLow(newEvents);
+    }
+
+
+    /**
+     * Put all events into their group's lane. Used only in conductor threads
+     * inside synchronized blocks.
+     * @param newEvents list of events to put
+     */
+    void putAll(List<EtEventImpl> newEvents) {
+        putInLow(newEvents);
+    }
+
+
+    /**
+     * Put part of an array of events into their group's lane.
+     * @param newEvents array of events to put
+     * @param offset    index into array of the first event to put
+     * @param length    number of events to put
+     */
+    synchronized void put(EtEventImpl[] newEvents, int offset, int length) {
+        putInGC(newEvents, offset, length);
+    }
+
+
+    /**
+     * Put all events into their group's lane.
+     * @param newEvents list of events to put
+     */
+    synchronized void put(List<EtEventImpl> newEvents) {
+        putInGC(newEvents);
+    }
+
+
+    /**
+     * Put all events at the front of their group's lane. Used to restore
+     * events to GRAND_CENTRAL when a user's connection is broken.
+     * @param newEvents list of events to put
+     */
+    synchronized void putReverse(List<EtEventImpl> newEvents) {
+        int lane;
+        for (EtEventImpl ev : newEvents) {
+            if (bufferPool != null) bufferPool.reclaim(ev);
+            lane = ev.getGroup() - 1;
+            lanes[lane].addFirst(ev);
+            touched[lane] = true;
+        }
+        count += newEvents.size();
+        signalWaiters();
+    }
+
+
+    /**
+     * Get all events from this list.
+     * @param eventsToGo list of event to get
+     */
+    synchronized void get(List<EtEventImpl> eventsToGo) {
+        int num = 0;
+        for (EventRing lane : lanes) {
+            num += lane.drainTo(eventsToGo);
+        }
+        count = 0;
+        setEventsOut(getEventsOut() + num);
+    }
+
+
+    /**
+     * Remove events of any group from this list and place them into an array.
+     * Lanes are used in turn so all groups get recycled.
+     * Only called while synchronized on this list.
+     * @param eventsToGo array to place events into
+     * @param offset     index into array at which to place the first event
+     * @param quantity   number of events to remove (no more than are in the list)
+     */
+    void drainTo(EtEventImpl[] eventsToGo, int offset, int quantity) {
+        int num = 0;
+        for (int i=0; i < lanes.length && num < quantity; i++) {
+            num += lanes[nextLane].drainTo(eventsToGo, offset + num, quantity - num);
+            if (++nextLane == lanes.length) nextLane = 0;
+        }
+        count -= num;
+    }
+
+
+    /**
+     * Method for an attachment to get events of a given group placed into
+     * an array it supplies. Only that group's lane is looked at and, if it's empty,
+     * the attachment waits until events of that group are put into this list.
+     *
+     * @param att attachment
+     * @param mode wait mode
+     * @param microSec time in microseconds to wait if timed wait mode
+     * @param eventsToGo array in which to place events
+     * @param offset index into array at which to place the first event
+     * @param quantity maximum number of events desired
+     * @param group group number of events desired
+     * @return number of events placed into the array
+     *
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and the station's input list is empty
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     */
+    int get(AttachmentLocal att, int mode, int microSec,
+            EtEventImpl[] eventsToGo, int offset, int quantity, int group)
+            throws EtEmptyException, EtWakeUpException, EtTimeoutException {
+
+        int lane = group - 1;
+        EventRing ring = lanes[lane];
+        WaiterQueue queue = groupWaiters[lane];
+        EventWaiter waiter = null;
+        long deadline = getDeadline(mode, microSec);
+
+        if (quantity > eventsToGo.length - offset) {
+            quantity = eventsToGo.length - offset;
+        }
+
+        try {
+            while (true) {
+                synchronized (this) {
+                    if (waiter != null) {
+                        unqueueWaiter(att, waiter, queue);
+                    }
+
+                    if (ring.size() > 0) {
+                        if (quantity > ring.size()) {
+                            quantity = ring.size();
+                        }
+                        ring.drainTo(eventsToGo, offset, quantity);
+                        count -= quantity;
+                        setEventsOut(getEventsOut() + quantity);
+
+                        // let the next waiter of this group have what's left
+                        if (ring.size() > 0 && !queue.isEmpty()) {
+                            queue.signalFirst();
+                        }
+                        return quantity;
+                    }
+
+                    // wait in this group's queue only
+                    waiter = queueWaiter(att, mode, deadline, waiter, queue, false);
+                }
+                parkWaiter(att, waiter, mode, deadline);
+            }
+        }
+        finally {
+            if (waiter != null) waiter.release();
+        }
+    }
+}
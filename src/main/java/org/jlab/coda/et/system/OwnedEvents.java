@@ -0,0 +1,151 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.EtEventImpl;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * This class is the set of events an attachment currently owns - events it got
+ * or made but has not yet put or dumped. Since an event is owned by only one
+ * attachment at a time, the position of each event in its owner's set is kept
+ * in a single array, indexed by event id, shared by all attachments of an ET system
+ * (except those of fan-out stations which share events and so each have their own).
+ * Adding and removing events therefore takes constant time, and finding the
+ * events of an attachment which has gone away only looks at the events it held.
+ *
+ * @author Carl Timmer
+ */
+
+class OwnedEvents {
+
+    /** Position of each event (by id) in the set of the attachment owning it. */
+    private final int[] slots;
+
+    /** Events in this set, the first {@link #count} of which are valid. */
+    private EtEventImpl[] events;
+
+    /** Number of events in this set. */
+    private int count;
+
+
+    /**
+     * Constructor.
+     * @param slots array, indexed by event id, shared by all sets of an ET system
+     */
+    OwnedEvents(int[] slots) {
+        this.slots = slots;
+        events = new EtEventImpl[Math.min(16, slots.length)];
+    }
+
+
+    /**
+     * Add an event to this set.
+     * @param ev event to add
+     */
+    private void add(EtEventImpl ev) {
+        if (count == events.length) {
+            events = Arrays.copyOf(events, Math.min(2*count, slots.length));
+        }
+        slots[ev.getId()] = count;
+        events[count++] = ev;
+    }
+
+
+    /**
+     * Remove an event from this set if it's in it.
+     * @param ev event to remove
+     */
+    private void remove(EtEventImpl ev) {
+        int slot = slots[ev.getId()];
+        if (slot >= count || events[slot] != ev) return;
+
+        // move last event into the hole
+        EtEventImpl last = events[--count];
+        events[slot] = last;
+        slots[last.getId()] = slot;
+        events[count] = null;
+    }
+
+
+    /**
+     * Add part of an array of events to this set.
+     * @param evs    array of events
+     * @param offset index into evs of the first event to add
+     * @param length number of events to add
+     */
+    synchronized void add(EtEventImpl[] evs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            add(evs[i]);
+        }
+    }
+
+
+    /**
+     * Add a list of events to this set.
+     * @param evs list of events
+     */
+    synchronized void add(List<EtEventImpl> evs) {
+        for (EtEventImpl ev : evs) {
+            add(ev);
+        }
+    }
+
+
+    /**
+     * Remove part of an array of events from this set.
+     * Events not in this set are ignored.
+     * @param evs    array of events
+     * @param offset index into evs of the first event to remove
+     * @param length number of events to remove
+     */
+    synchronized void remove(EtEventImpl[] evs, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            remove(evs[i]);
+        }
+    }
+
+
+    /**
+     * Remove a list of events from this set.
+     * Events not in this set are ignored.
+     * @param evs list of events
+     */
+    synchronized void remove(List<EtEventImpl> evs) {
+        for (EtEventImpl ev : evs) {
+            remove(ev);
+        }
+    }
+
+
+    /**
+     * Get the number of events in this set.
+     * @return number of events in this set
+     */
+    synchronized int size() {
+        return count;
+    }
+
+
+    /**
+     * Get a copy of the events in this set.
+     * @return array of the events in this set
+     */
+    synchronized EtEventImpl[] toArray() {
+        return Arrays.copyOf(events, count);
+    }
+}
@@ -0,0 +1,115 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.Arrays;
+
+/**
+ * This class assigns keys to the active stations of a parallel group using
+ * {@link org.jlab.coda.et.EtConstants#stationSelectPartition} by consistent hashing.
+ * Each station is placed at many points around a ring by hashing its name, and a key
+ * belongs to the station owning the next point around the ring from the key's hash.
+ * When a station joins or leaves the group, only the keys of the ring segments it
+ * takes or gives up change stations. Since names are used, a station which is
+ * removed and created again gets back the same keys.<p>
+ *
+ * The ring is flattened into a table of buckets so finding a key's station
+ * takes constant time.
+ *
+ * @author Carl Timmer
+ */
+
+class PartitionRing {
+
+    /** Number of points on the ring for each station. */
+    private static final int pointsPerStation = 100;
+
+    /** Number of bits of a key's hash used to pick a bucket. */
+    private static final int tableBits = 14;
+
+    /** Stations the keys are divided between. */
+    private final StationLocal[] members;
+
+    /** Index into {@link #members} of the station owning each bucket. */
+    private final int[] table;
+
+
+    /**
+     * Constructor.
+     * @param group active stations of a parallel group, at least one
+     */
+    PartitionRing(StationLocal[] group) {
+        members = group.clone();
+        table   = new int[1 << tableBits];
+
+        // each point is its 31 bit position on the ring followed by the member's index
+        int count = 0;
+        long[] points = new long[members.length * pointsPerStation];
+        for (int i=0; i < members.length; i++) {
+            int nameHash = members[i].getStationName().hashCode();
+            for (int j=0; j < pointsPerStation; j++) {
+                int position = mix(nameHash ^ mix(j)) >>> 1;
+                points[count++] = ((long) position << 32) | i;
+            }
+        }
+        Arrays.sort(points);
+
+        // each bucket belongs to the next point at or after its start, going around the ring
+        int point = 0;
+        for (int bucket=0; bucket < table.length; bucket++) {
+            long start = (long) bucket << (31 - tableBits);
+            while (point < points.length && (points[point] >>> 32) < start) {
+                point++;
+            }
+            table[bucket] = (int) points[point < points.length ? point : 0];
+        }
+    }
+
+
+    /**
+     * Mix the bits of an int so similar values hash to very different ones
+     * (finalizer of MurmurHash3).
+     * @param h value to mix
+     * @return mixed value
+     */
+    private static int mix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+
+    /**
+     * Is this ring for the given stations?
+     * @param group active stations of a parallel group
+     * @return true if this ring divides keys between exactly these stations in this order
+     */
+    boolean isFor(StationLocal[] group) {
+        return Arrays.equals(members, group);
+    }
+
+
+    /**
+     * Get the station a key belongs to.
+     * @param key key
+     * @return index of the station in the group given to the constructor
+     */
+    int getMember(int key) {
+        return table[mix(key) >>> (32 - tableBits)];
+    }
+}
@@ -0,0 +1,147 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.EtEventImpl;
+
+import java.util.List;
+
+/**
+ * This class is a station's select words compiled into the rules used when the
+ * station's select mode is {@link org.jlab.coda.et.EtConstants#stationSelectMatch}.
+ * Each select word not equal to -1 is a rule: even numbered words must equal the
+ * event's control word of the same index, odd numbered words must share at least
+ * one bit with it. An event is selected if any rule is satisfied.<p>
+ *
+ * A whole batch of events can be matched at once. The control words the rules use
+ * are first gathered into one column per word, then each rule is checked against
+ * its column in a single tight loop which sets a bit for every selected event.
+ * Nothing is allocated.
+ *
+ * @author Carl Timmer
+ */
+
+class SelectMatcher {
+
+    /** Index of the control word each rule checks. */
+    private final int[] words;
+
+    /** Value or bit mask of each rule. */
+    private final int[] values;
+
+    /** Is each rule a bit mask (true) or equality (false) test? */
+    private final boolean[] isMask;
+
+
+    /**
+     * Constructor.
+     * @param select station's select words
+     */
+    SelectMatcher(int[] select) {
+        int count = 0;
+        for (int sel : select) {
+            if (sel != -1) count++;
+        }
+
+        words  = new int[count];
+        values = new int[count];
+        isMask = new boolean[count];
+
+        int rule = 0;
+        for (int i=0; i < select.length; i++) {
+            if (select[i] == -1) continue;
+            words[rule]  = i;
+            values[rule] = select[i];
+            isMask[rule] = (i%2 != 0);
+            rule++;
+        }
+    }
+
+
+    /**
+     * Get the number of ints of column space needed to match a batch of events.
+     * @param eventCount number of events in batch
+     * @return number of ints of column space needed
+     */
+    int getColumnSize(int eventCount) {
+        return words.length * eventCount;
+    }
+
+
+    /**
+     * Is the event with the given control words selected?
+     * @param control event's control words
+     * @return true if selected
+     */
+    boolean matches(int[] control) {
+        for (int rule=0; rule < words.length; rule++) {
+            int word = control[words[rule]];
+            if (isMask[rule] ? (word & values[rule]) != 0 : word == values[rule]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /**
+     * Match a batch of events at once. The bit of each selected event is set in
+     * the given bitmap, bit (i % 64) of element (i / 64) for event i, all others cleared.
+     *
+     * @param evs     events to match
+     * @param columns space to gather control words into, at least
+     *                {@link #getColumnSize(int)} ints
+     * @param bitmap  bitmap to fill, at least (evs.size() + 63)/64 longs
+     */
+    void match(List<EtEventImpl> evs, int[] columns, long[] bitmap) {
+        int count = evs.size();
+        int longs = (count + 63) >>> 6;
+        for (int i=0; i < longs; i++) {
+            bitmap[i] = 0L;
+        }
+
+        // gather the control words used into columns
+        int rules = words.length;
+        for (int j=0; j < count; j++) {
+            int[] control = evs.get(j).getControlNoCopy();
+            for (int rule=0, index=j; rule < rules; rule++, index += count) {
+                columns[index] = control[words[rule]];
+            }
+        }
+
+        // check each rule against its column
+        for (int rule=0; rule < rules; rule++) {
+            int base  = rule * count;
+            int value = values[rule];
+
+            for (int i=0; i < longs; i++) {
+                int start = i << 6;
+                int end = Math.min(start + 64, count);
+                long bits = 0L;
+                if (isMask[rule]) {
+                    for (int j=start; j < end; j++) {
+                        if ((columns[base + j] & value) != 0) bits |= 1L << j;
+                    }
+                }
+                else {
+                    for (int j=start; j < end; j++) {
+                        if (columns[base + j] == value) bits |= 1L << j;
+                    }
+                }
+                bitmap[i] |= bits;
+            }
+        }
+    }
+}
@@ -16,7 +16,8 @@ package org.jlab.coda.et.system;
 
 import java.lang.*;
 import java.util.*;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jlab.coda.et.exception.*;
 import org.jlab.coda.et.*;
@@ -49,18 +50,95 @@ public class StationLocal extends Thread implements EtEventSelectable {
     /** Flag telling this station to kill the conductor thread */
     private volatile boolean killConductor;
 
+    /** Pool of threads shared by the conductors of all stations, or null if
+     *  this station's conductor runs in its own thread. */
+    private ConductorPool pool;
+
+    /** Number of times events were put into the output list since the conductor last
+     *  looked, when using a shared pool. The station is scheduled on the pool only
+     *  when this goes up from 0, so only one pool thread at a time conducts for it. */
+    private final AtomicInteger wakeUps = new AtomicInteger();
+
     /** Flag telling if this station was the last to receive an event
      *  when using the round-robin selection method for a parallel group
      *  of stations. */
     private volatile boolean wasLast;
 
-    /** Lock used to stop insertion/removal of stations when events
-     *  are being transferred by the conductor thread and vice versa. */
-    private final ReentrantLock stopTransferLock;
+    /** Minimum time between measurements of the rate events are taken from
+     *  the input list, in nanoseconds. */
+    private static final long drainSampleNanos = 10000000L;
+
+    /** Time constant of the exponentially weighted moving average of the rate
+     *  events are taken from the input list, in nanoseconds. */
+    private static final double drainTimeConstant = 1.e9;
+
+    /** Factor by which the estimated rate of a station is raised when its input
+     *  list is found empty while other stations of its group have events waiting,
+     *  up to the rate of the fastest of those. */
+    private static final double drainProbeFactor = 1.25;
+
+    /** Smallest rate used for a station when weighting, as a fraction of the
+     *  fastest station in its group. */
+    private static final double drainRateFloor = 0.01;
+
+    /** Estimated rate, in events/sec, at which attachments take events from this
+     *  station's input list, or -1 if not yet estimated. Only estimated for stations
+     *  in a parallel group using {@link org.jlab.coda.et.EtConstants#stationSelectWeighted}. */
+    private volatile double drainRate = -1.;
+
+    /** Time of the last measurement of {@link #drainRate} in nanoseconds, 0 if none. */
+    private long drainSampleTime;
+
+    /** Number of events taken from the input list at the last measurement of {@link #drainRate}. */
+    private long drainSampleOut;
+
+    /** Weight given to each new batch in the moving averages of conductor statistics. */
+    private static final double batchStatWeight = 1./16.;
+
+    /** Longest time, in nanoseconds, the conductor sleeps at once while waiting
+     *  for a fuller batch of events. */
+    private static final long batchDelaySlice = 50000L;
+
+    /** Largest number of events the conductor takes from the output list at once. */
+    private volatile int batchLimit;
+
+    /** Largest value {@link #batchLimit} may have. */
+    private final int batchLimitMax;
+
+    /** Longest time, in nanoseconds, the conductor waits for the output list to hold
+     *  {@link #batchLimit} events before passing on whatever is there. */
+    private long batchDelay;
+
+    /** Time, from System.nanoTime(), a conductor run by a shared pool stops waiting
+     *  for a fuller batch. Only used while {@link #delaying}. */
+    private long delayDeadline;
+
+    /** Is a conductor run by a shared pool waiting in the pool for a fuller batch?
+     *  Only touched by pool threads, which hand the station on through the pool's lock. */
+    private boolean delaying;
+
+    /** Hand-off latency, in nanoseconds, the conductor tunes its batches to meet,
+     *  or 0 if not tuning. */
+    private final long latencyTarget;
+
+    /** Average number of events in each batch the conductor passes on, -1 if none yet. */
+    private volatile double batchSize = -1.;
+
+    /** Average time, in nanoseconds, from the longest waiting event of a batch being put
+     *  into the output list until the conductor is done passing the batch on, -1 if none yet. */
+    private volatile double handOffLatency = -1.;
+
+    /** Average time, in nanoseconds, the conductor takes to pass on each event of a batch. */
+    private double routingCost = -1.;
+
+    /** Arrangement of stations being used by the conductor thread to route the
+     *  current batch of events, or null if it's not routing any. Lets changes to
+     *  the stations wait for batches in progress without stopping the flow of events. */
+    private volatile StationTopology routing;
 
     /** If this station is the first in a linked list of parallel stations,
      *  this list contains all the parallel stations in that group.
-     *  It's protected by stopTransferLock & {@link SystemCreate#systemLock}. */
+     *  It's protected by {@link SystemCreate#stationLock}. */
     private ArrayList<StationLocal> parallelStations;
 
     /** Input list of events. */
@@ -76,6 +154,50 @@ public class StationLocal extends Thread implements EtEventSelectable {
      *  is {@link org.jlab.coda.et.EtConstants#stationSelectMatch}. */
     private EtEventSelectable selector;
 
+    /** User's event selection method if it judges a whole list of events at once, else null. */
+    private EtBatchSelectable batchSelector;
+
+    /** Select words compiled for matching events when the station's select mode
+     *  is {@link org.jlab.coda.et.EtConstants#stationSelectMatch}. */
+    private volatile SelectMatcher matcher;
+
+    /** Index of the control word used to partition events when this station heads a group using
+     *  {@link org.jlab.coda.et.EtConstants#stationSelectPartition}. */
+    private volatile int partitionWord;
+
+    /** Space used by this station's conductor to gather the control words of
+     *  events being matched. */
+    private int[] selectColumns = new int[0];
+
+    /** Bitmap of the events selected by the last match of this station's conductor. */
+    private long[] selectBits = new long[0];
+
+    /** Input list counts of parallel stations, each shifted up 32 bits and combined
+     *  with the station's position, which this station's conductor sorts for equal-cue. */
+    private long[] cueOrder = new long[0];
+
+    /** Number of events for each parallel station found by this station's conductor for equal-cue. */
+    private int[] cueEvents = new int[0];
+
+    /** Input list counts of parallel stations used by this station's conductor for weighting. */
+    private int[] cueCounts = new int[0];
+
+    /** Estimated rates of parallel stations used by this station's conductor for weighting. */
+    private double[] cueRates = new double[0];
+
+    /** Which parallel stations' rates were just measured by this station's conductor for weighting. */
+    private boolean[] cueSampled = new boolean[0];
+
+    /** Assignment of keys to parallel stations last used by this station's conductor
+     *  for partitioning, or null if none. */
+    private PartitionRing partitionRing;
+
+    /** Parallel station each event goes to, found by this station's conductor for partitioning. */
+    private int[] partitionMembers = new int[0];
+
+    /** Copy of the events being partitioned by this station's conductor. */
+    private EtEventImpl[] partitionCopy = new EtEventImpl[0];
+
     /**
      * Creates a new StationLocal object.
      *
@@ -95,21 +217,43 @@ public class StationLocal extends Thread implements EtEventSelectable {
         this.config      = new EtStationConfig(config);
         status           = EtConstants.stationUnused;
         parallelStations = new ArrayList<StationLocal>(20);
-        stopTransferLock = new ReentrantLock();
 
-        inputList  = new EventList(sys.getConfig().getNumEvents());
+        // GrandCentral holds free events which are handed out by group
+        if (name.equals("GRAND_CENTRAL")) {
+            inputList = new GroupedEventList(sys.getConfig().getNumEvents(),
+                                             sys.getConfig().getGroups(),
+                                             sys.getBufferPool());
+        }
+        else {
+            inputList = new EventList(sys.getConfig().getNumEvents());
+        }
         outputList = new EventList(sys.getConfig().getNumEvents());
+        outputList.keepArrivalTimes(sys.getArrivalTimes());
+
+        // how the conductor batches events
+        SystemConfig sysConfig = sys.getConfig();
+        batchLimitMax = (sysConfig.getConductorBatchMax() > 0) ?
+                        Math.min(sysConfig.getConductorBatchMax(), sysConfig.getNumEvents()) :
+                        sysConfig.getNumEvents();
+        batchLimit    = batchLimitMax;
+        latencyTarget = 1000L * sysConfig.getConductorLatencyTarget();
+        batchDelay    = (latencyTarget > 0L) ? 0L : 1000L * sysConfig.getConductorBatchDelay();
 
         // attachments
         attachments = new HashSet<AttachmentLocal>(EtConstants.attachmentsMax);
 
         // user event selection routine
         selector = this;
+        matcher  = new SelectMatcher(this.config.getSelect());
+        partitionWord = this.config.getPartitionWord();
         if (config.getSelectMode() == EtConstants.stationSelectUser) {
             // instantiate object of proper class
             try {
                 Object f = Class.forName(config.getSelectClass()).newInstance();
                 selector = (EtEventSelectable) f;
+                if (f instanceof EtBatchSelectable) {
+                    batchSelector = (EtBatchSelectable) f;
+                }
             }
             catch (ClassNotFoundException ex) {
                 throw new EtException("station cannot load select class " + config.getSelectClass());
@@ -157,11 +301,11 @@ public class StationLocal extends Thread implements EtEventSelectable {
     public EventList getOutputList() { return outputList; }
 
     /**
-     * Get lock object used to add and remove stations from the station linked list
-     * while blocking the moving of events.
-     * @return lock object
+     * Get the arrangement of stations being used by the conductor thread
+     * to route the current batch of events.
+     * @return arrangement of stations in use, or null if no batch is being routed
      */
-    public ReentrantLock getStopTransferLock() { return stopTransferLock; }
+    StationTopology getRouting() { return routing; }
 
     /**
      * Get the station configuration.
@@ -175,6 +319,12 @@ public class StationLocal extends Thread implements EtEventSelectable {
      */
     public ArrayList<StationLocal> getParallelStations() { return parallelStations; }
 
+    /**
+     * Is this station one of a fan-out group which shares each event between all its members?
+     * @return true if this station is one of a fan-out group
+     */
+    boolean isFanOut() { return config.getSelectMode() == EtConstants.stationSelectFanOut; }
+
     /**
      * Get the station status which may be one of the following values: {@link org.jlab.coda.et.EtConstants#stationUnused },
      * {@link org.jlab.coda.et.EtConstants#stationCreating}, {@link org.jlab.coda.et.EtConstants#stationIdle}, or  {@link org.jlab.coda.et.EtConstants#stationActive}.
@@ -206,6 +356,95 @@ public class StationLocal extends Thread implements EtEventSelectable {
     public void killConductor() { killConductor = true; }
 
 
+    /**
+     * Starts this station's conductor. It either runs in its own thread or,
+     * if given a pool, is scheduled on one of the pool's threads whenever
+     * events are put into the output list.
+     *
+     * @param pool pool of threads shared by conductors, or null for a thread of its own
+     */
+    void startConductor(ConductorPool pool) {
+        if (pool == null) {
+            start();
+            return;
+        }
+
+        this.pool = pool;
+        if (name.equals("GRAND_CENTRAL")) {
+            status = EtConstants.stationActive;
+        }
+        else {
+            status = EtConstants.stationIdle;
+        }
+        outputList.setConductor(this);
+        // in case events were put in before the output list knew about us
+        wake();
+    }
+
+
+    /**
+     * Tells a conductor run by a shared pool that events were put into the output list.
+     * Called by the output list while holding its lock.
+     */
+    void wake() {
+        if (wakeUps.getAndIncrement() == 0) {
+            pool.schedule(this);
+        }
+    }
+
+
+    /**
+     * Called by a thread of the shared pool to pass on a batch of events from the
+     * output list. If the batch is to wait to fill up, the station is handed to the
+     * pool to be put back in line once {@link #isDelayOver()}. If events are left
+     * after a batch, the station goes to the back of the pool's line so other
+     * conductors get a turn. Otherwise it returns once no more events have arrived
+     * since it looked.
+     *
+     * @param getList empty list for the events of a batch, owned by the calling thread
+     * @param putList empty list for the events going into a station, owned by the calling thread
+     */
+    void conduct(ArrayList<EtEventImpl> getList, ArrayList<EtEventImpl> putList) {
+        int seen;
+        do {
+            seen = wakeUps.get();
+            if (outputList.getCount() > 0) {
+                // if asked to, wait for a fuller batch in the pool instead of in its thread
+                if (batchDelay > 0L && !delaying && outputList.getCount() < batchLimit) {
+                    delayDeadline = System.nanoTime() + batchDelay;
+                    delaying = true;
+                    pool.delay(this);
+                    return;
+                }
+                delaying = false;
+                routeBatch(getList, putList);
+                if (outputList.getCount() > 0) {
+                    pool.schedule(this);
+                    return;
+                }
+            }
+        } while (wakeUps.addAndGet(-seen) != 0);
+    }
+
+
+    /**
+     * Is a conductor run by a shared pool done waiting for a fuller batch?
+     * Called by the pool while holding its lock.
+     * @return true if the batch is full, the wait is over, or the conductor is to quit
+     */
+    boolean isDelayOver() {
+        return killConductor || (outputList.getCount() >= batchLimit) ||
+               (System.nanoTime() - delayDeadline >= 0L);
+    }
+
+
+    /**
+     * How much longer a conductor run by a shared pool waits for a fuller batch?
+     * @return time left in nanoseconds
+     */
+    long getDelayLeft() { return delayDeadline - System.nanoTime(); }
+
+
     /**
      * Method to dynamically set a station's blocking mode.
      * @param mode blocking mode value
@@ -267,6 +506,8 @@ public class StationLocal extends Thread implements EtEventSelectable {
             synchronized(inputList) {
                 try {
                     config.setSelect(select.clone());
+                    matcher = new SelectMatcher(select);
+                    partitionWord = config.getPartitionWord();
                 }
                 catch (EtException e) { /* should not happen. */  }
             }
@@ -307,7 +548,7 @@ public class StationLocal extends Thread implements EtEventSelectable {
     /**
      * When selectMode equals {@link org.jlab.coda.et.EtConstants#stationSelectMatch}, this
      * becomes the station's selection method.
-     * True is returned
+     * True is returned if any select word rule matches the event's control words.
      *
      * @param sys ET system object
      * @param stat station object
@@ -315,57 +556,455 @@ public class StationLocal extends Thread implements EtEventSelectable {
      * @see org.jlab.coda.et.EtEventSelectable
      */
     public boolean select(SystemCreate sys, StationLocal stat, EtEvent ev) {
-        boolean result = false;
-        int[] select  = stat.config.getSelect();
-        int[] control = ev.getControl();
-
-        for (int i=0; i < EtConstants.stationSelectInts ; i++) {
-            if (i%2 == 0) {
-                result = result || ((select[i] != -1) &&
-                        (select[i] == control[i]));
+        return stat.matcher.matches(ev.getControlNoCopy());
+    }
+
+
+    /**
+     * Select from a whole list of events at once for a station, either by matching its
+     * select words or with the user's batch selection method. Only called by this
+     * station's conductor thread, with the other station's inputList locked so
+     * its select words cannot change.
+     *
+     * @param stat station selecting events
+     * @param evs  events to select from
+     * @return bitmap of selected events, bit (i % 64) of element (i / 64) set for event i,
+     *         or null if the station's selection method judges one event at a time
+     */
+    private long[] selectEvents(StationLocal stat, List<EtEventImpl> evs) {
+        int size = evs.size();
+        boolean match = (stat.config.getSelectMode() == EtConstants.stationSelectMatch);
+        if (!match && stat.batchSelector == null) {
+            return null;
+        }
+
+        if (selectBits.length < (size + 63)/64) {
+            selectBits = new long[(sys.getConfig().getNumEvents() + 63)/64];
+        }
+
+        if (match) {
+            SelectMatcher m = stat.matcher;
+            if (selectColumns.length < m.getColumnSize(size)) {
+                selectColumns = new int[m.getColumnSize(sys.getConfig().getNumEvents())];
+            }
+            m.match(evs, selectColumns, selectBits);
+        }
+        else {
+            Arrays.fill(selectBits, 0, (size + 63)/64, 0L);
+            stat.batchSelector.select(sys, stat, evs, selectBits);
+        }
+        return selectBits;
+    }
+
+
+    /**
+     * Get the estimated rate at which attachments take events from this station's input list.
+     * @return estimated rate in events/sec, or -1 if not estimated
+     */
+    double getDrainRate() {
+        return drainRate;
+    }
+
+
+    /**
+     * Get the average number of events in each batch this station's conductor passes on.
+     * @return average number of events in each batch, or -1 if none yet
+     */
+    double getBatchSize() {
+        return batchSize;
+    }
+
+
+    /**
+     * Get the average time from the longest waiting event of a batch being put into
+     * this station's output list until the conductor is done passing the batch on.
+     * @return average hand-off latency in nanoseconds, or -1 if none yet
+     */
+    double getHandOffLatency() {
+        return handOffLatency;
+    }
+
+
+    /**
+     * Get the largest number of events this station's conductor currently takes
+     * from the output list at once.
+     * @return largest number of events the conductor currently takes at once
+     */
+    int getBatchLimit() {
+        return batchLimit;
+    }
+
+
+    /**
+     * Get the longest time this station's conductor currently waits for the output
+     * list to hold a full batch of events before passing on whatever is there.
+     * @return longest wait for a full batch in nanoseconds
+     */
+    long getBatchDelay() {
+        return batchDelay;
+    }
+
+
+    /**
+     * Fold a batch passed on by the conductor into the averages kept in {@link #batchSize}
+     * and {@link #handOffLatency}. If tuning for a hand-off latency, the batch limit is
+     * set so that passing on a whole batch takes half the target time, and the rest
+     * of that time, if any, is spent waiting for batches to fill unless the target
+     * is already being missed.
+     * Only called by this station's conductor.
+     *
+     * @param size    number of events in the batch
+     * @param arrival time the longest waiting event of the batch was put into the
+     *                output list in nanoseconds, 0 if not known
+     * @param start   time the conductor took the batch in nanoseconds
+     * @param end     time the conductor was done passing on the batch in nanoseconds
+     */
+    void recordBatch(int size, long arrival, long start, long end) {
+        if (size < 1) return;
+        long latency = end - ((arrival == 0L) ? start : arrival);
+        double cost  = (double) (end - start) / size;
+
+        if (batchSize < 0.) {
+            batchSize      = size;
+            handOffLatency = latency;
+            routingCost    = cost;
+        }
+        else {
+            batchSize      += batchStatWeight * (size - batchSize);
+            handOffLatency += batchStatWeight * (latency - handOffLatency);
+            routingCost    += batchStatWeight * (cost - routingCost);
+        }
+
+        if (latencyTarget > 0L) {
+            long half = latencyTarget / 2L;
+            batchLimit = (int) Math.max(1L, Math.min(batchLimitMax, (long) (half / Math.max(routingCost, 1.))));
+            // no waiting at all if events are already taking too long
+            batchDelay = (handOffLatency > latencyTarget) ? 0L :
+                         Math.max(0L, half - (long) (routingCost * batchSize));
+        }
+    }
+
+
+    /**
+     * Measure the rate at which attachments take events from this station's input list
+     * and fold it into the exponentially weighted moving average kept in {@link #drainRate}.
+     * A measurement is only made if enough time has passed since the last.
+     * Only called by the conductor feeding this station's parallel group.
+     *
+     * @param now current time in nanoseconds
+     * @return true if a measurement was made, else false
+     */
+    private boolean sampleDrainRate(long now) {
+        long out = inputList.getEventsOut();
+        if (drainSampleTime == 0L) {
+            drainSampleTime = now;
+            drainSampleOut  = out;
+            return false;
+        }
+
+        long elapsed = now - drainSampleTime;
+        if (elapsed < drainSampleNanos) {
+            return false;
+        }
+
+        double rate = (out - drainSampleOut) * 1.e9 / elapsed;
+        if (drainRate < 0.) {
+            drainRate = rate;
+        }
+        else {
+            drainRate += (1. - Math.exp(-elapsed / drainTimeConstant)) * (rate - drainRate);
+        }
+
+        drainSampleTime = now;
+        drainSampleOut  = out;
+        return true;
+    }
+
+
+    /**
+     * Find how many events each active station of a parallel group gets with the
+     * weighted algorithm. Each station's input list count divided by its estimated
+     * rate is how long it will take to empty. The stations which will empty soonest
+     * are given events, in proportion to their rates, until all would take the same
+     * time to empty or the events run out. So faster stations get more events and
+     * idle stations are never left waiting while slow ones have a backlog.
+     * Stations without an estimate yet are assumed to be of average speed.
+     * Only called by this station's conductor thread.
+     *
+     * @param activeGroup active stations of the parallel group
+     * @param eventCount  number of events to dole out
+     * @return number of events for each active station, in the order of activeGroup
+     */
+    private int[] doleOutWeighted(StationLocal[] activeGroup, int eventCount) {
+        int n = activeGroup.length;
+        if (cueOrder.length < n) {
+            cueOrder  = new long[sys.getConfig().getStationsMax()];
+            cueEvents = new int[sys.getConfig().getStationsMax()];
+        }
+        if (cueCounts.length < n) {
+            cueCounts  = new int[sys.getConfig().getStationsMax()];
+            cueRates   = new double[sys.getConfig().getStationsMax()];
+            cueSampled = new boolean[sys.getConfig().getStationsMax()];
+        }
+
+        // Input list counts (read without locking since they change anyway)
+        boolean backlog = false;
+        for (int i=0; i < n; i++) {
+            cueCounts[i] = activeGroup[i].inputList.getCount();
+            if (cueCounts[i] > 0) backlog = true;
+        }
+
+        // Estimated rates. Stations with events waiting are taking them as fast as they can,
+        // but an empty station only shows what it was given. If others have events waiting,
+        // raise its estimate to probe for more capacity, up to the rate of the fastest of those.
+        long now = System.nanoTime();
+        int numKnown = 0;
+        double rateSum = 0., rateMax = 0., rateMaxWaiting = 0.;
+        for (int i=0; i < n; i++) {
+            cueSampled[i] = activeGroup[i].sampleDrainRate(now);
+            if (cueSampled[i] && (cueCounts[i] > 0)) {
+                rateMaxWaiting = Math.max(rateMaxWaiting, activeGroup[i].drainRate);
+            }
+        }
+        for (int i=0; i < n; i++) {
+            StationLocal stat = activeGroup[i];
+            if (cueSampled[i] && backlog && (cueCounts[i] == 0) && (stat.drainRate > 0.) &&
+                (stat.drainRate < rateMaxWaiting)) {
+                stat.drainRate = Math.min(stat.drainRate * drainProbeFactor, rateMaxWaiting);
+            }
+            cueRates[i] = stat.drainRate;
+            if (cueRates[i] > 0.) {
+                numKnown++;
+                rateSum += cueRates[i];
+                rateMax  = Math.max(rateMax, cueRates[i]);
+            }
+        }
+        double rateAvg   = (numKnown > 0) ? rateSum/numKnown : 1.;
+        double rateFloor = drainRateFloor * ((numKnown > 0) ? rateMax : 1.);
+        for (int i=0; i < n; i++) {
+            if (cueRates[i] <= 0.) cueRates[i] = rateAvg;
+            cueRates[i] = Math.max(cueRates[i], rateFloor);
+        }
+
+        levelByRate(cueCounts, cueRates, n, eventCount, cueOrder, cueEvents);
+        return cueEvents;
+    }
+
+
+    /**
+     * Find how many events each of a number of stations gets with the weighted
+     * algorithm. Each station's input list count divided by its rate is how long it
+     * will take to empty. The stations which will empty soonest are given events, in
+     * proportion to their rates, until all would take the same time to empty or the
+     * events run out. Shares are rounded down and the events left over dealt out one
+     * at a time, starting with the station which will empty soonest.
+     *
+     * @param cueCounts  input list count of each station
+     * @param cueRates   rate, greater than 0, at which each station takes events
+     * @param n          number of stations
+     * @param eventCount number of events to dole out
+     * @param cueOrder   space for n longs
+     * @param cueEvents  filled with the number of events for each station
+     */
+    static void levelByRate(int[] cueCounts, double[] cueRates, int n, int eventCount,
+                            long[] cueOrder, int[] cueEvents) {
+        // Sort stations by time to empty their input lists, keeping the
+        // station order for equal times (positive floats sort like ints).
+        for (int i=0; i < n; i++) {
+            float time = (float) (cueCounts[i] / cueRates[i]);
+            cueOrder[i] = ((long) Float.floatToIntBits(time) << 32) | i;
+        }
+        Arrays.sort(cueOrder, 0, n);
+
+        // Find how many of the soonest to empty get events and the time they're filled to
+        int lowest = 0, station;
+        double time = 0., countSum = 0., rateSum = 0.;
+        while (lowest < n) {
+            station = (int) cueOrder[lowest++];
+            countSum += cueCounts[station];
+            rateSum  += cueRates[station];
+            time = (eventCount + countSum) / rateSum;
+            if (lowest < n) {
+                station = (int) cueOrder[lowest];
+                if (time <= cueCounts[station] / cueRates[station]) break;
+            }
+        }
+
+        // Give each its share rounded down, then deal out what's left one at a time
+        int eventsLeft = eventCount;
+        for (int i=0; i < n; i++) {
+            station = (int) cueOrder[i];
+            if (i < lowest) {
+                int share = (int) Math.max(0., time*cueRates[station] - cueCounts[station]);
+                share = Math.min(share, eventsLeft);
+                cueEvents[station] = share;
+                eventsLeft -= share;
             }
             else {
-                result = result || ((select[i] != -1) &&
-                        ((select[i] & control[i]) != 0));
+                cueEvents[station] = 0;
             }
         }
-        return result;
+        for (int i=0; eventsLeft > 0; i = (i + 1) % lowest) {
+            cueEvents[(int) cueOrder[i]]++;
+            eventsLeft--;
+        }
     }
 
 
     /**
-     * Shell's method of sorting from "Numerical Recipes" slightly modified.
-     * It is assumed that a and b have indexes from 1 to n. Since the input
-     * arrays will start at 0 index, put nonsense in the first element.
+     * Find which active station of a parallel group each event goes to with the
+     * partition algorithm, and reorder the events so those for each station are
+     * together, in station order, keeping their original order otherwise.
+     * Each event's key is the value of a control word, and each key always goes to the
+     * same station as long as the active stations don't change. It takes constant time
+     * to find an event's station. Only called by this station's conductor thread.
      *
-     * @param n number of array elements to be sorted
-     * @param a array to be sorted
-     * @param b array to be sorted in the same manner that array a is sorted
+     * @param activeGroup active stations of the parallel group
+     * @param word        index of the control word holding the key
+     * @param evs         events to partition, reordered on return
+     * @return number of events for each active station, in the order of activeGroup
      */
-    private void shellSort(int n, int[] a, int[] b) {
-        int i, j, inc, v, w;
-        inc = 1;
-        do {
-            inc *= 3;
-            inc++;
-        } while (inc <= n);
+    private int[] partitionEvents(StationLocal[] activeGroup, int word, List<EtEventImpl> evs) {
+        int n = activeGroup.length;
+        int size = evs.size();
+        if (cueEvents.length < n) {
+            cueOrder  = new long[sys.getConfig().getStationsMax()];
+            cueEvents = new int[sys.getConfig().getStationsMax()];
+        }
+        if (cueCounts.length < n) {
+            cueCounts  = new int[sys.getConfig().getStationsMax()];
+            cueRates   = new double[sys.getConfig().getStationsMax()];
+            cueSampled = new boolean[sys.getConfig().getStationsMax()];
+        }
+        if (partitionCopy.length < size) {
+            partitionCopy    = new EtEventImpl[sys.getConfig().getNumEvents()];
+            partitionMembers = new int[sys.getConfig().getNumEvents()];
+        }
 
-        do {
-            inc /= 3;
-            for (i = inc + 1; i <= n; i++) {
-                v = a[i];
-                w = b[i];
-                j = i;
-                while (a[j - inc] > v) {
-                    a[j] = a[j - inc];
-                    b[j] = b[j - inc];
-                    j -= inc;
-                    if (j <= inc) break;
-                }
-                a[j] = v;
-                b[j] = w;
+        // Stations have changed, so reassign keys
+        if ((partitionRing == null) || !partitionRing.isFor(activeGroup)) {
+            partitionRing = new PartitionRing(activeGroup);
+        }
+
+        // Count the events going to each station
+        Arrays.fill(cueEvents, 0, n, 0);
+        for (int i=0; i < size; i++) {
+            EtEventImpl ev = evs.get(i);
+            int member = partitionRing.getMember(ev.getControlNoCopy()[word]);
+            partitionCopy[i]    = ev;
+            partitionMembers[i] = member;
+            cueEvents[member]++;
+        }
+
+        // Put them back with each station's events together
+        int start = 0;
+        for (int i=0; i < n; i++) {
+            cueCounts[i] = start;
+            start += cueEvents[i];
+        }
+        for (int i=0; i < size; i++) {
+            evs.set(cueCounts[partitionMembers[i]]++, partitionCopy[i]);
+            partitionCopy[i] = null;
+        }
+        return cueEvents;
+    }
+
+
+    /**
+     * Find how many events each active station of a parallel group gets with the
+     * equal-cue algorithm, as done by {@link #levelCues(long[], int, int, int[])}.
+     * Only called by this station's conductor thread.
+     *
+     * @param activeGroup active stations of the parallel group
+     * @param eventCount  number of events to dole out
+     * @return number of events for each active station, in the order of activeGroup
+     */
+    private int[] doleOutEqualCue(StationLocal[] activeGroup, int eventCount) {
+        int n = activeGroup.length;
+        if (cueOrder.length < n) {
+            cueOrder  = new long[sys.getConfig().getStationsMax()];
+            cueEvents = new int[sys.getConfig().getStationsMax()];
+        }
+
+        // Input list counts are read without locking since they change anyway
+        for (int i=0; i < n; i++) {
+            cueOrder[i] = ((long) activeGroup[i].inputList.getCount() << 32) | i;
+        }
+        levelCues(cueOrder, n, eventCount, cueEvents);
+        return cueEvents;
+    }
+
+
+    /**
+     * Find how many events each of a number of stations gets with the equal-cue
+     * algorithm. The stations with the fewest events in their input lists
+     * are filled to the level of the next higher cue, repeatedly, until all are equal
+     * or the events run out. Any remaining events are divided evenly, with those left
+     * over going to the stations having had the fewest events.
+     * The input list counts are sorted once, after which a single pass finds the level
+     * to fill to, so this takes O(n log n) for n stations regardless of the number of
+     * events.
+     *
+     * @param cueOrder   for each station i, its input list count shifted left 32 bits
+     *                   or'ed with i; sorted by this method, keeping the station order
+     *                   for equal counts
+     * @param n          number of stations
+     * @param eventCount number of events to dole out
+     * @param cueEvents  filled with the number of events for each station i
+     */
+    static void levelCues(long[] cueOrder, int n, int eventCount, int[] cueEvents) {
+        Arrays.sort(cueOrder, 0, n);
+
+        // Find how many of the lowest cues can be filled and to what level
+        int lowest = 1;
+        int level  = (int) (cueOrder[0] >>> 32);
+        long eventsLeft = eventCount;
+        while (lowest < n) {
+            int nextHigherCue = (int) (cueOrder[lowest] >>> 32);
+            long eventsNeeded = (long) (nextHigherCue - level) * lowest;
+            if (eventsNeeded > eventsLeft) {
+                break;
+            }
+            eventsLeft -= eventsNeeded;
+            level = nextHigherCue;
+            lowest++;
+        }
+
+        // Fill those to the level and evenly divide what's left between them
+        int eventsPerStation = (int) (eventsLeft / lowest);
+        int extra = (int) (eventsLeft % lowest);
+        for (int i=0; i < n; i++) {
+            int station = (int) cueOrder[i];
+            if (i < lowest) {
+                cueEvents[station] = level - (int) (cueOrder[i] >>> 32) + eventsPerStation +
+                                     (i < extra ? 1 : 0);
+            }
+            else {
+                cueEvents[station] = 0;
             }
-        } while (inc > 1);
+        }
+    }
+
+
+    /**
+     * Tell stealing attachments waiting in the empty input lists of the other
+     * active stations of a parallel group that one of them has been given events.
+     * Groups in which events are partitioned by key or fanned out are never
+     * stolen from. Must NOT be called while synchronized on an input list.
+     *
+     * @param activeGroup active stations of the parallel group
+     * @param given       station given events
+     */
+    private static void signalStealers(StationLocal[] activeGroup, StationLocal given) {
+        int selectMode = given.config.getSelectMode();
+        if (selectMode == EtConstants.stationSelectPartition || selectMode == EtConstants.stationSelectFanOut) {
+            return;
+        }
+        for (StationLocal member : activeGroup) {
+            if (member != given && member.inputList.hasStealers()) {
+                member.inputList.signalStealers();
+            }
+        }
     }
 
     
@@ -376,568 +1015,486 @@ public class StationLocal extends Thread implements EtEventSelectable {
      * the process.
      * It optimizes for cases in which the next station is GRAND_CENTRAL or one
      * which takes all events. In those cases, it dumps everything in that
-     * station's input list without bothering to sort or filter it.
+     * station's input list without bothering to sort or filter it.<p>
+     *
+     * Each batch of events is routed using a single picture of the arrangement of
+     * stations, {@link StationTopology}, so no linked lists need to be searched.
+     * Stations selecting events by matching select words check the whole batch
+     * at once with their {@link SelectMatcher}, as do user selection classes
+     * implementing {@link EtBatchSelectable}.<p>
+     *
+     * This method is used only when the conductor has a thread of its own.
+     * Conductors sharing a pool of threads are run by {@link #conduct}.
      */
     public void run() {
-        int count, prescale, available, getListSize, position;
-        long listTry;
-        EtEventImpl ev;
-        boolean writeAll, parallelIsActive, rrobinOrEqualcue;
-        StationLocal currentStat, stat, firstActive, startStation;
-        List<EtEventImpl> subList;
-        ListIterator statIterator, pIterator = null;
-
-        // inputList of next station
-        EventList inList;
         // events read from station's outputList
         ArrayList<EtEventImpl> getList = new ArrayList<EtEventImpl>(sys.getConfig().getNumEvents());
         // events to be put into the next station's inputList
         ArrayList<EtEventImpl> putList = new ArrayList<EtEventImpl>(sys.getConfig().getNumEvents());
 
-        // store some constants in stack variables for greater speed
-        final int idle = EtConstants.stationIdle;
-        final int active = EtConstants.stationActive;
-        final int blocking = EtConstants.stationBlocking;
-        final int nonBlocking = EtConstants.stationNonBlocking;
-        final int selectAll = EtConstants.stationSelectAll;
-        final int parallel = EtConstants.stationParallel;
-
         if (name.equals("GRAND_CENTRAL")) {
-            status = active;
+            status = EtConstants.stationActive;
         }
         else {
-            status = idle;
+            status = EtConstants.stationIdle;
         }
 
         while (true) {
             // wait for events
             synchronized (outputList) {
-                while (outputList.getEvents().size() < 1) {
+                while (outputList.getCount() < 1) {
+                    // only quit once all events have been passed on
+                    if (killConductor) {
+                        return;
+                    }
                     try {
                         outputList.wait();
                     }
                     catch (InterruptedException ex) {
                     }
-                    if (killConductor) {
-                        return;
-                    }
                 }
             }
 
-            // grab all events in station's outputList
-            outputList.get(getList);
-
-            // reinit items
-            writeAll = false;
-
-            // allow no change to linked list of created stations
-            stopTransferLock.lock();
-
-            // find next station in main linked list
-            position = sys.getStations().indexOf(this);
-            // If we're a parallel station which is NOT the head of its group,
-            // find our position in the main linked list
-            if (position < 0) {
-                position = 1;
-                for (ListIterator i = sys.getStations().listIterator(1); i.hasNext();) {
-                    stat = (StationLocal) i.next();
-                    if (stat.config.getFlowMode() == parallel) {
-                        // we've found the group of parallel stations we belong to & our position
-                        if (stat.parallelStations.indexOf(this) > -1) {
-                            break;
-                        }
-                    }
-                    position++;
-                }
+            routeBatch(getList, putList);
+        }
+    }
+
+
+    /**
+     * Method to pass on one batch of events from the output list to the
+     * input lists of the stations downstream. The output list must not be empty.
+     *
+     * @param getList empty list for the events of a batch
+     * @param putList empty list for the events going into a station
+     */
+    private void routeBatch(ArrayList<EtEventImpl> getList, ArrayList<EtEventImpl> putList) {
+        int count, prescale, available, getListSize, position, activeIndex, kept, batch;
+        long listTry, arrival, batchStart;
+        EtEventImpl ev;
+        long[] bits;
+        boolean writeAll, parallelIsActive, rrobinOrEqualcue, given = false;
+        StationLocal currentStat, stat, startStation;
+        StationLocal[] group, activeGroup = null;
+        StationTopology topology;
+        List<EtEventImpl> subList;
+
+        // inputList of next station
+        EventList inList;
+
+        // store some constants in stack variables for greater speed
+        final int blocking = EtConstants.stationBlocking;
+        final int nonBlocking = EtConstants.stationNonBlocking;
+        final int selectAll = EtConstants.stationSelectAll;
+        final int parallel = EtConstants.stationParallel;
+
+        // if asked to, wait a little while for a fuller batch (a pool already did)
+        if (batchDelay > 0L && pool == null) {
+            long left, deadline = System.nanoTime() + batchDelay;
+            while (!killConductor && (outputList.getCount() < batchLimit) &&
+                   ((left = deadline - System.nanoTime()) > 0L)) {
+                LockSupport.parkNanos(this, Math.min(left, batchDelaySlice));
             }
+        }
+
+        // grab events in station's outputList, no more than the batch limit
+        arrival    = outputList.get(getList, batchLimit);
+        batchStart = System.nanoTime();
+        batch      = getList.size();
+
+        // reinit items
+        writeAll = false;
+
+        // One look at the arrangement of stations for this whole batch.
+        // Make sure it's still the newest after telling the system which
+        // one we're using, so changes to stations can wait for us if needed.
+        do {
+            topology = sys.getTopology();
+            routing  = topology;
+        } while (topology != sys.getTopology());
 
-            statIterator = sys.getStations().listIterator(position + 1);
-            if (statIterator.hasNext()) {
-                currentStat = (StationLocal) statIterator.next();
+        // find our position in the main linked list
+        // (a parallel station has the position of its group's head)
+        position = topology.getPosition(this);
+
+        if (position + 1 >= topology.getStationCount()) {
+            // the next station is GrandCentral, put everything in it
+            currentStat = topology.getStation(0);
+            inList = currentStat.inputList;
+            synchronized (inList) {
+                inList.putInLow(getList);
+                getList.clear();
+                inList.signalWaiters();
             }
-            else {
-                // the next station is GrandCentral, put everything in it
-                currentStat = sys.getStations().get(0);
-                inList = currentStat.inputList;
-                synchronized (inList) {
-                    inList.putInLow(getList);
-                    getList.clear();
-                    inList.notifyAll();
+            routing = null;
+            sys.doneRouting();
+            recordBatch(batch, arrival, batchStart, System.nanoTime());
+            return;
+        }
+
+        currentStat = topology.getStation(++position);
+        inList = currentStat.inputList;
+
+        while (getList.size() > 0) {
+            parallelIsActive = false;
+            rrobinOrEqualcue = false;
+            startStation = null;
+
+            // active station(s) at this position
+            activeGroup = topology.getActiveGroup(position);
+
+            // if this is a parallel station ...
+            if (currentStat.config.getFlowMode() == parallel) {
+                // Are any of the parallel stations active or can we skip the bunch?
+                parallelIsActive = activeGroup.length > 0;
+
+                // Which algorithm are we using?
+                if (parallelIsActive &&
+                        EtStationConfig.isDistributing(currentStat.config.getSelectMode())) {
+                    rrobinOrEqualcue = true;
                 }
-                stopTransferLock.unlock();
-                continue;
             }
 
-            inList = currentStat.inputList;
+            // if not rrobin/equalcue & station(s) is(are) active ...
+            if (!rrobinOrEqualcue &&
+                    (activeGroup.length > 0)) {
 
-            while (getList.size() > 0) {
-                parallelIsActive = false;
-                rrobinOrEqualcue = false;
-                startStation = null;
-                firstActive = null;
-
-                // if this is a parallel station ...
-                if (currentStat.config.getFlowMode() == EtConstants.stationParallel) {
-                    // Are any of the parallel stations active or can we skip the bunch?
-                    pIterator = currentStat.parallelStations.listIterator();
-                    while (pIterator.hasNext()) {
-                        stat = (StationLocal) pIterator.next();
-                        if (stat.status == EtConstants.stationActive) {
-                            parallelIsActive = true;
-                            firstActive = stat;
-                            break;
-                        }
-                    }
-                    // At this point pIterator will give the station after firstActive
-                    // with the following next().
-
-                    // Which algorithm are we using?
-                    if (parallelIsActive &&
-                            ((currentStat.config.getSelectMode() == EtConstants.stationSelectRRobin) ||
-                                    (currentStat.config.getSelectMode() == EtConstants.stationSelectEqualCue))) {
-                        rrobinOrEqualcue = true;
-                    }
+                activeIndex = 0;
+                if (parallelIsActive) {
+                    // Skip to first active parallel station
+                    currentStat = activeGroup[activeIndex++];
+                    inList = currentStat.inputList;
                 }
 
-                // if not rrobin/equalcue & station(s) is(are) active ...
-                if (!rrobinOrEqualcue &&
-                        (parallelIsActive || (currentStat.status == EtConstants.stationActive))) {
+                // Loop through all the active parallel stations if necessary.
+                do {
+                    // allow no exterior change to inputList
+                    synchronized (inList) {
+                        // if GrandCentral, put everything into it ...
+                        if (currentStat.id == 0) {
+                            writeAll = true;
+                        }
 
-                    if (currentStat.config.getFlowMode() == EtConstants.stationParallel) {
-                        // Skip to first active parallel station
-                        currentStat = firstActive;
-                        inList = currentStat.inputList;
-                    }
+                        // all events, blocking
+                        else if ((currentStat.config.getSelectMode() == selectAll) &&
+                                (currentStat.config.getBlockMode() == blocking)) {
 
-                    // Loop through all the active parallel stations if necessary.
-                    parallelDo:
-                    do {
-                        // allow no exterior change to inputList
-                        synchronized (inList) {
-                            // if GrandCentral, put everything into it ...
-                            if (currentStat.id == 0) {
+                            // if prescale=1, dump everything into station
+                            getListSize = getList.size();
+                            if (currentStat.config.getPrescale() == 1) {
                                 writeAll = true;
                             }
+                            else {
+                                prescale = currentStat.config.getPrescale();
+                                listTry = inList.getEventsTry();
+                                subList = getList.subList(0, (int) ((listTry + getListSize) / prescale - listTry / prescale));
+                                putList.addAll(subList);
+                                subList.clear();
+                            }
+                            inList.setEventsTry(inList.getEventsTry() + getListSize);
+                        }
 
-                            // all events, blocking
-                            else if ((currentStat.config.getSelectMode() == selectAll) &&
-                                    (currentStat.config.getBlockMode() == blocking)) {
+                        // all events, nonblocking
+                        else if ((currentStat.config.getSelectMode() == selectAll) &&
+                                (currentStat.config.getBlockMode() == nonBlocking)) {
+                            if (inList.getCount() < currentStat.config.getCue()) {
+                                count = currentStat.config.getCue() - inList.getCount();
+                                available = getList.size();
+                                subList = getList.subList(0, (count > available) ? available : count);
+                                putList.addAll(subList);
+                                subList.clear();
+                            }
+                        }
 
-                                // if prescale=1, dump everything into station
-                                getListSize = getList.size();
-                                if (currentStat.config.getPrescale() == 1) {
-                                    writeAll = true;
-                                }
-                                else {
-                                    prescale = currentStat.config.getPrescale();
+                        //  condition (user or match), blocking
+                        else if (currentStat.config.getBlockMode() == blocking) {
+                            prescale = currentStat.config.getPrescale();
+                            // select the whole list at once if possible, keep unselected events in order
+                            bits = selectEvents(currentStat, getList);
+                            getListSize = getList.size();
+                            kept = 0;
+                            for (int j=0; j < getListSize; j++) {
+                                ev = getList.get(j);
+                                // apply selection method
+                                if ((bits != null) ? (bits[j >>> 6] & (1L << j)) != 0 :
+                                                     currentStat.selector.select(sys, currentStat, ev)) {
+                                    // apply prescale
                                     listTry = inList.getEventsTry();
-                                    subList = getList.subList(0, (int) ((listTry + getListSize) / prescale - listTry / prescale));
-                                    putList.addAll(subList);
-                                    subList.clear();
+                                    inList.setEventsTry(listTry + 1);
+                                    if ((listTry % prescale) == 0) {
+                                        putList.add(ev);
+                                        continue;
+                                    }
                                 }
-                                inList.setEventsTry(inList.getEventsTry() + getListSize);
+                                getList.set(kept++, ev);
                             }
-
-                            // all events, nonblocking
-                            else if ((currentStat.config.getSelectMode() == selectAll) &&
-                                    (currentStat.config.getBlockMode() == nonBlocking)) {
-                                if (inList.getEvents().size() < currentStat.config.getCue()) {
-                                    count = currentStat.config.getCue() - inList.getEvents().size();
-                                    available = getList.size();
-                                    subList = getList.subList(0, (count > available) ? available : count);
-                                    putList.addAll(subList);
-                                    subList.clear();
-                                }
+                            while (getList.size() > kept) {
+                                getList.remove(getList.size() - 1);
                             }
+                        }
 
-                            //  condition (user or match), blocking
-                            else if (currentStat.config.getBlockMode() == blocking) {
-                                prescale = currentStat.config.getPrescale();
-                                for (ListIterator i = getList.listIterator(); i.hasNext();) {
-                                    ev = (EtEventImpl) i.next();
-                                    // apply selection method
-                                    if (currentStat.selector.select(sys, currentStat, ev)) {
-                                        // apply prescale
-                                        listTry = inList.getEventsTry();
-                                        inList.setEventsTry(listTry + 1);
-                                        if ((listTry % prescale) == 0) {
-                                            putList.add(ev);
-                                            i.remove();
-                                        }
+                        // condition (user or match) + nonblocking
+                        else if (currentStat.config.getBlockMode() == nonBlocking) {
+                            if (inList.getCount() < currentStat.config.getCue()) {
+                                count = currentStat.config.getCue() - inList.getCount();
+                                bits = selectEvents(currentStat, getList);
+                                getListSize = getList.size();
+                                kept = 0;
+                                for (int j=0; j < getListSize; j++) {
+                                    ev = getList.get(j);
+                                    // apply selection method until station is full
+                                    if ((count > 0) &&
+                                        ((bits != null) ? (bits[j >>> 6] & (1L << j)) != 0 :
+                                                          currentStat.selector.select(sys, currentStat, ev))) {
+                                        putList.add(ev);
+                                        count--;
+                                        continue;
                                     }
+                                    getList.set(kept++, ev);
+                                }
+                                while (getList.size() > kept) {
+                                    getList.remove(getList.size() - 1);
                                 }
                             }
+                        }
 
-                            // condition (user or match) + nonblocking
-                            else if (currentStat.config.getBlockMode() == nonBlocking) {
-                                if (inList.getEvents().size() < currentStat.config.getCue()) {
-                                    count = currentStat.config.getCue() - inList.getEvents().size();
-                                    for (ListIterator i = getList.listIterator(); i.hasNext();) {
-                                        ev = (EtEventImpl) i.next();
-                                        // apply selection method
-                                        if (currentStat.selector.select(sys, currentStat, ev)) {
-                                            putList.add(ev);
-                                            i.remove();
-                                            if (--count < 1) {
-                                                break;
-                                            }
-                                        }
-                                    }
-                                }
+                        // if items go in this station ...
+                        if ((putList.size() > 0) || (writeAll)) {
+                            // if grandcentral
+                            if (currentStat.id == 0) {
+                                inList.putInLow(getList);
+                                getList.clear();
+                                writeAll = false;
                             }
 
-                            // if items go in this station ...
-                            if ((putList.size() > 0) || (writeAll)) {
-                                // if grandcentral
-                                if (currentStat.id == 0) {
-                                    inList.putInLow(getList);
+                            else {
+                                if (writeAll) {
+                                    inList.putAll(getList);
                                     getList.clear();
                                     writeAll = false;
                                 }
-
                                 else {
-                                    if (writeAll) {
-                                        inList.putAll(getList);
-                                        getList.clear();
-                                        writeAll = false;
-                                    }
-                                    else {
-                                        inList.putAll(putList);
-                                        putList.clear();
-                                    }
+                                    inList.putAll(putList);
+                                    putList.clear();
                                 }
-                                // signal reader that new events are here
-                                inList.notifyAll();
-                            } // if items go in this station
-                        } // end of inputList synchronization
-
-                        // go to next active parallel station, if there is one
-                        if (parallelIsActive) {
-                            do {
-                                if (pIterator.hasNext()) {
-                                    stat = (StationLocal) pIterator.next();
-                                    if (stat.status == EtConstants.stationActive) {
-                                        currentStat = stat;
-                                        inList = currentStat.inputList;
-                                        break;
-                                    }
-                                }
-                                else {
-                                    break parallelDo;
-                                }
-                            } while (stat.status != EtConstants.stationActive);
-                        }
-
-                        // loop through active parallel stations if necessary
-                    } while (parallelIsActive && (getList.size() > 0));
-
-                } // if station active and not rrobin or equalcue
-
-                // Implement the round-robin & equal-cue algorithms for dispensing
-                // events to a single group of parallel stations.
-                else if (rrobinOrEqualcue && parallelIsActive) {
-
-                    int num, extra, lastEventIndex = 0, eventsAlreadyPut, numActiveStations = 0;
-                    int index, numOfEvents, min, eventsToPut, eventsLeft;
-                    int eventsPerStation, nextHigherCue, eventsDoledOut, stationsWithSameCue;
-                    int[] numEvents;
-
-                    if (currentStat.config.getSelectMode() == EtConstants.stationSelectRRobin) {
-                        // Flag to start looking for station that receives first round-robin event
-                        boolean startLooking = false;
-                        stat = currentStat;
-                        pIterator = currentStat.parallelStations.listIterator(1);
-
-                        while (true) {
-                            // for each active station ...
-                            if (stat.status == EtConstants.stationActive) {
-                                if (startLooking) {
-                                    // This is the first active station after
-                                    // the last station to receive an event.
-                                    startStation = stat;
-                                    startLooking = false;
-                                }
-                                numActiveStations++;
-                            }
-
-                            // Find last station to receive a round-robin event and start looking
-                            // for the next active station to receive the first one.
-                            if (stat.wasLast) {
-                                stat.wasLast = false;
-                                startLooking = true;
                             }
+                            // signal reader that new events are here
+                            inList.signalWaiters();
+                            given = parallelIsActive;
+                        } // if items go in this station
+                    } // end of inputList synchronization
+
+                    if (given) {
+                        given = false;
+                        signalStealers(activeGroup, currentStat);
+                    }
 
-                            // find next station in the parallel linked list
-                            if (pIterator.hasNext()) {
-                                stat = (StationLocal) pIterator.next();
-                            }
-                            // else if we're at the end of the list ...
-                            else {
-                                // If we still haven't found a place to start the round-robin
-                                // event dealing, make it the first active station.
-                                if (startStation == null) {
-                                    startStation = firstActive;
-                                }
-                                break;
+                    // go to next active parallel station, if there is one
+                    if (!parallelIsActive || activeIndex >= activeGroup.length) {
+                        break;
+                    }
+                    currentStat = activeGroup[activeIndex++];
+                    inList = currentStat.inputList;
+
+                    // loop through active parallel stations if necessary
+                } while (getList.size() > 0);
+
+            } // if station active and not rrobin or equalcue
+
+            // Implement the round-robin, equal-cue, weighted, partition & fan-out algorithms for
+            // dispensing events to a single group of parallel stations.
+            else if (rrobinOrEqualcue && parallelIsActive) {
+
+                int num, extra, lastEventIndex = 0, eventsAlreadyPut, numActiveStations;
+                int index, numOfEvents, eventsToPut;
+                int[] numEvents;
+
+                numActiveStations = activeGroup.length;
+
+                if (currentStat.config.getSelectMode() == EtConstants.stationSelectRRobin) {
+                    // Flag to start looking for station that receives first round-robin event
+                    boolean startLooking = false;
+                    group = topology.getGroup(position);
+                    activeIndex = 0;
+
+                    for (StationLocal member : group) {
+                        // for each active station (both arrays are in the same order) ...
+                        if (activeIndex < numActiveStations && activeGroup[activeIndex] == member) {
+                            activeIndex++;
+                            if (startLooking) {
+                                // This is the first active station after
+                                // the last station to receive an event.
+                                startStation = member;
+                                startLooking = false;
                             }
                         }
 
-                        // Find the number of events going into each station
-                        num = getList.size() / numActiveStations;
-                        // Find the number of events left over (not enough for another round). */
-                        extra = getList.size() % numActiveStations;
-                        eventsAlreadyPut = count = 0;
-                        numEvents = new int[numActiveStations];
-
-                        // Rearrange events so all those destined for a particular
-                        // station are grouped together in the new array.
-                        for (int i = 0; i < numActiveStations; i++) {
-                            if (i < extra) {
-                                numEvents[i] = num + 1;
-                                if (i == (extra - 1)) {
-                                    lastEventIndex = i;
-                                }
-                            }
-                            else {
-                                numEvents[i] = num;
-                            }
-
-                            if (extra == 0) {
-                                lastEventIndex = numActiveStations - 1;
-                            }
+                        // Find last station to receive a round-robin event and start looking
+                        // for the next active station to receive the first one.
+                        if (member.wasLast) {
+                            member.wasLast = false;
+                            startLooking = true;
+                        }
+                    }
 
-                            numOfEvents = numEvents[i];
+                    // If we still haven't found a place to start the round-robin
+                    // event dealing, make it the first active station.
+                    if (startStation == null) {
+                        startStation = activeGroup[0];
+                    }
 
-                            index = i;
-                            for (int j = 0; j < numOfEvents; j++) {
-                                putList.add(getList.get(index));
-                                index += numActiveStations;
+                    // Find the number of events going into each station
+                    num = getList.size() / numActiveStations;
+                    // Find the number of events left over (not enough for another round). */
+                    extra = getList.size() % numActiveStations;
+                    eventsAlreadyPut = 0;
+                    numEvents = new int[numActiveStations];
+
+                    // Rearrange events so all those destined for a particular
+                    // station are grouped together in the new array.
+                    for (int i = 0; i < numActiveStations; i++) {
+                        if (i < extra) {
+                            numEvents[i] = num + 1;
+                            if (i == (extra - 1)) {
+                                lastEventIndex = i;
                             }
                         }
+                        else {
+                            numEvents[i] = num;
+                        }
 
-                        // Place the first event with the station after the one which
-                        // received the last event in the previous round.
-                        stat = startStation;
-                        inList = stat.inputList;
-                        count = 0;
-
-                        // set iterator to start with the station following startStation
-                        index = currentStat.parallelStations.indexOf(startStation) + 1;
-                        pIterator = currentStat.parallelStations.listIterator(index);
-
-                        while (true) {
-                            // For each active parallel station ...
-                            if (stat.status == EtConstants.stationActive) {
-                                // Mark station that got the last event
-                                if (count == lastEventIndex) {
-                                    stat.wasLast = true;
-                                }
-
-                                // Put "eventsToPut" number of events in the next active station
-                                eventsToPut = numEvents[count++];
-
-                                if (eventsToPut > 0) {
-                                    synchronized (inList) {
-                                        subList = putList.subList(eventsAlreadyPut, eventsAlreadyPut + eventsToPut);
-                                        inList.putAll(subList);
-                                        inList.setEventsTry(inList.getEventsTry() + eventsToPut);
-                                        // signal reader that new events are here
-                                        inList.notifyAll();
-                                    }
+                        if (extra == 0) {
+                            lastEventIndex = numActiveStations - 1;
+                        }
 
-                                    eventsAlreadyPut += eventsToPut;
-                                }
-                            }
+                        numOfEvents = numEvents[i];
 
-                            // Find next active station
-                            if (count >= numActiveStations) {
-                                break;
-                            }
-                            else if (pIterator.hasNext()) {
-                                stat = (StationLocal) pIterator.next();
-                                inList = stat.inputList;
-                            }
-                            else {
-                                // Go back to the first active parallel station
-                                stat = firstActive;
-                                inList = stat.inputList;
-                                index = currentStat.parallelStations.indexOf(stat) + 1;
-                                pIterator = currentStat.parallelStations.listIterator(index);
-                            }
-                        } // while (forever)
+                        index = i;
+                        for (int j = 0; j < numOfEvents; j++) {
+                            putList.add(getList.get(index));
+                            index += numActiveStations;
+                        }
+                    }
 
-                        putList.clear();
+                    // Place the first event with the station after the one which
+                    // received the last event in the previous round.
+                    activeIndex = 0;
+                    while (activeGroup[activeIndex] != startStation) {
+                        activeIndex++;
+                    }
 
-                    } // if round-robin
+                    // For each active parallel station ...
+                    for (count = 0; count < numActiveStations; count++) {
+                        stat = activeGroup[activeIndex];
+                        inList = stat.inputList;
 
-                    // else if equal-cue algorithm ...
-                    else {
-                        eventsLeft = getList.size();
-                        eventsDoledOut = 0;
-                        eventsAlreadyPut = 0;
-                        stationsWithSameCue = 0;
-
-                        // Array that keeps track of original station order, and
-                        // one that contains input list counts.
-                        // Give 'em an extra element as the sorting routine
-                        // assumes a starting index of 1.
-                        int[] place = new int[sys.getConfig().getStationsMax() + 1];
-                        int[] inListCount = new int[sys.getConfig().getStationsMax() + 1];
-                        for (int i = 1; i <= sys.getConfig().getStationsMax(); i++) {
-                            place[i] = i;
+                        // Mark station that got the last event
+                        if (count == lastEventIndex) {
+                            stat.wasLast = true;
                         }
 
-                        stat = firstActive;
-                        while (true) {
-                            // For each active station ...
-                            if (stat.status == EtConstants.stationActive) {
-                                // Find total # of events in stations' input lists.
-                                // Store this information as it will change and we don't
-                                // really want to grab all the input mutexes to make
-                                // sure these values don't change.
-                                inListCount[numActiveStations + 1] = stat.inputList.getEvents().size();
-
-                                // Total number of active stations
-                                numActiveStations++;
-                            }
+                        // Put "eventsToPut" number of events in the next active station
+                        eventsToPut = numEvents[count];
 
-                            // find next station in the parallel linked list
-                            if (pIterator.hasNext()) {
-                                stat = (StationLocal) pIterator.next();
-                            }
-                            else {
-                                break;
+                        if (eventsToPut > 0) {
+                            synchronized (inList) {
+                                subList = putList.subList(eventsAlreadyPut, eventsAlreadyPut + eventsToPut);
+                                inList.putAll(subList);
+                                inList.setEventsTry(inList.getEventsTry() + eventsToPut);
+                                // signal reader that new events are here
+                                inList.signalWaiters();
                             }
-                        }
+                            signalStealers(activeGroup, stat);
 
-                        // Sort the input lists (cues) according to number of events. The "place"
-                        // array remembers the place in the presorted array of input lists.
-                        // Arrays to be sorted are assumed to have indexes from 1 to n,
-                        // so the first element contains nonsense.
-                        shellSort(numActiveStations, inListCount, place);
-
-                        // To determine which stations get how many events:
-                        // Take the lowest cues, add enough to make them equal
-                        // to the next higher cue. Continue doing this until all
-                        // are equal. Evenly divide any remaining events.
-                        nextHigherCue = 0;
-                        min = inListCount[1];
-                        numEvents = new int[numActiveStations];
-
-                        while (eventsDoledOut < eventsLeft) {
-                            // Find how many cues have the lowest # of events in them
-                            stationsWithSameCue = 0;
-                            for (int i = 1; i <= numActiveStations; i++) {
-                                // Does events in cue + events we've just given it = min?
-                                if (min == inListCount[i] + numEvents[place[i] - 1]) {
-                                    stationsWithSameCue++;
-                                }
-                                else {
-                                    nextHigherCue = inListCount[i];
-                                    break;
-                                }
-                            }
+                            eventsAlreadyPut += eventsToPut;
+                        }
 
-                            // If all stations have same # of events, or if there are not enough
-                            // events to fill each lowest cue to level of the next higher cue,
-                            // we spread available events between them all ...
-                            if ((stationsWithSameCue == numActiveStations) ||
-                                    ((eventsLeft - eventsDoledOut) < ((nextHigherCue - min) * stationsWithSameCue)))
-                            {
-                                eventsToPut = eventsLeft - eventsDoledOut;
-                                eventsPerStation = eventsToPut / stationsWithSameCue;
-                                extra = eventsToPut % stationsWithSameCue;
-                                count = 0;
-                                for (int i = 1; i <= stationsWithSameCue; i++) {
-                                    if (count++ < extra) {
-                                        numEvents[place[i] - 1] += eventsPerStation + 1;
-                                    }
-                                    else {
-                                        numEvents[place[i] - 1] += eventsPerStation;
-                                    }
-                                }
-                                break;
-                            }
-                            // Else, fill the lowest cues to the level of the next higher cue
-                            // and repeat the cycle.
-                            else {
-                                eventsPerStation = nextHigherCue - min;
-                                for (int i = 1; i <= stationsWithSameCue; i++) {
-                                    numEvents[place[i] - 1] += eventsPerStation;
-                                }
-                                min = nextHigherCue;
-                            }
-                            eventsDoledOut += eventsPerStation * stationsWithSameCue;
+                        // Find next active station, going back to the
+                        // first active parallel station if necessary
+                        if (++activeIndex >= numActiveStations) {
+                            activeIndex = 0;
                         }
+                    }
 
-                        stat = firstActive;
-                        count = 0;
-                        index = currentStat.parallelStations.indexOf(stat) + 1;
-                        pIterator = currentStat.parallelStations.listIterator(index);
+                    putList.clear();
 
-                        while (true) {
-                            // for each active parallel station ...
-                            if (stat.status == EtConstants.stationActive) {
+                } // if round-robin
 
-                                if ((eventsToPut = numEvents[count++]) < 1) {
-                                    // find next station in the parallel linked list
-                                    if (pIterator.hasNext()) {
-                                        stat = (StationLocal) pIterator.next();
-                                        continue;
-                                    }
-                                    else {
-                                        break;
-                                    }
-                                }
+                // else if fan-out, every active station gets every event without copying,
+                // which moves on once the last of them puts it back
+                else if (currentStat.config.getSelectMode() == EtConstants.stationSelectFanOut) {
+                    getListSize = getList.size();
+                    for (int i = 0; i < getListSize; i++) {
+                        getList.get(i).setReaders(numActiveStations);
+                    }
 
-                                // Put "eventsToPut" number of events in the next active station
-                                inList = stat.inputList;
-                                synchronized (inList) {
-                                    subList = getList.subList(eventsAlreadyPut, eventsAlreadyPut + eventsToPut);
-                                    inList.putAll(subList);
-                                    inList.setEventsTry(inList.getEventsTry() + eventsToPut);
-                                    // signal reader that new events are here
-                                    inList.notifyAll();
-                                }
+                    for (StationLocal member : activeGroup) {
+                        inList = member.inputList;
+                        synchronized (inList) {
+                            inList.putAll(getList);
+                            inList.setEventsTry(inList.getEventsTry() + getListSize);
+                            // signal reader that new events are here
+                            inList.signalWaiters();
+                        }
+                    }
+                }
 
-                                eventsAlreadyPut += eventsToPut;
-                            }
+                // else if equal-cue, weighted, or partition algorithm ...
+                else {
+                    eventsAlreadyPut = 0;
+                    if (currentStat.config.getSelectMode() == EtConstants.stationSelectWeighted) {
+                        numEvents = doleOutWeighted(activeGroup, getList.size());
+                    }
+                    else if (currentStat.config.getSelectMode() == EtConstants.stationSelectPartition) {
+                        numEvents = partitionEvents(activeGroup, currentStat.partitionWord, getList);
+                    }
+                    else {
+                        numEvents = doleOutEqualCue(activeGroup, getList.size());
+                    }
 
-                            // Find next station in the parallel linked list
-                            if (pIterator.hasNext()) {
-                                stat = (StationLocal) pIterator.next();
-                            }
-                            else {
-                                break;
-                            }
-                        } // while(true)
-                    } // else if equal-cue algorithm
+                    // for each active parallel station ...
+                    for (int i = 0; i < numActiveStations; i++) {
+                        if ((eventsToPut = numEvents[i]) < 1) {
+                            continue;
+                        }
 
-                    getList.clear();
+                        // Put "eventsToPut" number of events in the next active station
+                        inList = activeGroup[i].inputList;
+                        synchronized (inList) {
+                            subList = getList.subList(eventsAlreadyPut, eventsAlreadyPut + eventsToPut);
+                            inList.putAll(subList);
+                            inList.setEventsTry(inList.getEventsTry() + eventsToPut);
+                            // signal reader that new events are here
+                            inList.signalWaiters();
+                        }
+                        signalStealers(activeGroup, activeGroup[i]);
 
-                } // Implement the round-robin & equal-cue algorithms
+                        eventsAlreadyPut += eventsToPut;
+                    }
+                } // else if equal-cue, weighted, or partition algorithm
 
-                if (currentStat.id == 0) {
-                    break;
-                }
+                getList.clear();
 
-                // find next station
-                if (statIterator.hasNext()) {
-                    currentStat = (StationLocal) statIterator.next();
-                }
-                else {
-                    currentStat = sys.getStations().get(0);
-                }
-                inList = currentStat.inputList;
+            } // Implement the round-robin, equal-cue, weighted, partition & fan-out algorithms
+
+            if (currentStat.id == 0) {
+                break;
+            }
 
-            } // while(getList.size() > 0), events left to put
+            // find next station, GrandCentral being after the last
+            if (++position >= topology.getStationCount()) {
+                position = 0;
+            }
+            currentStat = topology.getStation(position);
+            inList = currentStat.inputList;
 
-            // stop transfer unlocked - now changes to stations linked list allowed
-            stopTransferLock.unlock();
+        } // while(getList.size() > 0), events left to put
 
-        } // while(true)
+        // done routing this batch
+        routing = null;
+        sys.doneRouting();
+        recordBatch(batch, arrival, batchStart, System.nanoTime());
 
-    } // run method
+    } // routeBatch method
 
 
 }
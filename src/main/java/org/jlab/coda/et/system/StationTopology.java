@@ -0,0 +1,174 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+import java.util.*;
+import org.jlab.coda.et.EtConstants;
+
+/**
+ * This class is an immutable picture of how stations are arranged in an ET system.
+ * It contains everything a conductor thread needs to route events: the order of
+ * stations in the main linked list, the members of each group of parallel stations,
+ * and which stations are active. A new one is made by {@link SystemCreate} every time
+ * stations are added, removed, moved or change status, so a conductor can route a
+ * whole batch of events using a single picture without looking at the linked lists.
+ * Conductors pick up the newest picture at the start of each batch, so changing
+ * stations never stops the flow of events.
+ *
+ * @author Carl Timmer
+ */
+
+class StationTopology {
+
+    /** Empty array of stations. */
+    private static final StationLocal[] noStations = new StationLocal[0];
+
+    /** Stations in the main linked list, GRAND_CENTRAL first. A group of
+     *  parallel stations is represented by its head. */
+    private final StationLocal[] stations;
+
+    /** For each position in the main list, all stations of a parallel group in
+     *  order (head first), or just the station itself if it's serial. */
+    private final StationLocal[][] groups;
+
+    /** For each position in the main list, the active stations of {@link #groups}, in order. */
+    private final StationLocal[][] activeGroups;
+
+    /** Number which increases with every new picture. */
+    private final long epoch;
+
+    /** Position in the main list of each station, indexed by station id
+     *  (-1 if no such station). Parallel stations have the position of their head. */
+    private final int[] positions;
+
+
+
+    /**
+     * Create a picture of the current arrangement of stations.
+     * Must be called while holding the system's station lock.
+     *
+     * @param mainList    main linked list of stations
+     * @param stationsMax maximum number of stations in the system
+     * @param epoch       number larger than that of any previous picture
+     */
+    StationTopology(ArrayList<StationLocal> mainList, int stationsMax, long epoch) {
+        this.epoch = epoch;
+        int size = mainList.size();
+        stations     = mainList.toArray(new StationLocal[size]);
+        groups       = new StationLocal[size][];
+        activeGroups = new StationLocal[size][];
+
+        int maxId = stationsMax - 1;
+        for (int i=0; i < size; i++) {
+            StationLocal stat = stations[i];
+            if (stat.getConfig().getFlowMode() == EtConstants.stationParallel) {
+                groups[i] = stat.getParallelStations().toArray(noStations);
+            }
+            else {
+                groups[i] = new StationLocal[] {stat};
+            }
+
+            int activeCount = 0;
+            for (StationLocal member : groups[i]) {
+                if (member.getStatus() == EtConstants.stationActive) activeCount++;
+                maxId = Math.max(maxId, member.getStationId());
+            }
+
+            if (activeCount == groups[i].length) {
+                activeGroups[i] = groups[i];
+            }
+            else if (activeCount == 0) {
+                activeGroups[i] = noStations;
+            }
+            else {
+                activeGroups[i] = new StationLocal[activeCount];
+                activeCount = 0;
+                for (StationLocal member : groups[i]) {
+                    if (member.getStatus() == EtConstants.stationActive) {
+                        activeGroups[i][activeCount++] = member;
+                    }
+                }
+            }
+        }
+
+        positions = new int[maxId + 1];
+        Arrays.fill(positions, -1);
+        for (int i=0; i < size; i++) {
+            for (StationLocal member : groups[i]) {
+                positions[member.getStationId()] = i;
+            }
+        }
+    }
+
+
+    /**
+     * Get the number which increases with every new picture of the stations.
+     * @return number which increases with every new picture of the stations
+     */
+    long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Get the number of stations (or groups of parallel stations) in the main list.
+     * @return number of stations (or groups of parallel stations) in the main list
+     */
+    int getStationCount() {
+        return stations.length;
+    }
+
+    /**
+     * Get the station at the given position in the main list.
+     * For parallel stations, this is the head of the group.
+     * @param position position in the main list
+     * @return station at the given position in the main list
+     */
+    StationLocal getStation(int position) {
+        return stations[position];
+    }
+
+    /**
+     * Get the position in the main list of the given station.
+     * For parallel stations, this is the position of the head of its group.
+     * @param station station
+     * @return position in the main list, or -1 if the station is not in the list
+     */
+    int getPosition(StationLocal station) {
+        int id = station.getStationId();
+        if (id >= positions.length) return -1;
+        return positions[id];
+    }
+
+    /**
+     * Get all stations at the given position in the main list. This is the
+     * whole group of parallel stations, head first, or just a single serial station.
+     * Do not modify the returned array.
+     * @param position position in the main list
+     * @return all stations at the given position in the main list
+     */
+    StationLocal[] getGroup(int position) {
+        return groups[position];
+    }
+
+    /**
+     * Get the active stations at the given position in the main list, in order.
+     * Do not modify the returned array.
+     * @param position position in the main list
+     * @return active stations at the given position in the main list (may be empty)
+     */
+    StationLocal[] getActiveGroup(int position) {
+        return activeGroups[position];
+    }
+}
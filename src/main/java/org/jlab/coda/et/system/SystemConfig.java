@@ -78,6 +78,46 @@ public class SystemConfig {
     /** Set of all multicast addresses to listen on (in String form). */
     private HashSet<InetAddress> multicastAddrs;
 
+    /**
+     * Where event data is kept. This may have values of
+     * {@link org.jlab.coda.et.EtConstants#storageHeap} meaning each event has its own
+     * byte array on the heap, {@link org.jlab.coda.et.EtConstants#storageDirect} meaning
+     * events are slices of a few large regions of off-heap memory, or
+     * {@link org.jlab.coda.et.EtConstants#storageMapped} meaning events are slices of
+     * a few regions of a memory-mapped file. Off-heap events have no backing
+     * array so {@link org.jlab.coda.et.EtEvent#getData()} cannot be used on them.
+     */
+    private int eventStorage;
+
+    /** Name of the file backing event data if it is memory-mapped,
+     *  null means use the ET file name with "_data" appended. */
+    private String mappedFile;
+
+    /** Largest number of events a station's conductor thread takes from the
+     *  station's output list to pass on at once, 0 means no limit. */
+    private int conductorBatchMax;
+
+    /** Longest time, in microseconds, a conductor thread waits for more events
+     *  to arrive so it can pass on a fuller batch, 0 means never wait. */
+    private int conductorBatchDelay;
+
+    /**
+     * Hand-off latency, in microseconds, each conductor thread aims for by tuning
+     * its own batch size and wait, 0 means no tuning. The hand-off latency is the time
+     * from an event being put into a station's output list until the conductor has
+     * passed it on to the next station(s). When tuning, {@link #conductorBatchMax} still
+     * limits the batch size but {@link #conductorBatchDelay} is ignored.
+     */
+    private int conductorLatencyTarget;
+
+    /** Number of threads shared by the conductors of all stations,
+     *  0 means each station's conductor has a thread of its own. */
+    private int conductorThreads;
+
+    /** Number of selector threads serving all network connections,
+     *  0 means each connection has a thread of its own. */
+    private int serverSelectors;
+
 
     /**
      * Constructor that creates a new SystemConfig object using default parameters.
@@ -88,7 +128,8 @@ public class SystemConfig {
      *      max number of attachments = {@link org.jlab.coda.et.EtConstants#defaultAttsMax},
      *      debug level               = {@link org.jlab.coda.et.EtConstants#debugError},
      *      udp port                  = {@link org.jlab.coda.et.EtConstants#udpPort},
-     *      server (tcp) port         = {@link org.jlab.coda.et.EtConstants#serverPort}, and
+     *      server (tcp) port         = {@link org.jlab.coda.et.EtConstants#serverPort},
+     *      event storage             = {@link org.jlab.coda.et.EtConstants#storageHeap}, and
      */
     public SystemConfig () {
         numEvents       = EtConstants.defaultNumEvents;
@@ -118,6 +159,13 @@ public class SystemConfig {
         serverPort      = config.serverPort;
         multicastAddrs  = new HashSet<InetAddress>(config.multicastAddrs);
         groups          = config.groups.clone();
+        eventStorage    = config.eventStorage;
+        mappedFile      = config.mappedFile;
+        conductorBatchMax      = config.conductorBatchMax;
+        conductorBatchDelay    = config.conductorBatchDelay;
+        conductorLatencyTarget = config.conductorLatencyTarget;
+        conductorThreads       = config.conductorThreads;
+        serverSelectors        = config.serverSelectors;
     }
 
 
@@ -174,6 +222,36 @@ public class SystemConfig {
      *  @return tcp server port number */
     public int getServerPort() {return serverPort;}
 
+    /** Get where event data is kept.
+     *  @return {@link org.jlab.coda.et.EtConstants#storageHeap},
+     *          {@link org.jlab.coda.et.EtConstants#storageDirect}, or
+     *          {@link org.jlab.coda.et.EtConstants#storageMapped} */
+    public int getEventStorage() {return eventStorage;}
+
+    /** Get the name of the file backing memory-mapped event data.
+     *  @return name of the file backing memory-mapped event data, or null if the default */
+    public String getMappedFile() {return mappedFile;}
+
+    /** Get the largest number of events a conductor thread passes on at once.
+     *  @return largest number of events a conductor thread passes on at once, 0 if no limit */
+    public int getConductorBatchMax() {return conductorBatchMax;}
+
+    /** Get the longest time a conductor thread waits for a fuller batch of events.
+     *  @return longest time in microseconds a conductor thread waits for a fuller batch */
+    public int getConductorBatchDelay() {return conductorBatchDelay;}
+
+    /** Get the hand-off latency conductor threads aim for by tuning their batches.
+     *  @return hand-off latency in microseconds conductor threads aim for, 0 if not tuning */
+    public int getConductorLatencyTarget() {return conductorLatencyTarget;}
+
+    /** Get the number of threads shared by the conductors of all stations.
+     *  @return number of threads shared by conductors, 0 if each has its own */
+    public int getConductorThreads() {return conductorThreads;}
+
+    /** Get the number of selector threads serving all network connections.
+     *  @return number of selector threads, 0 if each connection has its own thread */
+    public int getServerSelectors() {return serverSelectors;}
+
     /** Get the set of multicast addresses.
      *  @return set of multicast addresses */
     public Set<InetAddress> getMulticastAddrs() {return new HashSet<InetAddress>(multicastAddrs);}
@@ -399,6 +477,123 @@ public class SystemConfig {
         serverPort = port;
     }
 
+    /**
+     * Set where event data is kept. Keeping it off the heap means the garbage collector
+     * never has to scan or move it, so GC pauses do not depend on the size of the
+     * ET system's memory.
+     *
+     * @param storage {@link org.jlab.coda.et.EtConstants#storageHeap},
+     *                {@link org.jlab.coda.et.EtConstants#storageDirect}, or
+     *                {@link org.jlab.coda.et.EtConstants#storageMapped}
+     * @throws EtException if storage has a bad value
+     */
+    public void setEventStorage(int storage) throws EtException {
+        if (storage != EtConstants.storageHeap &&
+            storage != EtConstants.storageDirect &&
+            storage != EtConstants.storageMapped) {
+            throw new EtException("bad value for event storage");
+        }
+        eventStorage = storage;
+    }
+
+    /**
+     * Set the largest number of events a station's conductor thread takes from the
+     * station's output list to pass on at once. By default all events in the list are
+     * taken, so a burst makes a large batch which delays the first event of it.
+     *
+     * @param max largest number of events passed on at once, 0 means no limit
+     * @throws EtException if max is negative
+     */
+    public void setConductorBatchMax(int max) throws EtException {
+        if (max < 0) {
+            throw new EtException("conductor batch max must be >= 0");
+        }
+        conductorBatchMax = max;
+    }
+
+    /**
+     * Set the longest time a conductor thread waits for more events to arrive so it
+     * can pass on a fuller batch. By default a conductor passes events on as soon as
+     * any arrive which, under light load, means waking up for every event.
+     * A conductor stops waiting once it has {@link #setConductorBatchMax(int)} events.
+     *
+     * @param microSec longest wait in microseconds, 0 means never wait
+     * @throws EtException if microSec is negative
+     */
+    public void setConductorBatchDelay(int microSec) throws EtException {
+        if (microSec < 0) {
+            throw new EtException("conductor batch delay must be >= 0");
+        }
+        conductorBatchDelay = microSec;
+    }
+
+    /**
+     * Set the hand-off latency each conductor thread aims for. If set, each conductor
+     * measures how long it takes to pass on events and picks the largest batch it can
+     * pass on within half this time, then uses what is left of it to wait for batches
+     * to fill. The batch size never exceeds {@link #setConductorBatchMax(int)}, if set,
+     * and {@link #setConductorBatchDelay(int)} is ignored.
+     *
+     * @param microSec hand-off latency in microseconds, 0 means no tuning
+     * @throws EtException if microSec is negative
+     */
+    public void setConductorLatencyTarget(int microSec) throws EtException {
+        if (microSec < 0) {
+            throw new EtException("conductor latency target must be >= 0");
+        }
+        conductorLatencyTarget = microSec;
+    }
+
+    /**
+     * Set the number of threads shared by the conductors of all stations. By default
+     * each station has a conductor thread of its own, so a system with hundreds of
+     * stations has hundreds of threads, mostly asleep, all competing for the CPU
+     * when busy. With a shared pool, a station is put in line for a thread only when
+     * events arrive in its output list, and a thread passes on one batch of events
+     * before letting the next station in line have a turn. The number of cores,
+     * {@link Runtime#availableProcessors()}, is a good place to start. Note that a
+     * conductor waiting for a fuller batch, {@link #setConductorBatchDelay(int)},
+     * keeps its pool thread while waiting.
+     *
+     * @param threads number of shared threads, 0 means a thread for each station
+     * @throws EtException if threads is negative
+     */
+    public void setConductorThreads(int threads) throws EtException {
+        if (threads < 0) {
+            throw new EtException("number of conductor threads must be >= 0");
+        }
+        conductorThreads = threads;
+    }
+
+    /**
+     * Set the number of selector threads serving all network connections. By default
+     * each connection to the ET system's tcp server has a thread of its own, so
+     * hundreds of remote producers and consumers mean hundreds of threads. With
+     * selector threads, each connection is handed to one of them and its commands
+     * are read without blocking. A command waiting for events does not hold a thread
+     * but is taken up again when events arrive, it times out, or it's woken up.
+     * Nothing changes for clients. One or two threads are usually plenty.
+     *
+     * @param threads number of selector threads, 0 means a thread for each connection
+     * @throws EtException if threads is negative
+     */
+    public void setServerSelectors(int threads) throws EtException {
+        if (threads < 0) {
+            throw new EtException("number of server selector threads must be >= 0");
+        }
+        serverSelectors = threads;
+    }
+
+    /**
+     * Set the name of the file backing memory-mapped event data.
+     * The file is created and is deleted when the ET system exits.
+     *
+     * @param fileName name of file, or null to use the ET file name with "_data" appended
+     */
+    public void setMappedFile(String fileName) {
+        mappedFile = fileName;
+    }
+
 
     /**
      * Checks configuration settings for consistency.
@@ -18,11 +18,14 @@ import java.lang.*;
 import java.util.*;
 import java.io.*;
 import java.net.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jlab.coda.et.exception.*;
 import org.jlab.coda.et.*;
 import org.jlab.coda.et.enums.Priority;
 import org.jlab.coda.et.enums.Age;
+import org.jlab.coda.et.enums.WaitStrategy;
 
 /**
  * This class creates an ET system.
@@ -42,7 +45,14 @@ public class SystemCreate {
      *  station of a single group of parallel stations is included in
      *  this list. The other parallel stations are available in a list
      *  kept by the first parallel station. */
-    private ArrayList<StationLocal> stations;            // protected by stopTransfer & systemLock
+    private ArrayList<StationLocal> stations;            // protected by stationLock
+
+    /** Picture of the current arrangement of stations used by conductor threads
+     *  to route events. Replaced every time stations are changed. */
+    private volatile StationTopology topology;
+
+    /** Number of the latest arrangement of stations published. */
+    private long topologyEpoch;                          // protected by stationLock
 
     /** The total number of idle and active stations. This consists
      * of the number of main stations given by the size of the "stations"
@@ -59,6 +69,18 @@ public class SystemCreate {
     /** Array of all ET system events. */
     private EtEventImpl[] events;
 
+    /** Off-heap memory holding the data of all events, or null if events' data is on the heap. */
+    private EventSlab slab;
+
+    /** Pool of buffers lent to events asked for with more than the normal event size. */
+    private EventBufferPool bufferPool;
+
+    /** Position of each event (by id) in the owned-event set of the attachment owning it. */
+    private int[] eventSlots;
+
+    /** Time each event (by id) was put into the output list it's in, shared by all output lists. */
+    private long[] arrivalTimes;
+
     /** All local IP addresses */
     private InetAddress[] netAddresses;
 
@@ -77,12 +99,19 @@ public class SystemCreate {
     /** Object on which to synchronize for station stuff. */
     private byte[] stationLock;
 
+    /** Ids of stations taken out of the linked lists whose conductors
+     *  may still be running, not to be given to new stations yet. */
+    private final HashSet<Integer> removingStationIds = new HashSet<Integer>();   // protected by stationLock
+
     /** TCP server thread. */
     private SystemTcpServer tcpServer;
 
     /** UDP server thread. */
     private SystemUdpServer udpServer;
 
+    /** Threads shared by the conductors of all stations, or null if each has its own. */
+    private ConductorPool conductorPool;
+
     /** Thread group used to kill all ET system threads. */
     ThreadGroup etSystemThreads;
 
@@ -103,6 +132,16 @@ public class SystemCreate {
 
     /** Array for storing system information for distribution. */
     private byte[] infoArray = new byte[6000];
+
+    /** Array for storing information only Java ET systems have, for distribution. */
+    private byte[] javaInfoArray = new byte[1000];
+
+    /** Lock allowing only 1 thread at a time to use {@link #javaInfoArray}. */
+    private final byte[] javaInfoLock = new byte[0];
+
+    /** Threads waiting for conductors to finish batches routed with an old
+     *  arrangement of stations, unparked as each conductor finishes a batch. */
+    private final ConcurrentLinkedQueue<Thread> routingWaiters = new ConcurrentLinkedQueue<Thread>();
     
 
     /**
@@ -155,6 +194,8 @@ public class SystemCreate {
         this.config = new SystemConfig(config);
         attachments = new HashMap<Integer, AttachmentLocal>(EtConstants.attachmentsMax + 1);
         events = new EtEventImpl[config.getNumEvents()];
+        eventSlots = new int[config.getNumEvents()];
+        arrivalTimes = new long[config.getNumEvents()];
         stations = new ArrayList<StationLocal>(100);
         // netAddresses will be set in SystemUdpServer
         systemLock  = new byte[0];
@@ -208,6 +249,27 @@ public class SystemCreate {
         catch (IOException ex) {
         }
 
+        // allocate off-heap memory for event data if desired
+        if (config.getEventStorage() != EtConstants.storageHeap) {
+            String fileName = config.getMappedFile();
+            if (fileName == null) fileName = name + "_data";
+            try {
+                slab = new EventSlab(config.getNumEvents(), config.getEventSize(),
+                                     config.getEventStorage(), fileName);
+            }
+            catch (EtException ex) {
+                etFile.delete();
+                if (config.getDebug() >= EtConstants.debugInfo) {
+                    System.out.println(ex.getMessage());
+                }
+                throw ex;
+            }
+        }
+
+        // buffers for events larger than normal come from the same kind of memory
+        bufferPool = new EventBufferPool(config.getNumEvents(), config.getEventSize(),
+                                         config.getEventStorage() != EtConstants.storageHeap);
+
         // store local IP addresses
 //        try {
 //            netAddresses = InetAddress.getAllByName(InetAddress.getLocalHost().getHostName());
@@ -284,6 +346,28 @@ public class SystemCreate {
      * @return linked list of stations */
     public ArrayList<StationLocal> getStations() { return stations; }
 
+    /** Gets the current arrangement of stations used to route events.
+     *  @return current arrangement of stations used to route events */
+    StationTopology getTopology() { return topology; }
+
+    /** Wake any threads waiting for conductors to finish their batches.
+     *  Called by a conductor each time it is done routing a batch. */
+    void doneRouting() {
+        if (!routingWaiters.isEmpty()) {
+            for (Thread t : routingWaiters) {
+                LockSupport.unpark(t);
+            }
+        }
+    }
+
+    /** Gets the pool of buffers lent to events larger than normal.
+     *  @return pool of buffers lent to events larger than normal */
+    EventBufferPool getBufferPool() { return bufferPool; }
+
+    /** Gets the times events were put into the output lists they're in, indexed by event id.
+     *  @return times events were put into the output lists they're in */
+    long[] getArrivalTimes() { return arrivalTimes; }
+
     /** Get the station synchronization object.
      * @return  station synchronization object */
     public byte[] getStationLock() { return stationLock; }
@@ -323,6 +407,14 @@ public class SystemCreate {
     synchronized public void startUp() {
         if (running) return;
 
+        // conductors share a pool of threads if asked to
+        if (config.getConductorThreads() > 0) {
+            conductorPool = new ConductorPool(config.getConductorThreads(),
+                                              config.getStationsMax(),
+                                              config.getNumEvents());
+            conductorPool.start();
+        }
+
         // make grandcentral
         gcStation = createGrandCentral();
 
@@ -332,7 +424,12 @@ public class SystemCreate {
         ArrayList<EtEventImpl> eventList = new ArrayList<EtEventImpl>(config.getNumEvents());
 
         for (int i=0; i < config.getNumEvents(); i++) {
-            ev = new EtEventImpl(config.getEventSize());
+            if (slab == null) {
+                ev = new EtEventImpl(config.getEventSize());
+            }
+            else {
+                ev = new EtEventImpl(slab.getEventBuffer(i));
+            }
             ev.setId(i);
 
             // assign group numbers
@@ -374,6 +471,10 @@ public class SystemCreate {
         // Give threads to a chance to gracefully end
         killAllThreads = true;
         etSystemThreads.interrupt();
+        if (conductorPool != null) {
+            conductorPool.kill();
+            conductorPool = null;
+        }
 
         // Sockets on 2 second timeout so wait
         try {Thread.sleep(2100);}
@@ -386,6 +487,13 @@ public class SystemCreate {
         File etFile = new File(name);
         etFile.delete();
 
+        // Delete any file backing event data,
+        // off-heap memory is freed once events are gone
+        if (slab != null) {
+            slab.free();
+            slab = null;
+        }
+
         // Clear everything
         stations       = null;
         attachments    = null;
@@ -403,44 +511,47 @@ public class SystemCreate {
     //---------------------------------------------------------------------------
 
     /**
-     * This method locks the stopTransfer locks of all existing stations which ensures no events
-     * are currently being moved.
+     * This method makes a new picture of the arrangement of stations for the conductor
+     * threads to use. It must be called, while holding the station lock, after every
+     * change to the linked lists of stations or to a station's status.
      */
-    private void lockAllStationTransferLocks() {
-        for (StationLocal mainListStation : stations) {
-            // lock station in main linked list
-            mainListStation.getStopTransferLock().lock();
-            // if this station is the head of a parallel linked list, grab all their locks too
-            if (mainListStation.getConfig().getFlowMode() == EtConstants.stationParallel) {
-                // skip first element in parallel list as it is identical to mainListStation
-                StationLocal parallelListStation;
-                for (ListIterator iter = mainListStation.getParallelStations().listIterator(1); iter.hasNext();) {
-                    parallelListStation = (StationLocal) iter.next();
-                    parallelListStation.getStopTransferLock().lock();
-                }
-            }
-        }
+    private void publishTopology() {
+        topology = new StationTopology(stations, config.getStationsMax(), ++topologyEpoch);
     }
 
 
     /**
-     * This method unlocks the stopTransfer locks of all existing stations which means events
-     * are now allowed to be moved.
+     * This method waits until every conductor thread is done routing any batch of events
+     * it started with an arrangement of stations older than the given one. Events are
+     * never stopped from moving. The waiting thread sleeps until a conductor finishes
+     * a batch. Must be called without holding the station lock, so that the stations
+     * can be used while batches are finished.
+     *
+     * @param changed arrangement of stations published by the change waited on
      */
-    private void unlockAllStationTransferLocks() {
-        for (StationLocal mainListStation : stations) {
-            // unlock station in main linked list
-            mainListStation.getStopTransferLock().unlock();
-            // if this station is the head of a parallel linked list, release all their locks too
-            if (mainListStation.getConfig().getFlowMode() == EtConstants.stationParallel) {
-                // skip first element in parallel list as it is identical to mainListStation
-                StationLocal parallelListStation;
-                for (ListIterator iter = mainListStation.getParallelStations().listIterator(1); iter.hasNext();) {
-                    parallelListStation = (StationLocal) iter.next();
-                    parallelListStation.getStopTransferLock().unlock();
+    private void waitForConductors(StationTopology changed) {
+        long epoch = changed.getEpoch();
+        StationTopology routing;
+        Thread current = Thread.currentThread();
+
+        // wait in the queue before looking so no finished batch goes unnoticed
+        routingWaiters.add(current);
+        try {
+            for (int i=0; i < changed.getStationCount(); i++) {
+                for (StationLocal stat : changed.getGroup(i)) {
+                    while (true) {
+                        routing = stat.getRouting();
+                        if (routing == null || routing.getEpoch() >= epoch) {
+                            break;
+                        }
+                        LockSupport.park(this);
+                    }
                 }
             }
         }
+        finally {
+            routingWaiters.remove(current);
+        }
     }
 
 
@@ -568,9 +679,9 @@ public class SystemCreate {
 
     /**
      * Method for use by {@link #createStation(org.jlab.coda.et.EtStationConfig, String)}
-     * to grab all stations'
-     * transfer locks and stop all event transfer before adding a new station to
-     * the ET system's linked lists of stations.
+     * to add a new station to the ET system's linked lists of stations. Conductor threads
+     * start using the new arrangement of stations with their next batch of events, so
+     * event transfer never stops.
      *
      * @param newStation station to add
      * @param position the desired position in the main linked list of stations
@@ -582,42 +693,32 @@ public class SystemCreate {
      *     stations.
      */
    private void addStationToList(StationLocal newStation, int position, int parallelPosition) throws EtException {
-        lockAllStationTransferLocks();
-        try {
-            insertStation(newStation, position, parallelPosition);
-            // since we locked all stations' transfer locks, do so with the new one too
-            newStation.getStopTransferLock().lock();
-        }
-        finally {
-            unlockAllStationTransferLocks();
-        }
+        insertStation(newStation, position, parallelPosition);
+        publishTopology();
     }
 
 
     /**
-     * Method for use by {@link #removeStation(int)} to grab all stations'
-     * transfer locks and stop all event transfer before removing a station from
-     * the ET system's linked lists of stations.
+     * Method for use by {@link #removeStation(int)} to remove a station from
+     * the ET system's linked lists of stations. Event transfer never stops, but
+     * conductor threads may still be routing events to the station until they
+     * are done with the returned arrangement of stations.
      * 
      * @param station station to remove
+     * @return arrangement of stations without the station, to wait for with
+     *         {@link #waitForConductors(StationTopology)}
      */
-    private void removeStationFromList(StationLocal station) {
-        lockAllStationTransferLocks();
-        try {
-            deleteStation(station);
-            // since we will unlock all stations' transfer locks, do so with the new one too
-            station.getStopTransferLock().unlock();
-        }
-        finally {
-            unlockAllStationTransferLocks();
-        }
+    private StationTopology removeStationFromList(StationLocal station) {
+        deleteStation(station);
+        publishTopology();
+        return topology;
     }
 
 
     /**
-     * Method for use by {@link #removeStationFromList(StationLocal)} to grab all stations'
-     * transfer locks and stop all event transfer before moving a station in
-     * the ET system's linked lists of stations.
+     * Method for use by {@link #setStationPosition(int, int, int)} to move a station in
+     * the ET system's linked lists of stations. Conductor threads start using the new
+     * arrangement of stations with their next batch of events, so event transfer never stops.
      *
      * @param station station to move
      * @param position the desired position in the main linked list of stations
@@ -629,32 +730,32 @@ public class SystemCreate {
      *     stations.
      */
     private void moveStationInList(StationLocal station, int position, int parallelPosition) throws EtException {
-        lockAllStationTransferLocks();
         try {
             deleteStation(station);
             insertStation(station, position, parallelPosition);
         }
         finally {
-            unlockAllStationTransferLocks();
+            // publish even if the insert failed as the station was already deleted
+            publishTopology();
         }
     }
 
 
     /**
-     * Method for use by {@link #deleteStation(StationLocal)} and {@link #detach(AttachmentLocal)}
-     * to grab all stations' transfer locks and stop all event transfer before changing a station's status.
+     * Method for use by {@link #attach(int)} and {@link #detach(AttachmentLocal)}
+     * to change a station's status. Event transfer never stops, but when a station
+     * becomes idle, conductor threads may still be putting events into it until
+     * they are done with the returned arrangement of stations.
      *
      * @param station station to set status on
      * @param status the desired status of the station
+     * @return arrangement of stations with the new status, to wait for with
+     *         {@link #waitForConductors(StationTopology)}
      */
-    private void changeStationStatus(StationLocal station, int status) {
-        lockAllStationTransferLocks();
-        try {
-            station.setStatus(status);
-        }
-        finally {
-            unlockAllStationTransferLocks();
-        }
+    private StationTopology changeStationStatus(StationLocal station, int status) {
+        station.setStatus(status);
+        publishTopology();
+        return topology;
     }
 
     
@@ -752,6 +853,9 @@ public class SystemCreate {
             // find smallest possible unique id number
             search:
             for (int i = 0; i < stationCount + 1; i++) {
+                if (removingStationIds.contains(i)) {
+                    continue;
+                }
                 for (ListIterator j = stations.listIterator(); j.hasNext();) {
                     listStation = (StationLocal) j.next();
                     if (listStation.getStationId() == i) {
@@ -775,7 +879,7 @@ public class SystemCreate {
             station = new StationLocal(this, name, stationConfig, id);
 
             // start its conductor thread
-            station.start();
+            station.startConductor(conductorPool);
             // give up processor so thread can start
             Thread.yield();
 
@@ -792,7 +896,7 @@ public class SystemCreate {
                 }
             }
 
-            // put in linked list(s) - first grabbing stopTransfer mutexes
+            // put in linked list(s)
             addStationToList(station, position, parallelPosition);
             // keep track of the total number of stations
             stationCount++;
@@ -818,12 +922,16 @@ public class SystemCreate {
         }
         catch (EtException ex) {}
 
+        // GrandCentral is always active
+        station.setStatus(EtConstants.stationActive);
+
         // put in linked list
         stations.clear();
         stations.add(0, station);
+        publishTopology();
 
         // start its conductor thread
-        station.start();
+        station.startConductor(conductorPool);
 
         // keep track of the total number of stations
         stationCount++;
@@ -840,6 +948,7 @@ public class SystemCreate {
      */
     public void removeStation(int statId) throws EtException {
         StationLocal stat;
+        StationTopology changed;
         // grab station mutex
         synchronized(stationLock) {
             stat = stationIdToObject(statId);
@@ -848,9 +957,16 @@ public class SystemCreate {
                 throw new EtException("Remove all attachments before removing station");
             }
 
-            // remove from linked list - first grabbing stopTransfer mutexes
-            removeStationFromList(stat);
+            // remove from linked list
+            changed = removeStationFromList(stat);
+            removingStationIds.add(statId);
+        }
+
+        // Let conductors finish batches which may still go to the station,
+        // without keeping others from using the stations meanwhile.
+        waitForConductors(changed);
 
+        synchronized(stationLock) {
             // kill conductor thread
             stat.killConductor();
             stat.interrupt();
@@ -860,6 +976,7 @@ public class SystemCreate {
 
             // keep track of the total number of stations
             stationCount--;
+            removingStationIds.remove(statId);
             return;
         }
     }
@@ -883,7 +1000,7 @@ public class SystemCreate {
         // grab station mutex
         synchronized(stationLock) {
             stat = stationIdToObject(statId);
-            // change linked list - first grabbing stopTransfer mutexes
+            // change linked list
             moveStationInList(stat, position, parallelPosition);
         }
     }
@@ -1094,6 +1211,37 @@ public class SystemCreate {
      *     if no more attachments are allowed to ET system
      */
     public AttachmentLocal attach(int statId) throws EtException, EtTooManyException {
+        return attach(statId, WaitStrategy.BLOCK, EtConstants.defaultSpinTries);
+    }
+
+
+    /**
+     * Create an attachment to a station which waits for events in the given way.
+     * Spinning strategies trade a whole core for lower latency and are only
+     * sensible for attachments used in this JVM.
+     *
+     * @param statId       station id
+     * @param waitStrategy how the attachment waits for events
+     * @param spinTries    number of times to spin before yielding or parking
+     *                     (ignored by {@link WaitStrategy#BLOCK} and {@link WaitStrategy#SPIN})
+     * @return             an attachment object
+     * @throws EtException
+     *     if the station does not exist, or
+     *     if waitStrategy is null or spinTries is negative
+     * @throws EtTooManyException
+     *     if station does not exist, or
+     *     if no more attachments are allowed to the station, or
+     *     if no more attachments are allowed to ET system
+     */
+    public AttachmentLocal attach(int statId, WaitStrategy waitStrategy, int spinTries)
+            throws EtException, EtTooManyException {
+
+        if (waitStrategy == null) {
+            throw new EtException("waitStrategy arg is null");
+        }
+        else if (spinTries < 0) {
+            throw new EtException("spinTries arg is negative");
+        }
 
         AttachmentLocal att;
         synchronized (stationLock) {
@@ -1112,7 +1260,9 @@ public class SystemCreate {
                 }
 
                 // Server will overwrite id & host with true (remote) values
-                att = new AttachmentLocal();
+                // Attachments of fan-out stations share events with those of other
+                // stations, so they need their own array to keep track of them.
+                att = new AttachmentLocal(station.isFanOut() ? new int[config.getNumEvents()] : eventSlots);
                 String host = "unknown";
                 String ipAddress = "unknown";
                 try {
@@ -1123,6 +1273,8 @@ public class SystemCreate {
                 att.setHost(host);
                 att.setStation(station);
                 att.setIpAddress(ipAddress);
+                att.setWaitStrategy(waitStrategy);
+                att.setSpinTries(spinTries);
                 // find smallest possible unique id number
                 if (attachments.size() == 0) {
                     att.setId(0);
@@ -1146,7 +1298,7 @@ public class SystemCreate {
             // keep att stats in station too?
             station.getAttachments().add(att);
             // station.status = Constants.stationActive;
-            // change station status - first grabbing stopTransfer mutexes
+            // change station status
             changeStationStatus(station, EtConstants.stationActive);
 //System.out.println("attach att #" + att.id + " put into station's map & active");
         }
@@ -1156,61 +1308,102 @@ public class SystemCreate {
 
 
     /**
-     * Remove an attachment from a station.
+     * Remove an attachment from a station. If it's the last one, the station is made
+     * idle and this waits, without holding the station lock, until conductor threads
+     * can no longer put events into it before its events are flushed.
      *
      * @param att   attachment object
      */
     public void detach(AttachmentLocal att) {
 //System.out.println("detach: IN");
-        synchronized (stationLock) {
-            // if last attachment & not GrandCentral - mark station idle
-            if ((att.getStation().getAttachments().size() == 1) && (att.getStation().getStationId() != 0)) {
+        StationTopology changed = null;
+        while (true) {
+            if (changed != null) {
+                // Let conductors finish batches which may still go to the idle station,
+                // without keeping others from using the stations meanwhile.
+                waitForConductors(changed);
+            }
+            synchronized (stationLock) {
+                // if last attachment & not GrandCentral - mark station idle
+                if ((att.getStation().getAttachments().size() == 1) && (att.getStation().getStationId() != 0)) {
+                    // Mark it idle, then wait for the conductors. If another attachment
+                    // came and went while waiting, the station is active again so wait again.
+                    if (changed == null || att.getStation().getStatus() != EtConstants.stationIdle) {
 //System.out.println("detach: att #" + att.id + " and make idle");
-                // att.station.status = Constants.stationIdle;
-                // change station status - first grabbing stopTransfer mutexes
-                changeStationStatus(att.getStation(), EtConstants.stationIdle);
-                // give other threads a chance to finish putting events in
-                Thread.yield();
-                // flush any remaining events
-                if (att.getStation().getConfig().getRestoreMode() == EtConstants.stationRestoreRedist) {
-                    // send to output list of previous station
-                    try {
-                        int pos = getStationPosition(att.getStation().getStationId());
-                        if (--pos < 0) return;
-                        StationLocal prevStat = stations.get(pos);
+                        // att.station.status = Constants.stationIdle;
+                        // change station status
+                        changed = changeStationStatus(att.getStation(), EtConstants.stationIdle);
+                        continue;
+                    }
+                    // flush any remaining events
+                    if ((att.getStation().getConfig().getRestoreMode() == EtConstants.stationRestoreRedist) &&
+                        !att.getStation().isFanOut()) {
+                        // send to output list of previous station
                         try {
-                            moveEvents(prevStat.getOutputList(), Arrays.asList(getEvents(att, EtConstants.async,
-                                                                                         0, config.getNumEvents())));
+                            int pos = getStationPosition(att.getStation().getStationId());
+                            if (--pos < 0) return;
+                            StationLocal prevStat = stations.get(pos);
+                            try {
+                                moveEvents(att, prevStat.getOutputList(), Arrays.asList(getEvents(att, EtConstants.async,
+                                                                                             0, config.getNumEvents())));
+                            }
+                            catch (Exception e) {
+                            }
                         }
                         catch (Exception e) {
+                            e.printStackTrace();
+                            return;
                         }
                     }
-                    catch (Exception e) {
-                        e.printStackTrace();
-                        return;
-                    }
-                }
-                else {
-                    // send to output list
-                    try {
-                        putEvents(att, getEvents(att, EtConstants.async, 0, config.getNumEvents()));
+                    else {
+                        // send to output list
+                        try {
+                            putEvents(att, getEvents(att, EtConstants.async, 0, config.getNumEvents()));
+                        }
+                        catch (Exception ex) { }
                     }
-                    catch (Exception ex) { }
                 }
-            }
 //System.out.println("detach att #" + att.id + " remove from station map");
-            att.getStation().getAttachments().remove(att);
+                att.getStation().getAttachments().remove(att);
 
-            // restore events gotten but not put back into system
-            restoreEvents(att);
+                // restore events gotten but not put back into system
+                restoreEvents(att);
 
-            synchronized (systemLock) {
-                // get rid of attachment
+                synchronized (systemLock) {
+                    // get rid of attachment
 //System.out.println("detach att #" + att.id + " remove from system map");
-                attachments.remove(new Integer(att.getId()));
+                    attachments.remove(new Integer(att.getId()));
+                }
+                return;
+            }
+        }
+    }
+
+
+    /**
+     * Split events an attachment still has out into new events, which should be
+     * dumped, and used events, which go where directed by station configuration.
+     * Used events are listed most urgent first, by {@link Priority#getRank()},
+     * and those of the same priority in the order given.
+     *
+     * @param owned   events the attachment has out
+     * @param usedEvs list to which used events are added
+     * @param newEvs  list to which new events are added
+     */
+    static void splitOwnedEvents(EtEventImpl[] owned, List<EtEventImpl> usedEvs, List<EtEventImpl> newEvs) {
+        for (EtEventImpl ev : owned) {
+            if (ev.getAge().getValue() == EtConstants.eventNew) {
+                newEvs.add(ev);
+            }
+        }
+        for (int rank = Priority.values().length - 1; rank >= 0; rank--) {
+            for (EtEventImpl ev : owned) {
+                if (ev.getAge().getValue() != EtConstants.eventNew &&
+                    ev.getPriority().getRank() == rank) {
+                    usedEvs.add(ev);
+                }
             }
         }
-        return;
     }
 
 
@@ -1222,32 +1415,11 @@ public class SystemCreate {
      * @param att   attachment object
      */
     private void restoreEvents(AttachmentLocal att) {
-        // Split new events (which should be dumped) from used
-        // events which go where directed by station configuration.
-        ArrayList<EtEventImpl> usedEvs = new ArrayList<EtEventImpl>(config.getNumEvents());
-        ArrayList<EtEventImpl>  newEvs = new ArrayList<EtEventImpl>(config.getNumEvents());
-
-        // look at all events
-        for (EtEventImpl ev : events) {
-            // find those owned by this attachment
-            if (ev.getOwner() == att.getId()) {
-                if (ev.getAge().getValue() == EtConstants.eventNew) {
-//System.out.println("found new ev " + ev.id + " owned by attachment " + att.id);
-                    newEvs.add(ev);
-                }
-                else {
-                    // Put high priority events first.
-                    // Original order may get messed up here.
-//System.out.println("found used ev " + ev.id + " owned by attachment " + att.id);
-                    if (ev.getPriority() == Priority.HIGH) {
-                        usedEvs.add(0, ev);
-                    }
-                    else {
-                        usedEvs.add(ev);
-                    }
-                }
-            }
-        }
+        // Only the events this attachment still has out are looked at.
+        EtEventImpl[] owned = att.getOwnedEvents().toArray();
+        ArrayList<EtEventImpl> usedEvs = new ArrayList<EtEventImpl>(owned.length);
+        ArrayList<EtEventImpl>  newEvs = new ArrayList<EtEventImpl>(owned.length);
+        splitOwnedEvents(owned, usedEvs, newEvs);
 
         if (newEvs.size() > 0) {
 //System.out.println("dump " + newEvs.size() + " new events");
@@ -1256,8 +1428,13 @@ public class SystemCreate {
 
         if (usedEvs.size() > 0) {
 //System.out.println("restore " + usedEvs.size() + " used events");
+            // if events are shared by a fan-out group, the other stations
+            // still have them, so just let them go
+            if (att.getStation().isFanOut()) {
+                putEvents(att, usedEvs);
+            }
             // if normal events are to be returned to GrandCentral
-            if ((att.getStation().getConfig().getRestoreMode() == EtConstants.stationRestoreGC) ||
+            else if ((att.getStation().getConfig().getRestoreMode() == EtConstants.stationRestoreGC) ||
                     (att.getStation().getStationId() == 0)) {
 //System.out.println("restore used events to GC (dump)");
                 dumpEvents(att, usedEvs);
@@ -1279,7 +1456,7 @@ public class SystemCreate {
                 // Statistics don't get messed up here.
                 if (att.getStation().getConfig().getBlockMode() == EtConstants.stationBlocking) {
 //System.out.println("restore used events to input list of blocking station");
-                    moveEvents(att.getStation().getInputList(), usedEvs);
+                    moveEvents(att, att.getStation().getInputList(), usedEvs);
                 }
                 // Else if nonblocking there may not be enough room.
                 // Equivalent to putting events back into the station's inputList
@@ -1293,7 +1470,7 @@ public class SystemCreate {
                         int pos = getStationPosition(att.getStation().getStationId());
                         if (--pos < 0) return;
                         StationLocal prevStat = stations.get(pos);
-                        moveEvents(prevStat.getOutputList(), usedEvs);
+                        moveEvents(att, prevStat.getOutputList(), usedEvs);
                     }
                     catch (EtException e) { return; }
 //System.out.println("restore used events to input list of nonblocking station");
@@ -1311,7 +1488,7 @@ public class SystemCreate {
                     if (--pos < 0) return;
                     StationLocal prevStat = stations.get(pos);
 //System.out.println("Found previous station -> " + prevStat.name + ", putting " + usedEvs.size() + " number of events");
-                    moveEvents(prevStat.getOutputList(), usedEvs);
+                    moveEvents(att, prevStat.getOutputList(), usedEvs);
                 }
                 catch (Exception e) { return; }
 //System.out.println("DID restore used events to output list of previous station");
@@ -1360,24 +1537,147 @@ public class SystemCreate {
         EtEventImpl[] evs = gcStation.getInputList().get(att, mode, microSec, count);
 //System.out.println("newEvents: got events");
 
+        prepareNewEvents(att, evs, 0, evs.length, size);
+        return evs;
+    }
+
+
+    /**
+     * Get new or unused events from an ET system and place them into an array
+     * supplied by the caller. Nothing is allocated by this method, so reusing
+     * the same array generates no garbage.
+     *
+     * @param att       attachment object
+     * @param mode      if there are no events available, this parameter specifies
+     *                  whether to wait for some by sleeping, by waiting for a set
+     *                  time, or by returning immediately (asynchronous)
+     * @param microSec  the number of microseconds to wait if a timed wait is
+     *                  specified
+     * @param evs       array in which to place events
+     * @param offset    index into evs at which to place the first event
+     * @param count     the maximum number of events desired
+     * @param size      the size of events in bytes
+     *
+     * @return number of events placed into evs
+     *
+     * @throws EtException
+     *     if offset or count are out of bounds
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and the station's input list is empty
+     * @throws EtBusyException
+     *     if the mode is asynchronous and the station's input list is being used
+     *     (the mutex is locked)
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     *     {@link EventList#wakeUp(AttachmentLocal)}, {@link EventList#wakeUpAll}
+     */
+    public int newEvents(AttachmentLocal att, int mode, int microSec,
+                         EtEventImpl[] evs, int offset, int count, int size)
+            throws EtException, EtEmptyException, EtBusyException, EtTimeoutException, EtWakeUpException {
+
+        if (offset < 0 || count < 0 || offset + count > evs.length) {
+            throw new EtException("Bad offset or count argument(s)");
+        }
+
+        // get events from GrandCentral Station's output list
+        int num = gcStation.getInputList().get(att, mode, microSec, evs, offset, count);
+
+        prepareNewEvents(att, evs, offset, num, size);
+        return num;
+    }
+
+
+    /**
+     * Get new or unused events of a given group from an ET system and place them
+     * into an array supplied by the caller. Nothing is allocated by this method,
+     * so reusing the same array generates no garbage.
+     *
+     * @param att       attachment object
+     * @param mode      if there are no events available, this parameter specifies
+     *                  whether to wait for some by sleeping, by waiting for a set
+     *                  time, or by returning immediately (asynchronous)
+     * @param microSec  the number of microseconds to wait if a timed wait is
+     *                  specified
+     * @param evs       array in which to place events
+     * @param offset    index into evs at which to place the first event
+     * @param count     the maximum number of events desired
+     * @param size      the size of events in bytes
+     * @param group     the group number of events
+     *
+     * @return number of events placed into evs
+     *
+     * @throws EtException
+     *     if the group number is not meaningful, or
+     *     if offset or count are out of bounds
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and the station's input list is empty
+     * @throws EtBusyException
+     *     if the mode is asynchronous and the station's input list is being used
+     *     (the mutex is locked)
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     *     {@link EventList#wakeUp(AttachmentLocal)}, {@link EventList#wakeUpAll}
+     */
+    public int newEvents(AttachmentLocal att, int mode, int microSec,
+                         EtEventImpl[] evs, int offset, int count, int size, int group)
+            throws EtException, EtEmptyException, EtBusyException, EtTimeoutException, EtWakeUpException {
+
+        // check to see if value of group is meaningful
+        if (group > config.getGroups().length) {
+            throw new EtException("group number is too high");
+        }
+        else if (group < 1) {
+            throw new EtException("group number is too low");
+        }
+
+        if (offset < 0 || count < 0 || offset + count > evs.length) {
+            throw new EtException("Bad offset or count argument(s)");
+        }
+
+        // get events from GrandCentral Station's output list
+        int num = gcStation.getInputList().get(att, mode, microSec, evs, offset, count, group);
+
+        prepareNewEvents(att, evs, offset, num, size);
+        return num;
+    }
+
+
+    /**
+     * Initialize events just taken from GRAND_CENTRAL station so they're ready
+     * for an attachment to fill, and keep track of the number made.
+     *
+     * @param att     attachment object
+     * @param evs     array of new events
+     * @param offset  index into evs of the first new event
+     * @param num     number of new events
+     * @param size    the size of events in bytes
+     */
+    private void prepareNewEvents(AttachmentLocal att, EtEventImpl[] evs, int offset, int num, int size) {
+        EtEventImpl ev;
+
         // for each event ...
-        for (EtEventImpl ev : evs) {
+        for (int i = offset; i < offset + num; i++) {
+            ev = evs[i];
             // initialize fields
             ev.init();
             // registered as owned by this attachment
             ev.setOwner(att.getId());
-            // if size is too small make it larger
+            // if size is too small, borrow a larger buffer
             if (ev.getMemSize() < size) {
-                ev.setData(new byte[size]);
-                ev.setMemSize(size);
+                bufferPool.lend(ev, size);
             }
 //System.out.println("newEvents: ev.id = "+ ev.getId() + ", size = " + ev.getMemSize());
         }
 
+        att.getOwnedEvents().add(evs, offset, num);
+
         // keep track of # of events made by this attachment
-        att.setEventsMake(att.getEventsMake() + evs.length);
+        att.setEventsMake(att.getEventsMake() + num);
 //System.out.println("newEvents: att.eventsMake = "+ att.eventsMake);
-        return evs;
     }
 
 
@@ -1419,6 +1719,9 @@ public class SystemCreate {
         if (group > config.getGroups().length) {
             throw new EtException("group number is too high");
         }
+        else if (group < 1) {
+            throw new EtException("group number is too low");
+        }
 
         // get events from GrandCentral Station's output list
         List<EtEventImpl> evs = gcStation.getInputList().get(att, mode, microSec, count, group);
@@ -1430,14 +1733,15 @@ public class SystemCreate {
             ev.init();
             // registered as owned by this attachment
             ev.setOwner(att.getId());
-            // if size is too small make it larger
+            // if size is too small, borrow a larger buffer
             if (ev.getMemSize() < size) {
-                ev.setData(new byte[size]);
-                ev.setMemSize(size);
+                bufferPool.lend(ev, size);
             }
 //System.out.println("newEvents: ev.id = "+ ev.getId() + ", size = " + ev.getMemSize() + ", group = " + ev.getGroup());
         }
 
+        att.getOwnedEvents().add(evs);
+
         // keep track of # of events made by this attachment
         att.setEventsMake(att.getEventsMake() + evs.size());
 //System.out.println("newEvents: att.eventsMake = "+ att.eventsMake);
@@ -1479,30 +1783,10 @@ public class SystemCreate {
         int size = container.getSize();
         int group = container.getGroup();
 
-        // check to see if value of group is meaningful
-        if (group > config.getGroups().length) {
-            throw new EtException("group number is too high");
-        }
-
-        // get events from GrandCentral Station's output list
-        List<EtEventImpl> evs = gcStation.getInputList().get(att, mode, microSec, count, group);
-
-        // for each event ...
-        for (EtEventImpl ev : evs) {
-            // initialize fields
-            ev.init();
-            // registered as owned by this attachment
-            ev.setOwner(att.getId());
-            // if size is too small make it larger
-            if (ev.getMemSize() < size) {
-                ev.setData(new byte[size]);
-                ev.setMemSize(size);
-            }
-        }
-
-        // keep track of # of events made by this attachment
-        att.setEventsMake(att.getEventsMake() + evs.size());
-        container.holdLocalEvents(evs);
+        // events go directly into the container's reusable array
+        EtEventImpl[] evs = container.getLocalEventStorage(count);
+        int num = newEvents(att, mode, microSec, evs, 0, count, size, group);
+        container.setLocalEventCount(num);
     }
 
 
@@ -1533,12 +1817,21 @@ public class SystemCreate {
     public EtEventImpl[] getEvents(AttachmentLocal att, int mode, int microSec, int count)
             throws EtEmptyException, EtBusyException, EtTimeoutException, EtWakeUpException {
 
-        EtEventImpl[] evs = att.getStation().getInputList().get(att, mode, microSec, count);
+        EtEventImpl[] evs;
+        if (att.isStealing()) {
+            evs = new EtEventImpl[Math.max(0, Math.min(count, config.getNumEvents()))];
+            int num = getOrStealEvents(att, mode, microSec, evs, 0, evs.length);
+            if (num < evs.length) evs = Arrays.copyOf(evs, num);
+        }
+        else {
+            evs = att.getStation().getInputList().get(att, mode, microSec, count);
+        }
 
         // each event is registered as owned by this attachment
         for (EtEventImpl ev : evs) {
             ev.setOwner(att.getId());
         }
+        att.getOwnedEvents().add(evs, 0, evs.length);
 
         // keep track of # of events gotten by this attachment
         att.setEventsGet(att.getEventsGet() + evs.length);
@@ -1547,6 +1840,213 @@ public class SystemCreate {
     }
 
 
+    /**
+     * Get events for an attachment which steals. Events are taken from its own
+     * station's input list if there are any. If not, and its station is one of a group
+     * of parallel stations, events are taken from the input list of the active sibling
+     * holding the most events. While waiting in its own list, the attachment is
+     * signaled both when events arrive there and when a conductor puts events
+     * into a sibling.
+     *
+     * @param att      attachment object
+     * @param mode     wait mode
+     * @param microSec the number of microseconds to wait if a timed wait is specified
+     * @param evs      array in which to place events
+     * @param offset   index into evs at which to place the first event
+     * @param count    the maximum number of events desired
+     *
+     * @return number of events placed into evs
+     *
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and no events are available
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup
+     */
+    private int getOrStealEvents(AttachmentLocal att, int mode, int microSec,
+                                 EtEventImpl[] evs, int offset, int count)
+            throws EtEmptyException, EtTimeoutException, EtWakeUpException {
+
+        StationLocal station = att.getStation();
+        EventList inList = station.getInputList();
+        WaiterQueue queue = inList.getWaiterQueue(0);
+        EventWaiter waiter = null;
+        long deadline = EventList.getDeadline(mode, microSec);
+
+        try {
+            while (true) {
+                synchronized (inList) {
+                    if (waiter != null) {
+                        inList.unqueueWaiter(att, waiter, queue);
+                    }
+                    if (inList.getCount() > 0) {
+                        return inList.take(evs, offset, count);
+                    }
+                }
+
+                int num = stealEvents(station, evs, offset, count);
+                if (num > 0) {
+                    return num;
+                }
+
+                synchronized (inList) {
+                    if (inList.getCount() > 0) {
+                        continue;
+                    }
+                    // from now on events put into a sibling signal this waiter
+                    waiter = inList.queueWaiter(att, mode, deadline, waiter, queue, false);
+                }
+
+                // so look once more at the siblings before waiting
+                if (getFullestSibling(station) == null) {
+                    inList.parkWaiter(att, waiter, mode, deadline);
+                }
+            }
+        }
+        finally {
+            if (waiter != null) waiter.release();
+        }
+    }
+
+
+    /**
+     * Get the input list in which an attachment waits for events when getting events,
+     * or when getting new events. Used by threads which cannot block to wait without
+     * blocking, see {@link EventList#queueContinuation(AttachmentLocal, int)}.
+     *
+     * @param att       attachment object
+     * @param newEvents true if getting new events, false if getting events
+     * @return input list the attachment waits in
+     */
+    EventList getWaitList(AttachmentLocal att, boolean newEvents) {
+        if (newEvents) {
+            return gcStation.getInputList();
+        }
+        return att.getStation().getInputList();
+    }
+
+
+    /**
+     * Take events from the input list of the active sibling parallel station
+     * holding the most events.
+     *
+     * @param station station whose siblings are stolen from
+     * @param evs     array in which to place events
+     * @param offset  index into evs at which to place the first event
+     * @param count   the maximum number of events desired
+     *
+     * @return number of events placed into evs (0 if none taken)
+     */
+    private int stealEvents(StationLocal station, EtEventImpl[] evs, int offset, int count) {
+        EventList fullest = getFullestSibling(station);
+        if (fullest == null) {
+            return 0;
+        }
+        return fullest.steal(evs, offset, count);
+    }
+
+
+    /**
+     * Find the input list of the active sibling parallel station holding the most
+     * events. Groups in which events are partitioned by key or fanned out are never
+     * stolen from.
+     *
+     * @param station station whose siblings are looked at
+     * @return input list of the sibling holding the most events,
+     *         or null if there is nothing to steal
+     */
+    EventList getFullestSibling(StationLocal station) {
+        if ((station.getConfig().getSelectMode() == EtConstants.stationSelectPartition) ||
+            station.isFanOut()) {
+            return null;
+        }
+
+        StationTopology top = topology;
+        int position = top.getPosition(station);
+        if (position < 0) {
+            return null;
+        }
+
+        StationLocal[] group = top.getActiveGroup(position);
+        if (group.length < 2) {
+            return null;
+        }
+
+        // counts are only looked at without locking, so they may be a bit out of date
+        EventList fullest = null;
+        int most = 0;
+        for (StationLocal sibling : group) {
+            if (sibling == station) continue;
+            int siblingCount = sibling.getInputList().getCount();
+            if (siblingCount > most) {
+                most = siblingCount;
+                fullest = sibling.getInputList();
+            }
+        }
+        return fullest;
+    }
+
+
+    /**
+     * Get events from an ET system and place them into an array supplied by
+     * the caller. Nothing is allocated by this method, so reusing the same
+     * array generates no garbage.
+     *
+     * @param att      attachment object
+     * @param mode     if there are no events available, this parameter specifies
+     *                 whether to wait for some by sleeping, by waiting for a set
+     *                 time, or by returning immediately (asynchronous)
+     * @param microSec the number of microseconds to wait if a timed wait is
+     *                 specified
+     * @param evs      array in which to place events
+     * @param offset   index into evs at which to place the first event
+     * @param count    the maximum number of events desired
+     *
+     * @return number of events placed into evs
+     *
+     * @throws EtException
+     *     if offset or count are out of bounds
+     * @throws EtEmptyException
+     *     if the mode is asynchronous and the station's input list is empty
+     * @throws EtBusyException
+     *     if the mode is asynchronous and the station's input list is being used
+     *     (the mutex is locked)
+     * @throws EtTimeoutException
+     *     if the mode is timed wait and the time has expired
+     * @throws EtWakeUpException
+     *     if the attachment has been commanded to wakeup,
+     *     {@link EventList#wakeUp(AttachmentLocal)}, {@link EventList#wakeUpAll}
+     */
+    public int getEvents(AttachmentLocal att, int mode, int microSec,
+                         EtEventImpl[] evs, int offset, int count)
+            throws EtException, EtEmptyException, EtBusyException, EtTimeoutException, EtWakeUpException {
+
+        if (offset < 0 || count < 0 || offset + count > evs.length) {
+            throw new EtException("Bad offset or count argument(s)");
+        }
+
+        int num;
+        if (att.isStealing()) {
+            num = getOrStealEvents(att, mode, microSec, evs, offset, count);
+        }
+        else {
+            num = att.getStation().getInputList().get(att, mode, microSec, evs, offset, count);
+        }
+
+        // each event is registered as owned by this attachment
+        for (int i = offset; i < offset + num; i++) {
+            evs[i].setOwner(att.getId());
+        }
+        att.getOwnedEvents().add(evs, offset, num);
+
+        // keep track of # of events gotten by this attachment
+        att.setEventsGet(att.getEventsGet() + num);
+
+        return num;
+    }
+
+
     /**
      * Get events from an ET system.
      *
@@ -1578,16 +2078,10 @@ public class SystemCreate {
         int microSec = container.getMicroSec();
         int count = container.getCount();
 
-        EtEventImpl[] evs = att.getStation().getInputList().get(att, mode, microSec, count);
-
-        // each event is registered as owned by this attachment
-        for (EtEventImpl ev : evs) {
-            ev.setOwner(att.getId());
-        }
-
-        // keep track of # of events gotten by this attachment
-        att.setEventsGet(att.getEventsGet() + evs.length);
-        container.holdLocalEvents(evs);
+        // events go directly into the container's reusable array
+        EtEventImpl[] evs = container.getLocalEventStorage(count);
+        int num = getEvents(att, mode, microSec, evs, 0, count);
+        container.setLocalEventCount(num);
     }
 
 
@@ -1596,15 +2090,17 @@ public class SystemCreate {
      * Used when moving events stranded at a station due to
      * the last attachment having crashed. Does not change statistics.
      *
+     * @param att         attachment object which had the events
      * @param list        station's input or output list into which events are placed
      * @param eventList   list of event objects
      */
-    private void moveEvents(EventList list, List<EtEventImpl> eventList) {
+    private void moveEvents(AttachmentLocal att, EventList list, List<EtEventImpl> eventList) {
         // mark events as used and as owned by system
         for (EtEventImpl ev : eventList) {
             ev.setAge(Age.USED);
             ev.setOwner(EtConstants.system);
         }
+        att.getOwnedEvents().remove(eventList);
 
         list.putReverse(eventList);
 
@@ -1619,20 +2115,91 @@ public class SystemCreate {
      * @param eventArray   array of event objects
      */
    public void putEvents(AttachmentLocal att, EtEventImpl[] eventArray) {
-        if (eventArray.length < 1) return;
+        putEventArray(att, eventArray, 0, eventArray.length);
+    }
+
+
+    /**
+     * Put part of an array of events into an ET system.
+     *
+     * @param att          attachment object
+     * @param eventArray   array of event objects
+     * @param offset       index into eventArray of the first event to put
+     * @param length       number of events to put
+     *
+     * @throws EtException
+     *     if offset or length are out of bounds
+     */
+    public void putEvents(AttachmentLocal att, EtEventImpl[] eventArray, int offset, int length)
+            throws EtException {
+
+        if (offset < 0 || length < 0 || offset + length > eventArray.length) {
+            throw new EtException("Bad offset or length argument(s)");
+        }
+        putEventArray(att, eventArray, offset, length);
+    }
+
+
+    /**
+     * Put part of an array of events into an ET system.
+     *
+     * @param att          attachment object
+     * @param eventArray   array of event objects
+     * @param offset       index into eventArray of the first event to put
+     * @param length       number of events to put
+     */
+    private void putEventArray(AttachmentLocal att, EtEventImpl[] eventArray, int offset, int length) {
+        if (length < 1) return;
+
+        if (att.getStation().isFanOut()) {
+            att.getOwnedEvents().remove(eventArray, offset, length);
+            putSharedEvents(att.getStation().getOutputList(), eventArray, offset, length);
+            att.setEventsPut(att.getEventsPut() + length);
+            return;
+        }
 
         // mark events as used and as owned by system
-        for (EtEventImpl ev : eventArray) {
+        for (int i = offset; i < offset + length; i++) {
 //System.out.println("putEvents: set age & owner of event " + i);
-            ev.setAge(Age.USED);
-            ev.setOwner(EtConstants.system);
+            eventArray[i].setAge(Age.USED);
+            eventArray[i].setOwner(EtConstants.system);
         }
+        att.getOwnedEvents().remove(eventArray, offset, length);
 
-        att.getStation().getOutputList().put(eventArray);
+        att.getStation().getOutputList().put(eventArray, offset, length);
         // keep track of # of events put by this attachment
-        att.setEventsPut(att.getEventsPut() + eventArray.length);
+        att.setEventsPut(att.getEventsPut() + length);
+    }
 
-        return;
+
+    /**
+     * Put events of a fan-out station into its output list. An event shared with
+     * other stations of the group only goes into the list if this is the last
+     * of them to put it back, otherwise it's simply let go of.
+     *
+     * @param list         station's output list
+     * @param eventArray   array of event objects
+     * @param offset       index into eventArray of the first event to put
+     * @param length       number of events to put
+     */
+    private void putSharedEvents(EventList list, EtEventImpl[] eventArray, int offset, int length) {
+        // put each run of events this station is last to let go of
+        int start = offset;
+        for (int i = offset; i < offset + length; i++) {
+            EtEventImpl ev = eventArray[i];
+            if (ev.releaseReader()) {
+                ev.setAge(Age.USED);
+                ev.setOwner(EtConstants.system);
+                continue;
+            }
+            if (i > start) {
+                list.put(eventArray, start, i - start);
+            }
+            start = i + 1;
+        }
+        if (offset + length > start) {
+            list.put(eventArray, start, offset + length - start);
+        }
     }
 
 
@@ -1647,19 +2214,8 @@ public class SystemCreate {
            throw new EtException("arg null or not setup for putEvents");
        }
 
-       AttachmentLocal att = container.getAttLocal();
-       EtEventImpl[] eventArray = container.getHoldEvents();
-
-       // mark events as used and as owned by system
-       for (EtEventImpl ev : eventArray) {
-//System.out.println("putEvents: set age & owner of event " + i);
-           ev.setAge(Age.USED);
-           ev.setOwner(EtConstants.system);
-       }
-
-       att.getStation().getOutputList().put(eventArray);
-       // keep track of # of events put by this attachment
-       att.setEventsPut(att.getEventsPut() + eventArray.length);
+       putEventArray(container.getAttLocal(), container.getHoldEvents(),
+                     container.getOffset(), container.getLength());
    }
 
 
@@ -1679,11 +2235,28 @@ public class SystemCreate {
             ev.setAge(Age.USED);
             ev.setOwner(EtConstants.system);
         }
+        att.getOwnedEvents().remove(eventList);
 
-        att.getStation().getOutputList().put(eventList);
         // keep track of # of events put by this attachment
         att.setEventsPut(att.getEventsPut() + eventList.size());
 
+        // events still shared with other stations of a fan-out group are only let go of
+        if (att.getStation().isFanOut()) {
+            int kept = 0, size = eventList.size();
+            for (int i = 0; i < size; i++) {
+                EtEventImpl ev = eventList.get(i);
+                if (ev.releaseReader()) {
+                    eventList.set(kept++, ev);
+                }
+            }
+            while (eventList.size() > kept) {
+                eventList.remove(eventList.size() - 1);
+            }
+            if (kept < 1) return;
+        }
+
+        att.getStation().getOutputList().put(eventList);
+
         return;
     }
 
@@ -1700,44 +2273,97 @@ public class SystemCreate {
             throw new EtException("arg null or not setup for dumpEvents");
         }
 
-        AttachmentLocal att = container.getAttLocal();
-        EtEventImpl[] eventArray = container.getHoldEvents();
+        dumpEventArray(container.getAttLocal(), container.getHoldEvents(),
+                       container.getOffset(), container.getLength());
+    }
 
-        // mark as owned by system
-        for (EtEventImpl ev : eventArray) {
-            ev.setOwner(EtConstants.system);
+
+    /**
+     * Dispose of unwanted events in an ET system. The events are recycled and not
+     * made available to any other user.
+     *
+     * @param att          attachment object
+     * @param eventArray   array of event objects
+     */
+    public void dumpEvents(AttachmentLocal att, EtEventImpl[] eventArray) {
+        dumpEventArray(att, eventArray, 0, eventArray.length);
+    }
+
+
+    /**
+     * Dispose of part of an array of unwanted events in an ET system. The events
+     * are recycled and not made available to any other user.
+     *
+     * @param att          attachment object
+     * @param eventArray   array of event objects
+     * @param offset       index into eventArray of the first event to dump
+     * @param length       number of events to dump
+     *
+     * @throws EtException
+     *     if offset or length are out of bounds
+     */
+    public void dumpEvents(AttachmentLocal att, EtEventImpl[] eventArray, int offset, int length)
+            throws EtException {
+
+        if (offset < 0 || length < 0 || offset + length > eventArray.length) {
+            throw new EtException("Bad offset or length argument(s)");
         }
+        dumpEventArray(att, eventArray, offset, length);
+    }
 
-        // put into GrandCentral Station
-        gcStation.getInputList().putInGC(eventArray);
 
-        // keep track of # of events put by this attachment
-        att.setEventsDump(att.getEventsDump() + eventArray.length);
+    /**
+     * Dispose of part of an array of unwanted events in an ET system.
+     *
+     * @param att          attachment object
+     * @param eventArray   array of event objects
+     * @param offset       index into eventArray of the first event to dump
+     * @param length       number of events to dump
+     */
+    private void dumpEventArray(AttachmentLocal att, EtEventImpl[] eventArray, int offset, int length) {
+        if (length < 1) return;
+
+        // Events shared by a fan-out group are only read, never dumped,
+        // so they are put instead and move on once all stations are done.
+        if (att.getStation().isFanOut()) {
+            int start = offset;
+            for (int i = offset; i < offset + length; i++) {
+                if (eventArray[i].getReaders() < 1) continue;
+                dumpUnsharedEvents(att, eventArray, start, i - start);
+                putEventArray(att, eventArray, i, 1);
+                start = i + 1;
+            }
+            dumpUnsharedEvents(att, eventArray, start, offset + length - start);
+            return;
+        }
+
+        dumpUnsharedEvents(att, eventArray, offset, length);
     }
 
 
     /**
-     * Dispose of unwanted events in an ET system. The events are recycled and not
-     * made available to any other user.
+     * Dispose of part of an array of unwanted events, none of which are shared
+     * by a fan-out group, in an ET system.
      *
      * @param att          attachment object
      * @param eventArray   array of event objects
+     * @param offset       index into eventArray of the first event to dump
+     * @param length       number of events to dump
      */
-    public void dumpEvents(AttachmentLocal att, EtEventImpl[] eventArray) {
-        if (eventArray.length < 1) return;
+    private void dumpUnsharedEvents(AttachmentLocal att, EtEventImpl[] eventArray, int offset, int length) {
+        if (length < 1) return;
 
         // mark as owned by system
-        for (EtEventImpl ev : eventArray) {
-            ev.setOwner(EtConstants.system);
+        for (int i = offset; i < offset + length; i++) {
+            eventArray[i].setOwner(EtConstants.system);
         }
+        att.getOwnedEvents().remove(eventArray, offset, length);
 
         // put into GrandCentral Station
-        gcStation.getInputList().putInGC(eventArray);
+        gcStation.getInputList().putInGC(eventArray, offset, length);
 
         // keep track of # of events put by this attachment
-        att.setEventsDump(att.getEventsDump() + eventArray.length);
-
-        return;
+        att.setEventsDump(att.getEventsDump() + length);
     }
 
 
@@ -1754,6 +2380,7 @@ public class SystemCreate {
         for (EtEventImpl ev : eventList) {
             ev.setOwner(EtConstants.system);
         }
+        att.getOwnedEvents().remove(eventList);
         gcStation.getInputList().putInGC(eventList);
         att.setEventsDump(att.getEventsDump() + eventList.size());
         return;
@@ -1822,6 +2449,139 @@ public class SystemCreate {
     }
 
 
+    /**
+     * Gather the ET system data which only Java ET systems have and send it over
+     * the network. This is kept apart from {@link #gatherSystemData()} since that
+     * data's format is shared with C ET systems and their monitors. First an int
+     * of ok or error is written. If ok, it is followed by an int holding the size
+     * of the data in bytes, and then the data itself. Only 1 thread at a time may
+     * call this.<p>
+     *
+     * The data is a series of sections. Readers must skip any bytes following
+     * the sections they understand so that new sections may be added later.
+     * Currently the sections are:
+     * <ol>
+     * <li>number of attachments, then for each attachment its id, wait
+     *     strategy value, and spin tries
+     * <li>buffer pool hits, misses, bytes lent out, and bytes idle (longs)
+     * <li>number of stations with an estimated drain rate, then for each station
+     *     its id and rate in events/sec (double)
+     * <li>number of stations whose conductor has passed on events, then for each
+     *     station its id, average batch size (double), average hand-off latency in
+     *     microseconds (double), and current batch limit
+     * </ol>
+     *
+     * @param out output stream to write data to
+     * @throws IOException if error writing data
+     */
+    void writeJavaData(DataOutputStream out) throws IOException {
+        synchronized (javaInfoLock) {
+            int dataLen;
+            try {
+                // Use of HashMap is not mutex protected here so it may fail.
+                int numAtts = attachments.size();
+                StationTopology top = topology;
+                int numStats = 0;
+                for (int i=0; i < top.getStationCount(); i++) {
+                    numStats += top.getGroup(i).length;
+                }
+                int size = 8 + 12*numAtts + 32 + 4 + 12*numStats + 4 + 24*numStats;
+                if (size > javaInfoArray.length) {
+                    javaInfoArray = new byte[size];
+                }
+                dataLen = writeJavaAttachmentData(javaInfoArray, 4, numAtts);
+
+                // buffer pool counters
+                int off = 4 + dataLen;
+                EtUtils.longToBytes(bufferPool.getHits(),             javaInfoArray, off);
+                EtUtils.longToBytes(bufferPool.getMisses(),           javaInfoArray, off+8);
+                EtUtils.longToBytes(bufferPool.getBytesOutstanding(), javaInfoArray, off+16);
+                EtUtils.longToBytes(bufferPool.getIdleBytes(),        javaInfoArray, off+24);
+                dataLen += 32;
+
+                // estimated drain rates of stations
+                off = 4 + dataLen;
+                int statCount = 0;
+                for (int i=0; i < top.getStationCount(); i++) {
+                    for (StationLocal stat : top.getGroup(i)) {
+                        double rate = stat.getDrainRate();
+                        if (rate < 0. || statCount >= numStats) continue;
+                        EtUtils.intToBytes(stat.getStationId(), javaInfoArray, off + 4 + 12*statCount);
+                        EtUtils.longToBytes(Double.doubleToLongBits(rate), javaInfoArray, off + 8 + 12*statCount);
+                        statCount++;
+                    }
+                }
+                EtUtils.intToBytes(statCount, javaInfoArray, off);
+                dataLen += 4 + 12*statCount;
+
+                // batches passed on by stations' conductors
+                off = 4 + dataLen;
+                statCount = 0;
+                for (int i=0; i < top.getStationCount(); i++) {
+                    for (StationLocal stat : top.getGroup(i)) {
+                        double batchSize = stat.getBatchSize();
+                        if (batchSize < 0. || statCount >= numStats) continue;
+                        int statOff = off + 4 + 24*statCount;
+                        EtUtils.intToBytes(stat.getStationId(), javaInfoArray, statOff);
+                        EtUtils.longToBytes(Double.doubleToLongBits(batchSize), javaInfoArray, statOff + 4);
+                        EtUtils.longToBytes(Double.doubleToLongBits(stat.getHandOffLatency()/1000.),
+                                            javaInfoArray, statOff + 12);
+                        EtUtils.intToBytes(stat.getBatchLimit(), javaInfoArray, statOff + 20);
+                        statCount++;
+                    }
+                }
+                EtUtils.intToBytes(statCount, javaInfoArray, off);
+                dataLen += 4 + 24*statCount;
+
+                EtUtils.intToBytes(dataLen, javaInfoArray, 0);
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+                out.writeInt(EtConstants.error);
+                out.flush();
+                return;
+            }
+
+            out.writeInt(EtConstants.ok);
+            out.write(javaInfoArray, 0, dataLen + 4);
+            out.flush();
+        }
+    }
+
+
+    /**
+     * Get attachment data only Java ET systems have, for sending over the network.
+     *
+     * @param info     byte array to hold attachment data
+     * @param offset   offset into byte array
+     * @param attsMax  maximum number of attachments to write
+     * @return size of the data in bytes placed into the byte array
+     */
+    private int writeJavaAttachmentData(byte[] info, int offset, int attsMax) {
+        int off = offset + 4;
+        int attCount = 0;
+
+        if (attsMax > 0) {
+            for (AttachmentLocal att : attachments.values()) {
+                EtUtils.intToBytes(att.getId(), info, off);
+                EtUtils.intToBytes(att.getWaitStrategy().getValue(), info, off+4);
+                EtUtils.intToBytes(att.getSpinTries(), info, off+8);
+                off += 12;
+
+                // if more attachments now than space allowed for, skip rest
+                if (++attCount >= attsMax) {
+                    break;
+                }
+            }
+        }
+
+        // # of attachments
+        EtUtils.intToBytes(attCount, info, offset);
+
+        return off - offset;
+    }
+
+
     /**
      * Get ET system data for sending over the network.
      *
@@ -1989,11 +2749,11 @@ public class SystemCreate {
             numAtts = counter;
 
             EtUtils.intToBytes(EtConstants.mutexUnlocked,                 info, off += 4);
-            EtUtils.intToBytes(stat.getInputList().getEvents().size(),  info, off += 4);
+            EtUtils.intToBytes(stat.getInputList().getCount(),  info, off += 4);
             EtUtils.longToBytes(stat.getInputList().getEventsTry(),     info, off += 4);
             EtUtils.longToBytes(stat.getInputList().getEventsIn(),      info, off += 8);
             EtUtils.intToBytes(EtConstants.mutexUnlocked,                 info, off += 8);
-            EtUtils.intToBytes(stat.getOutputList().getEvents().size(), info, off += 4);
+            EtUtils.intToBytes(stat.getOutputList().getCount(), info, off += 4);
             EtUtils.longToBytes(stat.getOutputList().getEventsOut(),    info, off += 4);
 
             if (stat.getConfig().getFlowMode() == EtConstants.stationParallel && isHead) {
@@ -2148,13 +2908,7 @@ public class SystemCreate {
             EtUtils.intToBytes((att.isWakeUp()? EtConstants.attQuit : EtConstants.attContinue), info, off+=4);
 
             // find out how many events the attachment owns
-            eventsOwned = 0;
-
-            for (EtEvent ev : events) {
-                if (ev.getOwner() == att.getId()) {
-                    eventsOwned++;
-                }
-            }
+            eventsOwned = att.getOwnedEvents().size();
             EtUtils.intToBytes(eventsOwned, info, off+=4);
 
             EtUtils.longToBytes(att.getEventsPut(),  info, off+=4);
@@ -16,23 +16,24 @@ package org.jlab.coda.et.system;
 
 import java.lang.*;
 import java.util.*;
-import java.util.Map.*;
 import java.io.*;
 import java.net.*;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
 import java.nio.channels.ServerSocketChannel;
 import java.nio.channels.SocketChannel;
 import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.jlab.coda.et.exception.*;
 import org.jlab.coda.et.*;
 import org.jlab.coda.et.enums.Modify;
-import org.jlab.coda.et.enums.Priority;
-import org.jlab.coda.et.enums.DataStatus;
 
 /**
  * This class implements a thread which listens for users trying to connect to
  * the ET system. It starts another thread for each tcp socket connection
- * established to a user of the system.
+ * established to a user of the system or, if so configured, hands the connection
+ * to one of a few selector threads serving all connections.
  *
  * @author Carl Timmer
  */
@@ -51,6 +52,12 @@ class SystemTcpServer extends Thread {
     /** Thread group used to interrupt/stop all this object's generated threads. */
     private ThreadGroup tGroup;
 
+    /** Selector threads serving connections, null if each connection has its own thread. */
+    private ConnectionSelector[] selectors;
+
+    /** Used to name threads and to hand connections to selector threads in turn. */
+    private int counter;
+
 
     /** Createes a new SystemTcpServer object.
      *  @param sys ET system object */
@@ -94,6 +101,14 @@ class SystemTcpServer extends Thread {
             }
             serverChannel.socket().bind(new InetSocketAddress(port));
 
+            if (config.getServerSelectors() > 0) {
+                selectors = new ConnectionSelector[config.getServerSelectors()];
+                for (int i=0; i < selectors.length; i++) {
+                    selectors[i] = new ConnectionSelector(sys, tGroup, i);
+                    selectors[i].start();
+                }
+            }
+
             while (true) {
                 // socket to client created
                 SocketChannel channel;
@@ -125,6 +140,13 @@ class SystemTcpServer extends Thread {
                     sock.setTcpNoDelay(config.isNoDelay());
                 }
 
+                // A selector thread checks the client itself without blocking anyone
+                if (selectors != null) {
+                    channel.configureBlocking(false);
+                    selectors[(counter++ & Integer.MAX_VALUE) % selectors.length].register(channel);
+                    continue;
+                }
+
                 // Check to see if this is a legitimate client or some imposter.
                 // Don't want to block on read here since it may not be a real client
                 // and may block forever - tying up the server.
@@ -176,8 +198,8 @@ class SystemTcpServer extends Thread {
                 channel.configureBlocking(true);
 
                 // create thread to deal with client
-                ClientThread connection = new ClientThread(sys, channel.socket(), tGroup);
-                connection.start();
+                ClientThread connection = new ClientThread(sys, channel.socket());
+                new Thread(tGroup, connection, "clientThread" + counter++).start();
             }
 
         }
@@ -193,35 +215,66 @@ class SystemTcpServer extends Thread {
 
 /**
  * This class handles all communication between an ET system and a user who has
- * opened that ET system.
+ * opened that ET system, with a thread of its own which blocks while reading
+ * commands and while waiting for events.
  *
  * @author Carl Timmer
  */
 
-class ClientThread extends Thread {
+class ClientThread extends ClientConnection implements Runnable {
 
     /** Tcp socket. */
     private Socket sock;
 
-    /** ET system object. */
-    private SystemCreate sys;
+    /** Buffered stream from which commands are read. */
+    private ChannelInput input;
 
-    /** ET system configuration object. */
-    private SystemConfig config;
+    /** Header of an event put by the user. */
+    private final ByteBuffer putHeader = ByteBuffer.allocate(putHeaderSize);
+
+    /** An event's data and the next event's header for a scattering read. */
+    private final ByteBuffer[] scatter = new ByteBuffer[2];
+
+    /** Stands in for the data of an event which has none to read. */
+    private static final ByteBuffer noData = ByteBuffer.allocate(0);
+
+    /** Selector for waiting, no longer than the socket's timeout,
+     *  for event data read straight from the channel. */
+    private Selector readSelector;
 
-    /** Data input stream built on top of the socket's input stream (with an
-     *  intervening buffered input stream). */
-    private DataInputStream  in;
+    /** Connections carrying out tagged requests which are waiting for one. */
+    private final ArrayList<RequestLane> idleLanes = new ArrayList<RequestLane>();
 
-    /** Data output stream built on top of the socket's output stream (with an
-     *  intervening buffered output stream). */
-    private DataOutputStream out;
+    /** All connections carrying out tagged requests. */
+    private final ArrayList<RequestLane> lanes = new ArrayList<RequestLane>();
 
-    /** Client is 64 bits? */
-    boolean bit64;
+    /** Most connections carrying out tagged requests, enough for each attachment
+     *  to wait for events while one more carries out any other request. */
+    private final int lanesMax;
 
-    /** Used to name thread. */
-    static private int counter = 0;
+    /** Has the user's connection been closed? */
+    private volatile boolean closed;
+
+    /** Subscriptions of the user's attachments to have events pushed, by attachment id. */
+    private final Map<Integer, Subscription> subscriptions =
+            new ConcurrentHashMap<Integer, Subscription>();
+
+
+    /**
+     * This class is a buffered stream which tells how many bytes it has
+     * taken from the socket that have not yet been read from it.
+     */
+    private static final class ChannelInput extends BufferedInputStream {
+
+        ChannelInput(InputStream in, int size) {
+            super(in, size);
+        }
+
+        /** @return number of bytes taken from the socket but not yet read */
+        int buffered() {
+            return count - pos;
+        }
+    }
 
 
     /**
@@ -229,12 +282,13 @@ class ClientThread extends Thread {
      *  @param sys ET system object.
      *  @param sock TCP socket.
      */
-    ClientThread(SystemCreate sys, Socket sock, ThreadGroup tGroup) {
-        super(tGroup, "clientThread" + counter++);
-
-        this.sys  = sys;
+    ClientThread(SystemCreate sys, Socket sock) {
+        super(sys);
         this.sock = sock;
-        config = sys.getConfig();
+        buffer = new byte[65535];
+        // buffer for reading command parameters (6 ints worth)
+        params = new byte[32 + 4 * EtConstants.stationSelectInts];
+        lanesMax = config.getAttachmentsMax() + 1;
     }
 
 
@@ -244,13 +298,12 @@ class ClientThread extends Thread {
         try {
             // buffered communication streams for efficiency
             if (config.getTcpRecvBufSize() > 0) {
-                in  = new DataInputStream(new  BufferedInputStream(sock.getInputStream(),
-                                                                   config.getTcpRecvBufSize())
-                                         );
+                input = new ChannelInput(sock.getInputStream(), config.getTcpRecvBufSize());
             }
             else {
-                in  = new DataInputStream(new  BufferedInputStream(sock.getInputStream(), sock.getReceiveBufferSize()));
+                input = new ChannelInput(sock.getInputStream(), sock.getReceiveBufferSize());
             }
+            in = new DataInputStream(input);
 
             if (config.getTcpRecvBufSize() > 0) {
                 out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream(),
@@ -261,42 +314,17 @@ class ClientThread extends Thread {
                 out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream(), sock.getSendBufferSize()));
             }
 
-            int endian = in.readInt();
-            int length = in.readInt();
-            int b64    = in.readInt();
-            bit64      = b64 == 1;
-            in.readLong();
-
-            byte[] buf = new byte[length];
-            in.readFully(buf, 0, length);
-            String etName = new String(buf, 0, length - 1, "ASCII");
-
-            // see if the ET system that the client is
-            // trying to connect to is this one.
-            if (!etName.equals(sys.getName())) {
-                if (config.getDebug() >= EtConstants.debugError) {
-                    System.out.println("Tcp Server: client trying to connect to " + etName);
-                }
-                // send error to client
-                out.writeInt(EtConstants.error);
-                out.flush();
+            if (!openSystem()) {
                 return;
             }
 
-            // send ET system info back to client
-            out.writeInt(EtConstants.ok);
-            out.writeInt(EtConstants.endianBig);
-            out.writeInt(config.getNumEvents());
-            out.writeLong(config.getEventSize());
-            out.writeInt(EtConstants.version);
-            out.writeInt(EtConstants.stationSelectInts);
-            out.writeInt(EtConstants.langJava);
-            out.writeInt(EtConstants.bit64);
-            out.writeInt(0);
-            out.flush();
-
             /* wait for and process client requests */
-            commandLoop();
+            if (tagged) {
+                taggedLoop();
+            }
+            else {
+                commandLoop();
+            }
 
             return;
         }
@@ -307,1527 +335,834 @@ class ClientThread extends Thread {
         }
         finally {
             // we are done with the socket
-            try {
-                sock.close();
-            }
-            catch (IOException ex) {
+            close();
+            if (readSelector != null) {
+                try {
+                    readSelector.close();
+                }
+                catch (IOException ex) {
+                }
             }
         }
     }
 
 
-    /**  Wait for and implement commands from the user. */
-    private void commandLoop() {
-
-        // Keep track of all the attachments this client makes
-        // as they may need to be detached if the client dies
-        // without cleanly disconnecting itself. Detaching
-        // takes care of all events that were sent to clients
-        // as events to be modified, but were never put back.
-
-        // for efficiency, keep local copy of constants
-        final int selectInts   = EtConstants.stationSelectInts;
-        final int dataShift    = EtConstants.dataShift;
-        final int priorityMask = EtConstants.priorityMask;
-        final int dataMask     = EtConstants.dataMask;
-        final int modify       = EtConstants.modify;
-        final int ok           = EtConstants.ok;
-
-        int command;
-        EtEventImpl[] evs = null;
-        HashMap<Integer, AttachmentLocal> attachments =
-                new HashMap<Integer, AttachmentLocal>(sys.getConfig().getAttachmentsMax() + 1);
-        // buffer for sending events to users
-        byte[] buffer = new byte[65535];
-        // buffer for reading command parameters (6 ints worth)
-        byte[] params = new byte[32 + 4 * selectInts];
-
-        // The Command Loop ...
+    /** Close the user's connection and let the threads carrying out its tagged requests end. */
+    void close() {
+        closed = true;
         try {
-            while (true) {
-                // First, read the remote command. Remember, the
-                // socket has a read timeout of 1/2 second.
-                while (true) {
-                    try {
-                        command = in.readInt();
-                        break;
-                    }
-                    // socket read timeout
-                    catch (InterruptedIOException ex) {
-                        // check to see if we've been commanded to die
-                        if (sys.killAllThreads()) {
-                            return;
-                        }
-                    }
-                }
-
-                // Since there are so many commands, break up things up a bit,
-                // start off with commands for local clients for use in Linux
-                // or other non-mutex sharing operating systems.
+            sock.close();
+        }
+        catch (IOException ex) {
+        }
 
-                if (command < EtConstants.netEvGet) {
-                    // No local Linux stuff in Java implementation
-                    if (config.getDebug() >= EtConstants.debugError) {
-                        System.out.println("No Java support for local Linux");
-                    }
-                    throw new EtReadException("No Java support for local Linux");
+        synchronized (idleLanes) {
+            for (RequestLane lane : lanes) {
+                synchronized (lane) {
+                    lane.notifyAll();
                 }
+            }
+            idleLanes.notifyAll();
+        }
+    }
 
-                else if (command < EtConstants.netAlive) {
-
-                    switch (command) {
-
-                        case EtConstants.netEvGet: {
-                            in.readFully(params, 0, 20);
-                            int err = ok;
-                            int attId = EtUtils.bytesToInt(params, 0);
-                            int mode  = EtUtils.bytesToInt(params, 4);
-                            int mod   = EtUtils.bytesToInt(params, 8);
-                            int sec   = EtUtils.bytesToInt(params, 12);
-                            int nsec  = EtUtils.bytesToInt(params, 16);
-                            AttachmentLocal att = attachments.get(new Integer(attId));
-
-                            try {
-                                if (mode == EtConstants.timed) {
-                                    // If we've been told to wake up, do so.
-                                    if (att.isWakeUp()) {
-                                        att.setWakeUp(false);
-                                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                    }
-                                    int uSec = sec * 1000000 + nsec / 1000;
-                                    evs = sys.getEvents(att, mode, uSec, 1);
-                                }
-                                else if (mode == EtConstants.sleep) {
-                                    // NOTE: currently the sleep mode on the client side is implemented
-                                    // with timed waits because otherwise the client sleeps inside
-                                    // of synchronized code, blocking all other API calls that talk
-                                    // over the network. Thus the following comment and accompanying
-                                    // code are irrelevant.
-
-                                    // There's a problem if we have a remote client that is waiting
-                                    // for another event by sleeping and the events stop flowing. In
-                                    // that case, the client can be killed and the ET system does NOT
-                                    // know about it. Since this thread will be stuck in "getEvents",
-                                    // it will not immediately detect the break in the socket - at least
-                                    // not until events start flowing again. To circumvent this, implement
-                                    // "sleep" by repeats of "timed" every few seconds to allow
-                                    // detection of broken socket between calls to "getEvents".
-
-                                    // Store the fact we're trying to sleep - necessary when
-                                    // told to wake up.
-                                    att.setSleepMode(true);
-
-                                    tryToGetEvents:
-                                    while (true) {
-                                        // try a 4 second wait for an event
-                                        try {
-                                            if (att.isWakeUp()) {
-                                                att.setWakeUp(false);
-                                                throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                            }
-                                            evs = sys.getEvents(att, EtConstants.timed, 4000000, 1);
-                                            // no longer in sleep mode
-                                            att.setSleepMode(false);
-                                            // may have been told to wake up between last 2 statements.
-                                            att.setWakeUp(false);
-                                            break;
-                                        }
-                                        // if timeout, check socket to see if still open
-                                        catch (EtTimeoutException tx) {
-                                            try {
-                                                // 1/2 second max delay on read
-                                                in.readInt();
-                                                // should never be able to get here
-                                                att.setSleepMode(false);
-                                                throw new EtException("communication protocol error");
-                                            }
-                                            // if there's an interrupted ex, socket is OK
-                                            catch (InterruptedIOException ex) { }
-                                        }
-                                    }
-
-                                }
-                                else {
-                                    evs = sys.getEvents(att, mode, 0, 1);
-                                }
-
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
-                            catch (EtBusyException ex) {
-                                err = EtConstants.errorBusy;
-                            }
-                            catch (EtEmptyException ex) {
-                                err = EtConstants.errorEmpty;
-                            }
-                            catch (EtWakeUpException ex) {
-                                err = EtConstants.errorWakeUp;
-                                att.setSleepMode(false);
-                            }
-                            catch (EtTimeoutException ex) {
-                                err = EtConstants.errorTimeout;
-                            }
-
-                            if (err != ok) {
-                                out.writeInt(err);
-                                out.flush();
-                                break;
-                            }
-
-                            EtEventImpl ev = evs[0];
-
-                            // handle buffering by hand
-                            byte[] buf = new byte[4 * (10 + selectInts) + ev.getLength()];
-
-                            // first send error
-                            EtUtils.intToBytes(err, buf, 0);
-                            EtUtils.longToBytes((long)ev.getLength(),  buf,  4);
-                            EtUtils.longToBytes((long)ev.getMemSize(), buf, 12);
-                            EtUtils.intToBytes(ev.getPriority().getValue() |
-                                               ev.getDataStatus().getValue() << dataShift, buf, 20);
-                            EtUtils.intToBytes(ev.getId(), buf, 24);  // skip 4 bytes here
-                            EtUtils.intToBytes(ev.getRawByteOrder(), buf, 32);
-                            // arrays are initialized to zero so skip 0 values elements
-                            int index = 36;
-                            int[] control = ev.getControl();
-                            for (int i = 0; i < selectInts; i++) {
-                                EtUtils.intToBytes(control[i], buf, index += 4);
-                            }
-                            System.arraycopy(ev.getData(), 0, buf, index += 4, ev.getLength());
-
-                            out.write(buf);
-                            out.flush();
-
-                            ev.setModify(Modify.getModify(mod));
-                            if (mod == 0) {
-                                sys.putEvents(att, evs);
-                            }
-                            evs = null;
-                        }
-                        break;
 
+    /** {@inheritDoc} */
+    boolean acceptsTagged() {
+        return true;
+    }
 
-                        case EtConstants.netEvsGet: {
-                            in.readFully(params, 0, 24);
-                            int err = ok;
-                            int attId = EtUtils.bytesToInt(params,  0);
-                            int mode  = EtUtils.bytesToInt(params,  4);
-                            int mod   = EtUtils.bytesToInt(params,  8);
-                            int count = EtUtils.bytesToInt(params, 12);
-                            int sec   = EtUtils.bytesToInt(params, 16);
-                            int nsec  = EtUtils.bytesToInt(params, 20);
-                            AttachmentLocal att = attachments.get(new Integer(attId));
 
-                            try {
-                                if (mode == EtConstants.timed) {
-                                    // If we've been told to wake up, do so.
-                                    if (att.isWakeUp()) {
-                                        att.setWakeUp(false);
-                                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                    }
-                                    int uSec = sec * 1000000 + nsec / 1000;
-                                    evs = sys.getEvents(att, mode, uSec, count);
-                                }
-                                else if (mode == EtConstants.sleep) {
-                                    // There's a problem if we have a remote client that is waiting
-                                    // for another event by sleeping and the events stop flowing. In
-                                    // that case, the client can be killed and the ET system does NOT
-                                    // know about it. Since this thread will be stuck in "getEvents",
-                                    // it will not immediately detect the break in the socket - at least
-                                    // not until events start flowing again. To circumvent this, implement
-                                    // "sleep" by repeats of "timed" every few seconds to allow
-                                    // detection of broken socket between calls to "getEvents".
-
-                                    // Store the fact we're trying to sleep - necessary when
-                                    // told to wake up.
-                                    att.setSleepMode(true);
-
-                                    tryToGetEvents:
-                                    while (true) {
-                                        // try a 4 second wait for events
-                                        try {
-                                            if (att.isWakeUp()) {
-                                                att.setWakeUp(false);
-                                                throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                            }
-                                            evs = sys.getEvents(att, EtConstants.timed, 4000000, count);
-                                            // no longer in sleep mode
-                                            att.setSleepMode(false);
-                                            // may have been told to wake up between last 2 statements.
-                                            att.setWakeUp(false);
-                                            break;
-                                        }
-                                        // if timeout, check socket to see if still open
-                                        catch (EtTimeoutException tx) {
-                                            try {
-                                                // 1/2 second max delay on read
-                                                in.readInt();
-                                                // should never be able to get here
-                                                att.setSleepMode(false);
-                                                throw new EtException("communication protocol error");
-                                            }
-                                            // if there's an interrupted ex, socket is OK
-                                            catch (InterruptedIOException ex) { }
-                                        }
-                                    }
-
-                                }
-                                else {
-                                    evs = sys.getEvents(att, mode, 0, count);
-                                }
+    /**
+     * Read each event's data, together with the next event's header, straight
+     * into the event's own buffer instead of through an intermediate array.
+     * {@inheritDoc}
+     */
+    void readEvents(EtEventImpl[] evs) throws EtException, IOException {
+        if (evs.length < 1) return;
+
+        putHeader.clear();
+        scatter[0] = noData;
+        scatter[1] = putHeader;
+        readFully(scatter);
+
+        for (int j = 0; j < evs.length; j++) {
+            EtEventImpl ev = readHeader(putHeader);
+            evs[j] = ev;
+
+            scatter[0] = noData;
+            if (ev.getModify() == Modify.ANYTHING && ev.getLength() > 0) {
+                // use a view so the event's position and limit stay as they are
+                ByteBuffer data = ev.getDataBuffer().duplicate();
+                data.limit(ev.getLength()).position(0);
+                scatter[0] = data;
+            }
 
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
-                            catch (EtBusyException ex) {
-                                err = EtConstants.errorBusy;
-                            }
-                            catch (EtEmptyException ex) {
-                                err = EtConstants.errorEmpty;
-                            }
-                            catch (EtWakeUpException ex) {
-                                err = EtConstants.errorWakeUp;
-                                att.setSleepMode(false);
-                            }
-                            catch (EtTimeoutException ex) {
-                                err = EtConstants.errorTimeout;
-                            }
+            putHeader.clear();
+            if (j == evs.length - 1) {
+                // don't read beyond the last event
+                putHeader.limit(0);
+            }
+            readFully(scatter);
+        }
+        scatter[0] = null;
+    }
 
-                            if (err != ok) {
-                                out.writeInt(err);
-                                out.flush();
-                                break;
-                            }
-/*
-                          // use buffered output
-                          // first send number of events
-                          out.writeInt(evs.length);
-                          int size = evs.length * 4 * (6 + selectInts);
-                          for (int j = 0; j < evs.length; j++) {
-                              size += evs[j].length;
-                          }
-                          out.writeInt(size);
-                          for (int j = 0; j < evs.length; j++) {
-                              evs[j].modify = mod;
-                              out.writeInt(evs[j].length);
-                              out.writeInt(evs[j].memSize);
-                              out.writeInt(evs[j].priority | evs[j].dataStatus << dataShift);
-                              out.writeInt(evs[j].id);
-                              out.writeInt(evs[j].byteOrder);
-                              out.writeInt(0);
-                              for (int i = 0; i < selectInts; i++) {
-                                  out.writeInt(evs[j].control[i]);
-                              }
-                              out.write(evs[j].data, 0, evs[j].length);
-                          }
-                          out.flush();
-*/
-                            // handle buffering by hand
-                            int length, index = 12;
-                            int headerSize = 4 * (6 + selectInts);
-                            int size = evs.length * headerSize;
-                            for (EtEventImpl ev1 : evs) {
-                                size += ev1.getLength();
-                            }
 
-                            EtUtils.intToBytes(evs.length, buffer, 0);
-                            EtUtils.longToBytes((long)size, buffer, 4);
-
-                            Modify mfy = Modify.getModify(mod);
-                            for (EtEventImpl ev : evs) {
-                                ev.setModify(mfy);
-                                length = ev.getLength();
-                                EtUtils.longToBytes((long)length, buffer, index);
-                                EtUtils.longToBytes((long)ev.getMemSize(), buffer, index += 8);
-                                EtUtils.intToBytes(ev.getPriority().getValue() |
-                                                 ev.getDataStatus().getValue() << dataShift, buffer, index += 8);
-                                EtUtils.intToBytes(ev.getId(), buffer, index += 4); // skip 4 bytes here
-                                EtUtils.intToBytes(ev.getRawByteOrder(), buffer, index += 8);
-                                EtUtils.intToBytes(0, buffer, index += 4);
-                                int[] control = ev.getControl();
-                                for (int i = 0; i < selectInts; i++) {
-                                    EtUtils.intToBytes(control[i], buffer, index += 4);
-                                }
-                                index += 4;
-                                if (index + headerSize + length > buffer.length) {
-                                    out.write(buffer, 0, index);
-                                    index = 0;
-                                    if (headerSize + length > buffer.length / 2) {
-                                        out.write(ev.getData(), 0, length);
-                                        out.flush();
-                                        continue;
-                                    }
-                                    out.flush();
-                                }
-                                System.arraycopy(ev.getData(), 0, buffer, index, length);
-                                index += length;
-                            }
+    /**
+     * Fill buffers, in order, first with any bytes the buffered input stream
+     * has already taken from the socket. Buffers on the heap are then filled through
+     * the stream, which reads long stretches straight into them. If any buffer is
+     * off the heap, the rest is read straight from the channel instead so the data
+     * isn't copied. Either way, waiting for bytes longer than the socket's timeout
+     * throws a SocketTimeoutException, just as reading a command does.
+     *
+     * @param buffers buffers to fill
+     * @throws IOException if reading from the socket fails, times out, or it is closed
+     */
+    private void readFully(ByteBuffer[] buffers) throws IOException {
+        int bytes;
+        boolean direct = false;
+        for (ByteBuffer buf : buffers) {
+            while (buf.hasRemaining() && input.buffered() > 0) {
+                bytes = Math.min(input.buffered(), buf.remaining());
+                if (buf.hasArray()) {
+                    in.readFully(buf.array(), buf.arrayOffset() + buf.position(), bytes);
+                    buf.position(buf.position() + bytes);
+                }
+                else {
+                    bytes = Math.min(bytes, buffer.length);
+                    in.readFully(buffer, 0, bytes);
+                    buf.put(buffer, 0, bytes);
+                }
+            }
+            if (buf.hasRemaining() && !buf.hasArray()) {
+                direct = true;
+            }
+        }
 
-                            if (index > 0) {
-                                out.write(buffer, 0, index);
-                                out.flush();
-                            }
+        if (direct) {
+            readChannel(buffers);
+            return;
+        }
 
-                            if (mod == 0) {
-                                sys.putEvents(att, evs);
-                            }
-                            evs = null;
-                        }
-                        break;
+        for (ByteBuffer buf : buffers) {
+            if (buf.hasRemaining()) {
+                in.readFully(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                buf.position(buf.limit());
+            }
+        }
+    }
 
 
-                        case EtConstants.netEvPut: {
-                            in.readFully(params, 0, 32 + 4 * selectInts);
+    /**
+     * Fill buffers straight from the channel with scattering reads. A blocking
+     * channel ignores the socket's timeout, so the channel is made non-blocking
+     * meanwhile and a selector waits for bytes instead.
+     *
+     * @param buffers buffers to fill
+     * @throws IOException if reading from the socket fails, times out, or it is closed
+     */
+    private void readChannel(ByteBuffer[] buffers) throws IOException {
+        SocketChannel channel = sock.getChannel();
+        if (readSelector == null) {
+            readSelector = Selector.open();
+        }
+        int timeout = sock.getSoTimeout();
 
-                            int attId = EtUtils.bytesToInt(params, 0);
-                            AttachmentLocal att = attachments.get(new Integer(attId));
+        channel.configureBlocking(false);
+        SelectionKey key = channel.register(readSelector, SelectionKey.OP_READ);
+        try {
+            int offset = 0;
+            while (offset < buffers.length) {
+                if (!buffers[offset].hasRemaining()) {
+                    offset++;
+                    continue;
+                }
+                long bytes = channel.read(buffers, offset, buffers.length - offset);
+                if (bytes < 0) {
+                    throw new EOFException("connection closed by user");
+                }
+                else if (bytes == 0) {
+                    if (readSelector.select(timeout) == 0) {
+                        throw new SocketTimeoutException("no event data from user for " + timeout + " millisec");
+                    }
+                    readSelector.selectedKeys().clear();
+                }
+            }
+        }
+        finally {
+            // the stream can only be used once the channel blocks again
+            key.cancel();
+            readSelector.selectNow();
+            channel.configureBlocking(true);
+        }
+    }
 
-                            int id = EtUtils.bytesToInt(params, 4);
-                            EtEventImpl ev = sys.getEvents()[id];
-                            // skip 4 bytes here
 
-                            long len = EtUtils.bytesToLong(params, 12);
-                            if (len > Integer.MAX_VALUE) {
-                                throw new EtException("Event is too long for this (java) ET system");
-                            }
-                            ev.setLengthFromServer((int) len);
-
-                            int priAndStat = EtUtils.bytesToInt(params, 20);
-                            ev.setPriority(Priority.getPriority(priAndStat & priorityMask));
-                            ev.setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
-                            ev.setRawByteOrder(EtUtils.bytesToInt(params, 24));
-                            // last parameter is ignored
-
-                            int index = 24;
-                            int[] control = new int[selectInts];
-                            for (int i = 0; i < selectInts; i++) {
-                                control[i] = EtUtils.bytesToInt(params, index += 4);
-                            }
-                            ev.setControl(control);
-                            // only read data if modifying everything
-                            if (ev.getModify() == Modify.ANYTHING) {
-                                in.readFully(ev.getData(), 0, ev.getLength());
-                            }
+    /** {@inheritDoc} */
+    void write(ByteBuffer[] buffers, int length) throws IOException {
+        out.flush();
 
-                            EtEventImpl[] evArray = new EtEventImpl[1];
-                            evArray[0] = ev;
+        // a blocking channel may still write only part of a long list of buffers
+        SocketChannel channel = sock.getChannel();
+        int offset = 0;
+        while (offset < length) {
+            channel.write(buffers, offset, length - offset);
+            while (offset < length && !buffers[offset].hasRemaining()) {
+                offset++;
+            }
+        }
+    }
 
-                            sys.putEvents(att, evArray);
 
-                            out.writeInt(ok);
-                            out.flush();
-                        }
-                        break;
+    /**
+     * Wait for tagged requests from the user and hand each one to a thread of its
+     * own to carry out, so that a request waiting for events holds up none of the
+     * others. Requests to close the connection are carried out here.
+     */
+    private void taggedLoop() {
 
+        int tag, length;
 
-                        case EtConstants.netEvsPut: {
-                            in.readFully(params, 0, 16);
-                            int attId           = EtUtils.bytesToInt(params, 0);
-                            AttachmentLocal att = attachments.get(new Integer(attId));
-                            int numEvents       = EtUtils.bytesToInt(params,  4);
-                            long size           = EtUtils.bytesToLong(params, 8);
-
-                            long len;
-                            int  id, priAndStat, index;
-                            int  byteChunk = 28 + 4 * selectInts;
-                            evs = new EtEventImpl[numEvents];
-
-                            for (int j = 0; j < numEvents; j++) {
-                                in.readFully(params, 0, byteChunk);
-
-                                id = EtUtils.bytesToInt(params, 0);
-                                evs[j] = sys.getEvents()[id];
-                                // skip 4 bytes here
-
-                                len = EtUtils.bytesToLong(params, 8);
-                                if (len > Integer.MAX_VALUE) {
-                                    throw new EtException("Event is too long for this (java) ET system");
-                                }
-                                evs[j].setLengthFromServer((int) len);
-
-                                priAndStat = EtUtils.bytesToInt(params, 16);
-                                evs[j].setPriority(Priority.getPriority(priAndStat & priorityMask));
-                                evs[j].setDataStatus(DataStatus.getStatus((priAndStat & dataMask) >> dataShift));
-                                evs[j].setRawByteOrder(EtUtils.bytesToInt(params, 20));
-                                index = 24;
-                                int[] control = new int[selectInts];
-                                for (int i = 0; i < selectInts; i++) {
-                                    control[i] = EtUtils.bytesToInt(params, index += 4);
-                                }
-                                evs[j].setControl(control);
-                                if (evs[j].getModify() == Modify.ANYTHING) {
-                                    // If user increased data length beyond memSize,
-                                    // use more memory.
-                                    if (evs[j].getLength() > evs[j].getMemSize()) {
-                                        evs[j].setData(new byte[evs[j].getLength()]);
-                                        evs[j].setMemSize(evs[j].getLength());
-                                    }
-                                    in.readFully(evs[j].getData(), 0, evs[j].getLength());
-                                }
-                            }
-                            sys.putEvents(att, evs);
-                            out.writeInt(ok);
-                            out.flush();
-                        }
+        try {
+            while (true) {
+                // First, read the tag. Remember, the
+                // socket has a read timeout of 1/2 second.
+                while (true) {
+                    try {
+                        tag = in.readInt();
                         break;
-
-
-                        case EtConstants.netEvNew: {
-                            in.readFully(params, 0, 24);
-                            int  err = ok;
-                            int  attId = EtUtils.bytesToInt(params,  0);
-                            int  mode  = EtUtils.bytesToInt(params,  4);
-                            long size  = EtUtils.bytesToLong(params, 8);
-                            int  sec   = EtUtils.bytesToInt(params, 16);
-                            int  nsec  = EtUtils.bytesToInt(params, 20);
-                            AttachmentLocal att = attachments.get(new Integer(attId));
-
-                            if (bit64 && size > Integer.MAX_VALUE/5) {
-                                out.writeInt(EtConstants.errorTooBig);
-                                out.writeLong(0L);
-                                break;
-                            }
-
-                            try {
-                                if (mode == EtConstants.timed) {
-                                    // If we've been told to wake up, do so.
-                                    if (att.isWakeUp()) {
-                                        att.setWakeUp(false);
-                                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                    }
-                                    int uSec = sec * 1000000 + nsec / 1000;
-                                    evs = sys.newEvents(att, mode, uSec, 1, (int)size);
-                                }
-                                else if (mode == EtConstants.sleep) {
-                                    // There's a problem if we have a remote client that is waiting
-                                    // for another event by sleeping and the events stop flowing. In
-                                    // that case, the client can be killed and the ET system does NOT
-                                    // know about it. Since this thread will be stuck in "getEvents",
-                                    // it will not immediately detect the break in the socket - at least
-                                    // not until events start flowing again. To circumvent this, implement
-                                    // "sleep" by repeats of "timed" every few seconds to allow
-                                    // detection of broken socket between calls to "getEvents".
-
-                                    // Store the fact we're trying to sleep - necessary when
-                                    // told to wake up.
-                                    att.setSleepMode(true);
-
-                                    tryToGetEvents:
-                                    while (true) {
-                                        // try a 4 second wait for an event
-                                        try {
-                                            if (att.isWakeUp()) {
-                                                att.setWakeUp(false);
-                                                throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                            }
-                                            evs = sys.newEvents(att, EtConstants.timed, 4000000, 1, (int)size);
-                                            // no longer in sleep mode
-                                            att.setSleepMode(false);
-                                            // may have been told to wake up between last 2 statements.
-                                            att.setWakeUp(false);
-                                            break;
-                                        }
-                                        // if timeout, check socket to see if still open
-                                        catch (EtTimeoutException tx) {
-                                            try {
-                                                // 1/2 second max delay on read
-                                                in.readInt();
-                                                // should never be able to get here
-                                                att.setSleepMode(false);
-                                                throw new EtException("communication protocol error");
-                                            }
-                                            // if there's an interrupted ex, socket is OK
-                                            catch (InterruptedIOException ex) { }
-                                        }
-                                    }
-
-                                }
-                                else {
-                                    evs = sys.newEvents(att, mode, 0, 1, (int)size);
-                                }
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
-                            catch (EtBusyException ex) {
-                                err = EtConstants.errorBusy;
-                            }
-                            catch (EtEmptyException ex) {
-                                err = EtConstants.errorEmpty;
-                            }
-                            catch (EtWakeUpException ex) {
-                                err = EtConstants.errorWakeUp;
-                                att.setSleepMode(false);
-                            }
-                            catch (EtTimeoutException ex) {
-                                err = EtConstants.errorTimeout;
-                            }
-
-                            if (err != ok) {
-                                out.writeInt(err);
-                                out.writeLong(0);
-                                out.flush();
-                                break;
-                            }
-
-                            evs[0].setModify(Modify.ANYTHING);
-
-                            out.writeInt(err);
-                            out.writeInt(evs[0].getId());
-                            out.writeInt(0); // unused
-                            out.flush();
-                            evs = null;
+                    }
+                    // socket read timeout
+                    catch (InterruptedIOException ex) {
+                        // check to see if we've been commanded to die
+                        if (sys.killAllThreads()) {
+                            return;
                         }
-                        break;
-
-
-                        case EtConstants.netEvsNew: {
-                            in.readFully(params, 0, 28);
-                            int err = ok;
-                            int  attId = EtUtils.bytesToInt(params,  0);
-                            int  mode  = EtUtils.bytesToInt(params,  4);
-                            long size  = EtUtils.bytesToLong(params, 8);
-                            int  count = EtUtils.bytesToInt(params, 16);
-                            int  sec   = EtUtils.bytesToInt(params, 20);
-                            int  nsec  = EtUtils.bytesToInt(params, 24);
-
-                            AttachmentLocal att = attachments.get(new Integer(attId));
+                    }
+                }
 
-                            if (bit64 && count*size > Integer.MAX_VALUE/5) {
-                                out.writeInt(EtConstants.errorTooBig);
-                                break;
-                            }
+                length = in.readInt();
+                if (length < 4 || length > requestSizeMax()) {
+                    throw new EtException("bad request length " + length);
+                }
 
-                            try {
-                                if (mode == EtConstants.timed) {
-                                    // If we've been told to wake up, do so.
-                                    if (att.isWakeUp()) {
-                                        att.setWakeUp(false);
-                                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                    }
-                                    int uSec = sec * 1000000 + nsec / 1000;
-                                    evs = sys.newEvents(att, mode, uSec, count, (int)size);
-                                }
-                                else if (mode == EtConstants.sleep) {
-                                    // There's a problem if we have a remote client that is waiting
-                                    // for another event by sleeping and the events stop flowing. In
-                                    // that case, the client can be killed and the ET system does NOT
-                                    // know about it. Since this thread will be stuck in "getEvents",
-                                    // it will not immediately detect the break in the socket - at least
-                                    // not until events start flowing again. To circumvent this, implement
-                                    // "sleep" by repeats of "timed" every few seconds to allow
-                                    // detection of broken socket between calls to "getEvents".
-
-                                    // Store the fact we're trying to sleep - necessary when
-                                    // told to wake up.
-                                    att.setSleepMode(true);
-
-                                    tryToGetEvents:
-                                    while (true) {
-                                        // try a 4 second wait for events
-                                        try {
-                                            if (att.isWakeUp()) {
-                                                att.setWakeUp(false);
-                                                throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                            }
-                                            evs = sys.newEvents(att, EtConstants.timed, 4000000, count, (int)size);
-                                            // no longer in sleep mode
-                                            att.setSleepMode(false);
-                                            // may have been told to wake up between last 2 statements.
-                                            att.setWakeUp(false);
-                                            break;
-                                        }
-                                        // if timeout, check socket to see if still open
-                                        catch (EtTimeoutException tx) {
-                                            try {
-                                                // 1/2 second max delay on read
-                                                in.readInt();
-                                                // should never be able to get here
-                                                att.setSleepMode(false);
-                                                throw new EtException("communication protocol error");
-                                            }
-                                            // if there's an interrupted ex, socket is OK
-                                            catch (InterruptedIOException ex) { }
-                                        }
-                                    }
-
-                                }
-                                else {
-                                    evs = sys.newEvents(att, mode, 0, count, (int)size);
-                                }
+                RequestLane lane = idleLane();
+                byte[] request = lane.request(length);
+                readFrame(request, length);
 
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
-                            catch (EtBusyException ex) {
-                                err = EtConstants.errorBusy;
-                            }
-                            catch (EtEmptyException ex) {
-                                err = EtConstants.errorEmpty;
-                            }
-                            catch (EtWakeUpException ex) {
-                                err = EtConstants.errorWakeUp;
-                                att.setSleepMode(false);
-                            }
-                            catch (EtTimeoutException ex) {
-                                err = EtConstants.errorTimeout;
-                            }
+                int command = EtUtils.bytesToInt(request, 0);
+                if (command == EtConstants.netClose || command == EtConstants.netFClose) {
+                    lane.idle();
+                    detachAll();
+                    if (config.getDebug() >= EtConstants.debugInfo) {
+                        java.lang.System.out.println("taggedLoop: remote client closing");
+                    }
+                    return;
+                }
+                lane.carryOut(tag, length);
+            }
+        }
+        catch (EtException ex) {
+        }
+        catch (IOException ex) {
+        }
 
-                            if (err != ok) {
-                                out.writeInt(err);
-                                out.flush();
-                                break;
-                            }
+        // We only end up down here if there's an error, as in commandLoop.
+        closed = true;
+        detachAll();
 
-                            // handle buffering by hand
-                            int index = 0;
-                            byte[] buf = new byte[4 + 4 * evs.length];
+        if (config.getDebug() >= EtConstants.debugError) {
+            java.lang.System.out.println("taggedLoop: remote client connection broken");
+        }
+    }
 
-                            // first send number of events
-                            EtUtils.intToBytes(evs.length, buf, 0);
-                            for (EtEventImpl ev : evs) {
-                                ev.setModify(Modify.ANYTHING);
-                                EtUtils.intToBytes(ev.getId(), buf, index += 4);
-                            }
-                            out.write(buf);
-                            out.flush();
 
-                            evs = null;
-                        }
-                        break;
+    /**
+     * Read a whole request, retrying on socket timeouts without losing any bytes.
+     *
+     * @param request array to read into
+     * @param length  number of bytes in the request
+     * @throws IOException if reading from the socket fails or it is closed
+     */
+    private void readFrame(byte[] request, int length) throws IOException {
+        int n;
+        for (int off = 0; off < length; off += n) {
+            try {
+                n = in.read(request, off, length - off);
+            }
+            // If there's an interrupted ex, socket is OK, try again.
+            catch (InterruptedIOException ex) {
+                n = 0;
+                continue;
+            }
+            if (n < 0) {
+                throw new EOFException("connection closed by user");
+            }
+        }
+    }
 
 
-                        case EtConstants.netEvDump: {
-                            int  attId = in.readInt();
-                            int  id    = in.readInt();
+    /**
+     * Get the length of the longest tagged request the user could send. That is
+     * putting every event with as much data as it holds, which is no more than
+     * the events' own buffers and those lent to events larger than normal.
+     * Requests of names, host names and the like fit in the floor of 64 kB.
+     *
+     * @return length in bytes of the longest request
+     */
+    private long requestSizeMax() {
+        long putMax = 20L + (long) config.getNumEvents() * (putHeaderSize + config.getEventSize()) +
+                      sys.getBufferPool().getBytesOutstanding();
+        return Math.max(putMax, 65536L);
+    }
 
-                            AttachmentLocal att = attachments.get(new Integer(attId));
-                            EtEventImpl ev = sys.getEvents()[id];
-                            EtEventImpl[] evArray = new EtEventImpl[1];
-                            evArray[0] = ev;
-                            sys.dumpEvents(att, evArray);
 
-                            out.writeInt(ok);
-                            out.flush();
-                        }
-                        break;
+    /**
+     * Get a connection waiting to carry out a tagged request, starting a new
+     * one if none is waiting. Once there are as many as allowed, wait for one
+     * to finish its request.
+     *
+     * @return connection waiting for a request
+     * @throws EOFException if the user's connection is closed while waiting
+     */
+    private RequestLane idleLane() throws EOFException {
+        synchronized (idleLanes) {
+            while (idleLanes.isEmpty() && lanes.size() >= lanesMax) {
+                if (closed) {
+                    throw new EOFException("connection closed");
+                }
+                try {
+                    idleLanes.wait();
+                }
+                catch (InterruptedException ex) {
+                    throw new EOFException("interrupted waiting for a request to finish");
+                }
+            }
+            if (!idleLanes.isEmpty()) {
+                return idleLanes.remove(idleLanes.size() - 1);
+            }
+            RequestLane lane = new RequestLane(this);
+            lanes.add(lane);
+            Thread current = Thread.currentThread();
+            Thread thread = new Thread(current.getThreadGroup(), lane,
+                                       current.getName() + "-lane" + lanes.size());
+            thread.setDaemon(true);
+            thread.start();
+            return lane;
+        }
+    }
 
 
-                        case EtConstants.netEvsDump: {
-                            int attId     = in.readInt();
-                            int numEvents = in.readInt();
-                            evs = new EtEventImpl[numEvents];
-                            AttachmentLocal att = attachments.get(new Integer(attId));
+    /**
+     * Send the reply to a tagged request, preceded by its tag and length.
+     *
+     * @param tag    tag of the request
+     * @param reply  array holding the reply
+     * @param length number of bytes in the reply
+     * @throws IOException if writing to the socket fails
+     */
+    void sendReply(int tag, byte[] reply, int length) throws IOException {
+        synchronized (out) {
+            out.writeInt(tag);
+            out.writeInt(length);
+            out.write(reply, 0, length);
+            out.flush();
+        }
+    }
 
-                            int id;
-                            byte[] buf = new byte[4 * numEvents];
-                            in.readFully(buf, 0, 4 * numEvents);
-                            int index = -4;
 
-                            for (int j = 0; j < numEvents; j++) {
-                                id = EtUtils.bytesToInt(buf, index += 4);
-                                evs[j] = sys.getEvents()[id];
-                            }
+    /**
+     * This class keeps track of the events pushed to the user for one attachment
+     * and not yet put back or dumped, so that no more are pushed than the user
+     * has room for.
+     */
+    private static final class Subscription {
 
-                            sys.dumpEvents(att, evs);
+        /** Tag preceding each push of events. */
+        final int tag;
 
-                            out.writeInt(ok);
-                            out.flush();
-                        }
-                        break;
+        /** How the user may modify pushed events. */
+        final Modify modify;
 
+        /** Most events pushed but not yet returned. */
+        private final int maxEvents;
 
-                        case EtConstants.netEvsNewGrp: {
-                            in.readFully(params, 0, 32);
-                            int err = ok;
-                            int  attId = EtUtils.bytesToInt(params,  0);
-                            int  mode  = EtUtils.bytesToInt(params,  4);
-                            long size  = EtUtils.bytesToLong(params, 8);
-                            int  count = EtUtils.bytesToInt(params, 16);
-                            int  group = EtUtils.bytesToInt(params, 20);
-                            int  sec   = EtUtils.bytesToInt(params, 24);
-                            int  nsec  = EtUtils.bytesToInt(params, 28);
+        /** No events are pushed while this many bytes or more are not yet returned. */
+        private final long maxBytes;
 
-                            AttachmentLocal att = attachments.get(new Integer(attId));
-                            List<EtEventImpl> evList=null;
+        /** Number of events pushed but not yet returned. */
+        private int events;
 
-                            if (bit64 && count*size > Integer.MAX_VALUE/5) {
-                                out.writeInt(EtConstants.errorTooBig);
-                                break;
-                            }
+        /** Number of bytes pushed but not yet returned. */
+        private long bytes;
 
-                            try {
-                                if (mode == EtConstants.timed) {
-                                    // If we've been told to wake up, do so.
-                                    if (att.isWakeUp()) {
-                                        att.setWakeUp(false);
-                                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                    }
-                                    int uSec = sec * 1000000 + nsec / 1000;
-                                    evList = sys.newEvents(att, mode, uSec, count, (int)size, group);
-                                }
-                                else if (mode == EtConstants.sleep) {
-                                    // There's a problem if we have a remote client that is waiting
-                                    // for another event by sleeping and the events stop flowing. In
-                                    // that case, the client can be killed and the ET system does NOT
-                                    // know about it. Since this thread will be stuck in "getEvents",
-                                    // it will not immediately detect the break in the socket - at least
-                                    // not until events start flowing again. To circumvent this, implement
-                                    // "sleep" by repeats of "timed" every few seconds to allow
-                                    // detection of broken socket between calls to "getEvents".
-
-                                    // Store the fact we're trying to sleep - necessary when
-                                    // told to wake up.
-                                    att.setSleepMode(true);
-
-                                    tryToGetEvents:
-                                    while (true) {
-                                        // try a 4 second wait for events
-                                        try {
-                                            if (att.isWakeUp()) {
-                                                att.setWakeUp(false);
-                                                throw new EtWakeUpException("attachment " + att.getId() + " woken up");
-                                            }
-                                            evList = sys.newEvents(att, EtConstants.timed, 4000000, count, (int)size, group);
-                                            // no longer in sleep mode
-                                            att.setSleepMode(false);
-                                            // may have been told to wake up between last 2 statements.
-                                            att.setWakeUp(false);
-                                            break;
-                                        }
-                                        // if timeout, check socket to see if still open
-                                        catch (EtTimeoutException tx) {
-                                            try {
-                                                // 1/2 second max delay on read
-                                                in.readInt();
-                                                // should never be able to get here
-                                                att.setSleepMode(false);
-                                                throw new EtException("communication protocol error");
-                                            }
-                                            // if there's an interrupted ex, socket is OK
-                                            catch (InterruptedIOException ex) { }
-
-                                            // original loop
-//                                            while (true) {
-//                                                try {
-//                                                    // 1/2 second max delay on read
-//                                                    in.readInt();
-//                                                    // should never be able to get here
-//                                                    att.setSleepMode(false);
-//                                                    throw new EtException("communication protocol error");
-//                                                }
-//                                                // if there's an interrupted ex, socket is OK
-//                                                catch (InterruptedIOException ex) {
-//                                                    continue tryToGetEvents;
-//                                                }
-//                                                // if there's an io ex, socket is closed
-//                                                catch (IOException ex) {
-//                                                    throw ex;
-//                                                }
-//                                            }
-                                        }
-                                    }
-
-                                }
-                                else {
-                                    evList = sys.newEvents(att, mode, 0, count, (int)size, group);
-                                }
+        /** Bytes counted for each event not yet returned, by event id, -1 if returned. */
+        private final int[] charges;
 
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
-                            catch (EtBusyException ex) {
-                                err = EtConstants.errorBusy;
-                            }
-                            catch (EtEmptyException ex) {
-                                err = EtConstants.errorEmpty;
-                            }
-                            catch (EtWakeUpException ex) {
-                                err = EtConstants.errorWakeUp;
-                                att.setSleepMode(false);
-                            }
-                            catch (EtTimeoutException ex) {
-                                err = EtConstants.errorTimeout;
-                            }
+        /** Are events still to be pushed? */
+        private boolean active = true;
 
-                            if (err != ok) {
-                                out.writeInt(err);
-                                out.flush();
-                                break;
-                            }
+        /** Has the pushing stopped? */
+        private boolean finished;
 
-                            // handle buffering by hand
-                            int index = 0;
-                            byte[] buf = new byte[4 + 4 * evList.size()];
 
-                            // first send number of events
-                            EtUtils.intToBytes(evList.size(), buf, 0);
-                            for (EtEventImpl ev : evList) {
-                                ev.setModify(Modify.ANYTHING);
-                                EtUtils.intToBytes(ev.getId(), buf, index += 4);
-                            }
-                            out.write(buf);
-                            out.flush();
-                        }
-                        break;
-
-
-                        default:
-                            break;
-                    } // switch(command)
-                }   // if (command < Constants.netAlive)
-
-
-                else if (command < EtConstants.netStatGAtts) {
-                    switch (command) {
-                        case EtConstants.netAlive: {
-                            // we must be alive by definition as this is in the ET process
-                            out.writeInt(1);
-                            out.flush();
-                        }
-                        break;
+        /**
+         * Constructor.
+         *
+         * @param tag       tag preceding each push of events
+         * @param modify    how the user may modify pushed events
+         * @param maxEvents most events pushed but not yet returned
+         * @param maxBytes  no events are pushed while this many bytes or more are not yet returned
+         * @param numEvents number of events in the ET system
+         */
+        Subscription(int tag, Modify modify, int maxEvents, long maxBytes, int numEvents) {
+            this.tag       = tag;
+            this.modify    = modify;
+            this.maxEvents = maxEvents;
+            this.maxBytes  = maxBytes;
+            charges = new int[numEvents];
+            Arrays.fill(charges, -1);
+        }
 
 
-                        case EtConstants.netWait: {
-                            // We are alive by definition and in Java there is no
-                            // routine comparable to et_wait_for_alive(). This is
-                            // to talk to "C" ET systems.
-                            out.writeInt(ok);
-                            out.flush();
-                        }
-                        break;
+        /**
+         * Wait until the user has room for more events.
+         * @param millis most milliseconds to wait
+         * @return number of events the user has room for, 0 if none or stopped
+         * @throws InterruptedException if interrupted while waiting
+         */
+        synchronized int awaitCredit(long millis) throws InterruptedException {
+            long deadline = System.nanoTime() + 1000000L * millis;
+            long wait;
+            while (active && (events >= maxEvents || bytes >= maxBytes)) {
+                wait = (deadline - System.nanoTime()) / 1000000L;
+                if (wait <= 0L) {
+                    return 0;
+                }
+                wait(wait);
+            }
+            return active ? maxEvents - events : 0;
+        }
 
 
-                        case EtConstants.netClose:
-                        case EtConstants.netFClose: {
-                            // Client does not listen for a response
-                            //out.writeInt(ok);
+        /**
+         * Count events as pushed.
+         * @param evs events about to be pushed
+         */
+        synchronized void charge(EtEventImpl[] evs) {
+            for (EtEventImpl ev : evs) {
+                int id = ev.getId();
+                if (id >= 0 && id < charges.length && charges[id] < 0) {
+                    charges[id] = ev.getLength();
+                    events++;
+                    bytes += charges[id];
+                }
+            }
+        }
 
-                            // detach all attachments
-                            Entry ent;
-                            for (Iterator i = attachments.entrySet().iterator(); i.hasNext();) {
-                                ent = (Entry) i.next();
-                                sys.detach((AttachmentLocal) ent.getValue());
-                            }
-                            if (config.getDebug() >= EtConstants.debugInfo) {
-                                java.lang.System.out.println("commandLoop: remote client closing");
-                            }
-                            return;
-                        }
-                        // break;
 
+        /**
+         * Count events as returned, making room for more. Events never pushed are ignored.
+         * @param evs events put or dumped by the user
+         */
+        synchronized void returned(EtEventImpl[] evs) {
+            for (EtEventImpl ev : evs) {
+                int id = ev.getId();
+                if (id >= 0 && id < charges.length && charges[id] >= 0) {
+                    events--;
+                    bytes -= charges[id];
+                    charges[id] = -1;
+                }
+            }
+            notifyAll();
+        }
 
-                        case EtConstants.netKill: {
-                            if (config.getDebug() >= EtConstants.debugInfo) {
-                                System.out.println("commandLoop: got command to kill this ET");
-                            }
-                            System.exit(-1);
-                        }
 
+        /** @return true if events are still to be pushed */
+        synchronized boolean isActive() {
+            return active;
+        }
 
-                        case EtConstants.netWakeAtt: {
-                            int attId = in.readInt();
-                            // look locally for attachments
-                            AttachmentLocal att = attachments.get(new Integer(attId));
-                            if (att != null) {
-                                att.getStation().getInputList().wakeUp(att);
-                                // UPDATE: the client side, when talking over sockets, also
-                                // implements SLEEP mode as a series of TIMED mode calls.
-                                // Thus the wake up must be set for them as well.
-                                //if (att.isSleepMode()) {
-                                att.setWakeUp(true);
-                                //}
-                            }
-                        }
-                        break;
 
+        /** Stop pushing events. */
+        synchronized void stop() {
+            active = false;
+            notifyAll();
+        }
 
-                        case EtConstants.netWakeAll: {
-                            int statId = in.readInt();
-                            // Stations are stored in a linked list. Find one w/ this id.
-                            synchronized (sys.getStationLock()) {
-                                for (StationLocal stat : sys.getStations()) {
-                                    if (stat.getStationId() == statId) {
-                                        // Since attachments which sleep when getting events don't
-                                        // really sleep (here on server side) but do a timed wait,
-                                        // they occasionally are
-                                        // not in a get method but are checking the status of the
-                                        // tcp connection. This means they don't know to wake up.
-                                        // Solve this problem by setting all the station's
-                                        // attachment's wake up flags, so that the next call to
-                                        // getEvents will make them all wake up.
-
-                                        // UPDATE: the client side, when talking over sockets, also
-                                        // implements SLEEP mode as a series of TIMED mode calls.
-                                        // Thus the wake up must be set for them as well.
-                                        for (AttachmentLocal att : stat.getAttachments()) {
-                                        //    if (att.isSleepMode()) {
-                                            att.setWakeUp(true);
-                                        //    }
-                                        }
-
-                                        stat.getInputList().wakeUpAll();
-                                        break;
-                                    }
-                                }
-                            }
-                        }
-                        break;
 
+        /** Called once no more events will be pushed. */
+        synchronized void finished() {
+            finished = true;
+            notifyAll();
+        }
 
-                        case EtConstants.netStatAtt: {
-                            int err = ok;
-                            int statId   = in.readInt();
-                            int pid      = in.readInt();
-                            int length   = in.readInt();
-                            int ipLength = in.readInt();
-                            String host = null, ipAddr = null;
-                            AttachmentLocal att = null;
 
-                            if (length > 0) {
-                                byte buf[] = new byte[length];
-                                in.readFully(buf, 0, length);
-                                host = new String(buf, 0, length - 1, "ASCII");
-                            }
+        /**
+         * Wait until no more events will be pushed.
+         * @throws InterruptedException if interrupted while waiting
+         */
+        synchronized void awaitFinished() throws InterruptedException {
+            while (!finished) {
+                wait();
+            }
+        }
+    }
 
-                            if (ipLength > 0) {
-                                byte buf[] = new byte[ipLength];
-                                in.readFully(buf, 0, ipLength);
-                                ipAddr = new String(buf, 0, ipLength - 1, "ASCII");
-                            }
 
-                            try {
-                                att = sys.attach(statId);
-                                att.setPid(pid);
-                                if (length > 0) {
-                                    att.setHost(host);
-                                }
-                                if (ipLength > 0) {
-                                    att.setIpAddress(ipAddr);
-                                }
-                                // keep track of all attachments locally
-                                attachments.put(att.getId(), att);
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
-                            catch (EtTooManyException ex) {
-                                err = EtConstants.errorTooMany;
-                            }
+    /**
+     * This class carries out, in a thread of its own, tagged requests read by
+     * a {@link ClientThread} one at a time. Each request is read from an array
+     * and the reply is gathered in another before being sent by the ClientThread.
+     */
+    private static final class RequestLane extends ClientConnection implements Runnable {
 
-                            out.writeInt(err);
-                            if (err == ok) {
-                                out.writeInt(att.getId());
-                            }
-                            else {
-                                out.writeInt(0);
-                            }
-                            out.flush();
-                        }
-                        break;
+        /** Connection which reads the requests and sends the replies. */
+        private final ClientThread parent;
 
+        /** Array holding the request. */
+        private byte[] request = new byte[256];
 
-                        case EtConstants.netStatDet: {
-                            int attId = in.readInt();
-                            AttachmentLocal att = attachments.get(new Integer(attId));
+        /** Stream from which the request is read. */
+        private final CommandInput commandInput = new CommandInput();
 
-                            sys.detach(att);
+        /** Reply to the request. */
+        private ReplyOutput reply = new ReplyOutput();
 
-                            // keep track of all detachments locally
-                            attachments.remove(att.getId());
-                            out.writeInt(ok);
-                            out.flush();
-                        }
-                        break;
+        /** Tag of the request. */
+        private int tag;
 
+        /** Number of bytes in the request, 0 if there is none to carry out. */
+        private int length;
 
-                        case EtConstants.netStatCrAt: {
-                            int err = ok;
-                            StationLocal stat = null;
-                            EtStationConfig statConfig = new EtStationConfig();
-
-                            // read in station config info
-                            int init = in.readInt(); // not used in Java
-                            statConfig.setFlowMode(in.readInt());
-                            statConfig.setUserMode(in.readInt());
-                            statConfig.setRestoreMode(in.readInt());
-                            statConfig.setBlockMode(in.readInt());
-                            statConfig.setPrescale(in.readInt());
-                            statConfig.setCue(in.readInt());
-                            statConfig.setSelectMode(in.readInt());
-                            int[] select = new int[EtConstants.stationSelectInts];
-                            for (int i = 0; i < EtConstants.stationSelectInts; i++) {
-                                select[i] = in.readInt();
-                            }
-                            statConfig.setSelect(select);
-
-                            // If both a function name and library name are sent,
-                            // the user thinks he's talking to a C system when
-                            // it's really a Java java.lang.System. If only a single name
-                            // (class) is supplied, the user knows what he's doing.
-                            int lengthFunc       = in.readInt();
-                            int lengthLib        = in.readInt();
-                            int lengthClass      = in.readInt();
-                            int lengthName       = in.readInt();
-                            int position         = in.readInt();
-                            int parallelPosition = in.readInt();
-
-                            int length = (lengthClass > lengthLib) ? lengthClass : lengthLib;
-                            length = (length > lengthFunc) ? length : lengthFunc;
-                            length = (length > lengthName) ? length : lengthName;
-                            byte[] buf = new byte[length];
-
-                            if (lengthFunc > 0) {
-                                in.readFully(buf, 0, lengthFunc);
-                                statConfig.setSelectFunction(new String(buf, 0, lengthFunc - 1, "ASCII"));
-                            }
-                            if (lengthLib > 0) {
-                                in.readFully(buf, 0, lengthLib);
-                                statConfig.setSelectLibrary(new String(buf, 0, lengthLib - 1, "ASCII"));
-                            }
-                            if (lengthClass > 0) {
-                                in.readFully(buf, 0, lengthClass);
-                                statConfig.setSelectClass(new String(buf, 0, lengthClass - 1, "ASCII"));
-                            }
 
-                            in.readFully(buf, 0, lengthName);
-                            String name = new String(buf, 0, lengthName - 1, "ASCII");
+        /**
+         * Constructor.
+         * @param parent connection which reads the requests and sends the replies
+         */
+        RequestLane(ClientThread parent) {
+            super(parent);
+            this.parent = parent;
+            buffer = new byte[65535];
+            params = new byte[32 + 4 * EtConstants.stationSelectInts];
+            in     = new DataInputStream(commandInput);
+            out    = new DataOutputStream(reply);
+        }
 
-                            try {
-                                stat = sys.createStation(statConfig, name, position, parallelPosition);
-                            }
-                            catch (EtTooManyException ex) {
-                                err = EtConstants.errorTooMany;
-                            }
-                            catch (EtExistsException ex) {
-                                err = EtConstants.errorExists;
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
 
-                            out.writeInt(err);
-                            if (err != ok) {
-                                out.writeInt(0);
-                            }
-                            else {
-                                out.writeInt(stat.getStationId());
-                            }
-                            out.flush();
-                        }
-                        break;
+        /**
+         * Get an array big enough to hold the next request.
+         * @param size number of bytes in the request
+         * @return array to read the request into
+         */
+        byte[] request(int size) {
+            if (request.length < size || request.length > replySizeMax) {
+                request = new byte[size];
+            }
+            return request;
+        }
 
 
-                        case EtConstants.netStatRm: {
-                            int err = ok;
-                            int statId = in.readInt();
+        /**
+         * Carry out the request which has been read into the array.
+         * @param tag    tag of the request
+         * @param length number of bytes in the request
+         */
+        synchronized void carryOut(int tag, int length) {
+            this.tag    = tag;
+            this.length = length;
+            notifyAll();
+        }
 
-                            try {
-                                sys.removeStation(statId);
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
 
-                            out.writeInt(err);
-                            out.flush();
-                        }
-                        break;
+        /** Wait for the next request. */
+        void idle() {
+            synchronized (parent.idleLanes) {
+                parent.idleLanes.add(this);
+                parent.idleLanes.notify();
+            }
+        }
 
-                        case EtConstants.netStatSPos: {
-                            int err = ok;
-                            int statId = in.readInt();
-                            int position = in.readInt();
-                            int pposition = in.readInt();
 
+        /** Carry out requests until the user's connection is closed. */
+        public void run() {
+            try {
+                while (true) {
+                    synchronized (this) {
+                        while (length == 0 && !parent.closed) {
                             try {
-                                sys.setStationPosition(statId, position, pposition);
+                                wait();
                             }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
+                            catch (InterruptedException ex) {
+                                return;
                             }
-
-                            out.writeInt(err);
-                            out.flush();
                         }
-                        break;
-
-
-                        case EtConstants.netStatGPos: {
-                            int position = -1, pPosition = 0;
-                            int err = ok;
-                            int statId = in.readInt();
-
-                            try {
-                                position  = sys.getStationPosition(statId);
-                                pPosition = sys.getStationParallelPosition(statId);
-                            }
-                            catch (EtException ex) {
-                                err = EtConstants.error;
-                            }
-
-                            out.writeInt(err);
-                            out.writeInt(position);
-                            out.writeInt(pPosition);
-                            out.flush();
+                        if (parent.closed) {
+                            return;
                         }
-                        break;
-
-
-                        case EtConstants.netStatIsAt: {
-                            int attached; // not attached by default
-                            int statId = in.readInt();
-                            int attId = in.readInt();
+                    }
 
-                            try {
-                                attached = sys.stationAttached(statId, attId) ? 1 : 0;
-                            }
-                            catch (EtException ex) {
-                                attached = EtConstants.error;
-                            }
+                    commandInput.set(request, 0, length);
+                    processCommand(in.readInt());
+                    sendReply(tag);
 
-                            out.writeInt(attached);
-                            out.flush();
-                        }
-                        break;
+                    synchronized (this) {
+                        length = 0;
+                    }
+                    idle();
+                }
+            }
+            catch (EtReadException ex) {
+            }
+            catch (EtException ex) {
+            }
+            catch (IOException ex) {
+            }
 
+            // The request broke protocol or the reply could not be sent.
+            // Closing the connection ends the ClientThread, which detaches
+            // all attachments.
+            if (!parent.closed && config.getDebug() >= EtConstants.debugError) {
+                java.lang.System.out.println("RequestLane: remote client connection broken");
+            }
+            parent.close();
+        }
 
-                        case EtConstants.netStatEx: {
-                            boolean exists = true;
-                            int statId = 0;
-                            int length = in.readInt();
-                            byte[] buf = new byte[length];
-                            in.readFully(buf, 0, length);
-                            String name = new String(buf, 0, length - 1, "ASCII");
 
-                            // in equivalent "C" function, station id is also returned
-                            try {
-                                statId = sys.stationNameToObject(name).getStationId();
-                            }
-                            catch (EtException ex) {
-                                exists = false;
-                            }
+        /**
+         * Send what has been written to the reply, if anything (wake ups have no reply).
+         * @param replyTag tag preceding the reply
+         * @throws IOException if writing to the socket fails
+         */
+        private void sendReply(int replyTag) throws IOException {
+            if (reply.size() > 0) {
+                parent.sendReply(replyTag, reply.array(), reply.size());
+            }
+            if (reply.array().length > replySizeMax) {
+                reply = new ReplyOutput();
+                out = new DataOutputStream(reply);
+            }
+            else {
+                reply.reset();
+            }
+        }
 
-                            out.writeInt(exists ? 1 : 0);
-                            out.writeInt(statId);
-                            out.flush();
-                        }
-                        break;
 
+        /**
+         * Push events in a loop until the user unsubscribes or the connection
+         * is closed, which keeps this thread from carrying out other requests
+         * until then. {@inheritDoc}
+         */
+        void subscribe(AttachmentLocal att, int tag, Modify modify, int maxEvents, long maxBytes)
+                throws IOException {
+
+            Subscription sub = null;
+            if (att != null && modify != null && modify != Modify.NOTHING &&
+                maxEvents > 0 && maxBytes > 0) {
+                sub = new Subscription(tag, modify, maxEvents, maxBytes, config.getNumEvents());
+                if (parent.subscriptions.putIfAbsent(att.getId(), sub) != null) {
+                    sub = null;
+                }
+            }
 
-                        case EtConstants.netStatSSw: {
-                            StationLocal stat = null;
-                            int[] select = new int[selectInts];
-                            int statId = in.readInt();
+            if (sub == null) {
+                out.writeInt(EtConstants.error);
+                out.flush();
+                return;
+            }
 
-                            for (int i = 0; i < selectInts; i++) {
-                                select[i] = in.readInt();
-                            }
+            // Pushes follow one another without the user sending anything in
+            // between, so don't let them wait for acknowledgements.
+            parent.sock.setTcpNoDelay(true);
 
-                            try {
-                                stat = sys.stationIdToObject(statId);
-                            }
-                            catch (EtException ex) {
-                            }
-
-                            if (stat != null) {
-                                stat.setSelectWords(select);
-                                out.writeInt(ok);
-                            }
-                            else {
-                                out.writeInt(EtConstants.error);
-                            }
-                            out.flush();
-                        }
-                        break;
+            // the user must know it's subscribed before events are pushed
+            out.writeInt(EtConstants.ok);
+            sendReply(this.tag);
 
+            try {
+                push(att, sub);
+            }
+            finally {
+                parent.subscriptions.remove(att.getId());
+                sub.finished();
+            }
+        }
 
-                        case EtConstants.netStatGSw: {
-                            int statId = in.readInt();
-                            StationLocal stat = null;
 
-                            try {
-                                stat = sys.stationIdToObject(statId);
-                            }
-                            catch (EtException ex) {
-                            }
+        /**
+         * Push the attachment's events to the user as they arrive while it has
+         * room for them, each push preceded by the subscription's tag and laid out
+         * like the reply to {@link EtConstants#netEvsGet}. Being woken up is pushed
+         * as {@link EtConstants#errorWakeUp}. Events are waited for 0.2 seconds at
+         * a time to see whether to stop.
+         *
+         * @param att attachment whose events are pushed
+         * @param sub what the user subscribed to
+         * @throws IOException if writing to the socket fails
+         */
+        private void push(AttachmentLocal att, Subscription sub) throws IOException {
+            int count, err;
+            EtEventImpl[] evs = null;
+
+            while (!parent.closed) {
+                try {
+                    count = sub.awaitCredit(200);
+                }
+                catch (InterruptedException ex) {
+                    return;
+                }
+                if (!sub.isActive()) {
+                    return;
+                }
+                if (count < 1) {
+                    continue;
+                }
 
-                            if (stat != null) {
-                                out.writeInt(ok);
-                                int[] select = stat.getConfig().getSelect();
-                                for (int i = 0; i < selectInts; i++) {
-                                    out.writeInt(select[i]);
-                                }
-                            }
-                            else {
-                                out.writeInt(EtConstants.error);
-                            }
-                            out.flush();
-                        }
-                        break;
+                err = EtConstants.ok;
+                try {
+                    // If we've been told to wake up, do so.
+                    if (att.isWakeUp()) {
+                        att.setWakeUp(false);
+                        throw new EtWakeUpException("attachment " + att.getId() + " woken up");
+                    }
+                    evs = callSystem(EtConstants.netEvsGet, att, EtConstants.timed, 200000, count, 0, 0);
+                }
+                catch (EtTimeoutException ex) {
+                    continue;
+                }
+                catch (EtWakeUpException ex) {
+                    if (!sub.isActive()) {
+                        return;
+                    }
+                    err = EtConstants.errorWakeUp;
+                }
+                catch (EtBusyException ex) {
+                    err = EtConstants.error;
+                }
+                catch (EtEmptyException ex) {
+                    err = EtConstants.error;
+                }
+                catch (EtException ex) {
+                    err = EtConstants.error;
+                }
 
+                if (err != EtConstants.ok) {
+                    out.writeInt(err);
+                    sendReply(sub.tag);
+                    // the attachment can't be used any more (detached)
+                    if (err == EtConstants.error) {
+                        return;
+                    }
+                    continue;
+                }
 
-                        case EtConstants.netStatFunc:
-                        case EtConstants.netStatLib:
-                        case EtConstants.netStatClass: {
-                            int statId = in.readInt();
-                            StationLocal stat;
+                sub.charge(evs);
+                writeEvents(evs, sub.modify);
+                sendReply(sub.tag);
+                evs = null;
+            }
+        }
 
-                            try {
-                                stat = sys.stationIdToObject(statId);
-                                String returnString;
-                                if (command == EtConstants.netStatFunc) {
-                                    returnString = stat.getConfig().getSelectFunction();
-                                }
-                                else if (command == EtConstants.netStatLib) {
-                                    returnString = stat.getConfig().getSelectLibrary();
-                                }
-                                else {
-                                    returnString = stat.getConfig().getSelectClass();
-                                }
-
-                                if (returnString == null) {
-                                    out.writeInt(EtConstants.error);
-                                    out.writeInt(0);
-                                }
-                                else {
-                                    out.writeInt(ok);
-                                    out.writeInt(returnString.length() + 1);
-                                    try {
-                                        out.write(returnString.getBytes("ASCII"));
-                                    }
-                                    catch (UnsupportedEncodingException ex) {
-                                    }
-                                    out.writeByte(0); // C null terminator
-                                }
-                            }
-                            catch (EtException ex) {
-                                out.writeInt(EtConstants.error);
-                                out.writeInt(-1);
-                            }
 
-                            out.flush();
+        /** {@inheritDoc} */
+        void unsubscribe(AttachmentLocal att) throws IOException {
+            Subscription sub = (att == null) ? null : parent.subscriptions.get(att.getId());
+            if (sub == null) {
+                out.writeInt(EtConstants.error);
+                out.flush();
+                return;
+            }
 
-                        }
-                        break;
+            // stop pushing, waking the pushing thread if it's waiting for events
+            sub.stop();
+            att.getStation().getInputList().wakeUp(att);
+            try {
+                sub.awaitFinished();
+            }
+            catch (InterruptedException ex) {
+                throw new InterruptedIOException("interrupted while unsubscribing");
+            }
 
+            // all pushes have now been sent ahead of this reply
+            out.writeInt(EtConstants.ok);
+            out.flush();
+        }
 
-                        default :
-                            ;
-                    } // switch(command)
-                }   // if (command < Constants.netStatGAtts)
 
-                // the following commands get values associated with stations
-                else if (command < EtConstants.netStatSBlock) {
-                    int val = 0;
-                    int statId = in.readInt();
+        /** {@inheritDoc} */
+        void returned(AttachmentLocal att, EtEventImpl[] evs) {
+            if (att == null) return;
+            Subscription sub = parent.subscriptions.get(att.getId());
+            if (sub != null) {
+                sub.returned(evs);
+            }
+        }
 
-                    StationLocal stat = null;
-                    try {
-                        stat = sys.stationIdToObject(statId);
-                    }
-                    catch (EtException ex) {
-                    }
 
-                    if (stat == null) {
-                        out.writeInt(EtConstants.error);
-                    }
-                    else {
-                        if (command == EtConstants.netStatGAtts) {
-                            synchronized (sys.getStationLock()) {
-                                val = stat.getAttachments().size();
-                            }
-                        }
-                        else if (command == EtConstants.netStatStatus)
-                            val = stat.getStatus();
-                        else if (command == EtConstants.netStatInCnt) {
-                            synchronized (stat.getInputList()) {
-                                val = stat.getInputList().getEvents().size();
-                            }
-                        }
-                        else if (command == EtConstants.netStatOutCnt) {
-                            synchronized (stat.getOutputList()) {
-                                val = stat.getOutputList().getEvents().size();
-                            }
-                        }
-                        else if (command == EtConstants.netStatGBlock)
-                            val = stat.getConfig().getBlockMode();
-                        else if (command == EtConstants.netStatGUser)
-                            val = stat.getConfig().getUserMode();
-                        else if (command == EtConstants.netStatGRestore)
-                            val = stat.getConfig().getRestoreMode();
-                        else if (command == EtConstants.netStatGPre)
-                            val = stat.getConfig().getPrescale();
-                        else if (command == EtConstants.netStatGCue)
-                            val = stat.getConfig().getCue();
-                        else if (command == EtConstants.netStatGSelect)
-                            val = stat.getConfig().getSelectMode();
-                        else {
-                            if (config.getDebug() >= EtConstants.debugError) {
-                                java.lang.System.out.println("commandLoop: bad command value");
-                            }
-                            throw new EtReadException("bad command value");
-                        }
-                        out.writeInt(ok);
-                    }
-                    out.writeInt(val);
-                    out.flush();
+        /**
+         * Add the bytes to the reply, which is sent once complete.
+         * {@inheritDoc}
+         */
+        void write(ByteBuffer[] buffers, int length) throws IOException {
+            int bytes;
+            for (int i=0; i < length; i++) {
+                ByteBuffer buf = buffers[i];
+                if (buf.hasArray()) {
+                    out.write(buf.array(), buf.arrayOffset() + buf.position(), buf.remaining());
+                    buf.position(buf.limit());
+                    continue;
                 }
-
-                // the following commands set values associated with stations
-                else if (command < EtConstants.netAttPut) {
-                    int statId = in.readInt();
-                    int val = in.readInt();
-
-                    StationLocal stat = null;
-                    try {
-                        stat = sys.stationIdToObject(statId);
-                    }
-                    catch (EtException ex) {
-                    }
-
-                    if (stat == null) {
-                        out.writeInt(EtConstants.error);
-                    }
-                    else {
-                        if (command == EtConstants.netStatSBlock)
-                            stat.setBlockMode(val);
-                        else if (command == EtConstants.netStatSUser)
-                            stat.setUserMode(val);
-                        else if (command == EtConstants.netStatSRestore)
-                            stat.setRestoreMode(val);
-                        else if (command == EtConstants.netStatSPre)
-                            stat.setPrescale(val);
-                        else if (command == EtConstants.netStatSCue)
-                            stat.setCue(val);
-                        else {
-                            if (config.getDebug() >= EtConstants.debugError) {
-                                java.lang.System.out.println("commandLoop: bad command value");
-                            }
-                            throw new EtReadException("bad command value");
-                        }
-                        out.writeInt(ok);
-                    }
-                    out.flush();
+                while (buf.hasRemaining()) {
+                    bytes = Math.min(buf.remaining(), buffer.length);
+                    buf.get(buffer, 0, bytes);
+                    out.write(buffer, 0, bytes);
                 }
+            }
+        }
 
-                // the following commands get values associated with attachments
-                else if (command < EtConstants.netSysTmp) {
-                    int attId = in.readInt();
-                    // look locally for attachments
-                    AttachmentLocal att = attachments.get(new Integer(attId));
-                    if (att == null) {
-                        out.writeInt(EtConstants.error);
-                        out.writeLong(0);
-                    }
-                    else {
-                        out.writeInt(ok);
-                        if (command == EtConstants.netAttPut)
-                            out.writeLong(att.getEventsPut());
-                        else if (command == EtConstants.netAttGet)
-                            out.writeLong(att.getEventsGet());
-                        else if (command == EtConstants.netAttDump)
-                            out.writeLong(att.getEventsDump());
-                        else if (command == EtConstants.netAttMake)
-                            out.writeLong(att.getEventsMake());
-                    }
-                    out.flush();
-                }
 
-                // the following commands get values associated with the system
-                else if (command <= EtConstants.netSysGrp) {
-                    int val;
-
-                    if (command == EtConstants.netSysTmp)
-                        val = 0; // no temps (or all temps) by definition
-                    else if (command == EtConstants.netSysTmpMax)
-                        val = 0; // no max # of temps
-                    else if (command == EtConstants.netSysStat) {
-                        synchronized (sys.getStationLock()) {
-                            val = sys.getStations().size(); // # stations active or idle
-                        }
-                    }
-                    else if (command == EtConstants.netSysStatMax)
-                        val = sys.getConfig().getStationsMax(); // max # stations allowed
-                    else if (command == EtConstants.netSysProc)
-                        val = 0; // no processes since no shared memory
-                    else if (command == EtConstants.netSysProcMax)
-                        val = 0; // no max # of processes since no shared memory
-                    else if (command == EtConstants.netSysAtt) {
-                        synchronized (sys.getSystemLock()) {
-                            val = sys.getAttachments().size(); // # attachments
-                        }
-                    }
-                    else if (command == EtConstants.netSysAttMax)
-                        val = sys.getConfig().getAttachmentsMax(); // max # attachments allowed
-                    else if (command == EtConstants.netSysHBeat)
-                        val = 0; // no heartbeat since no shared mem
-                    else if (command == EtConstants.netSysPid) {
-                        val = -1; // no pids in Java
-                    }
-                    else if (command == EtConstants.netSysGrp) {
-                        val = sys.getConfig().getGroups().length; // number of groups
-                    }
-                    else {
-                        if (config.getDebug() >= EtConstants.debugError) {
-                            java.lang.System.out.println("commandLoop: bad command value");
-                        }
-                        throw new EtReadException("bad command value");
-                    }
+        /**
+         * Only the ClientThread reads from the socket, so just see
+         * whether it found the connection closed.
+         * {@inheritDoc}
+         */
+        void checkConnection() throws IOException {
+            if (parent.closed) {
+                throw new IOException("connection closed");
+            }
+        }
+    }
 
-                    out.writeInt(ok);
-                    out.writeInt(val);
-                    out.flush();
-                }
 
+    /**  Wait for and implement commands from the user. */
+    private void commandLoop() {
 
-                else if (command <= EtConstants.netSysGrps) {
-                    // command to distribute data about this ET system over the network
-                    if (command == EtConstants.netSysData) {
-                        // allow only 1 thread at a time a crack at updating information
-                        synchronized (sys.getInfoArray()) {
-                            int err = sys.gatherSystemData();
-                            out.writeInt(err);
-                            if (err == ok) {
-                                // Send data + int holding data size
-                                out.write(sys.getInfoArray(), 0, sys.getDataLength() + 4);
-                            }
-                        }
-                        out.flush();
-                    }
+        int command;
 
-                    // send histogram data
-                    else if (command == EtConstants.netSysHist) {
-                        // not supported under Java (yet)
-                        out.writeInt(EtConstants.error);
-                        out.flush();
+        // The Command Loop ...
+        try {
+            while (true) {
+                // First, read the remote command. Remember, the
+                // socket has a read timeout of 1/2 second.
+                while (true) {
+                    try {
+                        command = in.readInt();
+                        break;
                     }
-
-                    // send group data
-                    else if (command == EtConstants.netSysGrps) {
-                        // send number of groups to follow
-                        int[] groups = sys.getConfig().getGroups();
-                        out.writeInt(groups.length);
-
-                        // send number in each group
-                        for (int j : groups) {
-                            out.writeInt(j);
+                    // socket read timeout
+                    catch (InterruptedIOException ex) {
+                        // check to see if we've been commanded to die
+                        if (sys.killAllThreads()) {
+                            return;
                         }
-                        out.flush();
                     }
                 }
 
-                else {
-                    if (config.getDebug() >= EtConstants.debugError) {
-                        java.lang.System.out.println("commandLoop: bad command value");
-                    }
-                    throw new EtReadException("bad command value");
+                if (processCommand(command) == commandClose) {
+                    return;
                 }
-
             } // while(true)
         }  // try
 
@@ -1842,11 +1177,7 @@ class ClientThread extends Thread {
         // The client has crashed, therefore we must detach all
         // attachments or risked stopping the ET java.lang.System. The client
         // will not be asking for or processing any more events.
-
-        for (Entry<Integer, AttachmentLocal> entry : attachments.entrySet()) {
-            //System.out.println("Detaching from attachment key = " + entry.getKey());
-            sys.detach(entry.getValue());
-        }
+        detachAll();
 
         if (config.getDebug() >= EtConstants.debugError) {
             java.lang.System.out.println("commandLoop: remote client connection broken");
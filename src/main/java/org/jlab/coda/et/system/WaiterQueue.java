@@ -0,0 +1,127 @@
+/*----------------------------------------------------------------------------*
+ *  Copyright (c) 2001        Southeastern Universities Research Association, *
+ *                            Thomas Jefferson National Accelerator Facility  *
+ *                                                                            *
+ *    This software was developed under a United States Government license    *
+ *    described in the NOTICE file included as part of this distribution.     *
+ *                                                                            *
+ *    Author:  Carl Timmer                                                    *
+ *             timmer@jlab.org                   Jefferson Lab, MS-12B3       *
+ *             Phone: (757) 269-5130             12000 Jefferson Ave.         *
+ *             Fax:   (757) 269-6248             Newport News, VA 23606       *
+ *                                                                            *
+ *----------------------------------------------------------------------------*/
+
+package org.jlab.coda.et.system;
+
+/**
+ * This class is a first-in-first-out queue of threads waiting for events in an
+ * {@link EventList}. The waiters themselves are the links of the queue so
+ * adding and removing them allocates nothing. It is not synchronized; the
+ * owning EventList protects it with its own lock.
+ *
+ * @author Carl Timmer
+ */
+
+class WaiterQueue {
+
+    /** First waiter in the queue. */
+    private EventWaiter head;
+
+    /** Last waiter in the queue. */
+    private EventWaiter tail;
+
+    /** Number of waiters in the queue only interested in events of a particular group. */
+    private int groupedCount;
+
+    /** Number of waiters in the queue whose attachments steal from sibling stations.
+     *  Volatile so conductors can look at it without locking the list. */
+    private volatile int stealingCount;
+
+
+    /**
+     * Is this queue empty?
+     * @return true if no one is waiting
+     */
+    boolean isEmpty() {
+        return head == null;
+    }
+
+    /**
+     * Add a waiter to the end of the queue.
+     * @param w waiter to add
+     */
+    void add(EventWaiter w) {
+        w.prev = tail;
+        w.next = null;
+        if (tail == null) head = w;
+        else tail.next = w;
+        tail = w;
+        w.queued = true;
+        if (w.grouped) groupedCount++;
+        if (w.stealing) stealingCount++;
+    }
+
+    /**
+     * Remove a waiter from the queue if it's in it.
+     * @param w waiter to remove
+     */
+    void remove(EventWaiter w) {
+        if (!w.queued) return;
+        if (w.prev == null) head = w.next;
+        else w.prev.next = w.next;
+        if (w.next == null) tail = w.prev;
+        else w.next.prev = w.prev;
+        w.prev = w.next = null;
+        w.queued = false;
+        if (w.grouped) groupedCount--;
+        if (w.stealing) stealingCount--;
+    }
+
+    /**
+     * Tell the first waiter not yet told, which is not only interested in a
+     * particular group, that events have arrived. Waiters for a particular group
+     * are all told since any one of them may want the new events.
+     */
+    void signalFirst() {
+        boolean found = false;
+        for (EventWaiter w = head; w != null; w = w.next) {
+            if (w.grouped) {
+                w.signal();
+            }
+            else if (!found && !w.isSignaled()) {
+                w.signal();
+                found = true;
+                if (groupedCount == 0) return;
+            }
+        }
+    }
+
+    /**
+     * Are any of the waiters in the queue attachments which steal from sibling stations?
+     * May be called without holding the lock of the owning list.
+     * @return true if a waiter steals from sibling stations
+     */
+    boolean hasStealing() {
+        return stealingCount > 0;
+    }
+
+    /**
+     * Tell all waiters whose attachments steal from sibling stations that
+     * events have arrived in a sibling's input list.
+     */
+    void signalStealing() {
+        for (EventWaiter w = head; w != null; w = w.next) {
+            if (w.stealing) {
+                w.signal();
+            }
+        }
+    }
+
+    /** Unpark all waiters so they can check whether they've been woken up. */
+    void unparkAll() {
+        for (EventWaiter w = head; w != null; w = w.next) {
+            w.unpark();
+        }
+    }
+}
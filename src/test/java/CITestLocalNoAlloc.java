@@ -0,0 +1,149 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Runs a Java ET system in this process with a producer at GRAND_CENTRAL and a
+ * consumer at a station of its own. The producer uses the array-filling newEvents
+ * and putEvents calls while the consumer uses an EtContainer. After warming up,
+ * object allocations are recorded with JFR for a few seconds (set with -sec).
+ * Any allocation made by the producer or consumer thread fails the test.
+ */
+public class CITestLocalNoAlloc {
+
+    static volatile long producerCycles, consumerCycles;
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        int seconds = 3;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+        }
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(1000);
+            config.setEventSize(128);
+            config.setServerPort(EtConstants.serverPort + 8);
+            config.setUdpPort(EtConstants.udpPort + 8);
+            final SystemCreate sys = new SystemCreate("/tmp/et_ci_noalloctest", config);
+
+            EtStationConfig sConfig = new EtStationConfig();
+            StationLocal consumerStation = sys.createStation(sConfig, "consumer_station");
+            final AttachmentLocal consumerAtt = sys.attach(consumerStation.getStationId());
+            final AttachmentLocal producerAtt = sys.attach(0);
+
+            Thread producer = new Thread() {
+                public void run() {
+                    EtEventImpl[] evs = new EtEventImpl[50];
+                    try {
+                        while (true) {
+                            int count = sys.newEvents(producerAtt, EtConstants.sleep, 0, evs, 0, evs.length, 64);
+                            for (int i=0; i < count; i++) {
+                                evs[i].setLength(4);
+                            }
+                            sys.putEvents(producerAtt, evs, 0, count);
+                            producerCycles++;
+                        }
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+
+            Thread consumer = new Thread() {
+                public void run() {
+                    try {
+                        EtContainer container = new EtContainer(50, 128);
+                        while (true) {
+                            container.getEvents(consumerAtt, EtConstants.sleep, 0, 50);
+                            sys.getEvents(container);
+                            container.putEvents(consumerAtt);
+                            sys.putEvents(container);
+                            consumerCycles++;
+                        }
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+
+            producer.setDaemon(true);
+            consumer.setDaemon(true);
+            producer.start();
+            consumer.start();
+
+            // warm up so classes are loaded and code is compiled
+            Thread.sleep(2000);
+
+            Recording recording = new Recording();
+            recording.enable("jdk.ObjectAllocationInNewTLAB").withStackTrace();
+            recording.enable("jdk.ObjectAllocationOutsideTLAB").withStackTrace();
+            recording.start();
+            long startProduced = producerCycles, startConsumed = consumerCycles;
+
+            Thread.sleep(1000L * seconds);
+
+            recording.stop();
+            long produced = producerCycles - startProduced;
+            long consumed = consumerCycles - startConsumed;
+
+            Path file = Files.createTempFile("et_ci_noalloc", ".jfr");
+            recording.dump(file);
+            recording.close();
+
+            long producerId = producer.getId(), consumerId = consumer.getId();
+            int allocations = 0;
+            for (RecordedEvent ev : RecordingFile.readAllEvents(file)) {
+                RecordedThread thread = ev.getThread();
+                if (thread == null) continue;
+                if (thread.getJavaThreadId() != producerId &&
+                    thread.getJavaThreadId() != consumerId) continue;
+
+                allocations++;
+                System.err.println("Allocation of " + ev.getClass("objectClass").getName() +
+                                   " in thread " + thread.getJavaName());
+                if (ev.getStackTrace() != null) {
+                    for (RecordedFrame frame : ev.getStackTrace().getFrames()) {
+                        System.err.println("    at " + frame.getMethod().getType().getName() +
+                                           "." + frame.getMethod().getName() +
+                                           " line " + frame.getLineNumber());
+                    }
+                }
+            }
+            Files.delete(file);
+
+            System.out.println("NoAlloc: " + produced + " producer cycles, " + consumed +
+                               " consumer cycles, " + allocations + " allocations");
+
+            if (produced < 1 || consumed < 1) {
+                System.err.println("ERROR: events did not flow");
+                System.exit(1);
+            }
+            if (allocations > 0) {
+                System.err.println("ERROR: local get/put cycle allocated memory");
+                System.exit(1);
+            }
+            System.out.println("NoAlloc: no allocations in steady state");
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
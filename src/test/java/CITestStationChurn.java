@@ -0,0 +1,222 @@
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.system.AttachmentLocal;
+import org.jlab.coda.et.system.StationLocal;
+import org.jlab.coda.et.system.SystemConfig;
+import org.jlab.coda.et.system.SystemCreate;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Runs a Java ET system in this process with a producer at GRAND_CENTRAL and a
+ * consumer at a station of its own. While events flow, another thread continuously
+ * creates, attaches to, detaches from, moves and removes monitoring stations in the
+ * middle of the chain. The consumer records the longest time it went without
+ * receiving events.<p>
+ *
+ * At the end of the chain sits a station whose select method takes 200 millisec for
+ * one marked event every half second, holding up the consumer station's conductor.
+ * Since there are plenty of events, that alone never keeps the consumer waiting.
+ * But if station changes stopped event transfer, each would first wait for that
+ * conductor's batch to be routed while already holding up GRAND_CENTRAL's conductor,
+ * starving the consumer. Any gap longer than the allowed pause
+ * (default 100 millisec, set with -pause &lt;ms&gt;) fails the test.<p>
+ *
+ * Detaching from and removing a station must still wait for that batch, but
+ * asleep and without holding up others looking up stations meanwhile. A lookup
+ * taking longer than the allowed pause fails the test, as does the churning
+ * thread using more than half the cpu time of its long waits.
+ */
+public class CITestStationChurn {
+
+    /** Takes 200 millisec to judge an event marked by its first control word, rejecting all. */
+    public static class SlowSelect implements EtEventSelectable {
+        public boolean select(SystemCreate sys, StationLocal st, EtEvent ev) {
+            if (ev.getControl()[0] == 1) {
+                try {Thread.sleep(200);}
+                catch (InterruptedException e) {}
+            }
+            return false;
+        }
+    }
+
+    public static void main(String[] args) {
+
+        // Parse arg(s)
+        long allowedPause = 100L;
+        int seconds = 5;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equalsIgnoreCase("-pause")) allowedPause = Long.parseLong(args[++i]);
+            else if (args[i].equalsIgnoreCase("-sec")) seconds = Integer.parseInt(args[++i]);
+        }
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(10000);
+            config.setEventSize(128);
+            config.setStationsMax(50);
+            config.setServerPort(EtConstants.serverPort + 7);
+            config.setUdpPort(EtConstants.udpPort + 7);
+            final SystemCreate sys = new SystemCreate("/tmp/et_ci_churntest", config);
+
+            // Consumer station stays at the front of the chain
+            EtStationConfig sConfig = new EtStationConfig();
+            StationLocal consumerStation = sys.createStation(sConfig, "consumer_station");
+            final AttachmentLocal consumerAtt = sys.attach(consumerStation.getStationId());
+            final AttachmentLocal producerAtt = sys.attach(0);
+
+            // Slow station stays at the end of the chain
+            EtStationConfig slowConfig = new EtStationConfig();
+            slowConfig.setBlockMode(EtConstants.stationNonBlocking);
+            slowConfig.setSelectMode(EtConstants.stationSelectUser);
+            slowConfig.setSelectClass(SlowSelect.class.getName());
+            StationLocal slowStation = sys.createStation(slowConfig, "slow_station");
+            AttachmentLocal slowAtt = sys.attach(slowStation.getStationId());
+
+            final long[] eventsConsumed = new long[1];
+            final long[] maxLookupNanos = new long[1];
+            final long[] maxGapNanos = new long[1];
+            final long[] pauses = new long[1];
+            final long allowedPauseNanos = allowedPause * 1000000L;
+            final long endTime = System.currentTimeMillis() + 1000L * seconds;
+
+            // About 20k events/sec, 1 marked every half second
+            Thread producer = new Thread() {
+                public void run() {
+                    int[] control = new int[EtConstants.stationSelectInts];
+                    long nextMark = System.currentTimeMillis();
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            EtEventImpl[] evs = sys.newEvents(producerAtt, EtConstants.sleep, 0, 20, 64);
+                            for (EtEventImpl ev : evs) {
+                                ev.setLength(4);
+                                control[0] = 0;
+                                if (System.currentTimeMillis() >= nextMark) {
+                                    control[0] = 1;
+                                    nextMark += 500L;
+                                }
+                                ev.setControl(control);
+                            }
+                            sys.putEvents(producerAtt, evs);
+                            Thread.sleep(1);
+                        }
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+
+            Thread consumer = new Thread() {
+                public void run() {
+                    long last = System.nanoTime(), now;
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            try {
+                                EtEventImpl[] evs = sys.getEvents(consumerAtt, EtConstants.timed, 100000, 20);
+                                eventsConsumed[0] += evs.length;
+                                sys.putEvents(consumerAtt, evs);
+                            }
+                            catch (EtTimeoutException e) {
+                                continue;
+                            }
+
+                            // time between receiving events
+                            now = System.nanoTime();
+                            if (now - last > maxGapNanos[0]) maxGapNanos[0] = now - last;
+                            if (now - last > allowedPauseNanos) pauses[0]++;
+                            last = now;
+                        }
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+
+            // looks up a station over and over, which needs the station lock
+            Thread looker = new Thread() {
+                public void run() {
+                    long start, took;
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            start = System.nanoTime();
+                            sys.stationNameToObject("consumer_station");
+                            took = System.nanoTime() - start;
+                            if (took > maxLookupNanos[0]) maxLookupNanos[0] = took;
+                            Thread.sleep(1);
+                        }
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+
+            producer.start();
+            consumer.start();
+            looker.start();
+
+            // Churn monitoring stations next to the slow station
+            int changes = 0, n = 0;
+            ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+            long waitWall = 0L, waitCpu = 0L, wall, cpu;
+            EtStationConfig monConfig = new EtStationConfig();
+            monConfig.setBlockMode(EtConstants.stationNonBlocking);
+            monConfig.setCue(10);
+            while (System.currentTimeMillis() < endTime) {
+                StationLocal mon = sys.createStation(monConfig, "monitor" + (n++ % 10), 2, EtConstants.end);
+                AttachmentLocal monAtt = sys.attach(mon.getStationId());
+                sys.setStationPosition(mon.getStationId(), 3, EtConstants.end);
+                wall = System.nanoTime();
+                cpu  = threads.getCurrentThreadCpuTime();
+                sys.detach(monAtt);
+                sys.removeStation(mon.getStationId());
+                // count only changes which waited for the slow station's batch
+                wall = System.nanoTime() - wall;
+                if (wall > 50000000L) {
+                    waitWall += wall;
+                    waitCpu  += threads.getCurrentThreadCpuTime() - cpu;
+                }
+                changes += 5;
+                // leave the single cpu of a CI runner to the producer and consumer now and then
+                Thread.sleep(1);
+            }
+
+            producer.join();
+            consumer.join();
+            looker.join();
+            sys.detach(slowAtt);
+            sys.shutdown();
+
+            System.out.println("Churn: " + changes + " station changes, " + eventsConsumed[0] +
+                               " events consumed, longest gap = " + (maxGapNanos[0] / 1000) + " microsec");
+            System.out.println("Churn: longest station lookup = " + (maxLookupNanos[0] / 1000) +
+                               " microsec, long waits took " + (waitCpu / 1000000L) + " of " +
+                               (waitWall / 1000000L) + " millisec in cpu time");
+
+            if (eventsConsumed[0] < 1 || pauses[0] > 0) {
+                System.err.println("ERROR: event transfer paused " + pauses[0] + " times for more than " +
+                                   allowedPause + " millisec");
+                System.exit(1);
+            }
+            if (maxLookupNanos[0] > allowedPauseNanos) {
+                System.err.println("ERROR: station lookup held up for " + (maxLookupNanos[0] / 1000000L) +
+                                   " millisec while waiting for conductors");
+                System.exit(1);
+            }
+            if (waitCpu > waitWall / 2) {
+                System.err.println("ERROR: waiting for conductors used " + (waitCpu / 1000000L) + " of " +
+                                   (waitWall / 1000000L) + " millisec in cpu time");
+                System.exit(1);
+            }
+            System.out.println("Churn: no transfer pauses");
+            System.exit(0);
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
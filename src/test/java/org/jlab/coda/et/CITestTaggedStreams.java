@@ -0,0 +1,136 @@
+package org.jlab.coda.et;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that threads sharing one connection with tagged requests never mix up each
+ * other's bytes. Each thread must have streams of its own. Then several threads send
+ * requests of ints, longs, doubles and strings through tagged streams to a server in
+ * this process which sends each one back, and every thread must read back exactly what
+ * it wrote, request after request. CITestTaggedProducers does the same through an
+ * ET system.
+ */
+public class CITestTaggedStreams {
+
+    static boolean ok = true;
+
+    static void check(boolean pass, String what) {
+        System.out.println((pass ? "TaggedStreams: ok   " : "TaggedStreams: FAIL ") + what);
+        if (!pass) ok = false;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            final int threadCount = 8, frames = 5000;
+
+            // a server sending each request back as its reply
+            final ServerSocket server = new ServerSocket(0);
+            Thread echo = new Thread() {
+                public void run() {
+                    try {
+                        Socket sock = server.accept();
+                        DataInputStream in = new DataInputStream(new BufferedInputStream(sock.getInputStream()));
+                        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(sock.getOutputStream()));
+                        byte[] b = new byte[1024];
+                        while (true) {
+                            int tag = in.readInt(), length = in.readInt();
+                            if (length > b.length) b = new byte[length];
+                            in.readFully(b, 0, length);
+                            out.writeInt(tag);
+                            out.writeInt(length);
+                            out.write(b, 0, length);
+                            if (in.available() < 1) out.flush();
+                        }
+                    }
+                    catch (IOException e) {
+                        // connection closed
+                    }
+                }
+            };
+            echo.setDaemon(true);
+            echo.start();
+
+            Socket sock = new Socket("localhost", server.getLocalPort());
+            sock.setTcpNoDelay(true);
+            final EtTaggedStreams streams = new EtTaggedStreams(
+                    new DataInputStream(new BufferedInputStream(sock.getInputStream())),
+                    new DataOutputStream(new BufferedOutputStream(sock.getOutputStream())));
+
+            final Object[][] seen = new Object[2][2];
+            Thread[] threads = new Thread[2];
+            for (int t = 0; t < 2; t++) {
+                final int index = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        seen[index][0] = streams.out();
+                        seen[index][1] = streams.in();
+                        if (streams.out() != seen[index][0] || streams.in() != seen[index][1]) seen[index][0] = null;
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread t : threads) t.join();
+            check(seen[0][0] != null && seen[1][0] != null &&
+                  seen[0][0] != seen[1][0] && seen[0][1] != seen[1][1],
+                  "each thread keeps streams of its own");
+
+            final AtomicInteger corrupted = new AtomicInteger(), done = new AtomicInteger();
+            threads = new Thread[threadCount];
+            for (int t = 0; t < threadCount; t++) {
+                final int id = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            DataOutputStream out = streams.out();
+                            DataInputStream in = streams.in();
+                            for (int i = 0; i < frames; i++) {
+                                long value = ((long) id << 40) + i;
+                                String text = "thread " + id + " request " + i;
+                                out.writeInt(id);
+                                out.writeLong(value);
+                                out.writeUTF(text);
+                                out.writeDouble(value / 3.);
+                                out.writeShort(i);
+                                out.flush();
+
+                                boolean same = in.readInt() == id;
+                                same &= in.readLong() == value;
+                                same &= in.readUTF().equals(text);
+                                same &= in.readDouble() == value / 3.;
+                                same &= in.readShort() == (short) i;
+                                if (!same) corrupted.incrementAndGet();
+                                done.incrementAndGet();
+                            }
+                        }
+                        catch (IOException e) {
+                            e.printStackTrace();
+                            corrupted.incrementAndGet();
+                        }
+                    }
+                };
+            }
+            for (Thread t : threads) t.start();
+            for (Thread t : threads) t.join(60000);
+            check(done.get() == threadCount * frames && corrupted.get() == 0,
+                  threadCount + " threads, " + done.get() + " requests read back, " +
+                  corrupted.get() + " mixed up");
+            sock.close();
+            server.close();
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            ok = false;
+        }
+
+        if (!ok) {
+            System.err.println("ERROR: tagged requests mixed up");
+            System.exit(1);
+        }
+        System.out.println("TaggedStreams: all ok");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,149 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.EtConstants;
+import org.jlab.coda.et.exception.EtException;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.Socket;
+
+/**
+ * What the CI tests of the ET system share. Each test has a name and a number
+ * of its own, giving the ports and file of each ET system it runs in its process
+ * so tests never get in each other's way. Results are printed as they are checked
+ * and the test exits with 1 if any failed, else 0.
+ */
+class CISupport {
+
+    /** Name of the test printed before each result. */
+    private final String name;
+
+    /** Number added to the default ports for the test's first system. */
+    private final int number;
+
+    /** Has every check passed? */
+    private volatile boolean ok = true;
+
+
+    /**
+     * Constructor.
+     * @param name   name of the test
+     * @param number number added to the default ports for the test's first system,
+     *               100 more for each other system it runs
+     */
+    CISupport(String name, int number) {
+        this.name   = name;
+        this.number = number;
+    }
+
+
+    /**
+     * Get the TCP server port of one of the test's systems.
+     * @param run which system, starting from 0
+     * @return TCP server port
+     */
+    int serverPort(int run) { return EtConstants.serverPort + number + 100 * run; }
+
+    /**
+     * Get the UDP port of one of the test's systems.
+     * @param run which system, starting from 0
+     * @return UDP port
+     */
+    int udpPort(int run) { return EtConstants.udpPort + number + 100 * run; }
+
+    /**
+     * Get the file name of one of the test's systems.
+     * @param run which system, starting from 0
+     * @return file name
+     */
+    String etName(int run) {
+        return "/tmp/et_ci_" + name.toLowerCase() + "test" + (run > 0 ? run : "");
+    }
+
+
+    /**
+     * Starts the test's first system.
+     * @param config configuration of the system, which is given the test's ports
+     * @return the running system
+     * @throws EtException if the system cannot start
+     */
+    SystemCreate start(SystemConfig config) throws EtException {
+        return start(config, 0);
+    }
+
+    /**
+     * Starts one of the test's systems.
+     * @param config configuration of the system, which is given the test's ports
+     * @param run    which system, starting from 0
+     * @return the running system
+     * @throws EtException if the system cannot start
+     */
+    SystemCreate start(SystemConfig config, int run) throws EtException {
+        config.setServerPort(serverPort(run));
+        config.setUdpPort(udpPort(run));
+        return new SystemCreate(etName(run), config);
+    }
+
+
+    /**
+     * Connects to the TCP server of one of the test's systems. The server starts
+     * listening on its own thread, so keep trying for a second.
+     * @param run which system, starting from 0
+     * @return connected socket sending without delay and reading with a 5 second timeout
+     * @throws IOException if no connection is made
+     */
+    Socket connect(int run) throws IOException {
+        Socket socket;
+        for (int tries = 1; ; tries++) {
+            try {
+                socket = new Socket("localhost", serverPort(run));
+                break;
+            }
+            catch (ConnectException e) {
+                if (tries >= 100) throw e;
+                try {
+                    Thread.sleep(10);
+                }
+                catch (InterruptedException ex) {
+                    throw e;
+                }
+            }
+        }
+        socket.setTcpNoDelay(true);
+        socket.setSoTimeout(5000);
+        return socket;
+    }
+
+
+    /**
+     * Prints the result of a check.
+     * @param pass did it pass?
+     * @param what what was checked
+     */
+    void check(boolean pass, String what) {
+        System.out.println((pass ? name + ": ok   " : name + ": FAIL ") + what);
+        if (!pass) ok = false;
+    }
+
+    /**
+     * Fails the test because of an exception.
+     * @param e exception thrown
+     */
+    void fail(Exception e) {
+        e.printStackTrace();
+        ok = false;
+    }
+
+    /**
+     * Ends the test, exiting with 1 if any check failed, else 0.
+     * @param error what went wrong if a check failed
+     */
+    void exit(String error) {
+        if (!ok) {
+            System.err.println("ERROR: " + error);
+            System.exit(1);
+        }
+        System.out.println(name + ": all ok");
+        System.exit(0);
+    }
+}
@@ -0,0 +1,129 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks user selection of events a whole batch at a time. A Java ET system is run
+ * in this process with a station whose select class implements EtBatchSelectable,
+ * taking every third event, followed by a station taking all events. The batch method
+ * must be used instead of the one judging a single event, never concurrently, and
+ * always with the bits of the listed events cleared. Each station must get exactly
+ * the events it should, in order. A second run with a class judging one event at a
+ * time checks the old path still gives the same result.
+ */
+public class CITestBatchSelect {
+
+    static final CISupport ci = new CISupport("BatchSelect", 112);
+
+    static final AtomicInteger batchCalls = new AtomicInteger();
+    static final AtomicInteger singleCalls = new AtomicInteger();
+    static final AtomicInteger inCall = new AtomicInteger();
+    static volatile boolean concurrent, dirtyBits;
+
+    /** Takes events whose number, the first data int, is a multiple of 3. */
+    public static class EveryThird implements EtEventSelectable {
+        public boolean select(SystemCreate sys, StationLocal st, EtEvent ev) {
+            singleCalls.incrementAndGet();
+            return ev.getDataBuffer().getInt(0) % 3 == 0;
+        }
+    }
+
+    /** Takes the same events, a batch at a time. */
+    public static class BatchEveryThird extends EveryThird implements EtBatchSelectable {
+        public void select(SystemCreate sys, StationLocal st, List<? extends EtEvent> evs, long[] selected) {
+            if (inCall.incrementAndGet() > 1) concurrent = true;
+            batchCalls.incrementAndGet();
+            for (int i = 0; i < evs.size(); i++) {
+                if ((selected[i >>> 6] & (1L << i)) != 0) dirtyBits = true;
+                if (evs.get(i).getDataBuffer().getInt(0) % 3 == 0) {
+                    selected[i >>> 6] |= 1L << i;
+                }
+            }
+            inCall.decrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            for (int run = 0; run < 2; run++) {
+                boolean batch = (run == 0);
+                batchCalls.set(0);
+                singleCalls.set(0);
+
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(300);
+                config.setEventSize(16);
+                SystemCreate sys = ci.start(config, run);
+
+                EtStationConfig userConfig = new EtStationConfig();
+                userConfig.setSelectMode(EtConstants.stationSelectUser);
+                userConfig.setSelectClass((batch ? BatchEveryThird.class : EveryThird.class).getName());
+                StationLocal userStation = sys.createStation(userConfig, "user_station");
+                StationLocal allStation = sys.createStation(new EtStationConfig(), "all_station");
+                AttachmentLocal userAtt = sys.attach(userStation.getStationId());
+                AttachmentLocal allAtt = sys.attach(allStation.getStationId());
+                AttachmentLocal producer = sys.attach(0);
+
+                ArrayList<Integer> toUser = new ArrayList<Integer>(), toAll = new ArrayList<Integer>();
+                for (int n = 0; n < 250; n += 50) {
+                    EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, 50, 16);
+                    for (int j = 0; j < evs.length; j++) {
+                        evs[j].getDataBuffer().putInt(0, n + j);
+                        evs[j].setLength(4);
+                        if ((n + j) % 3 == 0) toUser.add(n + j);
+                        else toAll.add(n + j);
+                    }
+                    sys.putEvents(producer, evs);
+                }
+
+                // hold on to the selected events so they do not reach the next station too
+                ArrayList<EtEventImpl> held = new ArrayList<EtEventImpl>();
+                String how = batch ? "batch: " : "single: ";
+                ci.check(receive(sys, userAtt, toUser.size(), held).equals(toUser),
+                         how + toUser.size() + " selected events in order at the user station");
+                ci.check(receive(sys, allAtt, toAll.size(), null).equals(toAll),
+                         how + toAll.size() + " other events in order at the next station");
+                sys.putEvents(userAtt, held.toArray(new EtEventImpl[0]));
+
+                if (batch) {
+                    ci.check(batchCalls.get() > 0 && singleCalls.get() == 0,
+                             batchCalls.get() + " batch calls, " + singleCalls.get() + " single event calls");
+                    ci.check(!concurrent, "batch method never called concurrently");
+                    ci.check(!dirtyBits, "bits of listed events always cleared before the call");
+                }
+                else {
+                    ci.check(batchCalls.get() == 0 && singleCalls.get() >= 250,
+                             singleCalls.get() + " single event calls without a batch method");
+                }
+
+                sys.detach(producer);
+                sys.detach(userAtt);
+                sys.detach(allAtt);
+                sys.shutdown();
+            }
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events selected wrongly");
+    }
+
+    /** Get a number of events, putting them back unless held, and return the numbers they carry. */
+    static ArrayList<Integer> receive(SystemCreate sys, AttachmentLocal att, int count,
+                                      ArrayList<EtEventImpl> held) throws Exception {
+        ArrayList<Integer> numbers = new ArrayList<Integer>();
+        while (numbers.size() < count) {
+            EtEventImpl[] evs = sys.getEvents(att, EtConstants.timed, 1000000, count - numbers.size());
+            for (EtEventImpl ev : evs) numbers.add(ev.getDataBuffer().getInt(0));
+            if (held == null) sys.putEvents(att, evs);
+            else java.util.Collections.addAll(held, evs);
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,178 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Priority;
+import org.jlab.coda.et.exception.EtException;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checks how conductors size their batches. Negative batch limits, delays and latency
+ * targets must be rejected by the system configuration. Taking a batch from an output
+ * list must take no more than asked, highest priority first. A conductor tuning its
+ * batches to a hand-off latency must keep each batch within the configured largest
+ * size, must shrink its batches once passing them on takes longer than the target
+ * allows, and must stop waiting for batches to fill while the target is missed.
+ * Then a Java ET system is run in this process with a batch limit of 10 and a user
+ * selection class judging whole batches, and every batch it is given must stay
+ * within the limit.
+ */
+public class CITestBatchSize {
+
+    static final CISupport ci = new CISupport("BatchSize", 118);
+
+    /** Largest batch of events seen by the select class. */
+    static volatile int largest;
+
+    /** Takes every event, keeping track of the largest batch it is given. */
+    public static class LargestBatch implements EtBatchSelectable {
+        public boolean select(SystemCreate sys, StationLocal st, EtEvent ev) {
+            largest = Math.max(largest, 1);
+            return true;
+        }
+
+        public void select(SystemCreate sys, StationLocal st, List<? extends EtEvent> evs, long[] selected) {
+            largest = Math.max(largest, evs.size());
+            for (int i = 0; i < evs.size(); i++) {
+                selected[i >>> 6] |= 1L << i;
+            }
+        }
+    }
+
+    /** Does setting a value throw an EtException? */
+    static boolean rejected(SystemConfig config, int which, int value) {
+        try {
+            if (which == 0)      config.setConductorBatchMax(value);
+            else if (which == 1) config.setConductorBatchDelay(value);
+            else                 config.setConductorLatencyTarget(value);
+        }
+        catch (EtException e) {
+            return true;
+        }
+        return false;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            // configuration
+            SystemConfig config = new SystemConfig();
+            ci.check(config.getConductorBatchMax() == 0 && config.getConductorBatchDelay() == 0 &&
+                     config.getConductorLatencyTarget() == 0, "no limit, delay or target by default");
+            String[] names = {"batch max", "batch delay", "latency target"};
+            for (int which = 0; which < 3; which++) {
+                ci.check(rejected(config, which, -1) && rejected(config, which, Integer.MIN_VALUE),
+                         "negative " + names[which] + " rejected");
+                ci.check(!rejected(config, which, 0) && !rejected(config, which, 100),
+                         "0 and positive " + names[which] + " accepted");
+            }
+            ci.check(config.getConductorBatchMax() == 100 && config.getConductorBatchDelay() == 100 &&
+                     config.getConductorLatencyTarget() == 100, "rejected values leave settings alone");
+            SystemConfig copy = new SystemConfig(config);
+            ci.check(copy.getConductorBatchMax() == 100 && copy.getConductorBatchDelay() == 100 &&
+                     copy.getConductorLatencyTarget() == 100, "settings copied with the configuration");
+
+            // taking a batch from an output list
+            EventList list = new EventList(100);
+            ArrayList<EtEventImpl> evs = new ArrayList<EtEventImpl>();
+            for (int i = 0; i < 50; i++) {
+                EtEventImpl ev = new EtEventImpl(4);
+                ev.setId(i);
+                if (i % 5 == 4) ev.setPriority(Priority.HIGH);
+                evs.add(ev);
+            }
+            list.put(evs);
+            ArrayList<EtEventImpl> batch = new ArrayList<EtEventImpl>();
+            list.get(batch, 15);
+            boolean highFirst = batch.size() == 15;
+            for (int i = 0; i < batch.size(); i++) {
+                highFirst &= (batch.get(i).getPriority() == Priority.HIGH) == (i < 10);
+            }
+            ci.check(highFirst && list.getCount() == 35 && list.getEventsOut() == 15,
+                     "batch of " + batch.size() + " taken when 15 asked, the 10 high priority events first");
+            batch.clear();
+            list.get(batch, 100);
+            ci.check(batch.size() == 35 && list.getCount() == 0, "whole list taken when more asked");
+
+            // tuning to a latency target of 1 millisec with at most 50 events a batch
+            config = new SystemConfig();
+            config.setNumEvents(200);
+            config.setEventSize(16);
+            config.setConductorBatchMax(50);
+            config.setConductorLatencyTarget(1000);
+            SystemCreate sys = ci.start(config);
+            StationLocal station = sys.createStation(new EtStationConfig(), "tuned");
+            ci.check(station.getBatchLimit() == 50 && station.getBatchDelay() == 0L,
+                     "limit starts at the largest batch, no waiting when tuning");
+
+            // routing is cheap, 1 microsec an event, well within the target
+            long now = System.nanoTime();
+            boolean within = true;
+            for (int i = 0; i < 100; i++) {
+                station.recordBatch(50, now, now + 10000L, now + 60000L);
+                within &= station.getBatchLimit() <= 50;
+            }
+            ci.check(within && station.getBatchLimit() == 50, "cheap routing: limit stays at the largest batch");
+            ci.check(station.getBatchDelay() > 0L, "cheap routing: waits " + station.getBatchDelay()/1000L +
+                                                   " microsec for batches to fill");
+
+            // routing slows to 80 microsec an event, a batch of 50 takes 4 times the target
+            int limit = station.getBatchLimit();
+            boolean shrinking = true, missedNoWait = true;
+            for (int i = 0; i < 100; i++) {
+                int size = station.getBatchLimit();
+                station.recordBatch(size, now, now, now + 80000L*size);
+                shrinking &= station.getBatchLimit() <= limit && station.getBatchLimit() >= 1;
+                limit = station.getBatchLimit();
+                if (station.getHandOffLatency() > 1000000.) missedNoWait &= station.getBatchDelay() == 0L;
+            }
+            ci.check(shrinking && limit <= 500/80 + 1, "slow routing: limit shrinks to " + limit +
+                                                       " events, a batch within half the target");
+            ci.check(missedNoWait, "no waiting for batches to fill while the target is missed");
+
+            // routing so slow a single event misses the target
+            for (int i = 0; i < 100; i++) {
+                station.recordBatch(1, now, now, now + 5000000L);
+            }
+            ci.check(station.getBatchLimit() == 1, "very slow routing: batches of 1");
+            sys.removeStation(station.getStationId());
+            sys.shutdown();
+
+            // Through an ET system, each batch at most 10 events
+            config = new SystemConfig();
+            config.setNumEvents(200);
+            config.setEventSize(16);
+            config.setConductorBatchMax(10);
+            sys = ci.start(config, 1);
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setSelectMode(EtConstants.stationSelectUser);
+            sConfig.setSelectClass(LargestBatch.class.getName());
+            StationLocal user = sys.createStation(sConfig, "user");
+            AttachmentLocal userAtt = sys.attach(user.getStationId());
+            AttachmentLocal producer = sys.attach(0);
+
+            // put everything at once so the output list holds far more than the limit
+            sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 200, 16));
+            int total = 0;
+            while (total < 200) {
+                EtEventImpl[] in = sys.getEvents(userAtt, EtConstants.timed, 1000000, 200);
+                total += in.length;
+                sys.putEvents(userAtt, in);
+            }
+            ci.check(largest > 0 && largest <= 10, "largest batch " + largest + " events with a limit of 10");
+            StationLocal gc = sys.getStations().get(0);
+            ci.check(gc.getBatchLimit() == 10 && gc.getBatchSize() > 0. && gc.getBatchSize() <= 10.,
+                     "average batch " + String.format("%.1f", gc.getBatchSize()) + " within the limit");
+
+            sys.detach(userAtt);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("conductor batches sized wrongly");
+    }
+}
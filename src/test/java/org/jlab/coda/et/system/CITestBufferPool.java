@@ -0,0 +1,129 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.data.AllData;
+import org.jlab.coda.et.data.SystemData;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Checks the pool of buffers lent to events larger than normal. A pool of small
+ * buffers, 256 bytes at most with 512 idle bytes kept, must count each request as a
+ * hit or miss and each buffer as lent or idle. Buffers given back beyond the idle bytes
+ * allowed, and those too large for any size class, must be dropped. Then a Java ET
+ * system is run in this process. A new event larger than normal must borrow a buffer,
+ * and whether dumped or put back to GRAND_CENTRAL it must get its normal buffer
+ * back and return the borrowed one, as a remote user must see in the system's data.
+ */
+public class CITestBufferPool {
+
+    static final CISupport ci = new CISupport("BufferPool", 132);
+
+    static EtEventImpl event(int id) {
+        EtEventImpl ev = new EtEventImpl(16);
+        ev.setId(id);
+        return ev;
+    }
+
+    /** Do the pool's counts match? */
+    static boolean counts(EventBufferPool pool, long hits, long misses, long outstanding, long idle) {
+        return pool.getHits() == hits && pool.getMisses() == misses &&
+               pool.getBytesOutstanding() == outstanding && pool.getIdleBytes() == idle;
+    }
+
+    static String counts(EventBufferPool pool) {
+        return pool.getHits() + " hits, " + pool.getMisses() + " misses, " +
+               pool.getBytesOutstanding() + " bytes lent, " + pool.getIdleBytes() + " idle";
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            // a pool on its own
+            EventBufferPool pool = new EventBufferPool(4, 16, false, 256, 512);
+            EtEventImpl[] evs = {event(0), event(1), event(2)};
+            ByteBuffer[] normal = new ByteBuffer[evs.length];
+            for (int i = 0; i < evs.length; i++) normal[i] = evs[i].getDataBuffer();
+
+            pool.lend(evs[0], 100);
+            ci.check(evs[0].getDataBuffer().capacity() == 128 && counts(pool, 0, 1, 128, 0),
+                     "100 bytes lent in a new buffer of 128, " + counts(pool));
+            pool.lend(evs[0], 200);
+            ci.check(evs[0].getDataBuffer().capacity() == 256 && counts(pool, 0, 2, 256, 128),
+                     "200 bytes lent to the same event, its buffer of 128 idle, " + counts(pool));
+            pool.lend(evs[1], 120);
+            ci.check(evs[1].getDataBuffer().capacity() == 128 && counts(pool, 1, 2, 384, 0),
+                     "120 bytes lent in the idle buffer, " + counts(pool));
+            pool.lend(evs[2], 300);
+            ci.check(evs[2].getDataBuffer().capacity() == 300 && counts(pool, 1, 3, 684, 0),
+                     "300 bytes, above the largest class, lent in a buffer of its own, " + counts(pool));
+
+            pool.reclaim(evs[2]);
+            ci.check(evs[2].getDataBuffer() == normal[2] && counts(pool, 1, 3, 384, 0),
+                     "buffer above the largest class dropped when given back, " + counts(pool));
+            pool.reclaim(evs[0]);
+            pool.reclaim(evs[1]);
+            pool.reclaim(evs[1]);
+            ci.check(evs[0].getDataBuffer() == normal[0] && evs[1].getDataBuffer() == normal[1] &&
+                     counts(pool, 1, 3, 0, 384),
+                     "normal buffers back, borrowed ones idle, " + counts(pool));
+
+            for (EtEventImpl ev : evs) pool.lend(ev, 250);
+            ci.check(counts(pool, 2, 5, 768, 128), "250 bytes lent 3 times, " + counts(pool));
+            for (EtEventImpl ev : evs) pool.reclaim(ev);
+            ci.check(counts(pool, 2, 5, 0, 384),
+                     "buffers beyond 512 idle bytes dropped when given back, " + counts(pool));
+
+            // through an ET system
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(10);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+            pool = sys.getBufferPool();
+            AttachmentLocal producer = sys.attach(0);
+
+            evs = sys.newEvents(producer, EtConstants.sleep, 0, 10, 16);
+            ByteBuffer[] normals = new ByteBuffer[evs.length];
+            for (EtEventImpl ev : evs) normals[ev.getId()] = ev.getDataBuffer();
+            sys.dumpEvents(producer, evs);
+
+            for (int round = 0; round < 2; round++) {
+                String how = (round == 0) ? "dumped" : "put";
+                EtEventImpl ev = sys.newEvents(producer, EtConstants.sleep, 0, 1, 100)[0];
+                ByteBuffer buf = ev.getDataBuffer();
+                ci.check(buf != normals[ev.getId()] && buf.capacity() == 128 && ev.getMemSize() >= 100 &&
+                         counts(pool, round, 1, 128, 0),
+                         "new event of 100 bytes borrows a buffer, " + counts(pool));
+
+                if (round == 0) sys.dumpEvents(producer, new EtEventImpl[] {ev});
+                else sys.putEvents(producer, new EtEventImpl[] {ev});
+                EventList gc = sys.getStations().get(0).getInputList();
+                for (int i = 0; i < 1000 && gc.getCount() < 10; i++) Thread.sleep(1);
+                ci.check(ev.getDataBuffer() == normals[ev.getId()] && ev.getMemSize() == 16 &&
+                         counts(pool, round, 1, 0, 128),
+                         "event " + how + " gets its normal buffer back, " + counts(pool));
+            }
+
+            // as seen by a remote user
+            EtSystemOpenConfig openConfig = new EtSystemOpenConfig(ci.etName(0), "localhost", ci.serverPort(0));
+            openConfig.setNetworkContactMethod(EtConstants.direct);
+            EtSystem user = new EtSystem(openConfig);
+            user.open();
+            AllData data = user.getData();
+            SystemData sysData = data.sysData;
+            ci.check(sysData.isBufferPoolKnown() && sysData.getBufferPoolHits() == 1 &&
+                     sysData.getBufferPoolMisses() == 1 && sysData.getBufferPoolBytesOutstanding() == 0 &&
+                     sysData.getBufferPoolBytesIdle() == 128,
+                     "remote user sees the pool's counts");
+            user.close();
+
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("buffers lent wrongly");
+    }
+}
@@ -0,0 +1,229 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Checks conductors sharing a pool of threads. A Java ET system is run in this process
+ * with a pool of 2 conductor threads and 12 stations in series, each with a consumer
+ * thread checking that events arrive in order and a user selection class judging
+ * whole batches. The batches of each station must only ever be passed on by a pool
+ * thread, and never by 2 of them at once. No station may get a thread of its own,
+ * a station added while events flow must get them too, and every event must make
+ * it through all stations and back to GRAND_CENTRAL. Then a second system with 2 pool
+ * threads has its conductors wait 100 millisec for fuller batches, and 3 stations get
+ * an event each in their output lists at once. Stations waiting must not keep pool
+ * threads from the others, so all 3 events must be passed on in about 100 millisec.
+ */
+public class CITestConductorPool {
+
+    static final CISupport ci = new CISupport("ConductorPool", 119);
+
+    static final ConcurrentHashMap<StationLocal, AtomicInteger> inCall =
+            new ConcurrentHashMap<StationLocal, AtomicInteger>();
+    static final AtomicInteger batches = new AtomicInteger();
+    static volatile boolean concurrent, notPool;
+
+    /** Takes all events, keeping track of which threads pass on each station's batches. */
+    public static class Tracker implements EtBatchSelectable {
+        public boolean select(SystemCreate sys, StationLocal st, EtEvent ev) {
+            return true;
+        }
+
+        public void select(SystemCreate sys, StationLocal st, List<? extends EtEvent> evs, long[] selected) {
+            AtomicInteger calls = inCall.computeIfAbsent(st, s -> new AtomicInteger());
+            if (calls.incrementAndGet() > 1) concurrent = true;
+            if (!Thread.currentThread().getName().startsWith("conductor")) notPool = true;
+            batches.incrementAndGet();
+            // give another thread a chance to get in
+            Thread.yield();
+            for (int i = 0; i < evs.size(); i++) {
+                selected[i >>> 6] |= 1L << i;
+            }
+            calls.decrementAndGet();
+        }
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            final int numStations = 12, numEvents = 200, toSend = 5000;
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(16);
+            config.setConductorThreads(2);
+            config.setConductorBatchMax(20);
+            final SystemCreate sys = ci.start(config);
+
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setSelectMode(EtConstants.stationSelectUser);
+            sConfig.setSelectClass(Tracker.class.getName());
+            final StationLocal[] stations = new StationLocal[numStations];
+            final AttachmentLocal[] atts = new AttachmentLocal[numStations];
+            // the middle station is added once events flow
+            for (int i = 0; i < numStations; i++) {
+                if (i == numStations/2) continue;
+                stations[i] = sys.createStation(sConfig, "station_" + i, i < numStations/2 ? i + 1 : i,
+                                                EtConstants.end);
+                atts[i] = sys.attach(stations[i].getStationId());
+            }
+            final AttachmentLocal producer = sys.attach(0);
+
+            // each consumer checks its events arrive in order
+            final boolean[] inOrder = new boolean[numStations];
+            final AtomicIntegerArray received = new AtomicIntegerArray(numStations);
+            Thread[] consumers = new Thread[numStations];
+            for (int i = 0; i < numStations; i++) {
+                final int index = i;
+                inOrder[i] = true;
+                consumers[i] = new Thread() {
+                    public void run() {
+                        try {
+                            while (atts[index] == null) Thread.sleep(1);
+                            int last = -1;
+                            while (received.get(index) < toSend) {
+                                try {
+                                    EtEventImpl[] evs = sys.getEvents(atts[index], EtConstants.timed, 2000000, 50);
+                                    for (EtEventImpl ev : evs) {
+                                        int number = ev.getDataBuffer().getInt(0);
+                                        if (number <= last) inOrder[index] = false;
+                                        last = number;
+                                        received.incrementAndGet(index);
+                                    }
+                                    sys.putEvents(atts[index], evs);
+                                }
+                                catch (org.jlab.coda.et.exception.EtTimeoutException e) {
+                                    return;
+                                }
+                            }
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                consumers[i].start();
+            }
+
+            // the added station only sees events made after it's there
+            int addAt = 0;
+            for (int n = 0; n < toSend; ) {
+                if (addAt == 0 && n >= toSend/2) {
+                    // once the earlier events are past where it goes
+                    int i = numStations/2;
+                    while (received.get(i + 1) < n) Thread.sleep(1);
+                    stations[i] = sys.createStation(sConfig, "station_" + i, i + 1, EtConstants.end);
+                    atts[i] = sys.attach(stations[i].getStationId());
+                    addAt = n;
+                }
+                EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, Math.min(50, toSend - n), 16);
+                for (EtEventImpl ev : evs) {
+                    ev.getDataBuffer().putInt(0, n++);
+                    ev.setLength(4);
+                }
+                sys.putEvents(producer, evs);
+                if (n == evs.length) {
+                    int threads = 0;
+                    for (Thread t : Thread.getAllStackTraces().keySet()) {
+                        if (t.getName().startsWith("conductor")) threads++;
+                    }
+                    ci.check(threads == 2, threads + " conductor threads in the pool");
+                }
+            }
+            for (Thread t : consumers) t.join(10000);
+
+            boolean all = true, ordered = true, ownThread = false;
+            for (int i = 0; i < numStations; i++) {
+                int expected = (i == numStations/2) ? toSend - addAt : toSend;
+                all     &= (received.get(i) == expected);
+                ordered &= inOrder[i];
+                ownThread |= stations[i].isAlive();
+            }
+            ci.check(all, "every event through all " + numStations + " stations, half of them through the added one");
+            ci.check(ordered, "events arrive in order at every station");
+            ci.check(!ownThread, "no station has a conductor thread of its own");
+            ci.check(batches.get() > 0 && !notPool, batches.get() + " batches passed on by pool threads only");
+            ci.check(!concurrent, "no station's batches passed on by 2 threads at once");
+
+            int inGC = 0;
+            for (int i = 0; i < 1000 && (inGC = sys.getStations().get(0).getInputList().getCount()) != numEvents; i++) {
+                Thread.sleep(1);
+            }
+            ci.check(inGC == numEvents, inGC + " of " + numEvents + " events back in GRAND_CENTRAL");
+
+            for (AttachmentLocal att : atts) sys.detach(att);
+            sys.detach(producer);
+            sys.shutdown();
+
+            delayedStations();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("conductor pool passed on events wrongly");
+    }
+
+
+    /** Wait for a list to hold a number of events, returning how long it took in millisec, -1 if too long. */
+    static long waitFor(EventList list, int count, long start) throws InterruptedException {
+        while (list.getCount() < count) {
+            if (System.nanoTime() - start > 2000000000L) return -1;
+            Thread.sleep(1);
+        }
+        return (System.nanoTime() - start) / 1000000L;
+    }
+
+
+    /** Checks stations waiting for fuller batches don't keep pool threads from other stations. */
+    static void delayedStations() throws Exception {
+        final int delay = 100;
+        SystemConfig config = new SystemConfig();
+        config.setNumEvents(10);
+        config.setEventSize(16);
+        config.setConductorThreads(2);
+        config.setConductorBatchDelay(1000 * delay);
+        SystemCreate sys = ci.start(config, 1);
+
+        StationLocal[] stations = new StationLocal[3];
+        AttachmentLocal[] atts = new AttachmentLocal[3];
+        for (int i = 0; i < 3; i++) {
+            stations[i] = sys.createStation(new EtStationConfig(), "delayed_" + i, i + 1, EtConstants.end);
+            atts[i] = sys.attach(stations[i].getStationId());
+        }
+        AttachmentLocal producer = sys.attach(0);
+        EventList gcList = sys.getStations().get(0).getInputList();
+
+        // hold an event at each station, the last first
+        EtEventImpl[][] held = new EtEventImpl[3][];
+        for (int i = 2; i >= 0; i--) {
+            sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 1, 16));
+            for (int j = 0; j < i; j++) {
+                sys.putEvents(atts[j], sys.getEvents(atts[j], EtConstants.timed, 5000000, 1));
+            }
+            held[i] = sys.getEvents(atts[i], EtConstants.timed, 5000000, 1);
+        }
+        int free = gcList.getCount();
+
+        // all 3 wait for fuller batches at once
+        long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            sys.putEvents(atts[i], held[i]);
+        }
+        long most = Math.max(waitFor(stations[1].getInputList(), 1, start),
+                             waitFor(stations[2].getInputList(), 1, start));
+        long gc = waitFor(gcList, free + 1, start);
+        most = (gc < 0 || most < 0) ? -1 : Math.max(most, gc);
+        ci.check(most >= delay && most < delay * 3 / 2,
+                 "3 stations waiting " + delay + " millisec for fuller batches on 2 threads pass events on in " +
+                 most + " millisec");
+
+        for (AttachmentLocal att : atts) sys.detach(att);
+        sys.detach(producer);
+        sys.shutdown();
+    }
+}
@@ -0,0 +1,146 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the levelling of the input lists of an equal-cue parallel station group.
+ * For many random input list counts and numbers of events, the number given to each
+ * station must add up to the events doled out and match what giving one event at
+ * a time to the station with the fewest would do. The stations given events must end
+ * up within one event of each other, no station may be passed over while holding
+ * fewer than that less one, and a station having had fewer events than another
+ * must not end up with fewer. Then a Java ET system is
+ * run in this process with a group of 3 stations, one of whose attachments holds
+ * on to its events, and the input lists must level out.
+ */
+public class CITestEqualCue {
+
+    static final CISupport ci = new CISupport("EqualCue", 113);
+
+    /** Wait up to a second for a list to hold a number of events. */
+    static boolean awaitCount(EventList list, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && list.getCount() != count; i++) {
+            Thread.sleep(1);
+        }
+        return list.getCount() == count;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            Random rand = new Random(13);
+            long[] cueOrder = new long[64];
+            int[] given = new int[64], greedy = new int[64], counts = new int[64];
+            int bad = 0, cases = 0;
+
+            for (int trial = 0; trial < 30000; trial++) {
+                int n = 1 + rand.nextInt(64);
+                int spread = 1 + rand.nextInt(trial % 3 == 0 ? 3 : 200);
+                int eventCount = rand.nextInt(trial % 2 == 0 ? 50 : 5000);
+                for (int i = 0; i < n; i++) {
+                    counts[i] = rand.nextInt(spread);
+                    cueOrder[i] = ((long) counts[i] << 32) | i;
+                }
+                StationLocal.levelCues(cueOrder, n, eventCount, given);
+
+                // one event at a time to the station with the fewest
+                int[] total = new int[n];
+                for (int i = 0; i < n; i++) total[i] = counts[i];
+                for (int e = 0; e < eventCount; e++) {
+                    int min = 0;
+                    for (int i = 1; i < n; i++) if (total[i] < total[min]) min = i;
+                    total[min]++;
+                }
+                for (int i = 0; i < n; i++) greedy[i] = total[i];
+
+                int sum = 0, fewest = Integer.MAX_VALUE, most = Integer.MIN_VALUE;
+                int[] levels = new int[n];
+                for (int i = 0; i < n; i++) {
+                    if (given[i] < 0) bad++;
+                    sum += given[i];
+                    levels[i] = counts[i] + given[i];
+                    if (given[i] > 0) {
+                        fewest = Math.min(fewest, levels[i]);
+                        most   = Math.max(most, levels[i]);
+                    }
+                }
+                boolean pass = (sum == eventCount) && (eventCount == 0 || most - fewest <= 1);
+                for (int i = 0; i < n; i++) {
+                    // passed over while lower than a station given events ends up
+                    if (given[i] == 0 && eventCount > 0 && levels[i] < most - 1) pass = false;
+                    // a station with fewer to start with must not end with fewer
+                    for (int j = 0; j < n; j++) {
+                        if (given[i] > 0 && given[j] > 0 && counts[i] < counts[j] &&
+                            levels[i] < levels[j]) pass = false;
+                    }
+                }
+                int[] mine = Arrays.copyOf(levels, n), theirs = Arrays.copyOf(greedy, n);
+                Arrays.sort(mine);
+                Arrays.sort(theirs);
+                if (!Arrays.equals(mine, theirs)) pass = false;
+                if (!pass) bad++;
+                cases++;
+            }
+            ci.check(bad == 0, cases + " random cases levelled, " + bad + " wrong");
+
+            // exact cases
+            long[] order = {(10L << 32) | 0, (0L << 32) | 1, (10L << 32) | 2};
+            int[] out = new int[3];
+            StationLocal.levelCues(order, 3, 16, out);
+            ci.check(Arrays.equals(out, new int[] {2, 12, 2}), "10,0,10 given 16 -> " + Arrays.toString(out));
+            order = new long[] {(5L << 32) | 0, (3L << 32) | 1, (4L << 32) | 2};
+            StationLocal.levelCues(order, 3, 2, out);
+            ci.check(Arrays.equals(out, new int[] {0, 2, 0}), "5,3,4 given 2, extra to the lowest -> " + Arrays.toString(out));
+            order = new long[] {(1L << 32) | 0, (0L << 32) | 1, (1L << 32) | 2};
+            StationLocal.levelCues(order, 3, 3, out);
+            ci.check(Arrays.equals(out, new int[] {1, 2, 0}), "1,0,1 given 3, extra to the lower and then first -> " +
+                                                               Arrays.toString(out));
+
+            // Through an ET system
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(100);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setFlowMode(EtConstants.stationParallel);
+            sConfig.setSelectMode(EtConstants.stationSelectEqualCue);
+            StationLocal[] group = new StationLocal[3];
+            AttachmentLocal[] atts = new AttachmentLocal[3];
+            for (int i = 0; i < 3; i++) {
+                group[i] = (i == 0) ? sys.createStation(sConfig, "equalcue_0") :
+                                      sys.createStation(sConfig, "equalcue_" + i, 1, EtConstants.end);
+                atts[i] = sys.attach(group[i].getStationId());
+            }
+            AttachmentLocal producer = sys.attach(0);
+
+            sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 30, 16));
+            boolean even = true;
+            for (int i = 0; i < 3; i++) even &= awaitCount(group[i].getInputList(), 10);
+            ci.check(even, "30 events split 10, 10, 10");
+
+            // the middle station's attachment takes and holds its events
+            EtEventImpl[] held = sys.getEvents(atts[1], EtConstants.sleep, 0, 10);
+            sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 16, 16));
+            even = true;
+            for (int i = 0; i < 3; i++) even &= awaitCount(group[i].getInputList(), 12);
+            ci.check(even, "16 more events level the lists at 12, 12, 12");
+            sys.putEvents(atts[1], held);
+
+            for (AttachmentLocal att : atts) {
+                sys.putEvents(att, sys.getEvents(att, EtConstants.async, 0, 100));
+                sys.detach(att);
+            }
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("equal-cue stations not levelled");
+    }
+}
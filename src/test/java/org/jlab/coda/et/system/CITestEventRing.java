@@ -0,0 +1,260 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Priority;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+/**
+ * Checks the rings and lanes holding a list's events. A ring must double as it fills,
+ * up to and no further than its largest size. Random additions and removals at both
+ * ends, done on rings small enough to wrap around, must give the same events in the
+ * same order as a plain deque, including taking only events of one group. Events put
+ * into a list one way or another, or put back ahead of those already there, must come
+ * out high priority before low, and the numbers of events put into, taken out of and
+ * tried for a list must add up. Then a Java ET system is run in this process and
+ * events restored to a station's input list by an attachment going away must be
+ * gotten high priority first, ahead of events already there.
+ */
+public class CITestEventRing {
+
+    static final CISupport ci = new CISupport("EventRing", 128);
+
+    static EtEventImpl event(int id, int group, Priority pri) {
+        EtEventImpl ev = new EtEventImpl(4);
+        ev.setId(id);
+        ev.setGroup(group);
+        ev.setPriority(pri);
+        return ev;
+    }
+
+    /** Ids of events, in order. */
+    static String ids(EtEventImpl[] evs, int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) ids[i] = evs[i].getId();
+        return Arrays.toString(ids);
+    }
+
+    /** Take all events out of a list in the order they come. */
+    static EtEventImpl[] takeAll(EventList list) {
+        EtEventImpl[] evs = new EtEventImpl[list.getCount()];
+        synchronized (list) {
+            list.take(evs, 0, evs.length);
+        }
+        return evs;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            // growth
+            EventRing ring = new EventRing(4, 100);
+            ArrayList<Integer> capacities = new ArrayList<Integer>();
+            capacities.add(ring.capacity());
+            for (int i = 0; i < 100; i++) {
+                if (i % 2 == 0) ring.addLast(event(i, 1, Priority.LOW));
+                else ring.addFirst(event(i, 1, Priority.LOW));
+                if (ring.capacity() != capacities.get(capacities.size() - 1)) capacities.add(ring.capacity());
+            }
+            ci.check(capacities.toString().equals("[4, 8, 16, 32, 64, 100]"),
+                     "ring grows " + capacities + " holding 100 events");
+            EtEventImpl[] out = new EtEventImpl[100];
+            boolean whole = ring.drainTo(out, 0, 100) == 100;
+            for (int i = 0; i < 50; i++) {
+                whole &= out[i].getId() == 99 - 2*i && out[50 + i].getId() == 2*i;
+            }
+            ci.check(whole && ring.isEmpty() && ring.capacity() == 100, "growing keeps events in order");
+
+            // wrap-around
+            ring = new EventRing(8, 8);
+            for (int i = 0; i < 6; i++) ring.addLast(event(i, 1 + i % 2, Priority.LOW));
+            for (int i = 0; i < 5; i++) ring.pollFirst();
+            for (int i = 6; i < 12; i++) ring.addLast(event(i, 1 + i % 2, Priority.LOW));
+            ring.addFirst(event(12, 2, Priority.LOW));
+            int found = ring.drainGroupTo(2, out, 0, 3);
+            String group = ids(out, found);
+            int left = ring.drainTo(out, 0, 8);
+            ci.check(ring.capacity() == 8 && group.equals("[12, 5, 7]") &&
+                     ids(out, left).equals("[6, 8, 9, 10, 11]"),
+                     "group " + group + " then " + ids(out, left) + " taken from a wrapped ring");
+            ring.addLast(event(0, 1, Priority.LOW));
+            ring.addFirst(event(1, 1, Priority.LOW));
+            ring.addFirst(event(2, 1, Priority.LOW));
+            left = ring.drainTo(out, 0, 8);
+            ci.check(ids(out, left).equals("[2, 1, 0]"), "adding at the front wraps to the back");
+
+            // random use against a deque
+            Random rand = new Random(1);
+            ring = new EventRing(2, 64);
+            ArrayDeque<EtEventImpl> model = new ArrayDeque<EtEventImpl>();
+            EtEventImpl[] arr = new EtEventImpl[70];
+            ArrayList<EtEventImpl> list = new ArrayList<EtEventImpl>();
+            int nextId = 0, mismatches = 0;
+            for (int op = 0; op < 20000; op++) {
+                int room = 64 - model.size(), num = rand.nextInt(10), off = rand.nextInt(4);
+                switch (rand.nextInt(9)) {
+                    case 0:
+                        if (room < 1) break;
+                        EtEventImpl ev = event(nextId++, 1 + rand.nextInt(3), Priority.LOW);
+                        ring.addLast(ev);
+                        model.addLast(ev);
+                        break;
+                    case 1:
+                        if (room < 1) break;
+                        ev = event(nextId++, 1 + rand.nextInt(3), Priority.LOW);
+                        ring.addFirst(ev);
+                        model.addFirst(ev);
+                        break;
+                    case 2:
+                    case 3:
+                        num = Math.min(num, room);
+                        list.clear();
+                        for (int i = 0; i < off + num; i++) {
+                            list.add(event(nextId++, 1 + rand.nextInt(3), Priority.LOW));
+                            arr[i] = list.get(i);
+                        }
+                        if (rand.nextBoolean()) ring.addAll(list, off, num);
+                        else ring.addAll(arr, off, num);
+                        model.addAll(list.subList(off, off + num));
+                        break;
+                    case 4:
+                        if (ring.pollFirst() != model.pollFirst()) mismatches++;
+                        break;
+                    case 5:
+                        int expected = Math.min(num, model.size());
+                        int got = ring.drainTo(arr, off, num);
+                        if (got != expected) mismatches++;
+                        for (int i = 0; i < got; i++) if (arr[off + i] != model.pollFirst()) mismatches++;
+                        break;
+                    case 6:
+                        list.clear();
+                        got = rand.nextInt(20) == 0 ? ring.drainTo(list) : ring.drainTo(list, num);
+                        for (int i = 0; i < got; i++) if (list.get(i) != model.pollFirst()) mismatches++;
+                        break;
+                    case 7:
+                        int g = 1 + rand.nextInt(3);
+                        got = ring.drainGroupTo(g, arr, off, num);
+                        int taken = 0;
+                        for (Iterator<EtEventImpl> it = model.iterator(); it.hasNext() && taken < num; ) {
+                            ev = it.next();
+                            if (ev.getGroup() != g) continue;
+                            if (arr[off + taken++] != ev) mismatches++;
+                            it.remove();
+                        }
+                        if (got != taken) mismatches++;
+                        break;
+                    default:
+                        if (ring.peekFirst() != model.peekFirst()) mismatches++;
+                }
+                if (ring.size() != model.size()) mismatches++;
+                if (op % 100 == 99) {
+                    list.clear();
+                    ring.drainTo(list);
+                    if (!list.equals(new ArrayList<EtEventImpl>(model))) mismatches++;
+                    ring.addAll(list);
+                }
+            }
+            ci.check(mismatches == 0 && ring.capacity() <= 64,
+                     "20000 random uses of a ring match a deque, " + mismatches + " mismatches");
+
+            // priorities
+            EventList events = new EventList(100, 4);
+            EtEventImpl[] mixed = {event(0, 1, Priority.LOW), event(1, 1, Priority.HIGH),
+                                   event(2, 1, Priority.LOW), event(3, 1, Priority.HIGH)};
+            events.put(mixed);
+            String order = ids(takeAll(events), 4);
+            events.put(new ArrayList<EtEventImpl>(Arrays.asList(mixed)));
+            order += ids(takeAll(events), 4);
+            ci.check(order.equals("[1, 3, 0, 2][1, 3, 0, 2]"), "put high before low, in order " + order);
+
+            events.put(new EtEventImpl[] {event(10, 1, Priority.LOW), event(11, 1, Priority.HIGH)});
+            events.putReverse(new ArrayList<EtEventImpl>(Arrays.asList(mixed)));
+            order = ids(takeAll(events), 6);
+            ci.check(order.equals("[3, 1, 11, 2, 0, 10]"), "put back ahead of others, high before low " + order);
+
+            // counts
+            events = new EventList(100, 4);
+            list.clear();
+            for (int i = 0; i < 5; i++) list.add(event(i, 1, i % 2 == 0 ? Priority.LOW : Priority.HIGH));
+            synchronized (events) {
+                events.putInLow(list);
+                events.putAll(list.subList(0, 3));
+            }
+            events.putInGC(mixed, 1, 2);
+            long in = events.getEventsIn();
+            EtEventImpl[] some = new EtEventImpl[10];
+            int takenOut;
+            synchronized (events) {
+                takenOut = events.take(some, 0, 4);
+            }
+            takenOut += events.steal(some, 0, 10);
+            list.clear();
+            events.get(list);
+            takenOut += list.size();
+            ci.check(in == 10 && events.getEventsOut() == 10 && takenOut == 10 && events.getCount() == 0,
+                     in + " events counted in and " + events.getEventsOut() + " out");
+
+            // through an ET system
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(50);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+            AttachmentLocal producer = sys.attach(0);
+
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setRestoreMode(EtConstants.stationRestoreIn);
+            StationLocal restoring = sys.createStation(sConfig, "restoring");
+            sConfig = new EtStationConfig();
+            sConfig.setPrescale(3);
+            StationLocal scaled = sys.createStation(sConfig, "prescaled");
+            AttachmentLocal leaving = sys.attach(restoring.getStationId());
+            AttachmentLocal staying = sys.attach(restoring.getStationId());
+            AttachmentLocal scaledAtt = sys.attach(scaled.getStationId());
+
+            EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, 6, 16);
+            for (int i = 0; i < evs.length; i++) {
+                evs[i].setPriority(i % 2 == 0 ? Priority.LOW : Priority.HIGH);
+            }
+            sys.putEvents(producer, evs);
+
+            // the attachment going away has the 3 high events and 1 low, 2 low wait in the list
+            EventList restoreList = restoring.getInputList();
+            for (int i = 0; i < 1000 && restoreList.getCount() < 6; i++) Thread.sleep(1);
+            EtEventImpl[] held = sys.getEvents(leaving, EtConstants.async, 0, 4);
+            sys.detach(leaving);
+            EtEventImpl[] gotten = sys.getEvents(staying, EtConstants.async, 0, 10);
+            boolean highFirst = (held.length == 4) && (gotten.length == 6);
+            for (int i = 0; i < gotten.length; i++) {
+                highFirst &= gotten[i].getPriority() == (i < 3 ? Priority.HIGH : Priority.LOW);
+            }
+            ci.check(highFirst, "4 events restored to the input list, gotten high priority first");
+            ci.check(gotten[3] == held[3] && gotten[4] == evs[2] && gotten[5] == evs[4],
+                     "restored events ahead of those already waiting");
+            sys.putEvents(staying, gotten);
+
+            // every third event tried
+            EtEventImpl[] scaledEvs = sys.getEvents(scaledAtt, EtConstants.timed, 1000000, 10);
+            EventList scaledList = scaled.getInputList();
+            ci.check(scaledEvs.length == 2 && scaledList.getEventsTry() == 6 &&
+                     scaledList.getEventsIn() == 2 && scaledList.getEventsOut() == 2,
+                     "prescaled station tried " + scaledList.getEventsTry() + " events, put in " +
+                     scaledList.getEventsIn() + ", took out " + scaledList.getEventsOut());
+            sys.putEvents(scaledAtt, scaledEvs);
+
+            sys.putEvents(staying, gotten);
+            sys.detach(staying);
+            sys.detach(scaledAtt);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events held in rings wrongly");
+    }
+}
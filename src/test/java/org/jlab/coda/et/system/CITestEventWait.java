@@ -0,0 +1,203 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.exception.EtTimeoutException;
+import org.jlab.coda.et.exception.EtWakeUpException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * Checks how attachments wait for events. A Java ET system is run in this process.
+ * Timed gets from an empty station must end on time: 200 gets waiting 1.5 millisec
+ * must be late by no more than 300 microsec on average and 50 millisec at most.
+ * Then 8 attachments of one station each wait for an event. One put of a single event
+ * must unpark just one of them and a put of 3 events just 3, the others never
+ * waking. Finally waking up one attachment must release only its waiter, and
+ * waking up all of them the rest.
+ */
+public class CITestEventWait {
+
+    static final CISupport ci = new CISupport("EventWait", 127);
+
+    static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /** Waits for an event, recording whether it got one or was woken up. */
+    static class Waiter extends Thread {
+        final SystemCreate sys;
+        final AttachmentLocal att;
+        volatile boolean gotEvent, wokenUp;
+
+        Waiter(SystemCreate sys, AttachmentLocal att) {
+            this.sys = sys;
+            this.att = att;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                EtEventImpl[] evs = sys.getEvents(att, EtConstants.sleep, 0, 1);
+                gotEvent = true;
+                sys.putEvents(att, evs);
+            }
+            catch (EtWakeUpException e) {
+                wokenUp = true;
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        /** Number of times this thread parked or waited so far, -1 once it's done. */
+        long waits() {
+            ThreadInfo info = threadBean.getThreadInfo(getId());
+            return (info == null) ? -1L : info.getWaitedCount();
+        }
+
+        /** Is this thread parked waiting for an event? */
+        boolean parked() {
+            return isAlive() && getState() == Thread.State.WAITING;
+        }
+    }
+
+    /** Wait up to a second for every living waiter to park. */
+    static boolean awaitParked(Waiter[] waiters) throws InterruptedException {
+        for (int i = 0; i < 1000; i++) {
+            boolean all = true;
+            for (Waiter w : waiters) all &= !w.isAlive() || w.parked();
+            if (all) return true;
+            Thread.sleep(1);
+        }
+        return false;
+    }
+
+    /** Wait up to a second for a number of waiters to have gotten events. */
+    static int awaitGotten(Waiter[] waiters, int count) throws InterruptedException {
+        int gotten = 0;
+        for (int i = 0; i < 1000; i++) {
+            gotten = 0;
+            for (Waiter w : waiters) if (w.gotEvent) gotten++;
+            if (gotten >= count) break;
+            Thread.sleep(1);
+        }
+        // give any others woken a chance to show it
+        Thread.sleep(50);
+        return gotten;
+    }
+
+    /** Count the waiters still waiting which were unparked since their waits were taken. */
+    static int woken(Waiter[] waiters, long[] waits) {
+        int woken = 0;
+        for (int i = 0; i < waiters.length; i++) {
+            if (waiters[i].gotEvent || waiters[i].wokenUp) continue;
+            if (waiters[i].waits() != waits[i] || !waiters[i].parked()) woken++;
+        }
+        return woken;
+    }
+
+    static long[] waits(Waiter[] waiters) {
+        long[] waits = new long[waiters.length];
+        for (int i = 0; i < waiters.length; i++) waits[i] = waiters[i].waits();
+        return waits;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(50);
+            config.setEventSize(16);
+            final SystemCreate sys = ci.start(config);
+            StationLocal station = sys.createStation(new EtStationConfig(), "waiting");
+            AttachmentLocal producer = sys.attach(0);
+
+            // timed gets from an empty station
+            AttachmentLocal timer = sys.attach(station.getStationId());
+            final int waitMicros = 1500, tries = 200;
+            long total = 0L, most = 0L;
+            boolean timedOut = true;
+            for (int i = 0; i < tries; i++) {
+                long start = System.nanoTime();
+                try {
+                    sys.getEvents(timer, EtConstants.timed, waitMicros, 1);
+                    timedOut = false;
+                }
+                catch (EtTimeoutException e) {
+                }
+                long late = Math.max(0L, (System.nanoTime() - start) / 1000L - waitMicros);
+                total += late;
+                most = Math.max(most, late);
+            }
+            long mean = total / tries;
+            ci.check(timedOut && mean <= 300 && most <= 50000,
+                     tries + " gets waiting " + waitMicros + " microsec late by " + mean +
+                     " on average, " + most + " at most");
+            sys.detach(timer);
+
+            // many waiters, each event unparks one
+            final int numWaiters = 8;
+            Waiter[] waiters = new Waiter[numWaiters];
+            for (int i = 0; i < numWaiters; i++) {
+                waiters[i] = new Waiter(sys, sys.attach(station.getStationId()));
+                waiters[i].start();
+            }
+            ci.check(awaitParked(waiters), numWaiters + " attachments parked waiting for events");
+
+            long[] waits = waits(waiters);
+            sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 1, 16));
+            int gotten = awaitGotten(waiters, 1);
+            int others = woken(waiters, waits);
+            ci.check(gotten == 1 && others == 0,
+                     "1 event put, " + gotten + " waiter got it, " + others + " others unparked");
+
+            awaitParked(waiters);
+            waits = waits(waiters);
+            sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 3, 16));
+            gotten = awaitGotten(waiters, 4);
+            others = woken(waiters, waits);
+            ci.check(gotten == 4 && others == 0,
+                     "3 events put at once, " + (gotten - 1) + " waiters got them, " + others + " others unparked");
+
+            // waking one, then all
+            Waiter one = null;
+            for (Waiter w : waiters) {
+                if (w.isAlive()) {
+                    one = w;
+                    break;
+                }
+            }
+            awaitParked(waiters);
+            waits = waits(waiters);
+            long start = System.nanoTime();
+            station.getInputList().wakeUp(one.att);
+            one.join(1000);
+            long took = (System.nanoTime() - start) / 1000000L;
+            others = woken(waiters, waits);
+            ci.check(one.wokenUp && others == 0,
+                     "waking one attachment releases its waiter in " + took + " millisec, " +
+                     others + " others unparked");
+
+            start = System.nanoTime();
+            station.getInputList().wakeUpAll();
+            int released = 0;
+            for (Waiter w : waiters) {
+                if (w.gotEvent || w == one) continue;
+                w.join(1000);
+                if (w.wokenUp) released++;
+            }
+            took = (System.nanoTime() - start) / 1000000L;
+            ci.check(released == numWaiters - 5,
+                     "waking all releases the " + released + " other waiters in " + took + " millisec");
+
+            for (Waiter w : waiters) sys.detach(w.att);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("attachments waited for events wrongly");
+    }
+}
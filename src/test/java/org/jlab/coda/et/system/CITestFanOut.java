@@ -0,0 +1,188 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+/**
+ * Checks fan-out groups of parallel stations sharing each event. A Java ET system
+ * is run in this process with a fan-out group of 3 stations and nothing after it.
+ * Every member must get the very same events, in order. An event must only go back
+ * to GRAND_CENTRAL once the last member has put or dumped it, whichever each one
+ * does. When a member's attachment detaches holding some events, and leaving others
+ * in its input list, the other members must keep their copies, untouched, and the
+ * events go back once they are done. Events made afterwards are shared only by the
+ * 2 members left. No events may be lost.
+ */
+public class CITestFanOut {
+
+    static final CISupport ci = new CISupport("FanOut", 117);
+
+    /** Wait up to a second for a list to hold a number of events. */
+    static boolean awaitCount(EventList list, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && list.getCount() != count; i++) {
+            Thread.sleep(1);
+        }
+        return list.getCount() == count;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            int numEvents = 50;
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+            EventList gc = sys.getStations().get(0).getInputList();
+
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setFlowMode(EtConstants.stationParallel);
+            sConfig.setSelectMode(EtConstants.stationSelectFanOut);
+            StationLocal[] group = new StationLocal[3];
+            AttachmentLocal[] atts = new AttachmentLocal[3];
+            for (int i = 0; i < 3; i++) {
+                group[i] = (i == 0) ? sys.createStation(sConfig, "fanout0") :
+                                      sys.createStation(sConfig, "fanout" + i, 1, EtConstants.end);
+                atts[i] = sys.attach(group[i].getStationId());
+            }
+            AttachmentLocal producer = sys.attach(0);
+
+            // put by all
+            EtEventImpl[] made = produce(sys, producer, 10, 0);
+            EtEventImpl[][] got = new EtEventImpl[3][];
+            boolean same = true, shared = true;
+            for (int i = 0; i < 3; i++) {
+                got[i] = getAll(sys, atts[i], 10);
+                same &= sameEvents(got[i], made);
+            }
+            for (EtEventImpl ev : made) shared &= (ev.getReaders() == 3);
+            ci.check(same, "all 3 members get the same 10 events, in order");
+            ci.check(shared, "each event shared by 3 readers");
+            ci.check(gc.getCount() == numEvents - 10, "events out of GRAND_CENTRAL while read");
+
+            sys.putEvents(atts[0], got[0]);
+            sys.putEvents(atts[1], got[1]);
+            Thread.sleep(50);
+            ci.check(gc.getCount() == numEvents - 10, "events not back after 2 of 3 members put them");
+            sys.putEvents(atts[2], got[2]);
+            ci.check(awaitCount(gc, numEvents), "events back after the last member puts them");
+
+            // mixing puts and dumps, the last one dumping
+            made = produce(sys, producer, 10, 100);
+            for (int i = 0; i < 3; i++) got[i] = getAll(sys, atts[i], 10);
+            sys.dumpEvents(atts[0], got[0]);
+            sys.putEvents(atts[1], got[1]);
+            Thread.sleep(50);
+            boolean intact = gc.getCount() == numEvents - 10;
+            for (int j = 0; j < 10; j++) {
+                intact &= (got[2][j].getDataBuffer().getInt(0) == 100 + j) && (got[2][j].getReaders() == 1);
+            }
+            ci.check(intact, "a dump and a put leave the last member's events intact and unreturned");
+            sys.dumpEvents(atts[2], got[2]);
+            ci.check(awaitCount(gc, numEvents), "events back after the last member dumps them");
+
+            // the middle member detaches with 4 events held and 6 still in its list
+            made = produce(sys, producer, 10, 200);
+            for (int i = 0; i < 3; i++) awaitCount(group[i].getInputList(), 10);
+            EtEventImpl[] held = sys.getEvents(atts[1], EtConstants.sleep, 0, 4);
+            got[0] = getAll(sys, atts[0], 3);
+            sys.detach(atts[1]);
+            ci.check(group[1].getInputList().getCount() == 0 && atts[1].getOwnedEvents().size() == 0,
+                     "detached member's held and unread events let go of");
+            boolean kept = group[0].getInputList().getCount() == 7 && group[2].getInputList().getCount() == 10;
+            for (EtEventImpl ev : made) kept &= (ev.getReaders() == 2);
+            ci.check(kept && held.length == 4, "other members keep their copies, each now shared by 2");
+            Thread.sleep(50);
+            ci.check(gc.getCount() == numEvents - 10, "detaching returns none of the shared events");
+
+            EtEventImpl[] rest = getAll(sys, atts[0], 7);
+            EtEventImpl[] all0 = Arrays.copyOf(got[0], 10);
+            System.arraycopy(rest, 0, all0, 3, 7);
+            got[2] = getAll(sys, atts[2], 10);
+            ci.check(sameEvents(all0, made) && sameEvents(got[2], made) && data(got[2], 200),
+                     "other members still read every event, data untouched");
+            sys.putEvents(atts[0], all0);
+            Thread.sleep(50);
+            ci.check(gc.getCount() == numEvents - 10, "events not back after 1 of the 2 left puts them");
+            sys.putEvents(atts[2], got[2]);
+            ci.check(awaitCount(gc, numEvents), "events back after the last member left puts them");
+
+            // with 2 members left, events made now are shared by 2
+            made = produce(sys, producer, 5, 300);
+            got[0] = getAll(sys, atts[0], 5);
+            got[2] = getAll(sys, atts[2], 5);
+            shared = group[1].getInputList().getCount() == 0;
+            for (EtEventImpl ev : made) shared &= (ev.getReaders() == 2);
+            ci.check(shared && sameEvents(got[0], made) && sameEvents(got[2], made),
+                     "events made after a detach shared by the 2 members left");
+            sys.dumpEvents(atts[2], got[2]);
+            sys.putEvents(atts[0], got[0]);
+            ci.check(awaitCount(gc, numEvents), "events back after both members are done");
+
+            // a member comes back and restores what it holds when detaching again
+            atts[1] = sys.attach(group[1].getStationId());
+            made = produce(sys, producer, 6, 400);
+            for (int i = 0; i < 3; i++) got[i] = getAll(sys, atts[i], 6);
+            sys.putEvents(atts[0], got[0]);
+            sys.detach(atts[1]);
+            Thread.sleep(50);
+            ci.check(gc.getCount() == numEvents - 6 && data(got[2], 400),
+                     "events restored by a detaching member still held by the last one");
+            sys.putEvents(atts[2], got[2]);
+            ci.check(awaitCount(gc, numEvents), "no events lost, " + gc.getCount() + " of " + numEvents + " back");
+
+            sys.detach(atts[0]);
+            sys.detach(atts[2]);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events fanned out wrongly");
+    }
+
+    /** Make and put a number of events, numbered from first in the first data int. */
+    static EtEventImpl[] produce(SystemCreate sys, AttachmentLocal producer, int count, int first) throws Exception {
+        EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, count, 16);
+        for (int i = 0; i < count; i++) {
+            evs[i].getDataBuffer().putInt(0, first + i);
+            evs[i].setLength(4);
+        }
+        sys.putEvents(producer, evs);
+        return evs;
+    }
+
+    /** Get a number of events, waiting up to a second for each batch. */
+    static EtEventImpl[] getAll(SystemCreate sys, AttachmentLocal att, int count) throws Exception {
+        ArrayList<EtEventImpl> evs = new ArrayList<EtEventImpl>();
+        while (evs.size() < count) {
+            evs.addAll(Arrays.asList(sys.getEvents(att, EtConstants.timed, 1000000, count - evs.size())));
+        }
+        return evs.toArray(new EtEventImpl[0]);
+    }
+
+    /** Are these the very same event objects, in the same order? */
+    static boolean sameEvents(EtEventImpl[] a, EtEventImpl[] b) {
+        if (a.length != b.length) return false;
+        IdentityHashMap<EtEventImpl, Integer> index = new IdentityHashMap<EtEventImpl, Integer>();
+        for (int i = 0; i < b.length; i++) index.put(b[i], i);
+        for (int i = 0; i < a.length; i++) {
+            Integer j = index.get(a[i]);
+            if (j == null || j != i) return false;
+        }
+        return true;
+    }
+
+    /** Do events carry consecutive numbers from first? */
+    static boolean data(EtEventImpl[] evs, int first) {
+        for (int i = 0; i < evs.length; i++) {
+            if (evs[i].getDataBuffer().getInt(0) != first + i) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,197 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.DataStatus;
+import org.jlab.coda.et.enums.Priority;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.HashSet;
+
+/**
+ * Checks the bytes sent for netEvsGet by gathering writes. A Java ET system is run
+ * in this process, once with a thread per connection and once with a selector thread,
+ * each with events on the heap and off it. Events of no data, a little data, and more
+ * data than goes into one gathering write, with assorted priorities, data status, byte
+ * orders and control words, are gotten over a raw connection. The reply must be byte
+ * for byte what was sent before the writes gathered: the number of events and their
+ * total size, then each event's header followed by its data. A second, smaller get
+ * must not carry over anything from the first.
+ */
+public class CITestGatherSend {
+
+    static final CISupport ci = new CISupport("GatherSend", 122);
+
+    /** Wait up to a second for a list to hold a number of events. */
+    static boolean awaitCount(EventList list, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && list.getCount() != count; i++) {
+            Thread.sleep(1);
+        }
+        return list.getCount() == count;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            int[] storages = {EtConstants.storageHeap, EtConstants.storageDirect};
+            String[] storageNames = {"heap", "direct"};
+            int[] lengths = {0, 1, 100, 4000, ClientConnection.gatherHeapBytesMax + 1000};
+
+            for (int run = 0; run < 4; run++) {
+                int selectors = run / 2, storage = storages[run % 2];
+                String how = (selectors == 0 ? "thread, " : "selector, ") + storageNames[run % 2];
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(40);
+                config.setEventSize(ClientConnection.gatherHeapBytesMax + 1000);
+                config.setEventStorage(storage);
+                config.setServerSelectors(selectors);
+                SystemCreate sys = ci.start(config, run);
+                StationLocal station = sys.createStation(new EtStationConfig(), "gather");
+                AttachmentLocal producer = sys.attach(0);
+
+                Socket socket = ci.connect(run);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                int attId = open(out, in, ci.etName(run), station.getStationId());
+
+                // 20 events, more than headers are first made for
+                for (int count : new int[] {20, 3}) {
+                    EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, count, 16);
+                    HashSet<Integer> ids = new HashSet<Integer>();
+                    for (int j = 0; j < count; j++) {
+                        EtEventImpl ev = evs[j];
+                        int length = lengths[j % lengths.length];
+                        for (int i = 0; i < length; i++) ev.getDataBuffer().put(i, (byte) (j + i));
+                        ev.setLength(length);
+                        ev.setPriority(Priority.values()[j % Priority.values().length]);
+                        ev.setDataStatus(DataStatus.values()[j % DataStatus.values().length]);
+                        ev.setByteOrder(j % 2 == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+                        int[] control = new int[EtConstants.stationSelectInts];
+                        for (int i = 0; i < control.length; i++) control[i] = 1000 * j + i;
+                        ev.setControl(control);
+                        ids.add(ev.getId());
+                    }
+                    sys.putEvents(producer, evs);
+                    awaitCount(station.getInputList(), count);
+
+                    out.writeInt(EtConstants.netEvsGet);
+                    out.writeInt(attId);
+                    out.writeInt(EtConstants.timed);
+                    out.writeInt(0);      // don't modify, so events are put back at once
+                    out.writeInt(count);
+                    out.writeInt(1);
+                    out.writeInt(0);
+                    out.flush();
+
+                    // events come most urgent first, so the layout follows the ids sent
+                    int number = in.readInt();
+                    long size = in.readLong();
+                    ByteArrayOutputStream sent = new ByteArrayOutputStream();
+                    EtEventImpl[] gotten = new EtEventImpl[number];
+                    int headerSize = 4 * (9 + EtConstants.stationSelectInts);
+                    for (int j = 0; j < number; j++) {
+                        byte[] header = new byte[headerSize];
+                        in.readFully(header);
+                        sent.write(header);
+                        gotten[j] = sys.getEvents()[EtUtils.bytesToInt(header, 20)];
+                        byte[] data = new byte[(int) EtUtils.bytesToLong(header, 0)];
+                        in.readFully(data);
+                        sent.write(data);
+                    }
+                    byte[] expected = oldLayout(gotten);
+                    boolean sameIds = number == count;
+                    for (EtEventImpl ev : gotten) sameIds &= ids.remove(ev.getId());
+                    ci.check(sameIds, how + ": the " + count + " events put are sent");
+                    ci.check(size == EtUtils.bytesToLong(expected, 4) && number == EtUtils.bytesToInt(expected, 0),
+                             how + ": number of events and total size as before");
+                    ci.check(Arrays.equals(sent.toByteArray(), Arrays.copyOfRange(expected, 12, expected.length)),
+                             how + ": " + sent.size() + " bytes of headers and data as before");
+
+                    socket.setSoTimeout(100);
+                    boolean nothingMore;
+                    try {
+                        nothingMore = in.read() < 0;
+                    }
+                    catch (java.net.SocketTimeoutException e) {
+                        nothingMore = true;
+                    }
+                    socket.setSoTimeout(5000);
+                    ci.check(nothingMore, how + ": nothing sent after the events");
+                    awaitCount(sys.getStations().get(0).getInputList(), config.getNumEvents());
+                }
+
+                out.writeInt(EtConstants.netClose);
+                out.flush();
+                socket.close();
+                sys.detach(producer);
+                sys.shutdown();
+            }
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events sent wrongly");
+    }
+
+    /** Open the system and attach to a station over a raw connection, returning the attachment id. */
+    static int open(DataOutputStream out, DataInputStream in, String etName, int statId) throws IOException {
+        for (int magic : EtConstants.magicNumbers) out.writeInt(magic);
+        out.writeInt(EtConstants.endianBig);
+        out.writeInt(etName.length() + 1);
+        out.writeInt(1);
+        out.writeLong(0L);
+        out.write(etName.getBytes("ASCII"));
+        out.write(0);
+        out.flush();
+        if (in.readInt() != EtConstants.ok) throw new IOException("cannot open " + etName);
+        in.readFully(new byte[36]);
+
+        out.writeInt(EtConstants.netStatAtt);
+        out.writeInt(statId);
+        out.writeInt(1);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.flush();
+        if (in.readInt() != EtConstants.ok) throw new IOException("cannot attach");
+        return in.readInt();
+    }
+
+    /** The reply to netEvsGet as built before data was sent by gathering writes. */
+    static byte[] oldLayout(EtEventImpl[] evs) {
+        int selectInts = EtConstants.stationSelectInts;
+        int headerSize = 4 * (6 + selectInts);
+        int size = evs.length * headerSize;
+        for (EtEventImpl ev : evs) {
+            size += ev.getLength();
+        }
+        byte[] buffer = new byte[12 + evs.length * (headerSize + 12) + size];
+
+        EtUtils.intToBytes(evs.length, buffer, 0);
+        EtUtils.longToBytes((long) size, buffer, 4);
+        int index = 12;
+        for (EtEventImpl ev : evs) {
+            int length = ev.getLength();
+            EtUtils.longToBytes((long) length, buffer, index);
+            EtUtils.longToBytes((long) ev.getMemSize(), buffer, index += 8);
+            EtUtils.intToBytes(ev.getPriority().getValue() |
+                               ev.getDataStatus().getValue() << EtConstants.dataShift, buffer, index += 8);
+            EtUtils.intToBytes(ev.getId(), buffer, index += 4); // 4 bytes skipped, left 0
+            EtUtils.intToBytes(ev.getRawByteOrder(), buffer, index += 8);
+            EtUtils.intToBytes(0, buffer, index += 4);
+            int[] control = ev.getControl();
+            for (int i = 0; i < selectInts; i++) {
+                EtUtils.intToBytes(control[i], buffer, index += 4);
+            }
+            index += 4;
+            ev.copyDataTo(buffer, index, length);
+            index += length;
+        }
+        return Arrays.copyOf(buffer, index);
+    }
+}
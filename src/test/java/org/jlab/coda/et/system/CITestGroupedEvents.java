@@ -0,0 +1,138 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.exception.EtException;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * Checks that free events are handed out by group. A Java ET system with 2 groups of
+ * 5 events is run in this process and all its events are taken. An attachment waiting
+ * for a new event of group 1 must not be woken, nor even unparked, when events of
+ * group 2 come back to GRAND_CENTRAL, whether put through the stations or dumped. It
+ * must get an event once one of group 1 comes back either way. Asking for new events
+ * of a group below 1 or above the number of groups must be refused.
+ */
+public class CITestGroupedEvents {
+
+    static final CISupport ci = new CISupport("GroupedEvents", 129);
+
+    static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /** Waits for a new event of group 1. */
+    static class Waiter extends Thread {
+        final SystemCreate sys;
+        final AttachmentLocal att;
+        volatile List<EtEventImpl> gotten;
+
+        Waiter(SystemCreate sys, AttachmentLocal att) {
+            this.sys = sys;
+            this.att = att;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                gotten = sys.newEvents(att, EtConstants.sleep, 0, 1, 16, 1);
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+
+        /** Number of times this thread parked or waited so far, -1 once it's done. */
+        long waits() {
+            ThreadInfo info = threadBean.getThreadInfo(getId());
+            return (info == null) ? -1L : info.getWaitedCount();
+        }
+
+        /** Wait up to a second for this thread to park. */
+        boolean awaitParked() throws InterruptedException {
+            for (int i = 0; i < 1000 && isAlive() && getState() != Thread.State.WAITING; i++) {
+                Thread.sleep(1);
+            }
+            return isAlive() && getState() == Thread.State.WAITING;
+        }
+    }
+
+    /** Is a new event of a group refused? */
+    static boolean refused(SystemCreate sys, AttachmentLocal att, int group) throws Exception {
+        try {
+            sys.newEvents(att, EtConstants.async, 0, 1, 16, group);
+            return false;
+        }
+        catch (EtException e) {
+        }
+        try {
+            sys.newEvents(att, EtConstants.async, 0, new EtEventImpl[1], 0, 1, 16, group);
+            return false;
+        }
+        catch (EtException e) {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(10);
+            config.setEventSize(16);
+            config.setGroups(new int[] {5, 5});
+            SystemCreate sys = ci.start(config);
+            AttachmentLocal producer = sys.attach(0);
+
+            ci.check(refused(sys, producer, 0) && refused(sys, producer, -1) && refused(sys, producer, 3),
+                     "new events of groups 0, -1 and 3 refused");
+
+            List<EtEventImpl> group1 = sys.newEvents(producer, EtConstants.async, 0, 5, 16, 1);
+            List<EtEventImpl> group2 = sys.newEvents(producer, EtConstants.async, 0, 5, 16, 2);
+            ci.check(group1.size() == 5 && group2.size() == 5, "all events of both groups taken");
+
+            for (int round = 0; round < 2; round++) {
+                String how = (round == 0) ? "put" : "dumped";
+                Waiter waiter = new Waiter(sys, sys.attach(0));
+                waiter.start();
+                boolean parked = waiter.awaitParked();
+                long waits = waiter.waits();
+
+                // group 2 events come back
+                EtEventImpl[] two = {group2.remove(0), group2.remove(0)};
+                if (round == 0) sys.putEvents(producer, two);
+                else sys.dumpEvents(producer, two);
+                EventList gc = sys.getStations().get(0).getInputList();
+                for (int i = 0; i < 1000 && gc.getCount() < 2; i++) Thread.sleep(1);
+                Thread.sleep(50);
+                ci.check(parked && waiter.gotten == null && waiter.waits() == waits &&
+                         waiter.getState() == Thread.State.WAITING,
+                         "waiter for group 1 not unparked by 2 events of group 2 " + how);
+
+                // a group 1 event comes back
+                EtEventImpl[] one = {group1.remove(0)};
+                if (round == 0) sys.putEvents(producer, one);
+                else sys.dumpEvents(producer, one);
+                waiter.join(1000);
+                ci.check(waiter.gotten != null && waiter.gotten.size() == 1 &&
+                         waiter.gotten.get(0).getGroup() == 1,
+                         "waiter for group 1 gets the event of group 1 " + how);
+                sys.dumpEvents(waiter.att, waiter.gotten.toArray(new EtEventImpl[0]));
+                sys.detach(waiter.att);
+                group1.addAll(sys.newEvents(producer, EtConstants.async, 0, 1, 16, 1));
+                group2.addAll(sys.newEvents(producer, EtConstants.async, 0, 2, 16, 2));
+            }
+
+            sys.dumpEvents(producer, group1.toArray(new EtEventImpl[0]));
+            sys.dumpEvents(producer, group2.toArray(new EtEventImpl[0]));
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events of groups handed out wrongly");
+    }
+}
@@ -0,0 +1,117 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+/**
+ * Checks the sets of events owned by attachments. Two sets sharing one slot array
+ * must each keep exactly their own events through adds and removes, ignoring
+ * events owned by the other. Then a Java ET system is run in this process and an
+ * attachment holding used events and one holding new events are detached.
+ * Their counts of owned events must follow each get, put and dump, the used
+ * events must go back into the station's input list and the new ones to
+ * GRAND_CENTRAL, and no event may be lost.
+ */
+public class CITestOwnedEvents {
+
+    static final CISupport ci = new CISupport("OwnedEvents", 110);
+
+    /** Wait up to a second for a list to hold a number of events. */
+    static boolean awaitCount(EventList list, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && list.getCount() != count; i++) {
+            Thread.sleep(1);
+        }
+        return list.getCount() == count;
+    }
+
+    /** Is every event in the set, in any order, and nothing else? */
+    static boolean holds(OwnedEvents set, EtEventImpl... evs) {
+        EtEventImpl[] owned = set.toArray();
+        if (owned.length != evs.length) return false;
+        outer:
+        for (EtEventImpl ev : evs) {
+            for (EtEventImpl o : owned) {
+                if (o == ev) continue outer;
+            }
+            return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            int numEvents = 100;
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(64);
+            SystemCreate sys = ci.start(config);
+            EtEventImpl[] evs = sys.getEvents();
+
+            // Two sets sharing slots
+            int[] slots = new int[numEvents];
+            OwnedEvents a = new OwnedEvents(slots), b = new OwnedEvents(slots);
+            a.add(evs, 0, 40);
+            b.add(evs, 40, 5);
+            ci.check(a.size() == 40 && b.size() == 5, "sizes after adding 40 and 5");
+            a.remove(new EtEventImpl[] {evs[3], evs[39], evs[0], evs[41]}, 0, 4);
+            ci.check(a.size() == 37, "removing 3 of its own and 1 of the other's leaves 37");
+            ci.check(holds(b, evs[40], evs[41], evs[42], evs[43], evs[44]), "other set untouched");
+            a.remove(new EtEventImpl[] {evs[3]}, 0, 1);
+            ci.check(a.size() == 37, "removing an event twice is ignored");
+            java.util.ArrayList<EtEventImpl> rest = new java.util.ArrayList<EtEventImpl>();
+            for (int i = 1; i < 39; i++) if (i != 3) rest.add(evs[i]);
+            a.remove(rest);
+            ci.check(a.size() == 0 && a.toArray().length == 0, "removing the rest empties the set");
+            b.remove(new EtEventImpl[] {evs[42], evs[40]}, 0, 2);
+            ci.check(holds(b, evs[41], evs[43], evs[44]), "holes filled by the last event");
+
+            // A station with 2 attachments restoring to its input list
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setUserMode(EtConstants.stationUserMulti);
+            sConfig.setRestoreMode(EtConstants.stationRestoreIn);
+            StationLocal station = sys.createStation(sConfig, "owned_station");
+            AttachmentLocal att1 = sys.attach(station.getStationId());
+            AttachmentLocal att2 = sys.attach(station.getStationId());
+            AttachmentLocal producer = sys.attach(0);
+            EventList gcList = sys.stationIdToObject(0).getInputList();
+
+            EtEventImpl[] made = sys.newEvents(producer, EtConstants.sleep, 0, 20, 64);
+            ci.check(producer.getOwnedEvents().size() == 20, "producer owns 20 new events");
+            sys.putEvents(producer, made);
+            ci.check(producer.getOwnedEvents().size() == 0, "producer owns none after putting");
+            ci.check(awaitCount(station.getInputList(), 20), "station input list holds 20");
+
+            EtEventImpl[] got = sys.getEvents(att1, EtConstants.sleep, 0, 10);
+            ci.check(got.length == 10 && att1.getOwnedEvents().size() == 10, "attachment owns the 10 it got");
+            sys.putEvents(att1, got, 0, 3);
+            sys.dumpEvents(att1, got, 3, 2);
+            ci.check(holds(att1.getOwnedEvents(), got[5], got[6], got[7], got[8], got[9]),
+                     "attachment owns the 5 left after putting 3 and dumping 2");
+
+            EtEventImpl[] held = sys.newEvents(producer, EtConstants.sleep, 0, 4, 64);
+            ci.check(holds(producer.getOwnedEvents(), held), "producer owns 4 more new events");
+
+            // detach both holding events
+            sys.detach(att1);
+            ci.check(awaitCount(station.getInputList(), 15), "5 used events restored to the input list");
+            int free = numEvents - 15 - 4;
+            ci.check(awaitCount(gcList, free), "3 put and 2 dumped events back in GRAND_CENTRAL");
+            sys.detach(producer);
+            ci.check(awaitCount(gcList, free + 4), "4 new events dumped to GRAND_CENTRAL on detach");
+
+            // the other attachment gets everything left
+            got = sys.getEvents(att2, EtConstants.sleep, 0, 100);
+            ci.check(got.length == 15 && att2.getOwnedEvents().size() == 15, "other attachment gets the 15 left");
+            sys.putEvents(att2, got);
+            ci.check(att2.getOwnedEvents().size() == 0 && awaitCount(gcList, numEvents), "no events lost");
+
+            sys.detach(att2);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("owned events wrong");
+    }
+}
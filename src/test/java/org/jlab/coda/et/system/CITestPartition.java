@@ -0,0 +1,200 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Checks the key-partitioned parallel stations. A consistent hashing ring over 5
+ * stations must always give a key the same station, even when made again with other
+ * station objects of the same names, and share 100000 keys fairly. Adding a sixth
+ * station must move only about a sixth of the keys, all to the new one, and removing
+ * a station must move only its own keys. Then a Java ET system is run in this process
+ * with a partitioned group of 3 stations keyed on control word 2, the word index kept
+ * in the first select word. Each event must go to the station the ring gives its key,
+ * in order, and when one station goes idle and comes back only its keys may move.
+ */
+public class CITestPartition {
+
+    static final CISupport ci = new CISupport("Partition", 115);
+
+    public static void main(String[] args) {
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(300);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+
+            // Stations for rings only need names
+            StationLocal[] all = new StationLocal[7];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = sys.createStation(new EtStationConfig(), "member" + i);
+            }
+            StationLocal[] five = {all[0], all[1], all[2], all[3], all[4]};
+            StationLocal[] six  = {all[0], all[1], all[2], all[3], all[4], all[5]};
+            StationLocal[] four = {all[0], all[1], all[3], all[4]};
+
+            Random rand = new Random(15);
+            int numKeys = 100000;
+            int[] keys = new int[numKeys];
+            for (int i = 0; i < numKeys; i++) keys[i] = (i < numKeys/2) ? i : rand.nextInt();
+
+            PartitionRing ring5 = new PartitionRing(five);
+            PartitionRing again = new PartitionRing(five);
+            int[] owner5 = new int[numKeys], shares = new int[5];
+            boolean stable = true;
+            for (int i = 0; i < numKeys; i++) {
+                owner5[i] = ring5.getMember(keys[i]);
+                shares[owner5[i]]++;
+                if (again.getMember(keys[i]) != owner5[i] || ring5.getMember(keys[i]) != owner5[i]) stable = false;
+            }
+            ci.check(stable, "same key, same station, ring made twice");
+            int least = Integer.MAX_VALUE, most = 0;
+            for (int s : shares) {
+                least = Math.min(least, s);
+                most  = Math.max(most, s);
+            }
+            ci.check(least > numKeys/5/2 && most < numKeys/5*3/2,
+                     "keys shared fairly by 5 stations, " + least + " to " + most);
+
+            // adding a station
+            PartitionRing ring6 = new PartitionRing(six);
+            int moved = 0, movedElsewhere = 0;
+            for (int i = 0; i < numKeys; i++) {
+                int member = ring6.getMember(keys[i]);
+                if (member != owner5[i]) {
+                    moved++;
+                    if (member != 5) movedElsewhere++;
+                }
+            }
+            ci.check(movedElsewhere == 0, "keys only move to the added station");
+            ci.check(moved > numKeys/6/2 && moved < numKeys/6*3/2,
+                     "adding a sixth station moves " + moved + " keys, about 1/6 is " + numKeys/6);
+
+            // removing a station
+            PartitionRing ring4 = new PartitionRing(four);
+            moved = 0;
+            int movedOthers = 0;
+            for (int i = 0; i < numKeys; i++) {
+                StationLocal was = five[owner5[i]], is = four[ring4.getMember(keys[i])];
+                if (was != is) {
+                    moved++;
+                    if (was != all[2]) movedOthers++;
+                }
+            }
+            ci.check(movedOthers == 0 && moved == shares[2],
+                     "removing a station moves only its " + shares[2] + " keys, moved " + moved);
+
+            // same names, other objects
+            StationLocal[] others = new StationLocal[5];
+            for (int i = 0; i < 5; i++) {
+                sys.removeStation(all[i].getStationId());
+                others[i] = sys.createStation(new EtStationConfig(), "member" + i);
+            }
+            PartitionRing remade = new PartitionRing(others);
+            stable = true;
+            for (int i = 0; i < numKeys; i++) {
+                if (remade.getMember(keys[i]) != owner5[i]) stable = false;
+            }
+            ci.check(stable, "stations removed and made again get back the same keys");
+            for (StationLocal stat : others) sys.removeStation(stat.getStationId());
+            sys.removeStation(all[5].getStationId());
+            sys.removeStation(all[6].getStationId());
+
+            // Through an ET system
+            EtStationConfig pConfig = new EtStationConfig();
+            pConfig.setFlowMode(EtConstants.stationParallel);
+            pConfig.setSelectMode(EtConstants.stationSelectPartition);
+            pConfig.setPartitionWord(2);
+            ci.check(pConfig.getSelect()[0] == 2 && pConfig.getPartitionWord() == 2, "partition word kept in select[0]");
+            StationLocal[] group = new StationLocal[3];
+            AttachmentLocal[] atts = new AttachmentLocal[3];
+            for (int i = 0; i < 3; i++) {
+                group[i] = (i == 0) ? sys.createStation(pConfig, "part0") :
+                                      sys.createStation(pConfig, "part" + i, 1, EtConstants.end);
+                atts[i] = sys.attach(group[i].getStationId());
+            }
+            AttachmentLocal producer = sys.attach(0);
+            PartitionRing ring3 = new PartitionRing(group);
+
+            HashMap<Integer, Integer> keyStation = new HashMap<Integer, Integer>();
+            boolean routed = send(sys, producer, atts, ring3, group, keyStation, null, rand);
+            ci.check(routed, "each event at the station of its key, in order");
+
+            // the middle station goes idle: only its keys move
+            sys.detach(atts[1]);
+            StationLocal[] two = {group[0], group[2]};
+            atts = new AttachmentLocal[] {atts[0], null, atts[2]};
+            HashMap<Integer, Integer> keyStation2 = new HashMap<Integer, Integer>();
+            routed = send(sys, producer, new AttachmentLocal[] {atts[0], atts[2]}, new PartitionRing(two), two,
+                          keyStation2, null, rand);
+            boolean onlyItsKeys = true;
+            for (Integer key : keyStation2.keySet()) {
+                Integer before = keyStation.get(key);
+                if (before != null && before != group[1].getStationId() &&
+                    !before.equals(keyStation2.get(key))) onlyItsKeys = false;
+            }
+            ci.check(routed && onlyItsKeys, "with a station idle only its keys move");
+
+            // and comes back: its keys come back too
+            atts[1] = sys.attach(group[1].getStationId());
+            HashMap<Integer, Integer> keyStation3 = new HashMap<Integer, Integer>();
+            routed = send(sys, producer, atts, ring3, group, keyStation3, keyStation, rand);
+            ci.check(routed, "with the station back every key returns to its first station");
+
+            for (AttachmentLocal att : atts) sys.detach(att);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events partitioned wrongly");
+    }
+
+    /**
+     * Send 200 events with keys 0-49 in control word 2 through a partitioned group,
+     * checking each arrives, in order, at the station the ring says, and recording
+     * the station id each key went to. If given, the station of each key must be
+     * the one recorded before.
+     */
+    static boolean send(SystemCreate sys, AttachmentLocal producer, AttachmentLocal[] atts,
+                        PartitionRing ring, StationLocal[] group, HashMap<Integer, Integer> keyStation,
+                        HashMap<Integer, Integer> expected, Random rand) throws Exception {
+        int[] control = new int[EtConstants.stationSelectInts];
+        ArrayList<ArrayList<Integer>> sent = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < group.length; i++) sent.add(new ArrayList<Integer>());
+
+        EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, 200, 16);
+        for (int i = 0; i < evs.length; i++) {
+            control[2] = rand.nextInt(50);
+            evs[i].setControl(control);
+            evs[i].getDataBuffer().putInt(0, i);
+            evs[i].setLength(4);
+            sent.get(ring.getMember(control[2])).add(i);
+        }
+        sys.putEvents(producer, evs);
+
+        boolean pass = true;
+        for (int i = 0; i < group.length; i++) {
+            ArrayList<Integer> got = new ArrayList<Integer>();
+            while (got.size() < sent.get(i).size()) {
+                EtEventImpl[] in = sys.getEvents(atts[i], EtConstants.timed, 1000000, 200);
+                for (EtEventImpl ev : in) {
+                    int key = ev.getControl()[2];
+                    keyStation.put(key, group[i].getStationId());
+                    if (expected != null && expected.containsKey(key) &&
+                        !expected.get(key).equals(group[i].getStationId())) pass = false;
+                    got.add(ev.getDataBuffer().getInt(0));
+                }
+                sys.putEvents(atts[i], in);
+            }
+            if (!got.equals(sent.get(i))) pass = false;
+        }
+        return pass;
+    }
+}
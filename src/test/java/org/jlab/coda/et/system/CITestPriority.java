@@ -0,0 +1,169 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Age;
+import org.jlab.coda.et.enums.DataStatus;
+import org.jlab.coda.et.enums.Priority;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks the 5 event priorities and their lanes. Events put into a list in any way
+ * must come out most urgent first and, within a priority, in the order put. Over the
+ * network, systems knowing only high and low priority mask off all but the lowest
+ * bit, so they must see BULK as low and MEDIUM and URGENT as high, LOW and HIGH must
+ * keep their old values, the levels must not run into the data status bits, and codes
+ * not known here must be taken as high or low. Events an attachment still has out when
+ * it goes away must be restored most urgent first. Then a Java ET system is run in this
+ * process and events restored to a station's input list must be gotten in lane order.
+ */
+public class CITestPriority {
+
+    static final CISupport ci = new CISupport("Priority", 120);
+
+    /** Are events ordered most urgent first and, within a priority, by increasing id? */
+    static boolean laneOrder(EtEventImpl[] evs, int count) {
+        for (int i = 1; i < count; i++) {
+            int before = evs[i-1].getPriority().getRank(), now = evs[i].getPriority().getRank();
+            if (now > before || (now == before && evs[i].getId() < evs[i-1].getId())) return false;
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            Priority[] all = Priority.values();
+            Random rand = new Random(20);
+
+            // lanes
+            EventList list = new EventList(500, 8);
+            EtEventImpl[] out = new EtEventImpl[500];
+            boolean ordered = true;
+            for (int trial = 0; trial < 100; trial++) {
+                ArrayList<EtEventImpl> evs = new ArrayList<EtEventImpl>();
+                int count = rand.nextInt(400);
+                for (int i = 0; i < count; i++) {
+                    EtEventImpl ev = new EtEventImpl(4);
+                    ev.setId(i);
+                    ev.setPriority(all[rand.nextInt(all.length)]);
+                    evs.add(ev);
+                }
+                // in runs as from a conductor, or one at a time as from users
+                if (trial % 2 == 0) {
+                    synchronized (list) {
+                        list.putAll(evs);
+                    }
+                }
+                else {
+                    list.put(evs);
+                }
+                int num;
+                synchronized (list) {
+                    num = list.take(out, 0, 500);
+                }
+                ordered &= (num == count) && laneOrder(out, num);
+            }
+            ci.check(ordered, "events come out most urgent first, in order within a priority");
+
+            // what systems knowing only high and low see
+            ci.check(Priority.LOW.getValue() == EtConstants.low && Priority.HIGH.getValue() == EtConstants.high,
+                     "LOW and HIGH keep their old values");
+            boolean oldView = true, roundTrip = true, clear = true, ranked = true;
+            for (Priority p : all) {
+                Priority seen = Priority.getPriority(p.getValue() & EtConstants.priorityMask);
+                Priority expected = (p.getRank() > Priority.LOW.getRank()) ? Priority.HIGH : Priority.LOW;
+                oldView   &= (seen == expected);
+                roundTrip &= (Priority.getPriority(p.getValue() & EtConstants.priorityLevelMask) == p);
+                for (DataStatus ds : DataStatus.values()) {
+                    int priAndStat = p.getValue() | ds.getValue() << EtConstants.dataShift;
+                    clear &= (Priority.getPriority(priAndStat & EtConstants.priorityLevelMask) == p) &&
+                             (DataStatus.getStatus((priAndStat & EtConstants.dataMask) >> EtConstants.dataShift) == ds);
+                }
+                ranked &= (p.getRank() == p.ordinal());
+            }
+            ci.check(oldView, "old systems see BULK as low, MEDIUM and URGENT as high");
+            ci.check(roundTrip, "every priority read back as itself");
+            ci.check(clear, "priority levels and data status kept apart");
+            ci.check(ranked && all[0] == Priority.BULK && all[all.length - 1] == Priority.URGENT,
+                     "ranks run from BULK to URGENT");
+            boolean fallBack = true;
+            for (int code = 0; code <= EtConstants.priorityLevelMask; code++) {
+                Priority p = Priority.getPriority(code);
+                boolean known = false;
+                for (Priority q : all) known |= (q.getValue() == code);
+                if (!known) {
+                    fallBack &= (p == ((code & EtConstants.priorityMask) == EtConstants.high ?
+                                       Priority.HIGH : Priority.LOW));
+                }
+            }
+            ci.check(fallBack, "unknown codes taken as high or low by their lowest bit");
+
+            // splitting events left out by an attachment
+            EtEventImpl[] owned = new EtEventImpl[60];
+            int newCount = 0;
+            for (int i = 0; i < owned.length; i++) {
+                owned[i] = new EtEventImpl(4);
+                owned[i].setId(i);
+                owned[i].setPriority(all[rand.nextInt(all.length)]);
+                if (rand.nextInt(4) == 0) {
+                    owned[i].setAge(Age.NEW);
+                    newCount++;
+                }
+                else {
+                    owned[i].setAge(Age.USED);
+                }
+            }
+            ArrayList<EtEventImpl> usedEvs = new ArrayList<EtEventImpl>(), newEvs = new ArrayList<EtEventImpl>();
+            SystemCreate.splitOwnedEvents(owned, usedEvs, newEvs);
+            boolean split = (newEvs.size() == newCount) && (usedEvs.size() == owned.length - newCount);
+            for (EtEventImpl ev : newEvs) split &= (ev.getAge() == Age.NEW);
+            for (EtEventImpl ev : usedEvs) split &= (ev.getAge() == Age.USED);
+            ci.check(split, newCount + " new events to dump, " + usedEvs.size() + " used ones to restore");
+            ci.check(laneOrder(usedEvs.toArray(new EtEventImpl[0]), usedEvs.size()),
+                     "used events restored most urgent first, in order within a priority");
+
+            // Through an ET system
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(100);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setRestoreMode(EtConstants.stationRestoreIn);
+            StationLocal station = sys.createStation(sConfig, "restore_in");
+            AttachmentLocal leaving = sys.attach(station.getStationId());
+            AttachmentLocal staying = sys.attach(station.getStationId());
+            AttachmentLocal producer = sys.attach(0);
+
+            EtEventImpl[] made = sys.newEvents(producer, EtConstants.sleep, 0, 40, 16);
+            for (EtEventImpl ev : made) ev.setPriority(all[rand.nextInt(all.length)]);
+            sys.putEvents(producer, made);
+            ArrayList<EtEventImpl> got = new ArrayList<EtEventImpl>();
+            while (got.size() < 40) {
+                for (EtEventImpl ev : sys.getEvents(leaving, EtConstants.timed, 1000000, 40)) got.add(ev);
+            }
+            ci.check(got.size() == 40, "40 events of mixed priority gotten");
+
+            sys.detach(leaving);
+            EtEventImpl[] restored = new EtEventImpl[40];
+            int num = sys.getEvents(staying, EtConstants.timed, 1000000, restored, 0, 40);
+            boolean byRank = true;
+            for (int i = 1; i < num; i++) {
+                byRank &= restored[i].getPriority().getRank() <= restored[i-1].getPriority().getRank();
+            }
+            ci.check(num == 40 && byRank, num + " events restored to the input list, gotten most urgent first");
+            sys.putEvents(staying, restored, 0, num);
+
+            sys.detach(staying);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("event priorities wrong");
+    }
+}
@@ -0,0 +1,250 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+import org.jlab.coda.et.exception.EtEmptyException;
+import org.jlab.coda.et.exception.EtException;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Checks how events are pushed to a remote attachment which subscribed with a credit
+ * window. A Java ET system is run in this process with a local producer and a remote
+ * consumer sharing a connection with tagged requests. Subscribing must be refused for
+ * events that may not be modified and over a connection without tagged requests. With
+ * a window of 4 events, no more than 4 may be pushed and owned by the consumer at a
+ * time, the rest staying in its station's input list, and each event put or dumped
+ * must make room for exactly one more. With a threshold of 100 bytes of 60 byte events,
+ * pushing must stop once the bytes out reach the threshold and go on once some are
+ * given back. Pushed events must carry the data put. Unsubscribing must hand back the
+ * events pushed but not yet taken and stop the pushes, after which events are gotten
+ * as usual. Detaching while subscribed must give back every event out. A selector
+ * engine must refuse to subscribe and unsubscribe with an error and go on reading
+ * commands.
+ */
+public class CITestPushSubscription {
+
+    static final CISupport ci = new CISupport("PushSubscription", 125);
+
+    /** Wait up to a second for a list to hold a number of events. */
+    static boolean awaitCount(EventList list, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && list.getCount() != count; i++) {
+            Thread.sleep(1);
+        }
+        return list.getCount() == count;
+    }
+
+    /** Wait up to a second for an attachment to own a number of events. */
+    static boolean awaitOwned(AttachmentLocal att, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && att.getOwnedEvents().size() != count; i++) {
+            Thread.sleep(1);
+        }
+        return att.getOwnedEvents().size() == count;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            int numEvents = 40;
+            String etName = ci.etName(0);
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(64);
+            SystemCreate sys = ci.start(config);
+            StationLocal station = sys.createStation(new EtStationConfig(), "push");
+            EventList input = station.getInputList();
+            EventList gc = sys.getStations().get(0).getInputList();
+            AttachmentLocal producer = sys.attach(0);
+
+            // refused without tagged requests
+            EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", ci.serverPort(0));
+            openConfig.setNetworkContactMethod(EtConstants.direct);
+            EtSystem plain = new EtSystem(openConfig);
+            plain.open();
+            EtAttachment plainAtt = plain.attach(plain.stationNameToObject("push"));
+            ci.check(refused(plain, plainAtt, Modify.ANYTHING), "refused over a connection without tagged requests");
+            plain.detach(plainAtt);
+            plain.close();
+
+            openConfig.setTaggedRequests(true);
+            EtSystem user = new EtSystem(openConfig);
+            user.open();
+            EtAttachment att = user.attach(user.stationNameToObject("push"));
+            AttachmentLocal server = sys.getAttachments().get(att.getId());
+            ci.check(refused(user, att, Modify.NOTHING), "refused for events that may not be modified");
+
+            // a window of 4 events
+            user.subscribe(att, Modify.ANYTHING, 4, 1000000L);
+            produce(sys, producer, 10, 0);
+            ci.check(awaitCount(input, 6) && awaitOwned(server, 4), "4 of 10 events pushed, 6 left in the list");
+            Thread.sleep(50);
+            ci.check(input.getCount() == 6 && server.getOwnedEvents().size() == 4, "no more pushed while the window is full");
+
+            ArrayList<EtEvent> got = getPushed(user, att, 10);
+            ci.check(got.size() == 4 && data(got, 0), "the 4 pushed events gotten, with the data put");
+            ci.check(emptyAsync(user, att), "nothing more to get");
+
+            user.putEvents(att, new EtEvent[] {got.remove(0), got.remove(0)});
+            ci.check(awaitCount(input, 4) && awaitOwned(server, 4), "putting 2 events makes room for 2 more");
+            user.dumpEvents(att, new EtEvent[] {got.remove(0)});
+            ci.check(awaitCount(input, 3) && awaitOwned(server, 4), "dumping 1 event makes room for 1 more");
+            got.addAll(getPushed(user, att, 10));
+            ci.check(got.size() == 4 && data(got, 3), "the 3 events pushed since gotten, in order");
+
+            // give back all, the last 3 are pushed as room is made
+            int total = 0;
+            while (total < 3) {
+                user.putEvents(att, got.toArray(new EtEvent[0]));
+                got = getPushed(user, att, 10);
+                total += got.size();
+            }
+            user.putEvents(att, got.toArray(new EtEvent[0]));
+            ci.check(awaitCount(gc, numEvents) && awaitOwned(server, 0), "all events back once given back");
+            user.unsubscribe(att);
+
+            // a threshold of 100 bytes, 60 byte events pushed one at a time
+            user.subscribe(att, Modify.ANYTHING, 100, 100L);
+            produce(sys, producer, 1, 100);
+            boolean pushed = awaitOwned(server, 1);
+            produce(sys, producer, 1, 101);
+            pushed &= awaitOwned(server, 2);
+            produce(sys, producer, 1, 102);
+            Thread.sleep(50);
+            ci.check(pushed && input.getCount() == 1 && server.getOwnedEvents().size() == 2,
+                     "pushing stops once 120 bytes are out");
+            got = getPushed(user, att, 10);
+            user.putEvents(att, new EtEvent[] {got.remove(0)});
+            ci.check(awaitCount(input, 0) && awaitOwned(server, 2), "pushing goes on once 60 bytes are given back");
+            got.addAll(getPushed(user, att, 10));
+            ci.check(got.size() == 2 && data(got, 101), "events pushed after the threshold carry the data put");
+
+            // unsubscribing hands back what was pushed but not taken
+            user.putEvents(att, got.toArray(new EtEvent[0]));
+            produce(sys, producer, 1, 200);
+            awaitOwned(server, 1);
+            EtEvent[] left = user.unsubscribe(att);
+            ci.check(left.length == 1 && left[0].getDataBuffer().getInt(0) == 200,
+                     "unsubscribing hands back the event pushed but not taken");
+            user.putEvents(att, left);
+            produce(sys, producer, 3, 300);
+            Thread.sleep(50);
+            ci.check(input.getCount() == 3 && server.getOwnedEvents().size() == 0, "no more pushed once unsubscribed");
+            EtEvent[] asked = user.getEvents(att, Mode.TIMED, Modify.ANYTHING, 1000000, 3);
+            ci.check(asked.length == 3 && data(Arrays.asList(asked), 300), "events gotten as usual once unsubscribed");
+            user.putEvents(att, asked);
+
+            // detaching while subscribed gives back every event out
+            user.subscribe(att, Modify.HEADER, 4, 1000000L);
+            produce(sys, producer, 6, 400);
+            awaitOwned(server, 4);
+            getPushed(user, att, 2);
+            user.detach(att);
+            ci.check(awaitCount(gc, numEvents) && sys.getAttachments().size() == 1,
+                     "detaching while subscribed gives back all " + gc.getCount() + " events");
+
+            user.close();
+            sys.detach(producer);
+            sys.shutdown();
+
+            // a selector engine refuses both commands and keeps the connection
+            config.setServerSelectors(1);
+            sys = ci.start(config, 1);
+            etName = ci.etName(1);
+            Socket socket = ci.connect(1);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            for (int magic : EtConstants.magicNumbers) out.writeInt(magic);
+            out.writeInt(EtConstants.endianBig);
+            out.writeInt(etName.length() + 1);
+            out.writeInt(1);
+            out.writeLong(0L);
+            out.write(etName.getBytes("ASCII"));
+            out.write(0);
+            out.writeInt(EtConstants.netEvsSubscribe);
+            out.writeInt(0);
+            out.writeInt(Modify.ANYTHING.getValue());
+            out.writeInt(4);
+            out.writeLong(1000000L);
+            out.writeInt(1);
+            out.writeInt(EtConstants.netEvsUnsubscribe);
+            out.writeInt(0);
+            out.writeInt(EtConstants.netAlive);
+            out.flush();
+            boolean opened = in.readInt() == EtConstants.ok;
+            in.readFully(new byte[36]);
+            ci.check(opened && in.readInt() == EtConstants.error, "selector engine refuses to subscribe");
+            ci.check(in.readInt() == EtConstants.error, "selector engine refuses to unsubscribe");
+            ci.check(in.readInt() == 1, "selector engine goes on with the next command");
+            socket.close();
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events pushed wrongly");
+    }
+
+    /** Make and put a number of 60 byte events, numbered from first in the first data int. */
+    static void produce(SystemCreate sys, AttachmentLocal producer, int count, int first) throws Exception {
+        int made = 0;
+        while (made < count) {
+            EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, count - made, 60);
+            for (EtEventImpl ev : evs) {
+                ev.getDataBuffer().putInt(0, first + made++);
+                ev.setLength(60);
+            }
+            sys.putEvents(producer, evs);
+        }
+    }
+
+    /** Get the events pushed so far, waiting up to a second for the first. */
+    static ArrayList<EtEvent> getPushed(EtSystem user, EtAttachment att, int count) throws Exception {
+        ArrayList<EtEvent> evs = new ArrayList<EtEvent>();
+        evs.addAll(Arrays.asList(user.getEvents(att, Mode.TIMED, Modify.ANYTHING, 1000000, count)));
+        try {
+            while (evs.size() < count) {
+                evs.addAll(Arrays.asList(user.getEvents(att, Mode.ASYNC, Modify.ANYTHING, 0, count - evs.size())));
+            }
+        }
+        catch (EtEmptyException e) {
+        }
+        return evs;
+    }
+
+    /** Is there nothing pushed to get? */
+    static boolean emptyAsync(EtSystem user, EtAttachment att) throws Exception {
+        try {
+            user.getEvents(att, Mode.ASYNC, Modify.ANYTHING, 0, 1);
+        }
+        catch (EtEmptyException e) {
+            return true;
+        }
+        return false;
+    }
+
+    /** Is subscribing refused? */
+    static boolean refused(EtSystem user, EtAttachment att, Modify modify) throws Exception {
+        try {
+            user.subscribe(att, modify, 4, 1000000L);
+        }
+        catch (EtException e) {
+            return true;
+        }
+        user.unsubscribe(att);
+        return false;
+    }
+
+    /** Do events carry consecutive numbers from first? */
+    static boolean data(java.util.List<EtEvent> evs, int first) {
+        for (int i = 0; i < evs.size(); i++) {
+            if (evs.get(i).getDataBuffer().getInt(0) != first + i) return false;
+        }
+        return true;
+    }
+}
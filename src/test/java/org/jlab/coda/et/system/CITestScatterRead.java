@@ -0,0 +1,196 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Priority;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.ByteOrder;
+
+/**
+ * Checks how a connection with a thread of its own reads the events put by the user
+ * straight into their buffers. A Java ET system is run in this process, once with
+ * events on the heap and once off it. Events of no data, a little, and more than
+ * the socket's buffers hold are put over a raw connection in pieces of assorted sizes
+ * which split headers and data anywhere, with a command following in the same write.
+ * Every header and every byte of data must arrive in its event and the following
+ * command must still be carried out. Then a user stops sending halfway through an
+ * event's data. The server must give up on it after the socket's timeout of half a
+ * second, close the connection and detach its attachment, rather than wait forever.
+ */
+public class CITestScatterRead {
+
+    static final CISupport ci = new CISupport("ScatterRead", 123);
+
+    public static void main(String[] args) {
+
+        try {
+            int[] storages = {EtConstants.storageHeap, EtConstants.storageDirect};
+            String[] storageNames = {"heap", "direct"};
+            int[] lengths = {0, 1, 7, 5000, 300000, 300};
+            int[] pieces  = {1, 13, 997, 65536, 3};
+
+            for (int run = 0; run < 2; run++) {
+                String how = storageNames[run];
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(20);
+                config.setEventSize(300000);
+                config.setEventStorage(storages[run]);
+                SystemCreate sys = ci.start(config, run);
+                StationLocal station = sys.createStation(new EtStationConfig(), "scatter");
+                AttachmentLocal consumer = sys.attach(station.getStationId());
+
+                Socket socket = ci.connect(run);
+                DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+                DataInputStream in = new DataInputStream(socket.getInputStream());
+                int attId = open(out, in, ci.etName(run));
+
+                // put events in pieces splitting headers and data anywhere
+                int[] ids = newEvents(out, in, attId, lengths.length);
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream frame = new DataOutputStream(bytes);
+                writePut(frame, attId, ids, lengths, lengths.length);
+                frame.writeInt(EtConstants.netAlive);
+                byte[] put = bytes.toByteArray();
+                OutputStream os = socket.getOutputStream();
+                for (int i = 0, p = 0; i < put.length; p++) {
+                    int piece = Math.min(pieces[p % pieces.length], put.length - i);
+                    os.write(put, i, piece);
+                    os.flush();
+                    i += piece;
+                    if (p % 4 == 0) Thread.sleep(1);
+                }
+                ci.check(in.readInt() == EtConstants.ok, how + ": put of " + put.length + " bytes in pieces answered");
+                ci.check(in.readInt() == 1, how + ": command in the same write as the last event carried out");
+
+                boolean same = true;
+                int got = 0;
+                while (got < ids.length) {
+                    EtEventImpl[] evs = sys.getEvents(consumer, EtConstants.timed, 1000000, ids.length);
+                    for (EtEventImpl ev : evs) {
+                        int j = 0;
+                        while (ids[j] != ev.getId()) j++;
+                        same &= sameEvent(ev, j, lengths[j]);
+                    }
+                    got += evs.length;
+                    sys.putEvents(consumer, evs);
+                }
+                ci.check(same && got == ids.length, how + ": headers and data of " + got + " events read as sent");
+
+                // stop sending halfway through an event's data
+                int[] stalled = newEvents(out, in, attId, 1);
+                bytes.reset();
+                writePut(frame, attId, stalled, new int[] {100000}, 1);
+                out.write(bytes.toByteArray(), 0, bytes.size() / 2);
+                out.flush();
+                long start = System.nanoTime();
+                socket.setSoTimeout(5000);
+                boolean closed = closedByServer(socket);
+                long waited = (System.nanoTime() - start) / 1000000L;
+                ci.check(closed && waited >= 400 && waited < 3000,
+                         how + ": stalled user's connection closed after " + waited + " millisec");
+                boolean detached = false;
+                for (int i = 0; i < 1000 && !detached; i++) {
+                    detached = sys.getAttachments().size() == 1;
+                    Thread.sleep(1);
+                }
+                ci.check(detached, how + ": stalled user's attachment detached");
+                socket.close();
+
+                sys.detach(consumer);
+                sys.shutdown();
+            }
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("put events read wrongly");
+    }
+
+    /** Open the system and attach to GRAND_CENTRAL over a raw connection, returning the attachment id. */
+    static int open(DataOutputStream out, DataInputStream in, String etName) throws IOException {
+        for (int magic : EtConstants.magicNumbers) out.writeInt(magic);
+        out.writeInt(EtConstants.endianBig);
+        out.writeInt(etName.length() + 1);
+        out.writeInt(1);
+        out.writeLong(0L);
+        out.write(etName.getBytes("ASCII"));
+        out.write(0);
+        out.flush();
+        if (in.readInt() != EtConstants.ok) throw new IOException("cannot open " + etName);
+        in.readFully(new byte[36]);
+
+        out.writeInt(EtConstants.netStatAtt);
+        out.writeInt(0);
+        out.writeInt(1);
+        out.writeInt(0);
+        out.writeInt(0);
+        out.flush();
+        if (in.readInt() != EtConstants.ok) throw new IOException("cannot attach");
+        return in.readInt();
+    }
+
+    /** Get new events over a raw connection, returning their ids. */
+    static int[] newEvents(DataOutputStream out, DataInputStream in, int attId, int count) throws IOException {
+        out.writeInt(EtConstants.netEvsNew);
+        out.writeInt(attId);
+        out.writeInt(EtConstants.timed);
+        out.writeLong(16L);
+        out.writeInt(count);
+        out.writeInt(1);
+        out.writeInt(0);
+        out.flush();
+        int number = in.readInt();
+        if (number != count) throw new IOException("got " + number + " new events, not " + count);
+        int[] ids = new int[number];
+        for (int i = 0; i < number; i++) ids[i] = in.readInt();
+        return ids;
+    }
+
+    /** Write netEvsPut for events given their ids and lengths, event j filled by pattern j. */
+    static void writePut(DataOutputStream out, int attId, int[] ids, int[] lengths, int count) throws IOException {
+        long size = 0L;
+        for (int j = 0; j < count; j++) size += lengths[j];
+        out.writeInt(EtConstants.netEvsPut);
+        out.writeInt(attId);
+        out.writeInt(count);
+        out.writeLong(size);
+        for (int j = 0; j < count; j++) {
+            out.writeInt(ids[j]);
+            out.writeInt(0);
+            out.writeLong(lengths[j]);
+            out.writeInt(Priority.values()[j % Priority.values().length].getValue());
+            out.writeInt(j % 2 == 0 ? 0x04030201 : 0x01020304);
+            out.writeInt(0);
+            for (int i = 0; i < EtConstants.stationSelectInts; i++) out.writeInt(1000 * j + i);
+            for (int i = 0; i < lengths[j]; i++) out.write(j + 3 * i);
+        }
+        out.flush();
+    }
+
+    /** Does an event hold what writePut sent as event j? */
+    static boolean sameEvent(EtEventImpl ev, int j, int length) {
+        boolean same = ev.getLength() == length &&
+                       ev.getPriority() == Priority.values()[j % Priority.values().length] &&
+                       ev.getByteOrder() == (j % 2 == 0 ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        int[] control = ev.getControl();
+        for (int i = 0; i < control.length; i++) same &= control[i] == 1000 * j + i;
+        for (int i = 0; i < length; i++) same &= ev.getDataBuffer().get(i) == (byte) (j + 3 * i);
+        return same;
+    }
+
+    static boolean closedByServer(Socket socket) {
+        try {
+            return socket.getInputStream().read() < 0;
+        }
+        catch (IOException e) {
+            // reset or timed out
+            return !(e instanceof java.net.SocketTimeoutException);
+        }
+    }
+}
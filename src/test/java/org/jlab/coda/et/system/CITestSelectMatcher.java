@@ -0,0 +1,153 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Checks the matching of events to select words. For many random sets of select
+ * words, batches of random events of every size up to 200 (crossing the 64 event
+ * words of the bitmap) are matched at once and one at a time. Both must agree with
+ * the original rule: an even numbered select word must equal the control word,
+ * an odd numbered one must share a bit with it, and -1 is ignored. Then a Java
+ * ET system is run in this process with a matching station ahead of one taking
+ * all events, and each event must end up in the right one, in order.
+ */
+public class CITestSelectMatcher {
+
+    static final CISupport ci = new CISupport("SelectMatcher", 111);
+
+    /** The original rule, one word at a time. */
+    static boolean reference(int[] select, int[] control) {
+        boolean result = false;
+        for (int i=0; i < EtConstants.stationSelectInts; i++) {
+            if (select[i] == -1) continue;
+            if (i%2 == 0) result |= (select[i] == control[i]);
+            else          result |= ((select[i] & control[i]) != 0);
+        }
+        return result;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            Random rand = new Random(11);
+            int words = EtConstants.stationSelectInts;
+            int mismatches = 0, selected = 0, total = 0;
+
+            int[] columns = new int[words * 200];
+            long[] bitmap = new long[4];
+            for (int trial = 0; trial < 200; trial++) {
+                // small values so equality happens often, some words unused
+                int[] select = new int[words];
+                for (int i = 0; i < words; i++) {
+                    select[i] = (rand.nextInt(3) == 0) ? -1 : rand.nextInt(4);
+                }
+                SelectMatcher matcher = new SelectMatcher(select);
+
+                for (int count = 0; count <= 200; count += 1 + trial % 7) {
+                    ArrayList<EtEventImpl> evs = new ArrayList<EtEventImpl>(count);
+                    for (int j = 0; j < count; j++) {
+                        EtEventImpl ev = new EtEventImpl(4);
+                        int[] control = ev.getControlNoCopy();
+                        for (int i = 0; i < words; i++) control[i] = rand.nextInt(8);
+                        evs.add(ev);
+                    }
+                    // leave garbage in the bitmap past the batch
+                    java.util.Arrays.fill(bitmap, -1L);
+                    matcher.match(evs, columns, bitmap);
+
+                    for (int j = 0; j < count; j++) {
+                        boolean expected = reference(select, evs.get(j).getControlNoCopy());
+                        boolean inBatch  = (bitmap[j >>> 6] & (1L << j)) != 0;
+                        boolean single   = matcher.matches(evs.get(j).getControlNoCopy());
+                        if (inBatch != expected || single != expected) mismatches++;
+                        if (expected) selected++;
+                        total++;
+                    }
+                    for (int j = count; j < ((count + 63) & ~63); j++) {
+                        if ((bitmap[j >>> 6] & (1L << j)) != 0) mismatches++;
+                    }
+                }
+            }
+            ci.check(mismatches == 0, total + " events matched, " + selected + " selected, " +
+                                      mismatches + " disagree with the original rule");
+
+            int[] none = new int[words];
+            java.util.Arrays.fill(none, -1);
+            ArrayList<EtEventImpl> one = new ArrayList<EtEventImpl>();
+            one.add(new EtEventImpl(4));
+            bitmap[0] = -1L;
+            new SelectMatcher(none).match(one, columns, bitmap);
+            ci.check(bitmap[0] == 0L, "no select words selects nothing");
+
+            // Through an ET system
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(500);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+
+            EtStationConfig matchConfig = new EtStationConfig();
+            matchConfig.setSelectMode(EtConstants.stationSelectMatch);
+            int[] select = new int[words];
+            java.util.Arrays.fill(select, -1);
+            select[0] = 7;     // control[0] == 7
+            select[3] = 0x10;  // or control[3] has bit 4
+            matchConfig.setSelect(select);
+            StationLocal matchStation = sys.createStation(matchConfig, "match_station");
+            StationLocal allStation = sys.createStation(new EtStationConfig(), "all_station");
+            AttachmentLocal matchAtt = sys.attach(matchStation.getStationId());
+            AttachmentLocal allAtt = sys.attach(allStation.getStationId());
+            AttachmentLocal producer = sys.attach(0);
+
+            int[] control = new int[words];
+            ArrayList<Integer> toMatch = new ArrayList<Integer>(), toAll = new ArrayList<Integer>();
+            for (int n = 0; n < 400; n += 100) {
+                EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, 100, 16);
+                for (int j = 0; j < evs.length; j++) {
+                    int number = n + j;
+                    control[0] = rand.nextInt(10);
+                    control[3] = rand.nextInt(64);
+                    evs[j].setControl(control);
+                    evs[j].getDataBuffer().putInt(0, number);
+                    evs[j].setLength(4);
+                    if (reference(select, control)) toMatch.add(number);
+                    else toAll.add(number);
+                }
+                sys.putEvents(producer, evs);
+            }
+
+            // hold on to the matching events so they do not reach the next station too
+            ArrayList<EtEventImpl> held = new ArrayList<EtEventImpl>();
+            ci.check(receive(sys, matchAtt, toMatch.size(), held).equals(toMatch),
+                     toMatch.size() + " matching events in order at the matching station");
+            ci.check(receive(sys, allAtt, toAll.size(), null).equals(toAll),
+                     toAll.size() + " other events in order at the next station");
+            sys.putEvents(matchAtt, held.toArray(new EtEventImpl[0]));
+
+            sys.detach(producer);
+            sys.detach(matchAtt);
+            sys.detach(allAtt);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events selected wrongly");
+    }
+
+    /** Get a number of events, putting them back unless held, and return the numbers they carry. */
+    static ArrayList<Integer> receive(SystemCreate sys, AttachmentLocal att, int count,
+                                      ArrayList<EtEventImpl> held) throws Exception {
+        ArrayList<Integer> numbers = new ArrayList<Integer>();
+        while (numbers.size() < count) {
+            EtEventImpl[] evs = sys.getEvents(att, EtConstants.timed, 1000000, count - numbers.size());
+            for (EtEventImpl ev : evs) numbers.add(ev.getDataBuffer().getInt(0));
+            if (held == null) sys.putEvents(att, evs);
+            else java.util.Collections.addAll(held, evs);
+        }
+        return numbers;
+    }
+}
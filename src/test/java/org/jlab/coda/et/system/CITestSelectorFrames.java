@@ -0,0 +1,298 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/**
+ * Checks how the selector-thread tcp server engine cuts the bytes it reads into
+ * commands. A Java ET system is run in this process with a single selector thread.
+ * Raw connections send the magic numbers, the request to open the system, and a few
+ * commands, some of variable length, first all in one write and then one byte at a
+ * time; either way each must be carried out once and answered in order. Wrong magic
+ * numbers, a wrong system name, and a negative name length must close the connection.
+ * Then remote consumers using the selector engine put and get events whose data is
+ * many times the size of the engine's input buffer, followed by many small commands,
+ * and all data must come back as it was sent. Finally a user detaches while a station's
+ * select method takes 300 millisec to judge an event. The detach must wait for it, but
+ * another user of the same selector thread must be answered meanwhile. A user going
+ * away without closing must still be detached.
+ */
+public class CITestSelectorFrames {
+
+    static final CISupport ci = new CISupport("SelectorFrames", 121);
+
+    static final String etName = ci.etName(0);
+
+    /** Takes 300 millisec to judge an event marked by its first control word, rejecting all. */
+    public static class SlowSelect implements EtEventSelectable {
+        public boolean select(SystemCreate sys, StationLocal st, EtEvent ev) {
+            if (ev.getControl()[0] == 1) {
+                try {Thread.sleep(300);}
+                catch (InterruptedException e) {}
+            }
+            return false;
+        }
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(100);
+            config.setEventSize(40000);
+            config.setServerSelectors(1);
+            SystemCreate sys = ci.start(config);
+            sys.createStation(new EtStationConfig(), "frames");
+
+            // the opening and 3 commands
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(bytes);
+            writeOpen(dos, etName);
+            dos.writeInt(EtConstants.netAlive);
+            writeStationExists(dos, "frames");
+            writeStationExists(dos, "nowhere");
+            dos.flush();
+            byte[] request = bytes.toByteArray();
+
+            for (int pieces = 0; pieces < 2; pieces++) {
+                String how = (pieces == 0) ? "in one write" : "a byte at a time";
+                Socket socket = ci.connect(0);
+                send(socket.getOutputStream(), request, pieces == 0 ? request.length : 1);
+                DataInputStream dis = new DataInputStream(socket.getInputStream());
+                ci.check(readOpenReply(dis, config), "system opened " + how);
+                ci.check(dis.readInt() == 1, "alive answered " + how);
+                boolean found = dis.readInt() == 1;
+                int statId = dis.readInt();
+                ci.check(found && statId == sys.stationNameToObject("frames").getStationId(),
+                         "existing station found " + how);
+                ci.check(dis.readInt() == 0, "missing station not found " + how);
+                dis.readInt();
+                socket.setSoTimeout(200);
+                ci.check(nothingMore(dis), "no more replies than commands " + how);
+                socket.close();
+            }
+
+            // bad magic numbers
+            Socket socket = ci.connect(0);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            out.writeInt(EtConstants.magicNumbers[0]);
+            out.writeInt(EtConstants.magicNumbers[1]);
+            out.writeInt(0);
+            out.flush();
+            ci.check(closedByServer(socket), "wrong magic numbers close the connection");
+
+            // opening another system
+            socket = ci.connect(0);
+            bytes.reset();
+            writeOpen(dos, "/tmp/et_ci_nosuchsystem");
+            send(socket.getOutputStream(), bytes.toByteArray(), 5);
+            DataInputStream dis = new DataInputStream(socket.getInputStream());
+            ci.check(dis.readInt() == EtConstants.error && closedByServer(socket),
+                     "wrong system name answered with an error and closed");
+
+            // a negative length
+            socket = ci.connect(0);
+            bytes.reset();
+            writeOpen(dos, etName);
+            dos.writeInt(EtConstants.netStatEx);
+            dos.writeInt(-5);
+            dos.flush();
+            send(socket.getOutputStream(), bytes.toByteArray(), 7);
+            dis = new DataInputStream(socket.getInputStream());
+            ci.check(readOpenReply(dis, config) && closedByServer(socket), "negative length closes the connection");
+
+            // events many times the input buffer in size, then many small commands
+            EtSystemOpenConfig openConfig = new EtSystemOpenConfig(etName, "localhost", ci.serverPort(0));
+            openConfig.setNetworkContactMethod(EtConstants.direct);
+            EtSystem producerSys = new EtSystem(openConfig);
+            producerSys.open();
+            EtSystem consumerSys = new EtSystem(new EtSystemOpenConfig(openConfig));
+            consumerSys.open();
+            EtAttachment producer = producerSys.attach(producerSys.stationNameToObject("GRAND_CENTRAL"));
+            EtAttachment consumer = consumerSys.attach(consumerSys.stationNameToObject("frames"));
+
+            boolean same = true;
+            int size = 40000, sent = 0, got = 0;
+            for (int round = 0; round < 100; round++) {
+                if (round == 2) size = 4;
+                EtEvent[] evs = producerSys.newEvents(producer, Mode.SLEEP, 0, 4, size);
+                for (EtEvent ev : evs) {
+                    for (int i = 0; i < size; i += 4) ev.getDataBuffer().putInt(i, sent + i);
+                    ev.setLength(size);
+                    sent++;
+                }
+                producerSys.putEvents(producer, evs);
+
+                ArrayList<EtEvent> in = new ArrayList<EtEvent>();
+                while (in.size() < evs.length) {
+                    for (EtEvent ev : consumerSys.getEvents(consumer, Mode.TIMED, Modify.ANYTHING, 1000000, 4)) {
+                        in.add(ev);
+                    }
+                }
+                for (EtEvent ev : in) {
+                    same &= ev.getLength() == size;
+                    for (int i = 0; i < size; i += 4) same &= ev.getDataBuffer().getInt(i) == got + i;
+                    got++;
+                }
+                consumerSys.putEvents(consumer, in.toArray(new EtEvent[0]));
+            }
+            ci.check(same && got == sent, got + " events of up to 40000 bytes come back as sent");
+
+            consumerSys.detach(consumer);
+            producerSys.detach(producer);
+            consumerSys.close();
+            producerSys.close();
+
+            // a detach waiting for a slow batch holds up no other user
+            EtStationConfig slowConfig = new EtStationConfig();
+            slowConfig.setBlockMode(EtConstants.stationNonBlocking);
+            slowConfig.setSelectMode(EtConstants.stationSelectUser);
+            slowConfig.setSelectClass(SlowSelect.class.getName());
+            StationLocal slow = sys.createStation(slowConfig, "slow", 1, EtConstants.end);
+            AttachmentLocal slowAtt = sys.attach(slow.getStationId());
+            AttachmentLocal local = sys.attach(0);
+
+            Socket detacher = ci.connect(0), other = ci.connect(0);
+            out = new DataOutputStream(detacher.getOutputStream());
+            dis = new DataInputStream(detacher.getInputStream());
+            bytes.reset();
+            writeOpen(dos, etName);
+            out.write(bytes.toByteArray());
+            readOpenReply(dis, config);
+            out.writeInt(EtConstants.netStatAtt);
+            out.writeInt(sys.stationNameToObject("frames").getStationId());
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.flush();
+            boolean attached = dis.readInt() == EtConstants.ok;
+            int attId = dis.readInt();
+            DataOutputStream otherOut = new DataOutputStream(other.getOutputStream());
+            DataInputStream otherIn = new DataInputStream(other.getInputStream());
+            bytes.reset();
+            writeOpen(dos, etName);
+            otherOut.write(bytes.toByteArray());
+            ci.check(attached && readOpenReply(otherIn, config), "two users of one selector thread");
+
+            EtEventImpl[] marked = sys.newEvents(local, EtConstants.sleep, 0, 1, 4);
+            int[] control = new int[EtConstants.stationSelectInts];
+            control[0] = 1;
+            marked[0].setControl(control);
+            sys.putEvents(local, marked);
+            Thread.sleep(50);
+
+            long start = System.nanoTime();
+            out.writeInt(EtConstants.netStatDet);
+            out.writeInt(attId);
+            out.flush();
+            Thread.sleep(20);
+            long aliveStart = System.nanoTime();
+            otherOut.writeInt(EtConstants.netAlive);
+            otherOut.flush();
+            boolean alive = otherIn.readInt() == 1;
+            long aliveTook = (System.nanoTime() - aliveStart) / 1000000L;
+            boolean detached = dis.readInt() == EtConstants.ok;
+            long detachTook = (System.nanoTime() - start) / 1000000L;
+            ci.check(alive && aliveTook < 100, "other user answered in " + aliveTook + " millisec during the detach");
+            ci.check(detached && detachTook >= 150, "detach answered after waiting " + detachTook + " millisec");
+
+            // a user going away without closing is still detached
+            out.writeInt(EtConstants.netStatAtt);
+            out.writeInt(sys.stationNameToObject("frames").getStationId());
+            out.writeInt(1);
+            out.writeInt(0);
+            out.writeInt(0);
+            out.flush();
+            attached = dis.readInt() == EtConstants.ok;
+            dis.readInt();
+            detacher.close();
+            boolean gone = false;
+            for (int i = 0; i < 1000 && !gone; i++) {
+                gone = sys.getAttachments().size() == 2;
+                Thread.sleep(1);
+            }
+            ci.check(attached && gone, "user going away detached");
+
+            otherOut.writeInt(EtConstants.netClose);
+            otherOut.flush();
+            other.close();
+            sys.detach(local);
+            sys.detach(slowAtt);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("selector engine cut commands wrongly");
+    }
+
+    /** Magic numbers and the request to open an ET system, asking for no features. */
+    static void writeOpen(DataOutputStream dos, String name) throws IOException {
+        for (int magic : EtConstants.magicNumbers) dos.writeInt(magic);
+        dos.writeInt(EtConstants.endianBig);
+        dos.writeInt(name.length() + 1);
+        dos.writeInt(1);
+        dos.writeLong(0L);
+        dos.write(name.getBytes("ASCII"));
+        dos.write(0);
+        dos.flush();
+    }
+
+    static void writeStationExists(DataOutputStream dos, String name) throws IOException {
+        dos.writeInt(EtConstants.netStatEx);
+        dos.writeInt(name.length() + 1);
+        dos.write(name.getBytes("ASCII"));
+        dos.write(0);
+    }
+
+    /** Send bytes in pieces of a given size, pausing between them so each arrives on its own. */
+    static void send(OutputStream out, byte[] bytes, int piece) throws Exception {
+        for (int i = 0; i < bytes.length; i += piece) {
+            out.write(bytes, i, Math.min(piece, bytes.length - i));
+            out.flush();
+            if (piece < bytes.length) Thread.sleep(1);
+        }
+    }
+
+    static boolean readOpenReply(DataInputStream dis, SystemConfig config) throws IOException {
+        boolean opened = dis.readInt() == EtConstants.ok;
+        dis.readInt();
+        opened &= dis.readInt() == config.getNumEvents();
+        opened &= dis.readLong() == config.getEventSize();
+        dis.readInt();
+        opened &= dis.readInt() == EtConstants.stationSelectInts;
+        opened &= dis.readInt() == EtConstants.langJava;
+        dis.readInt();
+        dis.readInt();
+        return opened;
+    }
+
+    static boolean nothingMore(DataInputStream dis) throws IOException {
+        try {
+            return dis.read() < 0;
+        }
+        catch (java.net.SocketTimeoutException e) {
+            return true;
+        }
+    }
+
+    static boolean closedByServer(Socket socket) {
+        try {
+            return socket.getInputStream().read() < 0;
+        }
+        catch (IOException e) {
+            // reset or timed out
+            return !(e instanceof java.net.SocketTimeoutException);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.exception.EtEmptyException;
+import org.jlab.coda.et.exception.EtWakeUpException;
+
+import java.util.ArrayList;
+
+/**
+ * Checks the stealing of events from sibling parallel stations. Taking from a list
+ * must never take more than half of its events, rounded up. Then a Java ET system is
+ * run in this process with a group of 3 equal-cue stations, only the first of whose
+ * attachments steals. Once its own events are gone it must take half of the fullest
+ * sibling's events, which must be counted as gotten by and owned by it and as taken
+ * out of that sibling's list. Stations partitioning events by key or fanning them
+ * out must never be stolen from. Finally, a stealing attachment waiting on its empty
+ * list must be woken promptly both by events for its own station and by events put
+ * into a sibling, and must still time out and be woken up as any other.
+ */
+public class CITestSteal {
+
+    static final CISupport ci = new CISupport("Steal", 116);
+
+    /** Wait up to a second for a list to hold a number of events. */
+    static boolean awaitCount(EventList list, int count) throws InterruptedException {
+        for (int i = 0; i < 1000 && list.getCount() != count; i++) {
+            Thread.sleep(1);
+        }
+        return list.getCount() == count;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            // at most half, rounded up
+            EventList list = new EventList(100);
+            EtEventImpl[] taken = new EtEventImpl[100];
+            boolean half = true;
+            long out = 0;
+            for (int n = 0; n <= 21; n++) {
+                ArrayList<EtEventImpl> evs = new ArrayList<EtEventImpl>();
+                for (int i = 0; i < n; i++) evs.add(new EtEventImpl(4));
+                synchronized (list) {
+                    list.putInLow(evs);
+                }
+                int num = list.steal(taken, 0, 100);
+                out += num;
+                if (num != (n + 1)/2 || list.getCount() != n - num) half = false;
+                int few = list.steal(taken, 0, 1);
+                out += few;
+                if (few != (n - num > 0 ? 1 : 0)) half = false;
+                synchronized (list) {
+                    list.take(taken, 0, 100);
+                }
+                out += n - num - few;
+            }
+            ci.check(half, "no more than half of a list stolen, rounded up, nor more than asked");
+            ci.check(list.getEventsOut() == out, "stolen events counted as taken out of the list");
+
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(300);
+            config.setEventSize(16);
+            final SystemCreate sys = ci.start(config);
+            AttachmentLocal producer = sys.attach(0);
+
+            // equal-cue group, only the first attachment steals
+            StationLocal[] group = makeGroup(sys, EtConstants.stationSelectEqualCue, "equalcue", 3);
+            AttachmentLocal[] atts = attachAll(sys, group);
+            atts[0].setStealing(true);
+
+            sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 30, 16));
+            boolean even = true;
+            for (int i = 0; i < 3; i++) even &= awaitCount(group[i].getInputList(), 10);
+            ci.check(even, "30 events split 10, 10, 10");
+
+            EtEventImpl[] own = sys.getEvents(atts[0], EtConstants.async, 0, 100);
+            ci.check(own.length == 10, "stealer first gets the " + own.length + " events of its own station");
+
+            // make one sibling the fullest
+            EtEventImpl[] some = sys.getEvents(atts[2], EtConstants.async, 0, 3);
+            EventList fullest = group[1].getInputList();
+            long fullestOut = fullest.getEventsOut(), otherOut = group[2].getInputList().getEventsOut();
+            EtEventImpl[] stolen = sys.getEvents(atts[0], EtConstants.async, 0, 100);
+            ci.check(stolen.length == 5 && fullest.getCount() == 5 && group[2].getInputList().getCount() == 7,
+                     "stealer takes " + stolen.length + " of the 10 events of the fullest sibling, not the one with 7");
+            ci.check(fullest.getEventsOut() == fullestOut + 5 && group[2].getInputList().getEventsOut() == otherOut,
+                     "stolen events counted as taken out of the sibling's list only");
+            boolean owner = true;
+            for (EtEventImpl ev : stolen) owner &= (ev.getOwner() == atts[0].getId());
+            ci.check(owner && atts[0].getEventsGet() == 15 && atts[0].getOwnedEvents().size() == 15,
+                     "stealer owns and counts the stolen events, gotten " + atts[0].getEventsGet() +
+                     ", owned " + atts[0].getOwnedEvents().size());
+            ci.check(atts[1].getEventsGet() == 0 && atts[1].getOwnedEvents().size() == 0,
+                     "sibling's attachment charged nothing");
+
+            sys.putEvents(atts[0], own);
+            sys.putEvents(atts[0], stolen);
+            sys.putEvents(atts[2], some);
+            ci.check(atts[0].getOwnedEvents().size() == 0, "stolen events put back by the stealer");
+            drainAll(sys, atts);
+            detachAll(sys, atts, group);
+
+            // partitioned and fanned out groups are never stolen from
+            int[] modes = {EtConstants.stationSelectPartition, EtConstants.stationSelectFanOut};
+            String[] names = {"partition", "fanout"};
+            for (int m = 0; m < modes.length; m++) {
+                group = makeGroup(sys, modes[m], names[m], 2);
+                atts = attachAll(sys, group);
+                atts[0].setStealing(true);
+
+                // with nothing of its own, every event for the sibling
+                EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, 10, 16);
+                int[] control = new int[EtConstants.stationSelectInts];
+                PartitionRing ring = new PartitionRing(group);
+                for (int i = 0, key = 0; i < evs.length; i++) {
+                    while (ring.getMember(key) != 1) key++;
+                    control[0] = key++;
+                    evs[i].setControl(control);
+                }
+                sys.putEvents(producer, evs);
+                awaitCount(group[1].getInputList(), 10);
+                EtEventImpl[] mine = new EtEventImpl[0];
+                if (modes[m] == EtConstants.stationSelectFanOut) {
+                    mine = sys.getEvents(atts[0], EtConstants.timed, 1000000, 10);
+                }
+
+                boolean empty = false;
+                try {
+                    sys.getEvents(atts[0], EtConstants.async, 0, 10);
+                }
+                catch (EtEmptyException e) {
+                    empty = true;
+                }
+                ci.check(empty && group[1].getInputList().getCount() == 10,
+                         names[m] + " station never stolen from");
+                if (mine.length > 0) sys.putEvents(atts[0], mine);
+                drainAll(sys, atts);
+                detachAll(sys, atts, group);
+            }
+
+            // waking a stealer: select-match group, events for control[0] == i go to station i
+            group = new StationLocal[2];
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setFlowMode(EtConstants.stationParallel);
+            sConfig.setSelectMode(EtConstants.stationSelectMatch);
+            for (int i = 0; i < 2; i++) {
+                int[] select = new int[EtConstants.stationSelectInts];
+                java.util.Arrays.fill(select, -1);
+                select[0] = i;
+                sConfig.setSelect(select);
+                group[i] = (i == 0) ? sys.createStation(sConfig, "match0") :
+                                      sys.createStation(sConfig, "match1", 1, EtConstants.end);
+            }
+            atts = attachAll(sys, group);
+            final AttachmentLocal stealer = atts[0];
+            stealer.setStealing(true);
+
+            for (int target = 0; target < 2; target++) {
+                final long[] gotAt = new long[1];
+                final int[] got = new int[1];
+                final EtEventImpl[][] gotEvs = new EtEventImpl[1][];
+                Thread waiter = new Thread() {
+                    public void run() {
+                        try {
+                            gotEvs[0] = sys.getEvents(stealer, EtConstants.sleep, 0, 100);
+                            gotAt[0] = System.nanoTime();
+                            got[0] = gotEvs[0].length;
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                waiter.start();
+                Thread.sleep(100);
+                ci.check(waiter.isAlive(), "stealer waits while all lists are empty");
+
+                EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, 4, 16);
+                int[] control = new int[EtConstants.stationSelectInts];
+                control[0] = target;
+                for (EtEventImpl ev : evs) ev.setControl(control);
+                long putAt = System.nanoTime();
+                sys.putEvents(producer, evs);
+                waiter.join(1000);
+                long latency = (gotAt[0] - putAt)/1000L;
+                int expected = (target == 0) ? 4 : 2;
+                ci.check(!waiter.isAlive() && got[0] == expected && latency < 50000L,
+                         (target == 0 ? "own" : "sibling's") + " events wake the stealer in " + latency +
+                         " microsec, " + got[0] + " taken");
+                if (gotEvs[0] != null) sys.putEvents(stealer, gotEvs[0]);
+                drainAll(sys, atts);
+            }
+
+            // timing out and being woken up still work
+            long start = System.nanoTime();
+            boolean timedOut = false;
+            try {
+                sys.getEvents(stealer, EtConstants.timed, 50000, 10);
+            }
+            catch (org.jlab.coda.et.exception.EtTimeoutException e) {
+                timedOut = true;
+            }
+            long waited = (System.nanoTime() - start)/1000000L;
+            ci.check(timedOut && waited >= 49 && waited < 1000, "stealer times out after " + waited + " millisec");
+
+            final boolean[] woken = new boolean[1];
+            Thread waiter = new Thread() {
+                public void run() {
+                    try {
+                        sys.getEvents(stealer, EtConstants.sleep, 0, 10);
+                    }
+                    catch (EtWakeUpException e) {
+                        woken[0] = true;
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            waiter.start();
+            Thread.sleep(50);
+            stealer.getStation().getInputList().wakeUp(stealer);
+            waiter.join(1000);
+            ci.check(woken[0], "waiting stealer woken up");
+
+            detachAll(sys, atts, group);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events stolen wrongly");
+    }
+
+    /** Make a group of parallel stations of the given selection mode, partitioned on control word 0. */
+    static StationLocal[] makeGroup(SystemCreate sys, int selectMode, String name, int size) throws Exception {
+        EtStationConfig sConfig = new EtStationConfig();
+        sConfig.setFlowMode(EtConstants.stationParallel);
+        sConfig.setSelectMode(selectMode);
+        if (selectMode == EtConstants.stationSelectPartition) sConfig.setPartitionWord(0);
+        StationLocal[] group = new StationLocal[size];
+        for (int i = 0; i < size; i++) {
+            group[i] = (i == 0) ? sys.createStation(sConfig, name + "0") :
+                                  sys.createStation(sConfig, name + i, 1, EtConstants.end);
+        }
+        return group;
+    }
+
+    static AttachmentLocal[] attachAll(SystemCreate sys, StationLocal[] group) throws Exception {
+        AttachmentLocal[] atts = new AttachmentLocal[group.length];
+        for (int i = 0; i < group.length; i++) atts[i] = sys.attach(group[i].getStationId());
+        return atts;
+    }
+
+    /** Give back all events waiting for the attachments. */
+    static void drainAll(SystemCreate sys, AttachmentLocal[] atts) throws Exception {
+        for (AttachmentLocal att : atts) {
+            boolean stealing = att.isStealing();
+            att.setStealing(false);
+            while (att.getStation().getInputList().getCount() > 0) {
+                sys.putEvents(att, sys.getEvents(att, EtConstants.async, 0, 100));
+            }
+            att.setStealing(stealing);
+        }
+    }
+
+    static void detachAll(SystemCreate sys, AttachmentLocal[] atts, StationLocal[] group) throws Exception {
+        for (AttachmentLocal att : atts) sys.detach(att);
+        for (int i = group.length - 1; i >= 0; i--) sys.removeStation(group[i].getStationId());
+    }
+}
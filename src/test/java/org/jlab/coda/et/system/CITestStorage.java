@@ -0,0 +1,124 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.enums.Modify;
+
+import java.io.File;
+import java.util.Arrays;
+
+/**
+ * Checks events held outside the Java heap. A Java ET system is run in this process
+ * first with direct memory, then with a memory-mapped file. An event's data must be a
+ * direct buffer whose array cannot be gotten, yet data copied into it must be copied
+ * back out unchanged. Data put by a remote user must be seen in the event by a local
+ * attachment, and data then copied in locally must be gotten by a remote user. The
+ * mapped file must hold all the events' data while the system runs and be deleted
+ * when it shuts down.
+ */
+public class CITestStorage {
+
+    static final CISupport ci = new CISupport("Storage", 131);
+
+    static final int numEvents = 20, eventSize = 64;
+
+    /** Bytes counting up from a start. */
+    static byte[] pattern(int start, int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) bytes[i] = (byte) (start + i);
+        return bytes;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            int[] storages = {EtConstants.storageDirect, EtConstants.storageMapped};
+            for (int run = 0; run < storages.length; run++) {
+                String how = (run == 0) ? "direct" : "mapped";
+                SystemConfig config = new SystemConfig();
+                config.setNumEvents(numEvents);
+                config.setEventSize(eventSize);
+                config.setEventStorage(storages[run]);
+                SystemCreate sys = ci.start(config, run);
+                File dataFile = new File(ci.etName(run) + "_data");
+                if (run == 1) {
+                    ci.check(dataFile.length() == numEvents * eventSize,
+                             "mapped file holds " + dataFile.length() + " bytes of event data");
+                }
+
+                // copying in and out locally
+                AttachmentLocal producer = sys.attach(0);
+                EtEventImpl ev = sys.newEvents(producer, EtConstants.sleep, 0, 1, eventSize)[0];
+                boolean thrown = false;
+                try {
+                    ev.getData();
+                }
+                catch (UnsupportedOperationException e) {
+                    thrown = true;
+                }
+                ci.check(ev.getDataBuffer().isDirect() && thrown,
+                         how + " event data is a direct buffer without an array");
+
+                byte[] in = pattern(1, eventSize), out = new byte[eventSize + 4];
+                ev.copyDataFrom(in, 0, eventSize);
+                ev.copyDataTo(out, 4, eventSize);
+                ci.check(Arrays.equals(in, Arrays.copyOfRange(out, 4, eventSize + 4)) &&
+                         ev.getDataBuffer().get(eventSize - 1) == in[eventSize - 1],
+                         how + " event data copied in is copied back out");
+                sys.dumpEvents(producer, new EtEventImpl[] {ev});
+
+                // through a remote user and back
+                StationLocal local = sys.createStation(new EtStationConfig(), "local");
+                sys.createStation(new EtStationConfig(), "remote");
+                AttachmentLocal localAtt = sys.attach(local.getStationId());
+
+                EtSystemOpenConfig openConfig = new EtSystemOpenConfig(ci.etName(run), "localhost",
+                                                                       ci.serverPort(run));
+                openConfig.setNetworkContactMethod(EtConstants.direct);
+                EtSystem user = new EtSystem(openConfig);
+                user.open();
+                EtAttachment userProducer = user.attach(user.stationNameToObject("GRAND_CENTRAL"));
+                EtAttachment userConsumer = user.attach(user.stationNameToObject("remote"));
+
+                byte[] sent = pattern(7, eventSize / 2);
+                EtEvent remote = user.newEvents(userProducer, Mode.SLEEP, 0, 1, eventSize)[0];
+                System.arraycopy(sent, 0, remote.getData(), 0, sent.length);
+                remote.setLength(sent.length);
+                user.putEvents(userProducer, new EtEvent[] {remote});
+
+                ev = sys.getEvents(localAtt, EtConstants.timed, 1000000, 1)[0];
+                out = new byte[sent.length];
+                ev.copyDataTo(out, 0, sent.length);
+                ci.check(ev.getLength() == sent.length && Arrays.equals(sent, out),
+                         how + " event put remotely holds the data sent");
+
+                byte[] reply = pattern(-3, eventSize);
+                ev.copyDataFrom(reply, 0, eventSize);
+                ev.setLength(eventSize);
+                sys.putEvents(localAtt, new EtEventImpl[] {ev});
+
+                remote = user.getEvents(userConsumer, Mode.TIMED, Modify.NOTHING, 1000000, 1)[0];
+                ci.check(remote.getLength() == eventSize &&
+                         Arrays.equals(reply, Arrays.copyOf(remote.getData(), eventSize)),
+                         how + " event gotten remotely holds the data copied in");
+                user.putEvents(userConsumer, new EtEvent[] {remote});
+
+                user.detach(userConsumer);
+                user.detach(userProducer);
+                user.close();
+                sys.detach(localAtt);
+                sys.detach(producer);
+                sys.shutdown();
+
+                if (run == 1) {
+                    ci.check(!dataFile.exists(), "mapped file deleted on shutdown");
+                }
+            }
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("events stored off the heap wrongly");
+    }
+}
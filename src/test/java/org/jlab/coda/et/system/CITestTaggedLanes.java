@@ -0,0 +1,158 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.HashSet;
+
+/**
+ * Checks the limits a connection with tagged requests puts on what a user may ask
+ * of it. A Java ET system allowing 4 attachments is run in this process. A request
+ * claiming to be 1 GB long must close the connection at once instead of having the
+ * server make room for it. Then 10 requests to get an event, sleeping until one
+ * comes, are sent at once. No more than 5 threads may carry them out, the rest
+ * waiting to be read, and once events are put every request must be answered.
+ */
+public class CITestTaggedLanes {
+
+    static final CISupport ci = new CISupport("TaggedLanes", 126);
+
+    /** Count the threads carrying out tagged requests. */
+    static int lanes() {
+        int count = 0;
+        for (Thread t : Thread.getAllStackTraces().keySet()) {
+            if (t.isAlive() && t.getName().contains("-lane")) count++;
+        }
+        return count;
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            String etName = ci.etName(0);
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(50);
+            config.setEventSize(64);
+            config.setAttachmentsMax(4);
+            SystemCreate sys = ci.start(config);
+            StationLocal station = sys.createStation(new EtStationConfig(), "lanes");
+            AttachmentLocal producer = sys.attach(0);
+
+            // a request far longer than any command
+            Socket socket = ci.connect(0);
+            DataOutputStream out = new DataOutputStream(socket.getOutputStream());
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            ci.check(open(out, in, etName), "server agrees to tagged requests");
+            long start = System.nanoTime();
+            out.writeInt(1);
+            out.writeInt(1 << 30);
+            out.flush();
+            boolean closed = closedByServer(socket);
+            long waited = (System.nanoTime() - start) / 1000000L;
+            ci.check(closed && waited < 1000 && lanes() == 0,
+                     "1 GB request closes the connection after " + waited + " millisec, nothing carried out");
+            socket.close();
+
+            // more requests waiting for events than there may be threads
+            socket = ci.connect(0);
+            out = new DataOutputStream(socket.getOutputStream());
+            in = new DataInputStream(socket.getInputStream());
+            open(out, in, etName);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream request = new DataOutputStream(bytes);
+            request.writeInt(EtConstants.netStatAtt);
+            request.writeInt(station.getStationId());
+            request.writeInt(1);
+            request.writeInt(0);
+            request.writeInt(0);
+            send(out, 1, bytes);
+            in.readInt();
+            in.readInt();
+            boolean attached = in.readInt() == EtConstants.ok;
+            int attId = in.readInt();
+            ci.check(attached, "attached over tagged requests");
+
+            for (int tag = 10; tag < 20; tag++) {
+                request.writeInt(EtConstants.netEvsGet);
+                request.writeInt(attId);
+                request.writeInt(EtConstants.sleep);
+                request.writeInt(0);
+                request.writeInt(1);
+                request.writeInt(0);
+                request.writeInt(0);
+                send(out, tag, bytes);
+            }
+            int most = 0;
+            for (int i = 0; i < 200; i++) {
+                most = Math.max(most, lanes());
+                Thread.sleep(1);
+            }
+            ci.check(most == config.getAttachmentsMax() + 1,
+                     "10 sleeping gets carried out by " + most + " threads");
+
+            EtEventImpl[] evs = sys.newEvents(producer, EtConstants.sleep, 0, 10, 16);
+            sys.putEvents(producer, evs);
+            HashSet<Integer> tags = new HashSet<Integer>();
+            boolean gotEvents = true;
+            for (int i = 0; i < 10; i++) {
+                tags.add(in.readInt());
+                byte[] reply = new byte[in.readInt()];
+                in.readFully(reply);
+                gotEvents &= EtUtils.bytesToInt(reply, 0) == 1;
+                most = Math.max(most, lanes());
+            }
+            ci.check(tags.size() == 10 && gotEvents, "every get answered with an event once events are put");
+            ci.check(most == config.getAttachmentsMax() + 1, "no more than " + most + " threads ever");
+
+            request.writeInt(EtConstants.netClose);
+            send(out, 2, bytes);
+            socket.close();
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("tagged requests not limited");
+    }
+
+    /** Open the system asking for tagged requests, returning whether the server agrees. */
+    static boolean open(DataOutputStream out, DataInputStream in, String etName) throws IOException {
+        for (int magic : EtConstants.magicNumbers) out.writeInt(magic);
+        out.writeInt(EtConstants.endianBig);
+        out.writeInt(etName.length() + 1);
+        out.writeInt(1);
+        out.writeLong(EtConstants.featureTagged);
+        out.write(etName.getBytes("ASCII"));
+        out.write(0);
+        out.flush();
+        if (in.readInt() != EtConstants.ok) throw new IOException("cannot open " + etName);
+        byte[] reply = new byte[36];
+        in.readFully(reply);
+        return (EtUtils.bytesToInt(reply, 32) & EtConstants.featureTagged) != 0;
+    }
+
+    /** Send a request preceded by its tag and length. */
+    static void send(DataOutputStream out, int tag, ByteArrayOutputStream request) throws IOException {
+        out.writeInt(tag);
+        out.writeInt(request.size());
+        request.writeTo(out);
+        out.flush();
+        request.reset();
+    }
+
+    static boolean closedByServer(Socket socket) {
+        try {
+            return socket.getInputStream().read() < 0;
+        }
+        catch (IOException e) {
+            // reset or timed out
+            return !(e instanceof java.net.SocketTimeoutException);
+        }
+    }
+}
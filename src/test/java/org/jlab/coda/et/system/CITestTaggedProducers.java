@@ -0,0 +1,135 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.enums.Mode;
+import org.jlab.coda.et.exception.EtTimeoutException;
+
+import java.io.DataOutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that threads sharing one connection with tagged requests never mix up each
+ * other's events. A Java ET system is run in this process and several threads of one
+ * remote user, sharing a connection with tagged requests, get new events, fill them
+ * and put them. Each thread must get streams of its own. A local consumer checks that
+ * every event arrives whole, its data and control words those of the thread and
+ * request which put it.
+ */
+public class CITestTaggedProducers {
+
+    static final CISupport ci = new CISupport("TaggedProducers", 124);
+
+    public static void main(String[] args) {
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(100);
+            config.setEventSize(64);
+            final SystemCreate sys = ci.start(config);
+            StationLocal station = sys.createStation(new EtStationConfig(), "check");
+            final AttachmentLocal consumer = sys.attach(station.getStationId());
+
+            EtSystemOpenConfig openConfig = new EtSystemOpenConfig(ci.etName(0), "localhost", ci.serverPort(0));
+            openConfig.setNetworkContactMethod(EtConstants.direct);
+            openConfig.setTaggedRequests(true);
+            final EtSystem user = new EtSystem(openConfig);
+            user.open();
+            final DataOutputStream[] userOut = new DataOutputStream[1];
+            Thread other = new Thread() {
+                public void run() {
+                    userOut[0] = user.getOutputStream();
+                }
+            };
+            other.start();
+            other.join();
+            ci.check(userOut[0] != null && userOut[0] != user.getOutputStream() &&
+                     user.getOutputStream() == user.getOutputStream(),
+                     "server agrees to tagged requests, each thread gets its own streams");
+            final EtStation gc = user.stationNameToObject("GRAND_CENTRAL");
+
+            final int producers = 4, rounds = 1000;
+            final AtomicInteger failed = new AtomicInteger(), bad = new AtomicInteger(), checked = new AtomicInteger();
+            final boolean[] stop = new boolean[1];
+            Thread[] threads = new Thread[producers];
+            for (int t = 0; t < producers; t++) {
+                final int id = t;
+                threads[t] = new Thread() {
+                    public void run() {
+                        try {
+                            EtAttachment att = user.attach(gc);
+                            int[] control = new int[EtConstants.stationSelectInts];
+                            for (int i = 0; i < rounds; i++) {
+                                EtEvent[] evs = user.newEvents(att, Mode.SLEEP, 0, 4, 64);
+                                for (int j = 0; j < evs.length; j++) {
+                                    for (int k = 0; k < 16; k++) evs[j].getDataBuffer().putInt(4*k, id);
+                                    evs[j].getDataBuffer().putInt(4, i);
+                                    evs[j].setLength(64 - 4 * j);
+                                    control[0] = id;
+                                    control[1] = i;
+                                    evs[j].setControl(control);
+                                }
+                                user.putEvents(att, evs);
+                            }
+                            user.detach(att);
+                        }
+                        catch (Exception e) {
+                            e.printStackTrace();
+                            failed.incrementAndGet();
+                        }
+                    }
+                };
+            }
+
+            Thread checker = new Thread() {
+                public void run() {
+                    try {
+                        while (!stop[0]) {
+                            EtEventImpl[] evs;
+                            try {
+                                evs = sys.getEvents(consumer, EtConstants.timed, 100000, 100);
+                            }
+                            catch (EtTimeoutException e) {
+                                continue;
+                            }
+                            for (EtEventImpl ev : evs) {
+                                int id = ev.getControl()[0], i = ev.getControl()[1];
+                                boolean whole = ev.getLength() >= 52 && ev.getLength() <= 64 &&
+                                                ev.getDataBuffer().getInt(4) == i;
+                                for (int k = 0; k < ev.getLength() / 4; k++) {
+                                    if (k != 1) whole &= ev.getDataBuffer().getInt(4*k) == id;
+                                }
+                                if (!whole) bad.incrementAndGet();
+                                checked.incrementAndGet();
+                            }
+                            sys.putEvents(consumer, evs);
+                        }
+                    }
+                    catch (Exception e) {
+                        e.printStackTrace();
+                        failed.incrementAndGet();
+                    }
+                }
+            };
+            checker.start();
+            for (Thread t : threads) t.start();
+            for (Thread t : threads) t.join(60000);
+            for (int i = 0; i < 1000 && checked.get() < producers * rounds * 4; i++) {
+                Thread.sleep(1);
+            }
+            ci.check(failed.get() == 0, producers + " threads sharing a connection put events without error");
+            ci.check(checked.get() == producers * rounds * 4 && bad.get() == 0,
+                     checked.get() + " events checked, " + bad.get() + " mixed up");
+
+            stop[0] = true;
+            checker.join(1000);
+            user.close();
+            sys.detach(consumer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("tagged requests mixed up");
+    }
+}
@@ -0,0 +1,138 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+import org.jlab.coda.et.data.AllData;
+import org.jlab.coda.et.data.AttachmentData;
+import org.jlab.coda.et.enums.WaitStrategy;
+import org.jlab.coda.et.exception.EtException;
+import org.jlab.coda.et.exception.EtTimeoutException;
+
+/**
+ * Checks the ways an attachment may wait for events. A Java ET system is run in this
+ * process with an attachment for each {@link WaitStrategy}, each with its own number of
+ * spin tries. While waiting, attachments which block or park after spinning must be
+ * parked and those which spin or yield must not, and each must get an event once one
+ * is put. A timed wait while spinning must time out on time. Bad strategies and spin
+ * tries must be refused. Finally a remote user must see each attachment's strategy and
+ * spin tries in the system's data.
+ */
+public class CITestWaitStrategy {
+
+    static final CISupport ci = new CISupport("WaitStrategy", 130);
+
+    /** Waits for an event. */
+    static class Waiter extends Thread {
+        final SystemCreate sys;
+        final AttachmentLocal att;
+        volatile EtEventImpl[] gotten;
+
+        Waiter(SystemCreate sys, AttachmentLocal att) {
+            this.sys = sys;
+            this.att = att;
+            setDaemon(true);
+        }
+
+        public void run() {
+            try {
+                gotten = sys.getEvents(att, EtConstants.sleep, 0, 1);
+            }
+            catch (Exception e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** Is attaching with a strategy and spin tries refused? */
+    static boolean refused(SystemCreate sys, int statId, WaitStrategy strategy, int spinTries) throws Exception {
+        try {
+            sys.attach(statId, strategy, spinTries);
+            return false;
+        }
+        catch (EtException e) {
+            return true;
+        }
+    }
+
+    public static void main(String[] args) {
+
+        try {
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(20);
+            config.setEventSize(16);
+            SystemCreate sys = ci.start(config);
+            StationLocal station = sys.createStation(new EtStationConfig(), "waits");
+            int statId = station.getStationId();
+            AttachmentLocal producer = sys.attach(0);
+
+            WaitStrategy[] strategies = WaitStrategy.values();
+            AttachmentLocal[] atts = new AttachmentLocal[strategies.length];
+            for (int i = 0; i < strategies.length; i++) {
+                WaitStrategy strategy = strategies[i];
+                atts[i] = sys.attach(statId, strategy, 1000 + i);
+                Waiter waiter = new Waiter(sys, atts[i]);
+                waiter.start();
+                Thread.sleep(50);
+                boolean parks = (strategy == WaitStrategy.BLOCK) || (strategy == WaitStrategy.SPIN_PARK);
+                Thread.State state = waiter.getState();
+                ci.check(atts[i].getWaitStrategy() == strategy && atts[i].getSpinTries() == 1000 + i &&
+                         (state == Thread.State.WAITING) == parks,
+                         strategy + " waiter is " + state);
+
+                long start = System.nanoTime();
+                sys.putEvents(producer, sys.newEvents(producer, EtConstants.sleep, 0, 1, 16));
+                waiter.join(1000);
+                long took = (System.nanoTime() - start) / 1000L;
+                ci.check(waiter.gotten != null && waiter.gotten.length == 1,
+                         strategy + " waiter gets an event in " + took + " microsec");
+                if (waiter.gotten != null) sys.putEvents(atts[i], waiter.gotten);
+            }
+
+            // timed spin
+            AttachmentLocal spinner = sys.attach(statId, WaitStrategy.SPIN, 0);
+            boolean timedOut = false;
+            long start = System.nanoTime();
+            try {
+                sys.getEvents(spinner, EtConstants.timed, 20000, 1);
+            }
+            catch (EtTimeoutException e) {
+                timedOut = true;
+            }
+            long took = (System.nanoTime() - start) / 1000L;
+            ci.check(timedOut && took >= 20000 && took < 70000,
+                     "spinning 20000 microsec wait times out after " + took);
+            sys.detach(spinner);
+
+            ci.check(refused(sys, statId, null, 0) && refused(sys, statId, WaitStrategy.SPIN_PARK, -1),
+                     "no strategy or negative spin tries refused");
+
+            // as seen by a remote user
+            EtSystemOpenConfig openConfig = new EtSystemOpenConfig(ci.etName(0), "localhost", ci.serverPort(0));
+            openConfig.setNetworkContactMethod(EtConstants.direct);
+            EtSystem user = new EtSystem(openConfig);
+            user.open();
+            AllData data = user.getData();
+            int seen = 0;
+            for (AttachmentData attData : data.attData) {
+                for (AttachmentLocal att : atts) {
+                    if (attData.getId() == att.getId() &&
+                        attData.getWaitStrategy() == att.getWaitStrategy() &&
+                        attData.getSpinTries() == att.getSpinTries()) {
+                        seen++;
+                    }
+                }
+            }
+            ci.check(seen == strategies.length,
+                     "remote user sees the strategy and spin tries of " + seen + " attachments");
+            user.close();
+
+            for (AttachmentLocal att : atts) sys.detach(att);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("attachments waited wrongly");
+    }
+}
@@ -0,0 +1,153 @@
+package org.jlab.coda.et.system;
+
+import org.jlab.coda.et.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks the weighted dispatch of events to a parallel station group. For many random
+ * input list counts and rates, the number given to each station must add up to the
+ * events doled out, the stations given events must end up taking the same time to
+ * empty to within one event, and no station may be passed over while it would empty
+ * sooner. Then a Java ET system is run in this process with a weighted group of a fast
+ * and a slow consumer, flooded by a producer. The slow consumer must be left only
+ * a short backlog, where equal shares would leave it half of all events.
+ */
+public class CITestWeighted {
+
+    static final CISupport ci = new CISupport("Weighted", 114);
+
+    public static void main(String[] args) {
+
+        try {
+            Random rand = new Random(14);
+            int[] counts = new int[64], given = new int[64];
+            double[] rates = new double[64];
+            long[] order = new long[64];
+            int bad = 0, cases = 0;
+
+            for (int trial = 0; trial < 30000; trial++) {
+                int n = 1 + rand.nextInt(64);
+                int eventCount = rand.nextInt(trial % 2 == 0 ? 50 : 5000);
+                for (int i = 0; i < n; i++) {
+                    counts[i] = rand.nextInt(trial % 3 == 0 ? 2 : 500);
+                    rates[i]  = 1. + rand.nextInt(trial % 5 == 0 ? 2 : 10000);
+                }
+                StationLocal.levelByRate(counts, rates, n, eventCount, order, given);
+
+                boolean pass = true;
+                int sum = 0;
+                double latest = 0.;    // latest any receiver empties, less its last event
+                for (int i = 0; i < n; i++) {
+                    if (given[i] < 0) pass = false;
+                    sum += given[i];
+                    if (given[i] > 0) latest = Math.max(latest, (counts[i] + given[i] - 1) / rates[i]);
+                }
+                if (sum != eventCount) pass = false;
+                double slack = 1.e-9 * (1. + latest);
+                for (int i = 0; i < n; i++) {
+                    // taking one event from a receiver can't make it empty sooner than
+                    // any other station will, adding one more to it
+                    double time = (counts[i] + given[i] + 1) / rates[i];
+                    if (time + slack < latest) pass = false;
+                }
+                if (!pass) bad++;
+                cases++;
+            }
+            ci.check(bad == 0, cases + " random cases weighted, " + bad + " wrong");
+
+            // exact cases
+            int[] out = new int[3];
+            StationLocal.levelByRate(new int[] {0, 0}, new double[] {3., 1.}, 2, 100, order, out);
+            ci.check(out[0] == 75 && out[1] == 25, "empty stations of rates 3:1 given 100 -> " + out[0] + ", " + out[1]);
+            StationLocal.levelByRate(new int[] {0, 0, 10}, new double[] {1., 1., 2.}, 3, 10, order, out);
+            ci.check(Arrays.equals(out, new int[] {5, 5, 0}), "station 5 sec from empty passed over -> " +
+                                                               Arrays.toString(out));
+
+            // Through an ET system
+            int numEvents = 200;
+            SystemConfig config = new SystemConfig();
+            config.setNumEvents(numEvents);
+            config.setEventSize(16);
+            final SystemCreate sys = ci.start(config);
+
+            EtStationConfig sConfig = new EtStationConfig();
+            sConfig.setFlowMode(EtConstants.stationParallel);
+            sConfig.setSelectMode(EtConstants.stationSelectWeighted);
+            StationLocal fast = sys.createStation(sConfig, "fast");
+            StationLocal slow = sys.createStation(sConfig, "slow", 1, EtConstants.end);
+            final AttachmentLocal fastAtt = sys.attach(fast.getStationId());
+            final AttachmentLocal slowAtt = sys.attach(slow.getStationId());
+            final AttachmentLocal producer = sys.attach(0);
+            final long endTime = System.currentTimeMillis() + 3000L;
+
+            Thread[] threads = new Thread[3];
+            threads[0] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            sys.putEvents(producer, sys.newEvents(producer, EtConstants.timed, 100000, 20, 16));
+                        }
+                    }
+                    catch (org.jlab.coda.et.exception.EtTimeoutException e) {}
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[1] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            sys.putEvents(fastAtt, sys.getEvents(fastAtt, EtConstants.timed, 100000, 20));
+                        }
+                    }
+                    catch (org.jlab.coda.et.exception.EtTimeoutException e) {}
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            // about 100 Hz
+            threads[2] = new Thread() {
+                public void run() {
+                    try {
+                        while (System.currentTimeMillis() < endTime) {
+                            EtEventImpl[] evs = sys.getEvents(slowAtt, EtConstants.timed, 100000, 1);
+                            Thread.sleep(10);
+                            sys.putEvents(slowAtt, evs);
+                        }
+                    }
+                    catch (org.jlab.coda.et.exception.EtTimeoutException e) {}
+                    catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            for (Thread t : threads) t.start();
+
+            // after the rates are known, watch the slow station's backlog
+            Thread.sleep(1500);
+            int slowMax = 0;
+            while (System.currentTimeMillis() < endTime - 100L) {
+                slowMax = Math.max(slowMax, slow.getInputList().getCount());
+                Thread.sleep(5);
+            }
+            for (Thread t : threads) t.join();
+            ci.check(slowMax <= numEvents/10, "slow station's backlog at most " + slowMax + " of " + numEvents +
+                                              " events, fast one took " + fastAtt.getEventsGet() +
+                                              ", slow one " + slowAtt.getEventsGet());
+
+            sys.detach(fastAtt);
+            sys.detach(slowAtt);
+            sys.detach(producer);
+            sys.shutdown();
+        }
+        catch (Exception e) {
+            ci.fail(e);
+        }
+
+        ci.exit("weighted dispatch wrong");
+    }
+}